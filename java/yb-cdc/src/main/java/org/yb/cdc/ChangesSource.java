@@ -0,0 +1,49 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package org.yb.cdc;
+
+import com.google.common.net.HostAndPort;
+import org.yb.client.YBTable;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Where pollers get the changes of their tablets from.
+ *
+ * The returned stages are completed on the source's I/O threads, so whatever runs on completion
+ * must not block.
+ */
+public interface ChangesSource {
+  /**
+   * Gets the changes of the tablet after the given checkpoint from the given server.
+   */
+  public CompletionStage<CdcService.GetChangesResponsePB> getChanges(
+      HostAndPort hp, YBTable table, String streamId, String tabletId, long term, long index,
+      int maxRecords);
+
+  /**
+   * Looks up the leader of the tablet, which completes with null if the tablet has no leader, or
+   * fails with TabletNotFoundException if the table no longer has the tablet.
+   */
+  public CompletionStage<HostAndPort> locateLeader(YBTable table, String tabletId,
+                                                   byte[] partitionKeyStart);
+
+  /**
+   * Thrown when a tablet is not found in its table, because it was split or deleted.
+   */
+  public static class TabletNotFoundException extends Exception {
+    public TabletNotFoundException(String tabletId) {
+      super("Tablet " + tabletId + " not found");
+    }
+  }
+}
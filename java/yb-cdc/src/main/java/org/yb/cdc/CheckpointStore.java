@@ -0,0 +1,237 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Durable store of the last acknowledged checkpoint of each (stream, tablet) pair.
+ *
+ * Checkpoints are appended to a memory-mapped file, so an update only writes to memory and
+ * survives a crash of the process. The file is forced to disk every fsyncBatchSize updates or
+ * fsyncIntervalMs, whichever comes first, which bounds what a machine crash can lose. The interval
+ * is only checked on update, so the owner calls sync() every fsyncIntervalMs as well, or else the
+ * last updates before a lull would not be forced until the next one. On open the
+ * file is replayed and the last record of each pair wins. Once the file fills up, the live
+ * checkpoints are written to a new file which atomically replaces it.
+ *
+ * Each record is laid out as [payload length][payload][crc32 of payload], where the payload is
+ * [stream id length][stream id][tablet id length][tablet id][term][index]. Replay stops at the
+ * first record which is zero or fails its checksum, which is where a torn write would be.
+ */
+public class CheckpointStore implements Closeable {
+  private static final Logger LOG = Logger.getLogger(CheckpointStore.class);
+
+  static final int MIN_FILE_SIZE = 1 << 20;
+
+  /**
+   * Position in the log of a tablet of a CDC stream.
+   */
+  public static class Checkpoint {
+    public final long term;
+    public final long index;
+
+    public Checkpoint(long term, long index) {
+      this.term = term;
+      this.index = index;
+    }
+
+    @Override
+    public String toString() {
+      return term + "." + index;
+    }
+  }
+
+  private final Path path;
+  private final int fsyncBatchSize;
+  private final long fsyncIntervalMs;
+
+  private final Map<String, Checkpoint> checkpoints = new HashMap<>();
+  private final CRC32 crc = new CRC32();
+
+  private MappedByteBuffer buffer;
+  private int pendingUpdates = 0;
+  private long lastSyncMs = System.currentTimeMillis();
+
+  public CheckpointStore(String fileName, int fsyncBatchSize, long fsyncIntervalMs)
+      throws IOException {
+    this.path = Paths.get(fileName);
+    this.fsyncBatchSize = fsyncBatchSize;
+    this.fsyncIntervalMs = fsyncIntervalMs;
+
+    long size = Files.exists(path) ? Files.size(path) : 0;
+    map(path, Math.max(size, MIN_FILE_SIZE));
+    replay();
+    LOG.info(String.format("Loaded %d checkpoints from %s", checkpoints.size(), path));
+  }
+
+  private static String key(String streamId, String tabletId) {
+    return streamId + "/" + tabletId;
+  }
+
+  /**
+   * Returns the stored checkpoint of the tablet, or null if there is none.
+   */
+  public synchronized Checkpoint get(String streamId, String tabletId) {
+    return checkpoints.get(key(streamId, tabletId));
+  }
+
+  /**
+   * Records the checkpoint up to which all changes of the tablet have been acknowledged.
+   */
+  public synchronized void update(String streamId, String tabletId, long term, long index)
+      throws IOException {
+    byte[] record = encode(streamId, tabletId, term, index);
+    if (record.length > buffer.remaining()) {
+      checkpoints.put(key(streamId, tabletId), new Checkpoint(term, index));
+      compact();
+    } else {
+      buffer.put(record);
+      checkpoints.put(key(streamId, tabletId), new Checkpoint(term, index));
+    }
+
+    pendingUpdates++;
+    long now = System.currentTimeMillis();
+    if (pendingUpdates >= fsyncBatchSize || now - lastSyncMs >= fsyncIntervalMs) {
+      syncLocked(now);
+    }
+  }
+
+  /**
+   * Forces the updates made so far to disk.
+   */
+  public synchronized void sync() {
+    syncLocked(System.currentTimeMillis());
+  }
+
+  private void syncLocked(long now) {
+    if (pendingUpdates > 0) {
+      buffer.force();
+      pendingUpdates = 0;
+    }
+    lastSyncMs = now;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    sync();
+  }
+
+  private void map(Path file, long size) throws IOException {
+    // The mapping stays valid once the file is closed.
+    try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+      raf.setLength(size);
+      buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private void replay() {
+    while (buffer.remaining() >= 4) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining() - 4) {
+        buffer.position(start);
+        break;
+      }
+      byte[] payload = new byte[length];
+      buffer.get(payload);
+      crc.reset();
+      crc.update(payload);
+      if ((int) crc.getValue() != buffer.getInt()) {
+        LOG.warn(String.format("Ignoring torn checkpoint record at offset %d of %s", start, path));
+        buffer.position(start);
+        break;
+      }
+      ByteBuffer in = ByteBuffer.wrap(payload);
+      String streamId = readString(in);
+      String tabletId = readString(in);
+      checkpoints.put(key(streamId, tabletId), new Checkpoint(in.getLong(), in.getLong()));
+    }
+
+    // Clear whatever follows the last good record, so that it cannot be mistaken for a record
+    // once new ones are appended in its place.
+    int position = buffer.position();
+    while (buffer.hasRemaining()) {
+      buffer.put((byte) 0);
+    }
+    buffer.position(position);
+  }
+
+  private void compact() throws IOException {
+    int liveBytes = 0;
+    List<byte[]> records = new ArrayList<>();
+    for (Map.Entry<String, Checkpoint> entry : checkpoints.entrySet()) {
+      String[] ids = entry.getKey().split("/", 2);
+      byte[] record = encode(ids[0], ids[1], entry.getValue().term, entry.getValue().index);
+      records.add(record);
+      liveBytes += record.length;
+    }
+
+    // Leave at least as much room for new records as the live ones take.
+    long size = buffer.capacity();
+    while (size < 2L * liveBytes) {
+      size *= 2;
+    }
+
+    Path tmpPath = Paths.get(path.toString() + ".tmp");
+    Files.deleteIfExists(tmpPath);
+    map(tmpPath, size);
+    for (byte[] record : records) {
+      buffer.put(record);
+    }
+    buffer.force();
+    Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    pendingUpdates = 0;
+    LOG.info(String.format("Compacted %d checkpoints into %s, %d of %d bytes used",
+                           checkpoints.size(), path, buffer.position(), size));
+  }
+
+  private byte[] encode(String streamId, String tabletId, long term, long index) {
+    byte[] stream = streamId.getBytes(StandardCharsets.UTF_8);
+    byte[] tablet = tabletId.getBytes(StandardCharsets.UTF_8);
+    int length = 2 + stream.length + 2 + tablet.length + 8 + 8;
+    ByteBuffer out = ByteBuffer.allocate(4 + length + 4);
+    out.putInt(length);
+    out.putShort((short) stream.length).put(stream);
+    out.putShort((short) tablet.length).put(tablet);
+    out.putLong(term).putLong(index);
+    crc.reset();
+    crc.update(out.array(), 4, length);
+    out.putInt((int) crc.getValue());
+    return out.array();
+  }
+
+  private static String readString(ByteBuffer in) {
+    byte[] bytes = new byte[in.getShort()];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
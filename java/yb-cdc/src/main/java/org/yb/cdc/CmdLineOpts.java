@@ -20,9 +20,27 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.apache.log4j.Logger;
 
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
 public class CmdLineOpts {
 
   private static final String DEFAULT_MASTER_ADDRS = "127.0.0.1:7100";
+  private static final int DEFAULT_CHECKPOINT_FSYNC_BATCH = 100;
+  private static final long DEFAULT_CHECKPOINT_FSYNC_INTERVAL_MS = 1000;
+  private static final int DEFAULT_MAX_RECORDS_PER_POLL = 1000;
+  private static final long DEFAULT_POLL_BACKOFF_MIN_MS = 10;
+  private static final long DEFAULT_POLL_BACKOFF_MAX_MS = 1000;
+  private static final int DEFAULT_METRICS_INTERVAL_SECS = 10;
+  private static final int DEFAULT_MAX_INFLIGHT_BATCHES = 4;
+  private static final String DEFAULT_OUTPUT_FILE_PREFIX = "cdc";
+  private static final long DEFAULT_OUTPUT_FILE_MAX_MB = 128;
+  private static final long DEFAULT_MERGE_SAFE_TIME_LAG_MS = 1000;
+  private static final int DEFAULT_POLLER_THREADS = 8;
+  private static final int DEFAULT_MAX_CONCURRENT_POLLS = 256;
+  private static final int DEFAULT_TABLET_REFRESH_INTERVAL_SECS = 30;
 
   private static final Logger LOG = Logger.getLogger(CmdLineOpts.class);
 
@@ -30,6 +48,25 @@ public class CmdLineOpts {
   public String namespaceName;
   public String masterAddrs = DEFAULT_MASTER_ADDRS;
   public String streamId = "";
+  public String checkpointFile = "";
+  public int checkpointFsyncBatch = DEFAULT_CHECKPOINT_FSYNC_BATCH;
+  public long checkpointFsyncIntervalMs = DEFAULT_CHECKPOINT_FSYNC_INTERVAL_MS;
+  public int maxRecordsPerPoll = DEFAULT_MAX_RECORDS_PER_POLL;
+  public long pollBackoffMinMs = DEFAULT_POLL_BACKOFF_MIN_MS;
+  public long pollBackoffMaxMs = DEFAULT_POLL_BACKOFF_MAX_MS;
+  public int metricsIntervalSecs = DEFAULT_METRICS_INTERVAL_SECS;
+  public int maxInflightBatches = DEFAULT_MAX_INFLIGHT_BATCHES;
+  public String outputDir = "";
+  public String outputFilePrefix = DEFAULT_OUTPUT_FILE_PREFIX;
+  public long outputFileMaxMb = DEFAULT_OUTPUT_FILE_MAX_MB;
+  public boolean mergeTablets = false;
+  public long mergeSafeTimeLagMs = DEFAULT_MERGE_SAFE_TIME_LAG_MS;
+  public int pollerThreads = DEFAULT_POLLER_THREADS;
+  public int maxConcurrentPolls = DEFAULT_MAX_CONCURRENT_POLLS;
+  public int tabletRefreshIntervalSecs = DEFAULT_TABLET_REFRESH_INTERVAL_SECS;
+  public Set<CdcService.CDCRecordPB.OperationType> opTypes =
+      EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class);
+  public List<String> columns = new ArrayList<>();
 
   public static CmdLineOpts createFromArgs(String[] args) throws Exception {
     Options options = new Options();
@@ -39,6 +76,61 @@ public class CmdLineOpts {
             "Table to get change capture from in format <namespace>.<table>");
     options.addOption("stream_id", true,
             "Optional stream ID. Use this if you already have a CDC stream set up on the table");
+    options.addOption("checkpoint_file", true,
+            "Optional file to persist the checkpoint of each tablet in, so that a restarted " +
+            "connector resumes where it left off");
+    options.addOption("checkpoint_fsync_batch", true,
+            "Number of checkpoint updates after which the checkpoint file is synced to disk. " +
+            "Default " + DEFAULT_CHECKPOINT_FSYNC_BATCH);
+    options.addOption("checkpoint_fsync_interval_ms", true,
+            "Maximum time between two syncs of the checkpoint file to disk. " +
+            "Default " + DEFAULT_CHECKPOINT_FSYNC_INTERVAL_MS);
+    options.addOption("max_records_per_poll", true,
+            "Maximum number of changes to ask a tablet for in one poll, which the servers may " +
+            "cap lower. A tablet which returns changes is polled again right away. Default " +
+            DEFAULT_MAX_RECORDS_PER_POLL);
+    options.addOption("poll_backoff_min_ms", true,
+            "Delay before polling a tablet again after it returned no changes or failed, which " +
+            "doubles up to --poll_backoff_max_ms while it keeps doing so. " +
+            "Default " + DEFAULT_POLL_BACKOFF_MIN_MS);
+    options.addOption("poll_backoff_max_ms", true,
+            "Maximum delay between two polls of a tablet. Default " + DEFAULT_POLL_BACKOFF_MAX_MS);
+    options.addOption("metrics_interval_secs", true,
+            "Interval at which poll metrics are logged, 0 to disable. " +
+            "Default " + DEFAULT_METRICS_INTERVAL_SECS);
+    options.addOption("max_inflight_batches", true,
+            "Maximum number of batches of changes of a tablet which the sink may be applying at " +
+            "once. Default " + DEFAULT_MAX_INFLIGHT_BATCHES);
+    options.addOption("output_dir", true,
+            "Optional directory to write changes to as length-delimited CDCRecordPB files, " +
+            "instead of logging them");
+    options.addOption("output_file_prefix", true,
+            "Prefix of the files written to --output_dir. Default " + DEFAULT_OUTPUT_FILE_PREFIX);
+    options.addOption("output_file_max_mb", true,
+            "Size after which a new file is started in --output_dir. " +
+            "Default " + DEFAULT_OUTPUT_FILE_MAX_MB);
+    options.addOption("merge_tablets", false,
+            "Output the changes of all tablets in hybrid time order, instead of as each tablet " +
+            "returns them");
+    options.addOption("merge_safe_time_lag_ms", true,
+            "How far behind the time a poll was sent the tablet's changes are considered " +
+            "complete, to cover replication delays and clock skew. " +
+            "Default " + DEFAULT_MERGE_SAFE_TIME_LAG_MS);
+    options.addOption("poller_threads", true,
+            "Number of threads handling poll responses. Default " + DEFAULT_POLLER_THREADS);
+    options.addOption("max_concurrent_polls", true,
+            "Maximum number of polls out at once across all tablets, further ones wait in " +
+            "turn. Default " + DEFAULT_MAX_CONCURRENT_POLLS);
+    options.addOption("tablet_refresh_interval_secs", true,
+            "Interval at which the tablets of the table are listed again, to poll new tablets " +
+            "and stop polling removed ones, 0 to disable. " +
+            "Default " + DEFAULT_TABLET_REFRESH_INTERVAL_SECS);
+    options.addOption("op_types", true,
+            "Optional comma separated operation types of the changes to output, out of WRITE, " +
+            "DELETE and APPLY. Default all");
+    options.addOption("columns", true,
+            "Optional comma separated columns whose changed values to output, along with the " +
+            "primary key. Default all");
 
     // Do the actual arg parsing.
     CommandLineParser parser = new BasicParser();
@@ -85,5 +177,87 @@ public class CmdLineOpts {
       streamId = commandLine.getOptionValue("stream_id");
     }
 
+    if (commandLine.hasOption("checkpoint_file")) {
+      checkpointFile = commandLine.getOptionValue("checkpoint_file");
+      if (streamId.isEmpty()) {
+        LOG.warn("Checkpoints are kept per stream, pass --stream_id to resume from them");
+      }
+    }
+    if (commandLine.hasOption("checkpoint_fsync_batch")) {
+      checkpointFsyncBatch = Integer.parseInt(commandLine.getOptionValue("checkpoint_fsync_batch"));
+    }
+    if (commandLine.hasOption("checkpoint_fsync_interval_ms")) {
+      checkpointFsyncIntervalMs =
+          Long.parseLong(commandLine.getOptionValue("checkpoint_fsync_interval_ms"));
+    }
+
+    if (commandLine.hasOption("max_records_per_poll")) {
+      maxRecordsPerPoll = Integer.parseInt(commandLine.getOptionValue("max_records_per_poll"));
+    }
+    if (commandLine.hasOption("poll_backoff_min_ms")) {
+      pollBackoffMinMs = Long.parseLong(commandLine.getOptionValue("poll_backoff_min_ms"));
+    }
+    if (commandLine.hasOption("poll_backoff_max_ms")) {
+      pollBackoffMaxMs = Long.parseLong(commandLine.getOptionValue("poll_backoff_max_ms"));
+    }
+    if (pollBackoffMinMs < 1 || pollBackoffMaxMs < pollBackoffMinMs) {
+      throw new Exception(String.format("Expected 1 <= --poll_backoff_min_ms <= " +
+                                        "--poll_backoff_max_ms, got %d and %d",
+                                        pollBackoffMinMs, pollBackoffMaxMs));
+    }
+    if (commandLine.hasOption("metrics_interval_secs")) {
+      metricsIntervalSecs = Integer.parseInt(commandLine.getOptionValue("metrics_interval_secs"));
+    }
+
+    if (commandLine.hasOption("max_inflight_batches")) {
+      maxInflightBatches = Integer.parseInt(commandLine.getOptionValue("max_inflight_batches"));
+      if (maxInflightBatches < 1) {
+        throw new Exception("Expected --max_inflight_batches to be at least 1");
+      }
+    }
+    if (commandLine.hasOption("output_dir")) {
+      outputDir = commandLine.getOptionValue("output_dir");
+    }
+    if (commandLine.hasOption("output_file_prefix")) {
+      outputFilePrefix = commandLine.getOptionValue("output_file_prefix");
+    }
+    if (commandLine.hasOption("output_file_max_mb")) {
+      outputFileMaxMb = Long.parseLong(commandLine.getOptionValue("output_file_max_mb"));
+    }
+
+    mergeTablets = commandLine.hasOption("merge_tablets");
+    if (commandLine.hasOption("merge_safe_time_lag_ms")) {
+      mergeSafeTimeLagMs = Long.parseLong(commandLine.getOptionValue("merge_safe_time_lag_ms"));
+    }
+
+    if (commandLine.hasOption("poller_threads")) {
+      pollerThreads = Integer.parseInt(commandLine.getOptionValue("poller_threads"));
+    }
+    if (commandLine.hasOption("max_concurrent_polls")) {
+      maxConcurrentPolls = Integer.parseInt(commandLine.getOptionValue("max_concurrent_polls"));
+    }
+    if (commandLine.hasOption("tablet_refresh_interval_secs")) {
+      tabletRefreshIntervalSecs =
+          Integer.parseInt(commandLine.getOptionValue("tablet_refresh_interval_secs"));
+    }
+
+    if (commandLine.hasOption("op_types")) {
+      for (String opType : commandLine.getOptionValue("op_types").split(",")) {
+        try {
+          opTypes.add(CdcService.CDCRecordPB.OperationType.valueOf(opType.trim().toUpperCase()));
+        } catch (IllegalArgumentException e) {
+          throw new Exception(String.format("Unknown operation type %s in --op_types, expected " +
+                                            "WRITE, DELETE or APPLY", opType));
+        }
+      }
+    }
+    if (commandLine.hasOption("columns")) {
+      for (String column : commandLine.getOptionValue("columns").split(",")) {
+        if (!column.trim().isEmpty()) {
+          columns.add(column.trim());
+        }
+      }
+    }
+
   }
 }
@@ -16,14 +16,18 @@ package org.yb.cdc;
 import com.google.common.net.HostAndPort;
 import org.yb.client.YBTable;
 import org.yb.client.AsyncYBClient;
+import org.yb.client.Bytes;
 import org.yb.client.YBClient;
 import org.yb.client.ListTablesResponse;
 import org.yb.client.ListTabletServersResponse;
 import org.yb.client.LocatedTablet;
+import org.yb.client.Partition;
 
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.*;
 import org.apache.log4j.Logger;
 import org.yb.master.Master;
@@ -35,21 +39,39 @@ class LogConnector {
   private static AsyncYBClient client;
   private static YBClient syncClient;
 
-  private ExecutorService executor;
+  private PollScheduler pollScheduler;
+  private ChangesSource changesSource;
+  // Runs the periodic tasks of the connector.
+  private ScheduledExecutorService scheduler;
 
   private static final int DEFAULT_TIMEOUT = 30000;
-  private static final int DEFAULT_NUM_THREADS = 8;
 
   private YBTable table;
 
-  private List<Poller> pollers = new ArrayList<>();
+  // The pollers and partitions of the tablets being polled, by tablet id.
+  private Map<String, Poller> pollers = new HashMap<>();
+  private Map<String, Partition> partitions = new HashMap<>();
+  // The tablets split from a tablet which is being drained, by the id of the split tablet.
+  private Map<String, List<LocatedTablet>> pendingChildren = new HashMap<>();
+  // Whether a reconciliation of the tablets is already scheduled.
+  private AtomicBoolean reconcilePending = new AtomicBoolean(false);
 
   List<HostAndPort> hps = new ArrayList<>();
 
   private OutputClient outputClient;
 
+  private MergingOutputClient mergingOutputClient;
+
+  private ProjectionOutputClient projectionOutputClient;
+
+  private CheckpointStore checkpointStore;
+
   private String streamId;
 
+  private CmdLineOpts opts;
+
+  private PollerMetrics metrics = new PollerMetrics();
+
   public LogConnector(CmdLineOpts opts) throws Exception {
     LOG.info("Creating new YB client...");
     client = new AsyncYBClient.AsyncYBClientBuilder(opts.masterAddrs)
@@ -60,7 +82,9 @@ class LogConnector {
 
     syncClient = new YBClient(client);
 
-    executor = Executors.newFixedThreadPool(DEFAULT_NUM_THREADS);
+    pollScheduler = new PollScheduler(opts.pollerThreads, opts.maxConcurrentPolls);
+    changesSource = new YBClientChangesSource(client);
+    scheduler = Executors.newSingleThreadScheduledExecutor();
 
     String tableId = null;
     ListTablesResponse tablesResp = syncClient.getTablesList();
@@ -84,9 +108,29 @@ class LogConnector {
       hps.add(HostAndPort.fromParts(serverInfo.getHost(), serverInfo.getPort()));
     }
 
-    outputClient = new LogClient();
+    if (opts.outputDir.isEmpty()) {
+      outputClient = new LogClient();
+    } else {
+      outputClient = new ProtobufFileClient(opts.outputDir, opts.outputFilePrefix,
+                                            opts.outputFileMaxMb * 1024 * 1024);
+    }
+    if (opts.mergeTablets) {
+      mergingOutputClient = new MergingOutputClient(outputClient, opts.maxRecordsPerPoll);
+      outputClient = mergingOutputClient;
+    }
+    if (!opts.opTypes.isEmpty() || !opts.columns.isEmpty()) {
+      projectionOutputClient = new ProjectionOutputClient(outputClient, syncClient, tableId,
+                                                          opts.opTypes, opts.columns);
+      outputClient = projectionOutputClient;
+    }
+
+    if (!opts.checkpointFile.isEmpty()) {
+      checkpointStore = new CheckpointStore(opts.checkpointFile, opts.checkpointFsyncBatch,
+                                            opts.checkpointFsyncIntervalMs);
+    }
 
     streamId = opts.streamId;
+    this.opts = opts;
   }
 
   public void run() throws Exception {
@@ -100,12 +144,190 @@ class LogConnector {
 
     List<LocatedTablet> tabletLocations = table.getTabletsLocations(DEFAULT_TIMEOUT);
 
-    for (LocatedTablet tablet : tabletLocations) {
-      String tabletId = new String(tablet.getTabletId());
+    synchronized (this) {
+      for (LocatedTablet tablet : tabletLocations) {
+        startPoller(tablet, null);
+      }
+    }
+
+    if (opts.tabletRefreshIntervalSecs > 0) {
+      scheduler.scheduleWithFixedDelay(this::reconcileTablets, opts.tabletRefreshIntervalSecs,
+                                       opts.tabletRefreshIntervalSecs, TimeUnit.SECONDS);
+    }
+
+    if (checkpointStore != null && opts.checkpointFsyncIntervalMs > 0) {
+      // Forces the last checkpoints to disk even once the pollers stop updating them.
+      scheduler.scheduleWithFixedDelay(this::syncCheckpoints, opts.checkpointFsyncIntervalMs,
+                                       opts.checkpointFsyncIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    if (opts.metricsIntervalSecs > 0) {
+      scheduler.scheduleAtFixedRate(metrics::report, opts.metricsIntervalSecs,
+                                    opts.metricsIntervalSecs, TimeUnit.SECONDS);
+      scheduler.scheduleAtFixedRate(pollScheduler::report, opts.metricsIntervalSecs,
+                                    opts.metricsIntervalSecs, TimeUnit.SECONDS);
+      if (mergingOutputClient != null) {
+        scheduler.scheduleAtFixedRate(mergingOutputClient::report, opts.metricsIntervalSecs,
+                                      opts.metricsIntervalSecs, TimeUnit.SECONDS);
+      }
+      if (projectionOutputClient != null) {
+        scheduler.scheduleAtFixedRate(projectionOutputClient::report, opts.metricsIntervalSecs,
+                                      opts.metricsIntervalSecs, TimeUnit.SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Starts polling a tablet, from its stored checkpoint if there is one, or else from the
+   * checkpoint of the tablet it was split from, if given.
+   */
+  private void startPoller(LocatedTablet tablet, CheckpointStore.Checkpoint parentCheckpoint)
+      throws Exception {
+    String tabletId = new String(tablet.getTabletId());
+    CheckpointStore.Checkpoint checkpoint =
+        checkpointStore == null ? null : checkpointStore.get(streamId, tabletId);
+    if (checkpoint != null) {
+      LOG.info(String.format("Polling for tablet %s from checkpoint %s", tabletId, checkpoint));
+    } else if (parentCheckpoint != null) {
+      checkpoint = parentCheckpoint;
+      LOG.info(String.format("Polling for tablet %s from checkpoint %s of its parent",
+                             tabletId, checkpoint));
+      if (checkpointStore != null) {
+        // Once the parent is gone, only the child remembers where to resume from.
+        checkpointStore.update(streamId, tabletId, checkpoint.term, checkpoint.index);
+      }
+    } else {
       LOG.info(String.format("Polling for new tablet %s", tabletId));
-      Poller poller = new Poller(outputClient, hps, table, streamId, tabletId, executor, client);
-      pollers.add(poller);
-      poller.poll();
+    }
+    Poller poller = new Poller(outputClient, checkpointStore, hps, table, streamId, tabletId,
+                               tablet.getPartition().getPartitionKeyStart(),
+                               YBClientChangesSource.leaderOf(tablet), checkpoint,
+                               pollScheduler, changesSource, metrics, opts);
+    poller.setOnTabletNotFound(this::scheduleReconcile);
+    pollers.put(tabletId, poller);
+    partitions.put(tabletId, tablet.getPartition());
+    poller.poll();
+  }
+
+  /**
+   * Reconciles the tablets right away, for when a poller finds that its tablet is gone.
+   */
+  private void scheduleReconcile() {
+    if (reconcilePending.compareAndSet(false, true)) {
+      scheduler.execute(this::reconcileTablets);
+    }
+  }
+
+  /**
+   * Compares the tablets of the table with the ones being polled. Tablets which are gone are no
+   * longer polled. A tablet which was split into tablets that are new is drained: it is polled
+   * until it has returned all of its changes and they have been applied, and only then are the
+   * tablets split from it polled, from its final checkpoint. A tablet was split from the polled
+   * tablet whose partition contains the start of its own.
+   */
+  private synchronized void reconcileTablets() {
+    reconcilePending.set(false);
+    List<LocatedTablet> tablets;
+    try {
+      tablets = table.getTabletsLocations(DEFAULT_TIMEOUT);
+    } catch (Exception e) {
+      LOG.warn("Failed to list the tablets of the table", e);
+      return;
+    }
+
+    Set<String> tabletIds = new HashSet<>();
+    Set<String> waitingIds = new HashSet<>();
+    for (List<LocatedTablet> children : pendingChildren.values()) {
+      for (LocatedTablet child : children) {
+        waitingIds.add(new String(child.getTabletId()));
+      }
+    }
+    List<LocatedTablet> newTablets = new ArrayList<>();
+    for (LocatedTablet tablet : tablets) {
+      String tabletId = new String(tablet.getTabletId());
+      tabletIds.add(tabletId);
+      if (!pollers.containsKey(tabletId) && !waitingIds.contains(tabletId)) {
+        newTablets.add(tablet);
+      }
+    }
+
+    for (String tabletId : new ArrayList<>(pollers.keySet())) {
+      List<LocatedTablet> children = new ArrayList<>();
+      for (LocatedTablet tablet : newTablets) {
+        if (contains(partitions.get(tabletId), tablet.getPartition().getPartitionKeyStart())) {
+          children.add(tablet);
+        }
+      }
+      if (!children.isEmpty()) {
+        Poller poller = pollers.remove(tabletId);
+        newTablets.removeAll(children);
+        pendingChildren.put(tabletId, children);
+        poller.drain(checkpoint -> onDrained(tabletId, checkpoint));
+        LOG.info(String.format("Tablet %s was split, draining it before polling its %d children",
+                               tabletId, children.size()));
+      } else if (!tabletIds.contains(tabletId)) {
+        Poller poller = pollers.remove(tabletId);
+        poller.stop();
+        partitions.remove(tabletId);
+        LOG.info(String.format("Stopped polling for tablet %s at checkpoint %s",
+                               tabletId, poller.getCheckpoint()));
+      }
+    }
+
+    for (LocatedTablet tablet : newTablets) {
+      startPollerOrLog(tablet, null);
+    }
+  }
+
+  /**
+   * Starts polling the tablets split from a tablet, once it has been drained.
+   */
+  private synchronized void onDrained(String tabletId, CheckpointStore.Checkpoint checkpoint) {
+    LOG.info(String.format("Drained tablet %s at checkpoint %s", tabletId, checkpoint));
+    partitions.remove(tabletId);
+    List<LocatedTablet> children = pendingChildren.remove(tabletId);
+    if (children == null) {
+      return;
+    }
+    for (LocatedTablet child : children) {
+      startPollerOrLog(child, checkpoint);
+    }
+  }
+
+  private void startPollerOrLog(LocatedTablet tablet, CheckpointStore.Checkpoint parentCheckpoint) {
+    try {
+      startPoller(tablet, parentCheckpoint);
+    } catch (Exception e) {
+      LOG.error(String.format("Failed to start polling for tablet %s",
+                              new String(tablet.getTabletId())), e);
+    }
+  }
+
+  private static boolean contains(Partition partition, byte[] partitionKey) {
+    return Bytes.memcmp(partition.getPartitionKeyStart(), partitionKey) <= 0 &&
+           (partition.isEndPartition() ||
+            Bytes.memcmp(partitionKey, partition.getPartitionKeyEnd()) < 0);
+  }
+
+  private void syncCheckpoints() {
+    try {
+      checkpointStore.sync();
+    } catch (RuntimeException e) {
+      // Keeps the sync scheduled, which an exception would cancel.
+      LOG.error("Failed to sync the checkpoints", e);
+    }
+  }
+
+  public PollerMetrics getMetrics() {
+    return metrics;
+  }
+
+  public void close() throws Exception {
+    scheduler.shutdown();
+    pollScheduler.close();
+    outputClient.close();
+    if (checkpointStore != null) {
+      checkpointStore.close();
     }
   }
 }
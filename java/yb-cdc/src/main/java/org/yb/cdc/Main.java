@@ -15,6 +15,13 @@ public class Main {
   }
 
   public void run() {
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+      try {
+        connector.close();
+      } catch (Exception e) {
+        LOG.error("Error closing connector: ", e);
+      }
+    }));
     try {
       connector.run();
     } catch (Exception e) {
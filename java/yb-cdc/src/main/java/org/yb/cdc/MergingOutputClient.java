@@ -0,0 +1,320 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import org.apache.log4j.Logger;
+import org.yb.client.YBTable;
+import org.yb.util.HybridTimeUtil;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Hands the changes of all the tablets of a table to another output client in hybrid time order.
+ *
+ * Each tablet has a safe time, below which it will not return any more changes. The changes
+ * received from the tablets are buffered in one queue per tablet, and merged through a heap of
+ * the queue heads. A change is passed on once the safe time of every tablet has reached it, in
+ * batches of up to maxBatchSize changes, one batch at a time. A batch handed to this client
+ * completes once all of its changes have been applied downstream, so the in-flight window of the
+ * pollers bounds how much is buffered here: a tablet which is ahead of the others stops being
+ * polled until they catch up.
+ *
+ * The buffer depth, how long changes waited here, and how far behind the wall clock the lowest
+ * safe time is are logged by report().
+ */
+public class MergingOutputClient implements OutputClient {
+  private static final Logger LOG = Logger.getLogger(MergingOutputClient.class);
+
+  // Queue of the changes handed over without their tablet.
+  private static final String NO_TABLET = "";
+
+  /**
+   * Changes handed over in one call, which completes once all of them have been applied.
+   */
+  private static class Batch {
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    final long receivedMs;
+    int pending;
+
+    Batch(int size, long receivedMs) {
+      this.pending = size;
+      this.receivedMs = receivedMs;
+    }
+  }
+
+  private static class Entry {
+    final CdcService.CDCRecordPB record;
+    final Batch batch;
+
+    Entry(CdcService.CDCRecordPB record, Batch batch) {
+      this.record = record;
+      this.batch = batch;
+    }
+  }
+
+  private static class TabletQueue {
+    final String tabletId;
+    final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    long safeTime = 0;
+    boolean removed = false;
+
+    TabletQueue(String tabletId) {
+      this.tabletId = tabletId;
+    }
+
+    long headTime() {
+      return entries.peekFirst().record.getTime();
+    }
+  }
+
+  private final OutputClient downstream;
+  private final int maxBatchSize;
+
+  private final Map<String, TabletQueue> tablets = new HashMap<>();
+  // Tablets with buffered changes, by the hybrid time of their first one.
+  private final PriorityQueue<TabletQueue> heads =
+      new PriorityQueue<>(Comparator.comparingLong(TabletQueue::headTime));
+  // Number of tablets at each safe time, to find the lowest one.
+  private final TreeMap<Long, Integer> safeTimes = new TreeMap<>();
+
+  private YBTable table;
+  private long bufferedRecords = 0;
+  // Whether a batch is being applied downstream.
+  private boolean emitting = false;
+  // Whether emit() is on the stack, for when downstream completes a batch right away.
+  private boolean inEmit = false;
+
+  private long emittedRecords = 0;
+  private long totalAddedLatencyMs = 0;
+  private long maxAddedLatencyMs = 0;
+
+  public MergingOutputClient(OutputClient downstream, int maxBatchSize) {
+    this.downstream = downstream;
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  @Override
+  public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) throws Exception {
+    applyChanges(table, Collections.singletonList(changeRecord)).toCompletableFuture().get();
+  }
+
+  /**
+   * Changes handed over without their tablet are merged with the buffered ones by hybrid time,
+   * and passed on in the order they were handed over. They do not hold back the changes of the
+   * tablets, as nothing tells which changes may still come after them.
+   */
+  @Override
+  public synchronized CompletionStage<Void> applyChanges(
+      YBTable table, List<CdcService.CDCRecordPB> changeRecords) {
+    return applyChanges(table, NO_TABLET, changeRecords, Long.MAX_VALUE);
+  }
+
+  @Override
+  public synchronized CompletionStage<Void> applyChanges(
+      YBTable table, String tabletId, List<CdcService.CDCRecordPB> changeRecords, long safeTime) {
+    this.table = table;
+    TabletQueue queue = getOrAddTablet(tabletId);
+    Batch batch = new Batch(changeRecords.size(), System.currentTimeMillis());
+    boolean wasEmpty = queue.entries.isEmpty();
+    for (CdcService.CDCRecordPB record : changeRecords) {
+      queue.entries.add(new Entry(record, batch));
+    }
+    if (wasEmpty && !queue.entries.isEmpty()) {
+      heads.add(queue);
+    }
+    bufferedRecords += changeRecords.size();
+    setSafeTime(queue, safeTime);
+    emit();
+    return batch.result;
+  }
+
+  @Override
+  public synchronized void updateSafeTime(String tabletId, long safeTime) {
+    setSafeTime(getOrAddTablet(tabletId), safeTime);
+    emit();
+  }
+
+  @Override
+  public synchronized void addTablet(String tabletId) {
+    getOrAddTablet(tabletId);
+  }
+
+  @Override
+  public synchronized void removeTablet(String tabletId) {
+    TabletQueue queue = tablets.get(tabletId);
+    if (queue == null) {
+      return;
+    }
+    // The changes it already returned are still passed on in order, but it no longer holds back
+    // those of the other tablets.
+    queue.removed = true;
+    setSafeTime(queue, Long.MAX_VALUE);
+    if (queue.entries.isEmpty()) {
+      dropTablet(queue);
+    }
+    emit();
+  }
+
+  @Override
+  public synchronized void resetTablet(String tabletId) {
+    TabletQueue queue = tablets.get(tabletId);
+    if (queue == null) {
+      return;
+    }
+    heads.remove(queue);
+    bufferedRecords -= queue.entries.size();
+    queue.entries.clear();
+    // Hold the other tablets back until the tablet has returned its changes again.
+    if (!queue.removed) {
+      removeSafeTime(queue.safeTime);
+      queue.safeTime = 0;
+      safeTimes.merge(queue.safeTime, 1, Integer::sum);
+    }
+  }
+
+  private TabletQueue getOrAddTablet(String tabletId) {
+    TabletQueue queue = tablets.get(tabletId);
+    if (queue == null) {
+      queue = new TabletQueue(tabletId);
+      tablets.put(tabletId, queue);
+      safeTimes.merge(queue.safeTime, 1, Integer::sum);
+    }
+    return queue;
+  }
+
+  private void dropTablet(TabletQueue queue) {
+    tablets.remove(queue.tabletId);
+    removeSafeTime(queue.safeTime);
+  }
+
+  private void removeSafeTime(long safeTime) {
+    int count = safeTimes.get(safeTime);
+    if (count == 1) {
+      safeTimes.remove(safeTime);
+    } else {
+      safeTimes.put(safeTime, count - 1);
+    }
+  }
+
+  private void setSafeTime(TabletQueue queue, long safeTime) {
+    if (safeTime <= queue.safeTime) {
+      return;
+    }
+    removeSafeTime(queue.safeTime);
+    queue.safeTime = safeTime;
+    safeTimes.merge(queue.safeTime, 1, Integer::sum);
+  }
+
+  private void emit() {
+    if (inEmit) {
+      return;
+    }
+    inEmit = true;
+    try {
+      while (!emitting && emitBatch()) {
+      }
+    } finally {
+      inEmit = false;
+    }
+  }
+
+  /**
+   * Hands the changes which every tablet's safe time has passed to the downstream client.
+   * Returns false if there were none.
+   */
+  private boolean emitBatch() {
+    if (heads.isEmpty() || safeTimes.isEmpty()) {
+      return false;
+    }
+    long safeTime = safeTimes.firstKey();
+    long now = System.currentTimeMillis();
+    List<CdcService.CDCRecordPB> records = new ArrayList<>();
+    List<Batch> sources = new ArrayList<>();
+    while (!heads.isEmpty() && records.size() < maxBatchSize) {
+      TabletQueue queue = heads.peek();
+      if (queue.headTime() > safeTime) {
+        break;
+      }
+      heads.poll();
+      Entry entry = queue.entries.pollFirst();
+      records.add(entry.record);
+      sources.add(entry.batch);
+      long addedLatencyMs = now - entry.batch.receivedMs;
+      totalAddedLatencyMs += addedLatencyMs;
+      maxAddedLatencyMs = Math.max(maxAddedLatencyMs, addedLatencyMs);
+      if (!queue.entries.isEmpty()) {
+        heads.add(queue);
+      } else if (queue.removed) {
+        dropTablet(queue);
+      }
+    }
+    if (records.isEmpty()) {
+      return false;
+    }
+
+    bufferedRecords -= records.size();
+    emittedRecords += records.size();
+    emitting = true;
+    downstream.applyChanges(table, records).whenComplete((result, error) ->
+        onEmitted(sources, error));
+    return true;
+  }
+
+  private synchronized void onEmitted(List<Batch> sources, Throwable error) {
+    emitting = false;
+    for (Batch batch : sources) {
+      if (error != null) {
+        batch.result.completeExceptionally(error);
+      } else if (--batch.pending == 0) {
+        batch.result.complete(null);
+      }
+    }
+    emit();
+  }
+
+  public synchronized long getBufferedRecords() {
+    return bufferedRecords;
+  }
+
+  public synchronized void report() {
+    long lagMs = -1;
+    if (!safeTimes.isEmpty() && safeTimes.firstKey() != Long.MAX_VALUE) {
+      long safeMicros = HybridTimeUtil.HTTimestampToPhysicalAndLogical(safeTimes.firstKey())[0];
+      lagMs = Math.max(System.currentTimeMillis() - safeMicros / 1000, 0);
+    }
+    LOG.info(String.format(
+        "Merge buffer: %d records, added latency avg: %.1f ms, max: %d ms, safe time lag: %d ms",
+        bufferedRecords,
+        emittedRecords == 0 ? 0.0 : (double) totalAddedLatencyMs / emittedRecords,
+        maxAddedLatencyMs, lagMs));
+    emittedRecords = 0;
+    totalAddedLatencyMs = 0;
+    maxAddedLatencyMs = 0;
+  }
+
+  @Override
+  public void close() throws Exception {
+    downstream.close();
+  }
+}
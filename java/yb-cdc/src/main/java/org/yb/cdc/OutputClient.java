@@ -15,6 +15,74 @@ package org.yb.cdc;
 
 import org.yb.client.YBTable;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface OutputClient {
   public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) throws Exception;
+
+  /**
+   * Applies a batch of changes of one tablet, in order. The returned stage completes once all of
+   * them are durable in the sink, and only then does the poller advance the tablet's checkpoint
+   * past them. Batches of a tablet are handed over in log order, possibly before the previous ones
+   * have completed, and must be applied in that order.
+   *
+   * The default implementation applies the changes one by one on the calling thread.
+   */
+  public default CompletionStage<Void> applyChanges(YBTable table,
+                                                    List<CdcService.CDCRecordPB> changeRecords) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    try {
+      for (CdcService.CDCRecordPB changeRecord : changeRecords) {
+        applyChange(table, changeRecord);
+      }
+      result.complete(null);
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Like applyChanges(table, changeRecords), for changes of the given tablet. No change which the
+   * tablet returns later will have a hybrid time at or below safeTime.
+   */
+  public default CompletionStage<Void> applyChanges(YBTable table, String tabletId,
+                                                    List<CdcService.CDCRecordPB> changeRecords,
+                                                    long safeTime) {
+    return applyChanges(table, changeRecords);
+  }
+
+  /**
+   * Called when the tablet returned no changes, to tell that no change which it returns later
+   * will have a hybrid time at or below safeTime.
+   */
+  public default void updateSafeTime(String tabletId, long safeTime) {
+  }
+
+  /**
+   * Called before the first changes of a tablet are handed over.
+   */
+  public default void addTablet(String tabletId) {
+  }
+
+  /**
+   * Called once no more changes of a tablet will be handed over.
+   */
+  public default void removeTablet(String tabletId) {
+  }
+
+  /**
+   * Called when a batch of the tablet failed, and the changes from the last checkpoint on will be
+   * handed over again. Batches of the tablet which have not completed yet can be dropped.
+   */
+  public default void resetTablet(String tabletId) {
+  }
+
+  /**
+   * Flushes and releases whatever the sink holds on to.
+   */
+  public default void close() throws Exception {
+  }
 }
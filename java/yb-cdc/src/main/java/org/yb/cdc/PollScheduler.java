@@ -0,0 +1,201 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when the pollers of a connector send their polls.
+ *
+ * No thread is tied to a poller. A poller which is ready to poll joins a FIFO queue, and is sent
+ * as soon as fewer than maxConcurrentPolls polls are out, on whichever thread made room: the one
+ * that queued it, a timer thread once a backoff has passed, or the worker handling a response
+ * that came back. As a tablet which returns full responses queues up again behind all the
+ * others, no tablet can starve the rest, and the number of tablets only costs memory. Responses are handled
+ * on a small worker pool, so that the output client never runs on an I/O thread.
+ *
+ * How long pollers wait in the queue and how long responses wait for a worker is the overhead of
+ * the scheduling, which report() logs.
+ */
+public class PollScheduler {
+  private static final Logger LOG = Logger.getLogger(PollScheduler.class);
+
+  private final ConcurrentLinkedQueue<Poller> ready = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger permits;
+  private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+  private final ExecutorService workers;
+  private volatile boolean closed = false;
+
+  private final LongAdder dispatched = new LongAdder();
+  private final LongAdder queueWaitNanos = new LongAdder();
+  private final AtomicLong maxQueueWaitNanos = new AtomicLong();
+  private final LongAdder handled = new LongAdder();
+  private final LongAdder handoffWaitNanos = new LongAdder();
+  private final AtomicLong maxHandoffWaitNanos = new AtomicLong();
+
+  public PollScheduler(int numWorkers, int maxConcurrentPolls) {
+    this.workers = Executors.newFixedThreadPool(numWorkers);
+    this.permits = new AtomicInteger(maxConcurrentPolls);
+  }
+
+  /**
+   * Sends the poll of the poller once there is room for it.
+   */
+  public void submit(Poller poller) {
+    if (closed) {
+      return;
+    }
+    poller.readySinceNanos = System.nanoTime();
+    ready.add(poller);
+    dispatch();
+  }
+
+  /**
+   * Sends the poll of the poller once the delay has passed and there is room for it.
+   */
+  public void schedule(Poller poller, long delayMs) {
+    if (delayMs <= 0) {
+      submit(poller);
+      return;
+    }
+    try {
+      timer.schedule(() -> submit(poller), delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      if (!closed) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Runs the task once the delay has passed.
+   */
+  public void scheduleTask(Runnable task, long delayMs) {
+    if (closed) {
+      return;
+    }
+    try {
+      timer.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      if (!closed) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Called once the response to a poll came back, to let the next poll go.
+   */
+  public void release() {
+    permits.incrementAndGet();
+    dispatch();
+  }
+
+  /**
+   * Runs the task, which handles a response, on a worker.
+   */
+  public void execute(Runnable task) {
+    long queuedNanos = System.nanoTime();
+    try {
+      workers.execute(() -> {
+        long waitNanos = System.nanoTime() - queuedNanos;
+        handled.increment();
+        handoffWaitNanos.add(waitNanos);
+        maxHandoffWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        task.run();
+      });
+    } catch (RejectedExecutionException e) {
+      if (!closed) {
+        throw e;
+      }
+    }
+  }
+
+  private void dispatch() {
+    // A permit is given back before the queue is checked again, so a poller queued while this
+    // thread held the last permit is never left behind.
+    while (!ready.isEmpty() && !closed) {
+      int available = permits.get();
+      if (available == 0) {
+        return;
+      }
+      if (!permits.compareAndSet(available, available - 1)) {
+        continue;
+      }
+      Poller poller = ready.poll();
+      if (poller == null) {
+        permits.incrementAndGet();
+        continue;
+      }
+      long waitNanos = System.nanoTime() - poller.readySinceNanos;
+      dispatched.increment();
+      queueWaitNanos.add(waitNanos);
+      maxQueueWaitNanos.accumulateAndGet(waitNanos, Math::max);
+      if (!poller.sendPoll()) {
+        // The poller was stopped, let the next one have its permit.
+        permits.incrementAndGet();
+      }
+    }
+  }
+
+  public long getDispatchedPolls() {
+    return dispatched.sum();
+  }
+
+  public double getAvgQueueWaitMs() {
+    long count = dispatched.sum();
+    return count == 0 ? 0 : queueWaitNanos.sum() / 1e6 / count;
+  }
+
+  public double getMaxQueueWaitMs() {
+    return maxQueueWaitNanos.get() / 1e6;
+  }
+
+  public double getAvgHandoffWaitMs() {
+    long count = handled.sum();
+    return count == 0 ? 0 : handoffWaitNanos.sum() / 1e6 / count;
+  }
+
+  public double getMaxHandoffWaitMs() {
+    return maxHandoffWaitNanos.get() / 1e6;
+  }
+
+  public void report() {
+    LOG.info(String.format(
+        "Pollers waiting: %d, queue wait avg: %.3f ms, max: %.3f ms, " +
+        "handoff wait avg: %.3f ms, max: %.3f ms",
+        ready.size(), getAvgQueueWaitMs(), getMaxQueueWaitMs(), getAvgHandoffWaitMs(),
+        getMaxHandoffWaitMs()));
+  }
+
+  /**
+   * Stops sending polls, and waits for the responses being handled.
+   */
+  public void close() throws InterruptedException {
+    closed = true;
+    timer.shutdownNow();
+    workers.shutdown();
+    workers.awaitTermination(30, TimeUnit.SECONDS);
+  }
+}
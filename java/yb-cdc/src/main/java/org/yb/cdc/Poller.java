@@ -13,20 +13,49 @@
 
 package org.yb.cdc;
 
-import com.stumbleupon.async.Callback;
 import org.apache.log4j.Logger;
-import org.yb.client.AsyncYBClient;
-import org.yb.client.GetChangesResponse;
 import org.yb.client.YBTable;
+import org.yb.util.HybridTimeUtil;
 
-import java.util.Random;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.List;
 
 import com.google.common.net.HostAndPort;
 
 
+/**
+ * Polls the changes of one tablet and hands them to the output client.
+ *
+ * Requests go to the tablet leader, which is looked up again whenever a server reports that it
+ * is not the leader or does not host the tablet, or the request fails. A response which returned
+ * changes or moved the checkpoint is followed by the next poll right away, so that a tablet which
+ * is behind catches up as fast as it can. The servers cap a response by their own limits rather
+ * than by max_records, so how many changes came back does not tell whether more are waiting; only
+ * a response which returned nothing and left the checkpoint where it was shows that the tablet has
+ * caught up. After such a response or an error, the next poll waits for a jittered exponential
+ * backoff, so idle tablets and unavailable servers are not polled in a tight loop.
+ *
+ * The changes of each response go to the output client as one batch. Up to maxInflightBatches
+ * batches may be pending in the output client, and the tablet is not polled again while that many
+ * are. The stored checkpoint only moves past a batch once it and all the batches before it have
+ * completed. If a batch fails, the batches after it are abandoned and polling resumes from the
+ * last stored checkpoint, so that no change is lost.
+ *
+ * Each batch carries the tablet's safe time, below which it will not return more changes, which
+ * is the time of its last change. Once the tablet has caught up, every change committed before
+ * the poll was sent has been returned, so the safe time is the time the poll was sent, less
+ * safeTimeLagMs to allow for changes which were still being replicated and for clock skew between
+ * the servers.
+ *
+ * A tablet which was split is drained rather than stopped: it is polled until the leader lookup
+ * no longer finds it, which is once it has returned all of its changes, and its checkpoint is
+ * handed over once all of its batches have completed.
+ */
 public class Poller {
   private static final Logger LOG = Logger.getLogger(Poller.class);
 
@@ -34,78 +63,406 @@ public class Poller {
   private long index;
   private String streamId;
   private String tabletId;
-  private ExecutorService executor;
+  private byte[] partitionKeyStart;
+  private PollScheduler scheduler;
   private YBTable table;
-  private AsyncYBClient client;
+  private ChangesSource source;
   private List<HostAndPort> hps;
   private OutputClient outputClient;
+  private CheckpointStore checkpointStore;
+  private PollerMetrics metrics;
 
-  public Poller(OutputClient outputClient, List<HostAndPort> hps, YBTable table, String streamId,
-                String tabletId, ExecutorService executor, AsyncYBClient client) {
+  private final int maxRecords;
+  private final long backoffMinMs;
+  private final long backoffMaxMs;
+
+  private final int maxInflightBatches;
+  private final long safeTimeLagMs;
+
+  private volatile HostAndPort leader;
+  private int backoffAttempts = 0;
+
+  /**
+   * Changes handed to the output client, up to a checkpoint.
+   */
+  private static class Batch {
+    final long term;
+    final long index;
+    boolean done = false;
+
+    Batch(long term, long index) {
+      this.term = term;
+      this.index = index;
+    }
+  }
+
+  // Batches in the order they were handed to the output client.
+  private final ArrayDeque<Batch> inflight = new ArrayDeque<>();
+  // The checkpoint up to which all batches have completed.
+  private long ackedTerm;
+  private long ackedIndex;
+  // Bumped when a batch fails, to drop the responses and batches that followed it.
+  private long generation = 0;
+  // Delay of the next poll while it waits for the in-flight window, or -1.
+  private long heldPollDelayMs = -1;
+  // When the last poll was sent.
+  private long pollSentMs;
+  // When the poller joined the queue of the scheduler.
+  volatile long readySinceNanos;
+  private volatile boolean stopped = false;
+  // Called when a server reports that the tablet is not found.
+  private volatile Runnable onTabletNotFound;
+  // Called with the final checkpoint once a drained tablet has ended, or null if not draining.
+  private Consumer<CheckpointStore.Checkpoint> onDrained;
+  // Whether the drained tablet has ended, and only waits for its batches to complete.
+  private boolean tabletEnded = false;
+
+  /**
+   * @param checkpointStore where to persist the checkpoint once the output client has applied the
+   *                        changes up to it, or null to not persist it.
+   * @param partitionKeyStart start of the tablet's partition, to look up its leader by.
+   * @param leader the leader of the tablet, or null if it is not known.
+   * @param checkpoint the checkpoint to start polling from, or null to start from the beginning.
+   */
+  public Poller(OutputClient outputClient, CheckpointStore checkpointStore,
+                List<HostAndPort> hps, YBTable table, String streamId, String tabletId,
+                byte[] partitionKeyStart, HostAndPort leader,
+                CheckpointStore.Checkpoint checkpoint, PollScheduler scheduler,
+                ChangesSource source, PollerMetrics metrics, CmdLineOpts opts) {
     this.streamId = streamId;
     this.tabletId = tabletId;
-    this.term = 0;
-    this.index = 0;
-    this.executor = executor;
-    this.client = client;
+    this.partitionKeyStart = partitionKeyStart;
+    this.leader = leader;
+    this.term = checkpoint == null ? 0 : checkpoint.term;
+    this.index = checkpoint == null ? 0 : checkpoint.index;
+    this.ackedTerm = term;
+    this.ackedIndex = index;
+    this.scheduler = scheduler;
+    this.source = source;
     this.table = table;
     this.hps = hps;
     this.outputClient = outputClient;
+    this.checkpointStore = checkpointStore;
+    this.metrics = metrics;
+    this.maxRecords = opts.maxRecordsPerPoll;
+    this.backoffMinMs = opts.pollBackoffMinMs;
+    this.backoffMaxMs = opts.pollBackoffMaxMs;
+    this.maxInflightBatches = opts.maxInflightBatches;
+    this.safeTimeLagMs = opts.mergeSafeTimeLagMs;
+    outputClient.addTablet(tabletId);
+  }
+
+  public String getTabletId() {
+    return tabletId;
+  }
+
+  public void poll() {
+    scheduler.submit(this);
+  }
+
+  /**
+   * Stops polling the tablet. Batches already handed to the output client still advance the
+   * checkpoint once they complete.
+   */
+  public void stop() {
+    stopped = true;
+    outputClient.removeTablet(tabletId);
+    metrics.removeTablet(tabletId);
+  }
+
+  /**
+   * Keeps polling the tablet until it is no longer found, then stops, and calls onDrained with
+   * its final checkpoint once all the batches handed to the output client have completed.
+   * onDrained runs on a worker of the scheduler.
+   */
+  public synchronized void drain(Consumer<CheckpointStore.Checkpoint> onDrained) {
+    this.onDrained = onDrained;
   }
 
-  public Void poll() {
-    executor.submit(new Callable<Void>() {
-      @Override
-      public Void call() throws Exception {
-        return doPoll();
+  /**
+   * Returns the checkpoint up to which all changes of the tablet have been applied.
+   */
+  public synchronized CheckpointStore.Checkpoint getCheckpoint() {
+    return new CheckpointStore.Checkpoint(ackedTerm, ackedIndex);
+  }
+
+  public void setOnTabletNotFound(Runnable onTabletNotFound) {
+    this.onTabletNotFound = onTabletNotFound;
+  }
+
+  private void pollAfter(long delayMs) {
+    scheduler.schedule(this, delayMs);
+  }
+
+  /**
+   * Polls again after the given delay, once the in-flight window has room for another batch.
+   */
+  private void schedulePoll(long delayMs) {
+    if (inflight.size() >= maxInflightBatches) {
+      heldPollDelayMs = delayMs;
+    } else {
+      pollAfter(delayMs);
+    }
+  }
+
+  /**
+   * Returns the delay before the next poll of a tablet which was idle or failed on the last
+   * backoffAttempts polls: a random time between half and all of an exponentially growing cap.
+   */
+  private long nextBackoffMs() {
+    long capMs = backoffMaxMs;
+    if (backoffAttempts < 62 && (backoffMinMs << backoffAttempts) < backoffMaxMs) {
+      capMs = Math.max(backoffMinMs << backoffAttempts, 1);
+      backoffAttempts++;
+    }
+    return capMs / 2 + ThreadLocalRandom.current().nextLong(capMs / 2 + 1);
+  }
+
+  /**
+   * Sends the poll, called by the scheduler once there is room for it. Returns false if the poller
+   * was stopped, in which case nothing was sent. The response is handled on a worker of the
+   * scheduler, and never on the calling thread, so that a poll which fails right away does not
+   * send the next ones from within this one.
+   */
+  boolean sendPoll() {
+    final long pollGeneration;
+    final long pollTerm;
+    final long pollIndex;
+    HostAndPort current;
+    synchronized (this) {
+      if (stopped) {
+        return false;
       }
-    });
-    return null;
+      pollGeneration = generation;
+      pollTerm = term;
+      pollIndex = index;
+      pollSentMs = System.currentTimeMillis();
+      current = leader;
+    }
+    if (current == null) {
+      // The leader is not known yet, any server will tell us whether it is the leader.
+      current = hps.get(ThreadLocalRandom.current().nextInt(hps.size()));
+    }
+    final HostAndPort hp = current;
+
+    source.getChanges(hp, table, streamId, tabletId, pollTerm, pollIndex, maxRecords)
+        .whenCompleteAsync((response, error) -> {
+          scheduler.release();
+          if (error != null) {
+            handleError(hp, error);
+          } else {
+            handlePoll(response, hp, pollGeneration);
+          }
+        }, scheduler::execute);
+    return true;
   }
 
-  private Void doPoll() {
-    Random rand = new Random();
-    HostAndPort hp = hps.get(rand.nextInt(hps.size()));
+  private void handleError(HostAndPort hp, Throwable error) {
+    if (stopped) {
+      return;
+    }
+    LOG.warn(String.format("Failed to get changes for tablet %s from %s", tabletId, hp), error);
+    metrics.recordError();
+    refreshLeader();
+  }
 
-    client.getChanges(hp, table, streamId, tabletId, term, index,
-                      new Callback<Void, GetChangesResponse>() {
-      @Override
-      public Void call(GetChangesResponse getChangesResponse) throws Exception {
-        return handlePoll(getChangesResponse);
+  /**
+   * Looks up the current leader of the tablet, then polls it once the backoff has passed.
+   */
+  private void refreshLeader() {
+    long delayMs = nextBackoffMs();
+    leader = null;
+    metrics.recordLeaderRefresh();
+    source.locateLeader(table, tabletId, partitionKeyStart).whenComplete((newLeader, error) -> {
+      Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+      if (cause instanceof ChangesSource.TabletNotFoundException && endIfDraining()) {
+        return;
+      }
+      if (error != null) {
+        LOG.warn(String.format("Failed to look up the leader of tablet %s", tabletId), error);
+      } else if (newLeader == null && !stopped) {
+        // The tablet has no leader with a known address yet, look it up again after the backoff.
+        LOG.info(String.format("No leader known for tablet %s", tabletId));
+        scheduler.scheduleTask(this::refreshLeader, delayMs);
+        return;
+      } else {
+        leader = newLeader;
       }
+      pollAfter(delayMs);
     });
-    return null;
   }
 
-  private Void handlePoll(GetChangesResponse getChangesResponse) {
-    executor.submit(new Callable<Void>() {
-      @Override
-      public Void call() throws Exception {
-        return doHandlePoll(getChangesResponse);
-      }
+  /**
+   * Stops polling a drained tablet which is no longer found. Returns false if the tablet is not
+   * being drained.
+   */
+  private synchronized boolean endIfDraining() {
+    if (onDrained == null) {
+      return false;
+    }
+    LOG.info(String.format("Tablet %s has ended at %d.%d, waiting for %d batches",
+                           tabletId, term, index, inflight.size()));
+    tabletEnded = true;
+    finishDrainIfDone();
+    return true;
+  }
+
+  /**
+   * Stops the drained tablet and hands over its checkpoint, once it has ended and its batches
+   * have completed.
+   */
+  private void finishDrainIfDone() {
+    if (!tabletEnded || onDrained == null || !inflight.isEmpty()) {
+      return;
+    }
+    Consumer<CheckpointStore.Checkpoint> drained = onDrained;
+    CheckpointStore.Checkpoint checkpoint = new CheckpointStore.Checkpoint(ackedTerm, ackedIndex);
+    onDrained = null;
+    stopped = true;
+    // Outside of the poller's monitor, as the callback takes the connector's.
+    scheduler.execute(() -> {
+      stop();
+      drained.accept(checkpoint);
     });
-    return null;
   }
 
-  private Void doHandlePoll(GetChangesResponse getChangesResponse) throws Exception {
-    // Handle the poll
-    if (getChangesResponse.getResp().hasError()) {
-      if (getChangesResponse.getResp().getError().getCode() ==
-              CdcService.CDCErrorPB.Code.INVALID_REQUEST) {
+  private synchronized void handlePoll(CdcService.GetChangesResponsePB response, HostAndPort hp,
+                                       long pollGeneration) {
+    if (stopped) {
+      return;
+    }
+    if (response.hasError()) {
+      CdcService.CDCErrorPB.Code code = response.getError().getCode();
+      if (code == CdcService.CDCErrorPB.Code.INVALID_REQUEST) {
         LOG.error("Invalid Request");
         System.exit(0);
       }
-      return poll();
+      metrics.recordError();
+      switch (code) {
+        case NOT_LEADER:
+        case LEADER_NOT_READY:
+        case TABLET_NOT_FOUND:
+        case TABLET_NOT_RUNNING:
+          LOG.info(String.format("Tablet %s is not served by %s: %s", tabletId, leader, code));
+          if (code == CdcService.CDCErrorPB.Code.TABLET_NOT_FOUND && onTabletNotFound != null) {
+            // The tablet may have been split or deleted.
+            onTabletNotFound.run();
+          }
+          refreshLeader();
+          break;
+        default:
+          pollAfter(nextBackoffMs());
+      }
+      return;
     }
 
-    for (org.yb.cdc.CdcService.CDCRecordPB record : getChangesResponse.getResp().getRecordsList()) {
-      outputClient.applyChange(table, record);
+    // Only the leader serves changes, so keep polling the server which just did.
+    leader = hp;
+
+    if (pollGeneration != generation) {
+      // A batch failed while this poll was out, poll again from the last stored checkpoint.
+      pollAfter(nextBackoffMs());
+      return;
     }
 
-    this.term = getChangesResponse.getResp().getCheckpoint().getOpId().getTerm();
-    this.index = getChangesResponse.getResp().getCheckpoint().getOpId().getIndex();
+    List<CdcService.CDCRecordPB> records = response.getRecordsList();
+    long term = response.getCheckpoint().getOpId().getTerm();
+    long index = response.getCheckpoint().getOpId().getIndex();
+    boolean caughtUp = records.isEmpty() && term == this.term && index == this.index;
+    long safeTime = records.isEmpty() ? 0 : records.get(records.size() - 1).getTime();
+    if (caughtUp) {
+      safeTime = HybridTimeUtil.clockTimestampToHTTimestamp(pollSentMs - safeTimeLagMs,
+                                                            TimeUnit.MILLISECONDS);
+    }
 
-    return poll();
+    if (!records.isEmpty() || term != this.term || index != this.index) {
+      Batch batch = new Batch(term, index);
+      inflight.add(batch);
+      if (records.isEmpty()) {
+        batch.done = true;
+        advanceCheckpoint();
+      } else {
+        outputClient.applyChanges(table, tabletId, records, safeTime).whenComplete(
+            (result, error) ->
+                scheduler.execute(() -> onBatchComplete(batch, pollGeneration, error)));
+      }
+    }
+    if (caughtUp) {
+      outputClient.updateSafeTime(tabletId, safeTime);
+    }
+    this.term = term;
+    this.index = index;
+
+    long lagMs = 0;
+    if (!records.isEmpty()) {
+      long lastMicros = HybridTimeUtil.HTTimestampToPhysicalAndLogical(
+          records.get(records.size() - 1).getTime())[0];
+      lagMs = Math.max(System.currentTimeMillis() - lastMicros / 1000, 0);
+    }
+    metrics.recordPoll(tabletId, records.size(), lagMs);
+
+    if (caughtUp) {
+      schedulePoll(nextBackoffMs());
+    } else {
+      backoffAttempts = 0;
+      schedulePoll(0);
+    }
+  }
+
+  private synchronized void onBatchComplete(Batch batch, long batchGeneration, Throwable error) {
+    if (batchGeneration != generation) {
+      return;
+    }
+    if (error != null) {
+      LOG.error(String.format("Failed to apply changes of tablet %s up to %d.%d, " +
+                              "polling again from %d.%d", tabletId, batch.term, batch.index,
+                              ackedTerm, ackedIndex), error);
+      metrics.recordError();
+      generation++;
+      inflight.clear();
+      outputClient.resetTablet(tabletId);
+      term = ackedTerm;
+      index = ackedIndex;
+      if (heldPollDelayMs >= 0 || tabletEnded) {
+        // No poll is out, an ended tablet is polled again in case the changes are still there.
+        heldPollDelayMs = -1;
+        tabletEnded = false;
+        pollAfter(nextBackoffMs());
+      }
+      // Otherwise the poll which is out notices the new generation and starts over.
+      return;
+    }
+    batch.done = true;
+    advanceCheckpoint();
+  }
+
+  /**
+   * Stores the checkpoint of the completed batches at the head of the window, and lets a poll
+   * waiting for room in the window go.
+   */
+  private void advanceCheckpoint() {
+    Batch last = null;
+    while (!inflight.isEmpty() && inflight.peekFirst().done) {
+      last = inflight.pollFirst();
+    }
+    if (last != null && (last.term != ackedTerm || last.index != ackedIndex)) {
+      try {
+        if (checkpointStore != null) {
+          checkpointStore.update(streamId, tabletId, last.term, last.index);
+        }
+      } catch (IOException e) {
+        LOG.error(String.format("Failed to store checkpoint %d.%d of tablet %s",
+                                last.term, last.index, tabletId), e);
+      }
+      ackedTerm = last.term;
+      ackedIndex = last.index;
+    }
+    if (heldPollDelayMs >= 0 && inflight.size() < maxInflightBatches) {
+      long delayMs = heldPollDelayMs;
+      heldPollDelayMs = -1;
+      pollAfter(delayMs);
+    }
+    finishDrainIfDone();
   }
 
 }
@@ -0,0 +1,123 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import org.apache.log4j.Logger;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters shared by all the pollers of a connector.
+ *
+ * The poll, record and error counts are totals since start. The lag of a tablet is how far
+ * behind the wall clock the last change received for it was, or zero once a poll came back empty.
+ * report() logs the rates since the previous report.
+ */
+public class PollerMetrics {
+  private static final Logger LOG = Logger.getLogger(PollerMetrics.class);
+
+  private final LongAdder polls = new LongAdder();
+  private final LongAdder emptyPolls = new LongAdder();
+  private final LongAdder records = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder leaderRefreshes = new LongAdder();
+  private final Map<String, Long> lagMs = new ConcurrentHashMap<>();
+
+  private long lastReportMs = System.currentTimeMillis();
+  private long lastPolls = 0;
+  private long lastEmptyPolls = 0;
+  private long lastRecords = 0;
+
+  public void recordPoll(String tabletId, int numRecords, long tabletLagMs) {
+    polls.increment();
+    if (numRecords == 0) {
+      emptyPolls.increment();
+    }
+    records.add(numRecords);
+    lagMs.put(tabletId, tabletLagMs);
+  }
+
+  public void recordError() {
+    errors.increment();
+  }
+
+  public void recordLeaderRefresh() {
+    leaderRefreshes.increment();
+  }
+
+  public void removeTablet(String tabletId) {
+    lagMs.remove(tabletId);
+  }
+
+  public long getPolls() {
+    return polls.sum();
+  }
+
+  public long getEmptyPolls() {
+    return emptyPolls.sum();
+  }
+
+  public long getRecords() {
+    return records.sum();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public long getLeaderRefreshes() {
+    return leaderRefreshes.sum();
+  }
+
+  /**
+   * Returns the lag of the tablet in milliseconds, or -1 if it has not been polled yet.
+   */
+  public long getLagMs(String tabletId) {
+    Long lag = lagMs.get(tabletId);
+    return lag == null ? -1 : lag;
+  }
+
+  public long getMaxLagMs() {
+    long max = 0;
+    for (long lag : lagMs.values()) {
+      max = Math.max(max, lag);
+    }
+    return max;
+  }
+
+  public synchronized void report() {
+    long now = System.currentTimeMillis();
+    long numPolls = getPolls();
+    long numEmptyPolls = getEmptyPolls();
+    long numRecords = getRecords();
+    double secs = Math.max(now - lastReportMs, 1) / 1000.0;
+    long intervalPolls = numPolls - lastPolls;
+    long intervalEmptyPolls = numEmptyPolls - lastEmptyPolls;
+
+    LOG.info(String.format(
+        "Polls/sec: %.2f, empty polls: %.1f%%, records/sec: %.2f, max lag: %d ms, " +
+        "errors: %d, leader refreshes: %d",
+        intervalPolls / secs,
+        intervalPolls == 0 ? 0.0 : 100.0 * intervalEmptyPolls / intervalPolls,
+        (numRecords - lastRecords) / secs,
+        getMaxLagMs(), getErrors(), getLeaderRefreshes()));
+
+    lastReportMs = now;
+    lastPolls = numPolls;
+    lastEmptyPolls = numEmptyPolls;
+    lastRecords = numRecords;
+  }
+}
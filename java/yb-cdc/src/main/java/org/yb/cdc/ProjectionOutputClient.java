@@ -0,0 +1,277 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import com.google.protobuf.ByteString;
+import org.apache.log4j.Logger;
+import org.yb.ColumnSchema;
+import org.yb.Schema;
+import org.yb.client.GetTableSchemaResponse;
+import org.yb.client.YBClient;
+import org.yb.client.YBTable;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drops the changes and columns which the sink does not need, before handing the rest to another
+ * output client.
+ *
+ * Changes whose operation type is not in opTypes are dropped. If columns is not empty, only the
+ * changed values of those columns are kept, while the primary key of a change always is. The
+ * columns are checked against the table's schema up front. The decision for each column name,
+ * which arrives as bytes in every change, is cached for the version of the schema it was made
+ * with: a name which the schema does not know makes the schema be fetched again, at most once
+ * per SCHEMA_REFRESH_INTERVAL_MS, and a new version starts a new cache.
+ *
+ * A batch whose changes are all dropped still moves the tablet's safe time forward downstream.
+ * The share of changes and bytes dropped is logged by report().
+ */
+public class ProjectionOutputClient implements OutputClient {
+  private static final Logger LOG = Logger.getLogger(ProjectionOutputClient.class);
+
+  private static final long SCHEMA_REFRESH_INTERVAL_MS = 10000;
+
+  /**
+   * Which column names to keep, for one version of the schema.
+   */
+  private static class ColumnCache {
+    final int version;
+    final Set<String> schemaColumns;
+    final ConcurrentHashMap<ByteString, Boolean> keep = new ConcurrentHashMap<>();
+
+    ColumnCache(int version, Schema schema) {
+      this.version = version;
+      this.schemaColumns = new HashSet<>();
+      for (ColumnSchema column : schema.getColumns()) {
+        schemaColumns.add(column.getName());
+      }
+    }
+  }
+
+  private final OutputClient downstream;
+  private final YBClient client;
+  private final String tableId;
+  private final Set<CdcService.CDCRecordPB.OperationType> opTypes;
+  private final Set<String> columns;
+  private final long schemaRefreshIntervalMs;
+
+  private volatile ColumnCache cache;
+  private long lastRefreshMs = 0;
+
+  private final LongAdder recordsIn = new LongAdder();
+  private final LongAdder recordsDropped = new LongAdder();
+  private final LongAdder valuesDropped = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+
+  public ProjectionOutputClient(OutputClient downstream, YBClient client, String tableId,
+                                Set<CdcService.CDCRecordPB.OperationType> opTypes,
+                                List<String> columns) throws Exception {
+    this(downstream, client, tableId, opTypes, columns, SCHEMA_REFRESH_INTERVAL_MS);
+  }
+
+  ProjectionOutputClient(OutputClient downstream, YBClient client, String tableId,
+                         Set<CdcService.CDCRecordPB.OperationType> opTypes, List<String> columns,
+                         long schemaRefreshIntervalMs) throws Exception {
+    this.downstream = downstream;
+    this.client = client;
+    this.tableId = tableId;
+    this.opTypes = opTypes.isEmpty() ?
+        EnumSet.allOf(CdcService.CDCRecordPB.OperationType.class) : EnumSet.copyOf(opTypes);
+    this.columns = new HashSet<>(columns);
+    this.schemaRefreshIntervalMs = schemaRefreshIntervalMs;
+
+    GetTableSchemaResponse response = client.getTableSchemaByUUID(tableId);
+    this.cache = new ColumnCache(response.getVersion(), response.getSchema());
+    for (String column : columns) {
+      if (!cache.schemaColumns.contains(column)) {
+        throw new IllegalArgumentException(String.format("Unknown column %s in table %s",
+                                                         column, response.getTableName()));
+      }
+    }
+    this.lastRefreshMs = System.currentTimeMillis();
+  }
+
+  @Override
+  public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) throws Exception {
+    CdcService.CDCRecordPB projected = project(changeRecord);
+    if (projected != null) {
+      downstream.applyChange(table, projected);
+    }
+  }
+
+  @Override
+  public CompletionStage<Void> applyChanges(YBTable table,
+                                            List<CdcService.CDCRecordPB> changeRecords) {
+    List<CdcService.CDCRecordPB> projected = projectAll(changeRecords);
+    if (projected.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return downstream.applyChanges(table, projected);
+  }
+
+  @Override
+  public CompletionStage<Void> applyChanges(
+      YBTable table, String tabletId, List<CdcService.CDCRecordPB> changeRecords, long safeTime) {
+    List<CdcService.CDCRecordPB> projected = projectAll(changeRecords);
+    if (projected.isEmpty()) {
+      downstream.updateSafeTime(tabletId, safeTime);
+      return CompletableFuture.completedFuture(null);
+    }
+    return downstream.applyChanges(table, tabletId, projected, safeTime);
+  }
+
+  @Override
+  public void updateSafeTime(String tabletId, long safeTime) {
+    downstream.updateSafeTime(tabletId, safeTime);
+  }
+
+  @Override
+  public void addTablet(String tabletId) {
+    downstream.addTablet(tabletId);
+  }
+
+  @Override
+  public void removeTablet(String tabletId) {
+    downstream.removeTablet(tabletId);
+  }
+
+  @Override
+  public void resetTablet(String tabletId) {
+    downstream.resetTablet(tabletId);
+  }
+
+  private List<CdcService.CDCRecordPB> projectAll(List<CdcService.CDCRecordPB> changeRecords) {
+    List<CdcService.CDCRecordPB> projected = new ArrayList<>(changeRecords.size());
+    boolean unchanged = true;
+    for (CdcService.CDCRecordPB changeRecord : changeRecords) {
+      CdcService.CDCRecordPB record = project(changeRecord);
+      if (record != null) {
+        projected.add(record);
+      }
+      unchanged &= record == changeRecord;
+    }
+    return unchanged ? changeRecords : projected;
+  }
+
+  /**
+   * Returns the change with only the values to keep, the change itself if that is all of them, or
+   * null if the change is dropped.
+   */
+  private CdcService.CDCRecordPB project(CdcService.CDCRecordPB changeRecord) {
+    recordsIn.increment();
+    int size = changeRecord.getSerializedSize();
+    bytesIn.add(size);
+    if (!opTypes.contains(changeRecord.getOperation())) {
+      recordsDropped.increment();
+      return null;
+    }
+    if (columns.isEmpty()) {
+      bytesOut.add(size);
+      return changeRecord;
+    }
+
+    int kept = 0;
+    for (CdcService.KeyValuePairPB change : changeRecord.getChangesList()) {
+      if (keep(change.getKey())) {
+        kept++;
+      }
+    }
+    if (kept == changeRecord.getChangesCount()) {
+      bytesOut.add(size);
+      return changeRecord;
+    }
+
+    CdcService.CDCRecordPB.Builder builder = changeRecord.toBuilder().clearChanges();
+    for (CdcService.KeyValuePairPB change : changeRecord.getChangesList()) {
+      if (keep(change.getKey())) {
+        builder.addChanges(change);
+      }
+    }
+    CdcService.CDCRecordPB projected = builder.build();
+    valuesDropped.add(changeRecord.getChangesCount() - kept);
+    bytesOut.add(projected.getSerializedSize());
+    return projected;
+  }
+
+  private boolean keep(ByteString columnName) {
+    ColumnCache current = cache;
+    Boolean keep = current.keep.get(columnName);
+    if (keep != null) {
+      return keep;
+    }
+    String name = columnName.toStringUtf8();
+    if (!current.schemaColumns.contains(name)) {
+      current = refreshSchema();
+    }
+    keep = columns.contains(name);
+    current.keep.put(columnName, keep);
+    return keep;
+  }
+
+  /**
+   * Fetches the table's schema again, unless that was done recently, and starts a new cache if
+   * its version changed.
+   */
+  private synchronized ColumnCache refreshSchema() {
+    long now = System.currentTimeMillis();
+    if (now - lastRefreshMs < schemaRefreshIntervalMs) {
+      return cache;
+    }
+    lastRefreshMs = now;
+    try {
+      GetTableSchemaResponse response = client.getTableSchemaByUUID(tableId);
+      if (response.getVersion() != cache.version) {
+        LOG.info(String.format("Schema of table %s changed from version %d to %d",
+                               response.getTableName(), cache.version, response.getVersion()));
+        ColumnCache newCache = new ColumnCache(response.getVersion(), response.getSchema());
+        for (String column : columns) {
+          if (!newCache.schemaColumns.contains(column)) {
+            LOG.warn(String.format("Projected column %s is no longer in table %s",
+                                   column, response.getTableName()));
+          }
+        }
+        cache = newCache;
+      }
+    } catch (Exception e) {
+      LOG.warn("Failed to refresh the schema of the table", e);
+    }
+    return cache;
+  }
+
+  public void report() {
+    long in = recordsIn.sumThenReset();
+    long dropped = recordsDropped.sumThenReset();
+    long inBytes = bytesIn.sumThenReset();
+    long outBytes = bytesOut.sumThenReset();
+    LOG.info(String.format(
+        "Projection: %d records in, %.1f%% dropped, %d values dropped, %.1f%% of bytes dropped, " +
+        "schema version %d",
+        in, in == 0 ? 0.0 : 100.0 * dropped / in, valuesDropped.sumThenReset(),
+        inBytes == 0 ? 0.0 : 100.0 * (inBytes - outBytes) / inBytes, cache.version));
+  }
+
+  @Override
+  public void close() throws Exception {
+    downstream.close();
+  }
+}
@@ -0,0 +1,194 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import com.google.protobuf.CodedOutputStream;
+import org.apache.log4j.Logger;
+import org.yb.client.YBTable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes changes to local files as length-delimited CDCRecordPB messages, which can be read back
+ * with CDCRecordPB.parseDelimitedFrom.
+ *
+ * All batches are written by a single thread, in the order they were handed over, and a batch
+ * completes once it has been synced to disk, so it survives the machine crashing. The batches
+ * handed over while the previous ones were being written are written and synced together, so
+ * that a busy connector pays for one sync per group of batches rather than per batch. Once a
+ * file grows past maxFileBytes, the following batches go to a new file. Files are named
+ * <prefix>-<creation time in ms>-<sequence number>.pb, so sorting them by name gives the order
+ * they were written in.
+ */
+public class ProtobufFileClient implements OutputClient {
+  private static final Logger LOG = Logger.getLogger(ProtobufFileClient.class);
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final File dir;
+  private final String prefix;
+  private final long maxFileBytes;
+  private final ExecutorService writer = Executors.newSingleThreadExecutor();
+  // Batches handed over and not written yet, in order.
+  private final Queue<PendingBatch> pending = new ConcurrentLinkedQueue<>();
+
+  private FileOutputStream file;
+  private OutputStream out;
+  private long fileBytes = 0;
+  private long fileSeqNo = 0;
+
+  public ProtobufFileClient(String dirName, String prefix, long maxFileBytes) throws IOException {
+    this.dir = new File(dirName);
+    this.prefix = prefix;
+    this.maxFileBytes = maxFileBytes;
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create output directory " + dir);
+    }
+  }
+
+  @Override
+  public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) throws Exception {
+    applyChanges(table, Collections.singletonList(changeRecord)).toCompletableFuture().get();
+  }
+
+  @Override
+  public CompletionStage<Void> applyChanges(YBTable table,
+                                            List<CdcService.CDCRecordPB> changeRecords) {
+    PendingBatch batch = new PendingBatch(changeRecords);
+    pending.add(batch);
+    writer.submit(this::writePending);
+    return batch.result;
+  }
+
+  private static class PendingBatch {
+    final List<CdcService.CDCRecordPB> changeRecords;
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    PendingBatch(List<CdcService.CDCRecordPB> changeRecords) {
+      this.changeRecords = changeRecords;
+    }
+  }
+
+  /**
+   * Writes and syncs all the batches queued so far. Does nothing if an earlier call already wrote
+   * the batch this call was submitted for.
+   */
+  private void writePending() {
+    List<PendingBatch> group = new ArrayList<>();
+    for (PendingBatch batch = pending.poll(); batch != null; batch = pending.poll()) {
+      group.add(batch);
+    }
+    if (group.isEmpty()) {
+      return;
+    }
+    try {
+      for (PendingBatch batch : group) {
+        write(batch.changeRecords);
+      }
+      sync();
+    } catch (Throwable t) {
+      abandonFile();
+      for (PendingBatch batch : group) {
+        batch.result.completeExceptionally(t);
+      }
+      return;
+    }
+    for (PendingBatch batch : group) {
+      batch.result.complete(null);
+    }
+  }
+
+  private void write(List<CdcService.CDCRecordPB> changeRecords) throws IOException {
+    if (out == null) {
+      open();
+    }
+    for (CdcService.CDCRecordPB changeRecord : changeRecords) {
+      int size = changeRecord.getSerializedSize();
+      changeRecord.writeDelimitedTo(out);
+      fileBytes += CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+    }
+    if (fileBytes >= maxFileBytes) {
+      closeFile();
+    }
+  }
+
+  // Syncs the current file to disk, the files before it were synced when they were closed.
+  private void sync() throws IOException {
+    if (out == null) {
+      return;
+    }
+    out.flush();
+    file.getFD().sync();
+  }
+
+  private void open() throws IOException {
+    File path = new File(dir, String.format("%s-%d-%06d.pb", prefix, System.currentTimeMillis(),
+                                            fileSeqNo++));
+    file = new FileOutputStream(path);
+    out = new BufferedOutputStream(file, BUFFER_SIZE);
+    fileBytes = 0;
+    LOG.info("Writing changes to " + path);
+  }
+
+  private void closeFile() throws IOException {
+    out.flush();
+    file.getFD().sync();
+    out.close();
+    out = null;
+    file = null;
+  }
+
+  /**
+   * Stops writing to a file whose last batch failed, so that the batches which are polled again
+   * start in a new one.
+   */
+  private void abandonFile() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close output file", e);
+    }
+    out = null;
+    file = null;
+  }
+
+  @Override
+  public void close() throws Exception {
+    writer.submit(() -> {
+      if (out != null) {
+        closeFile();
+      }
+      return null;
+    }).get();
+    writer.shutdown();
+    writer.awaitTermination(1, TimeUnit.MINUTES);
+  }
+}
@@ -0,0 +1,110 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package org.yb.cdc;
+
+import com.google.common.net.HostAndPort;
+import com.stumbleupon.async.Callback;
+import org.yb.client.AsyncYBClient;
+import org.yb.client.GetChangesResponse;
+import org.yb.client.LocatedTablet;
+import org.yb.client.YBTable;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Gets changes from the cluster through the asynchronous client, whose callbacks run on its
+ * Netty threads.
+ */
+public class YBClientChangesSource implements ChangesSource {
+  private static final long LOCATE_TIMEOUT_MS = 30000;
+
+  private final AsyncYBClient client;
+
+  public YBClientChangesSource(AsyncYBClient client) {
+    this.client = client;
+  }
+
+  @Override
+  public CompletionStage<CdcService.GetChangesResponsePB> getChanges(
+      HostAndPort hp, YBTable table, String streamId, String tabletId, long term, long index,
+      int maxRecords) {
+    CompletableFuture<CdcService.GetChangesResponsePB> result = new CompletableFuture<>();
+    try {
+      client.getChanges(hp, table, streamId, tabletId, term, index, maxRecords,
+                        new Callback<Void, GetChangesResponse>() {
+        @Override
+        public Void call(GetChangesResponse getChangesResponse) throws Exception {
+          result.complete(getChangesResponse.getResp());
+          return null;
+        }
+      }).addErrback(new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) throws Exception {
+          result.completeExceptionally(e);
+          return null;
+        }
+      });
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  @Override
+  public CompletionStage<HostAndPort> locateLeader(YBTable table, String tabletId,
+                                                   byte[] partitionKeyStart) {
+    CompletableFuture<HostAndPort> result = new CompletableFuture<>();
+    try {
+      // A single lookup from the start of the tablet's partition is enough to find it.
+      table.asyncGetTabletsLocations(partitionKeyStart, partitionKeyStart, LOCATE_TIMEOUT_MS)
+          .addCallback(new Callback<Void, List<LocatedTablet>>() {
+        @Override
+        public Void call(List<LocatedTablet> tablets) throws Exception {
+          for (LocatedTablet tablet : tablets) {
+            if (Arrays.equals(tablet.getTabletId(), tabletId.getBytes())) {
+              result.complete(leaderOf(tablet));
+              return null;
+            }
+          }
+          // The partition belongs to other tablets now.
+          result.completeExceptionally(new TabletNotFoundException(tabletId));
+          return null;
+        }
+      }).addErrback(new Callback<Void, Exception>() {
+        @Override
+        public Void call(Exception e) throws Exception {
+          result.completeExceptionally(e);
+          return null;
+        }
+      });
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the RPC address of the tablet's leader, or null if it has none or its address is not
+   * known.
+   */
+  public static HostAndPort leaderOf(LocatedTablet tablet) {
+    LocatedTablet.Replica replica = tablet.getLeaderReplica();
+    if (replica == null || replica.getRpcHost() == null || replica.getRpcPort() == null) {
+      return null;
+    }
+    return HostAndPort.fromParts(replica.getRpcHost(), replica.getRpcPort());
+  }
+}
@@ -0,0 +1,101 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import com.google.common.net.HostAndPort;
+import com.google.protobuf.ByteString;
+import org.yb.Common;
+import org.yb.Opid;
+import org.yb.client.YBTable;
+import org.yb.util.HybridTimeUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the GetChanges RPC of the tablet servers, to exercise pollers without a cluster.
+ *
+ * Every tablet starts with a backlog of changes and gains more at a fixed rate. The change at
+ * index i of a tablet is a write of key i, so no state is kept per tablet: a poll returns the
+ * changes after its checkpoint which exist by now, up to maxRecordsPerResponse. Like the tablet
+ * servers, it ignores the max_records of the request. Responses are completed on a pool of I/O
+ * threads after the given latency, the way the client's Netty threads would.
+ */
+public class FakeChangesSource implements ChangesSource {
+  private static final HostAndPort LEADER = HostAndPort.fromParts("127.0.0.1", 9100);
+  private static final ByteString KEY_COLUMN = ByteString.copyFromUtf8("k");
+  private static final ByteString VALUE_COLUMN = ByteString.copyFromUtf8("v");
+
+  private final long backlog;
+  private final double changesPerSec;
+  private final long latencyMicros;
+  private final int maxRecordsPerResponse;
+  private final ScheduledExecutorService ioThreads;
+  private final long startMs = System.currentTimeMillis();
+
+  public FakeChangesSource(long backlog, double changesPerSec, long latencyMicros,
+                           int maxRecordsPerResponse, int numIoThreads) {
+    this.backlog = backlog;
+    this.changesPerSec = changesPerSec;
+    this.latencyMicros = latencyMicros;
+    this.maxRecordsPerResponse = maxRecordsPerResponse;
+    this.ioThreads = Executors.newScheduledThreadPool(numIoThreads);
+  }
+
+  @Override
+  public CompletionStage<CdcService.GetChangesResponsePB> getChanges(
+      HostAndPort hp, YBTable table, String streamId, String tabletId, long term, long index,
+      int maxRecords) {
+    CompletableFuture<CdcService.GetChangesResponsePB> result = new CompletableFuture<>();
+    ioThreads.schedule(() -> result.complete(respond(index)), latencyMicros,
+                       TimeUnit.MICROSECONDS);
+    return result;
+  }
+
+  private CdcService.GetChangesResponsePB respond(long index) {
+    long nowMs = System.currentTimeMillis();
+    long available = backlog + (long) ((nowMs - startMs) * changesPerSec / 1000);
+    long end = Math.min(available, index + maxRecordsPerResponse);
+    long time = HybridTimeUtil.clockTimestampToHTTimestamp(nowMs, TimeUnit.MILLISECONDS);
+
+    CdcService.GetChangesResponsePB.Builder response = CdcService.GetChangesResponsePB.newBuilder();
+    for (long i = index + 1; i <= end; i++) {
+      response.addRecords(CdcService.CDCRecordPB.newBuilder()
+          .setTime(time)
+          .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+          .addKey(CdcService.KeyValuePairPB.newBuilder()
+              .setKey(KEY_COLUMN)
+              .setValue(Common.QLValuePB.newBuilder().setInt64Value(i)))
+          .addChanges(CdcService.KeyValuePairPB.newBuilder()
+              .setKey(VALUE_COLUMN)
+              .setValue(Common.QLValuePB.newBuilder().setInt64Value(i))));
+    }
+    response.setCheckpoint(CdcService.CDCCheckpointPB.newBuilder()
+        .setOpId(Opid.OpIdPB.newBuilder().setTerm(1).setIndex(Math.max(end, index))));
+    return response.build();
+  }
+
+  @Override
+  public CompletionStage<HostAndPort> locateLeader(YBTable table, String tabletId,
+                                                   byte[] partitionKeyStart) {
+    return CompletableFuture.completedFuture(LEADER);
+  }
+
+  public void close() {
+    ioThreads.shutdownNow();
+  }
+}
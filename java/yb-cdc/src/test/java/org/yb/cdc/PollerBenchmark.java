@@ -0,0 +1,152 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import com.google.common.net.HostAndPort;
+import org.apache.commons.cli.BasicParser;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.yb.client.YBTable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how the poller runtime scales with the number of tablets, against a
+ * FakeChangesSource and an output client which only counts the changes.
+ *
+ * For each tablet count, it runs the pollers for --duration_secs and reports the changes and
+ * polls per second, the share of empty polls, how long pollers waited for their turn and
+ * responses for a worker, and the CPU time the process spent per poll.
+ */
+public class PollerBenchmark {
+  private static final Logger LOG = Logger.getLogger(PollerBenchmark.class);
+
+  private static class CountingClient implements OutputClient {
+    final LongAdder records = new LongAdder();
+
+    @Override
+    public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) {
+      records.increment();
+    }
+
+    @Override
+    public CompletionStage<Void> applyChanges(YBTable table,
+                                              List<CdcService.CDCRecordPB> changeRecords) {
+      records.add(changeRecords.size());
+      return CompletableFuture.completedFuture(null);
+    }
+  }
+
+  private static long processCpuNanos() {
+    OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+    if (os instanceof com.sun.management.OperatingSystemMXBean) {
+      return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+    }
+    return -1;
+  }
+
+  private static void run(int numTablets, long durationSecs, FakeChangesSource source,
+                          CmdLineOpts opts) throws Exception {
+    HostAndPort server = source.locateLeader(null, null, null).toCompletableFuture().get();
+    List<HostAndPort> hps = Collections.singletonList(server);
+    PollScheduler scheduler = new PollScheduler(opts.pollerThreads, opts.maxConcurrentPolls);
+    PollerMetrics metrics = new PollerMetrics();
+    CountingClient output = new CountingClient();
+
+    List<Poller> pollers = new ArrayList<>(numTablets);
+    for (int i = 0; i < numTablets; i++) {
+      pollers.add(new Poller(output, null, hps, null, "stream", "tablet-" + i, new byte[0],
+                             server, null, scheduler, source, metrics, opts));
+    }
+
+    long startCpuNanos = processCpuNanos();
+    long startNanos = System.nanoTime();
+    for (Poller poller : pollers) {
+      poller.poll();
+    }
+    Thread.sleep(durationSecs * 1000);
+    scheduler.close();
+    double secs = (System.nanoTime() - startNanos) / 1e9;
+    long cpuNanos = processCpuNanos() - startCpuNanos;
+
+    long polls = metrics.getPolls();
+    LOG.info(String.format(
+        "Tablets: %d, records/sec: %.0f, polls/sec: %.0f, empty polls: %.1f%%, " +
+        "queue wait avg: %.3f ms, max: %.3f ms, handoff wait avg: %.3f ms, max: %.3f ms, " +
+        "CPU per poll: %.1f us",
+        numTablets, output.records.sum() / secs, polls / secs,
+        polls == 0 ? 0.0 : 100.0 * metrics.getEmptyPolls() / polls,
+        scheduler.getAvgQueueWaitMs(), scheduler.getMaxQueueWaitMs(),
+        scheduler.getAvgHandoffWaitMs(), scheduler.getMaxHandoffWaitMs(),
+        polls == 0 || startCpuNanos < 0 ? 0.0 : cpuNanos / 1e3 / polls));
+  }
+
+  public static void main(String[] args) throws Exception {
+    BasicConfigurator.configure();
+    Logger.getRootLogger().setLevel(Level.INFO);
+
+    Options options = new Options();
+    options.addOption("tablet_counts", true,
+        "Comma separated numbers of tablets to run with. Default 100,1000,10000,50000");
+    options.addOption("duration_secs", true, "How long to run each tablet count. Default 10");
+    options.addOption("backlog", true,
+        "Number of changes each tablet has at the start. Default 0");
+    options.addOption("changes_per_sec", true,
+        "Rate at which each tablet gains changes. Default 100");
+    options.addOption("latency_us", true, "Latency of each GetChanges call. Default 500");
+    options.addOption("io_threads", true,
+        "Number of threads completing GetChanges calls. Default 4");
+    options.addOption("poller_threads", true, "Number of threads handling responses. Default 8");
+    options.addOption("max_concurrent_polls", true,
+        "Maximum number of polls out at once. Default 256");
+    options.addOption("max_records_per_response", true,
+        "Maximum number of changes the fake servers return per poll. Default 1000");
+    CommandLine commandLine = new BasicParser().parse(options, args);
+
+    String[] tabletCounts =
+        commandLine.getOptionValue("tablet_counts", "100,1000,10000,50000").split(",");
+    long durationSecs = Long.parseLong(commandLine.getOptionValue("duration_secs", "10"));
+    long backlog = Long.parseLong(commandLine.getOptionValue("backlog", "0"));
+    double changesPerSec = Double.parseDouble(commandLine.getOptionValue("changes_per_sec", "100"));
+    long latencyMicros = Long.parseLong(commandLine.getOptionValue("latency_us", "500"));
+    int ioThreads = Integer.parseInt(commandLine.getOptionValue("io_threads", "4"));
+    int maxRecordsPerResponse =
+        Integer.parseInt(commandLine.getOptionValue("max_records_per_response", "1000"));
+
+    CmdLineOpts opts = new CmdLineOpts();
+    opts.pollerThreads =
+        Integer.parseInt(commandLine.getOptionValue("poller_threads", "" + opts.pollerThreads));
+    opts.maxConcurrentPolls = Integer.parseInt(
+        commandLine.getOptionValue("max_concurrent_polls", "" + opts.maxConcurrentPolls));
+    opts.metricsIntervalSecs = 0;
+
+    for (String tabletCount : tabletCounts) {
+      FakeChangesSource source =
+          new FakeChangesSource(backlog, changesPerSec, latencyMicros, maxRecordsPerResponse,
+                                ioThreads);
+      run(Integer.parseInt(tabletCount.trim()), durationSecs, source, opts);
+      source.close();
+    }
+  }
+}
@@ -0,0 +1,181 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertNotNull;
+import static org.yb.AssertionWrappers.assertNull;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+@RunWith(value=YBTestRunner.class)
+public class TestCheckpointStore {
+  private Path dir;
+  private String fileName;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("checkpoints");
+    fileName = dir.resolve("checkpoints").toString();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  private CheckpointStore open() throws IOException {
+    return new CheckpointStore(fileName, 100, 1000);
+  }
+
+  // The size of the record of a checkpoint, as laid out by CheckpointStore.
+  private static int recordSize(String streamId, String tabletId) {
+    return 4 + 2 + streamId.getBytes(StandardCharsets.UTF_8).length +
+           2 + tabletId.getBytes(StandardCharsets.UTF_8).length + 8 + 8 + 4;
+  }
+
+  private static void assertCheckpoint(CheckpointStore store, String streamId, String tabletId,
+                                       long term, long index) {
+    CheckpointStore.Checkpoint checkpoint = store.get(streamId, tabletId);
+    assertNotNull("No checkpoint for " + streamId + "/" + tabletId, checkpoint);
+    assertEquals(term, checkpoint.term);
+    assertEquals(index, checkpoint.index);
+  }
+
+  @Test
+  public void testReplayAfterReopen() throws IOException {
+    try (CheckpointStore store = open()) {
+      store.update("stream", "tablet1", 1, 10);
+      store.update("stream", "tablet2", 1, 20);
+      store.update("stream", "tablet1", 2, 15);
+      store.update("other", "tablet1", 3, 30);
+    }
+
+    try (CheckpointStore store = open()) {
+      // The last update of each tablet wins.
+      assertCheckpoint(store, "stream", "tablet1", 2, 15);
+      assertCheckpoint(store, "stream", "tablet2", 1, 20);
+      assertCheckpoint(store, "other", "tablet1", 3, 30);
+      assertNull(store.get("stream", "tablet3"));
+
+      // Updates after the reopen are appended after the replayed ones.
+      store.update("stream", "tablet2", 4, 40);
+    }
+
+    try (CheckpointStore store = open()) {
+      assertCheckpoint(store, "stream", "tablet1", 2, 15);
+      assertCheckpoint(store, "stream", "tablet2", 4, 40);
+    }
+  }
+
+  @Test
+  public void testTornRecordIgnored() throws IOException {
+    try (CheckpointStore store = open()) {
+      store.update("stream", "tablet1", 1, 10);
+      store.update("stream", "tablet2", 1, 20);
+      store.update("stream", "tablet3", 1, 30);
+    }
+
+    // Tear the second record, which leaves the third one intact after it.
+    int first = recordSize("stream", "tablet1");
+    int rest = recordSize("stream", "tablet2") + recordSize("stream", "tablet3");
+    try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+      file.seek(first + recordSize("stream", "tablet2") - 5);
+      file.write(file.read() ^ 0xff);
+    }
+
+    try (CheckpointStore store = open()) {
+      assertCheckpoint(store, "stream", "tablet1", 1, 10);
+      // Nothing from the torn record on is replayed.
+      assertNull(store.get("stream", "tablet2"));
+      assertNull(store.get("stream", "tablet3"));
+    }
+
+    // The torn record and what followed it are zeroed.
+    byte[] tail = new byte[rest];
+    try (RandomAccessFile file = new RandomAccessFile(fileName, "r")) {
+      file.seek(first);
+      file.readFully(tail);
+    }
+    assertTrue("Expected the tail to be zeroed", Arrays.equals(new byte[rest], tail));
+
+    // So a shorter record appended in their place does not bring the third record back.
+    try (CheckpointStore store = open()) {
+      store.update("s", "t", 2, 5);
+    }
+    try (CheckpointStore store = open()) {
+      assertCheckpoint(store, "stream", "tablet1", 1, 10);
+      assertCheckpoint(store, "s", "t", 2, 5);
+      assertNull(store.get("stream", "tablet3"));
+    }
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    int numUpdates = 3 * CheckpointStore.MIN_FILE_SIZE / recordSize("stream", "tablet0");
+    try (CheckpointStore store = open()) {
+      for (int i = 0; i < numUpdates; i++) {
+        store.update("stream", "tablet" + (i % 10), 1, i);
+      }
+    }
+
+    // The file filled up several times over, and was compacted into one of the same size.
+    assertEquals((long) CheckpointStore.MIN_FILE_SIZE, Files.size(dir.resolve("checkpoints")));
+    assertFalse(Files.exists(dir.resolve("checkpoints.tmp")));
+    try (CheckpointStore store = open()) {
+      for (int i = numUpdates - 10; i < numUpdates; i++) {
+        assertCheckpoint(store, "stream", "tablet" + (i % 10), 1, i);
+      }
+    }
+  }
+
+  @Test
+  public void testCompactionGrowsFile() throws IOException {
+    char[] padding = new char[100];
+    Arrays.fill(padding, 'x');
+    String prefix = new String(padding);
+    int numTablets = 2 * CheckpointStore.MIN_FILE_SIZE / recordSize("stream", prefix + 0);
+    try (CheckpointStore store = open()) {
+      for (int i = 0; i < numTablets; i++) {
+        store.update("stream", prefix + i, 1, i);
+      }
+    }
+
+    // The live checkpoints did not fit the file, so it grew to leave room for new ones.
+    long size = Files.size(dir.resolve("checkpoints"));
+    assertTrue("Expected the file to grow, size " + size, size > CheckpointStore.MIN_FILE_SIZE);
+    try (CheckpointStore store = open()) {
+      for (int i = 0; i < numTablets; i++) {
+        assertCheckpoint(store, "stream", prefix + i, 1, i);
+      }
+    }
+  }
+}
@@ -0,0 +1,195 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+import org.yb.client.YBTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@RunWith(value=YBTestRunner.class)
+public class TestMergingOutputClient {
+
+  /**
+   * Records the hybrid times of the batches it is handed, which complete when the test says so.
+   */
+  private static class RecordingClient implements OutputClient {
+    final List<List<Long>> batches = new ArrayList<>();
+    final List<CompletableFuture<Void>> results = new ArrayList<>();
+
+    @Override
+    public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public CompletionStage<Void> applyChanges(YBTable table,
+                                              List<CdcService.CDCRecordPB> changeRecords) {
+      List<Long> times = new ArrayList<>();
+      for (CdcService.CDCRecordPB record : changeRecords) {
+        times.add(record.getTime());
+      }
+      batches.add(times);
+      CompletableFuture<Void> result = new CompletableFuture<>();
+      results.add(result);
+      return result;
+    }
+
+    List<Long> emitted() {
+      List<Long> times = new ArrayList<>();
+      batches.forEach(times::addAll);
+      return times;
+    }
+
+    void completeAll() {
+      // Completing a batch may hand over the next one.
+      for (int i = 0; i < results.size(); i++) {
+        results.get(i).complete(null);
+      }
+    }
+  }
+
+  private static List<CdcService.CDCRecordPB> records(long... times) {
+    List<CdcService.CDCRecordPB> records = new ArrayList<>();
+    for (long time : times) {
+      records.add(CdcService.CDCRecordPB.newBuilder().setTime(time).build());
+    }
+    return records;
+  }
+
+  @Test
+  public void testInterleavedTablets() {
+    RecordingClient downstream = new RecordingClient();
+    MergingOutputClient client = new MergingOutputClient(downstream, 100);
+    client.addTablet("a");
+    client.addTablet("b");
+
+    // Tablet b has not told how far it got yet, so nothing can be passed on.
+    CompletableFuture<Void> a1 =
+        client.applyChanges(null, "a", records(1, 3, 5), 5).toCompletableFuture();
+    assertEquals(Collections.emptyList(), downstream.emitted());
+    assertEquals(3, client.getBufferedRecords());
+
+    // Both tablets are past 4, the changes up to it go out in hybrid time order.
+    CompletableFuture<Void> b1 =
+        client.applyChanges(null, "b", records(2, 4), 4).toCompletableFuture();
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L), downstream.emitted());
+    downstream.completeAll();
+    assertTrue(b1.isDone());
+    // The change at 5 of the first batch is still buffered, so the batch is not done.
+    assertFalse(a1.isDone());
+
+    // An empty poll of b moves its safe time past 5.
+    client.updateSafeTime("b", 6);
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), downstream.emitted());
+    downstream.completeAll();
+    assertTrue(a1.isDone());
+    assertEquals(0, client.getBufferedRecords());
+  }
+
+  @Test
+  public void testOneBatchAtATime() {
+    RecordingClient downstream = new RecordingClient();
+    MergingOutputClient client = new MergingOutputClient(downstream, 2);
+    client.addTablet("a");
+    client.addTablet("b");
+    client.applyChanges(null, "a", records(1, 4, 6), 10);
+    client.applyChanges(null, "b", records(2, 3, 5), 10);
+
+    // Batches are at most two changes, and the next one waits for the previous one.
+    assertEquals(Collections.singletonList(Arrays.asList(1L, 2L)), downstream.batches);
+    downstream.results.get(0).complete(null);
+    assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(3L, 4L)),
+                 downstream.batches);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), downstream.emitted());
+  }
+
+  @Test
+  public void testLowestSafeTimeHoldsBack() {
+    RecordingClient downstream = new RecordingClient();
+    MergingOutputClient client = new MergingOutputClient(downstream, 100);
+    client.addTablet("a");
+    client.addTablet("b");
+    client.applyChanges(null, "a", records(10, 20), 30);
+    client.updateSafeTime("b", 15);
+    assertEquals(Collections.singletonList(10L), downstream.emitted());
+
+    // A safe time going back is ignored.
+    client.updateSafeTime("b", 5);
+    client.applyChanges(null, "b", records(16), 16);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(10L, 16L), downstream.emitted());
+
+    // Once b is removed it no longer holds a back.
+    client.removeTablet("b");
+    downstream.completeAll();
+    assertEquals(Arrays.asList(10L, 16L, 20L), downstream.emitted());
+  }
+
+  @Test
+  public void testResetTablet() {
+    RecordingClient downstream = new RecordingClient();
+    MergingOutputClient client = new MergingOutputClient(downstream, 100);
+    client.addTablet("a");
+    client.addTablet("b");
+    client.applyChanges(null, "a", records(1, 2), 2);
+    client.applyChanges(null, "b", records(3), 3);
+    assertEquals(Arrays.asList(1L, 2L), downstream.emitted());
+
+    // The buffered change of b is dropped, and b holds a back until it returns it again.
+    client.resetTablet("b");
+    assertEquals(0, client.getBufferedRecords());
+    client.applyChanges(null, "a", records(4), 4);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(1L, 2L), downstream.emitted());
+    client.applyChanges(null, "b", records(3), 5);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(1L, 2L, 3L, 4L), downstream.emitted());
+  }
+
+  @Test
+  public void testChangesWithoutTablet() throws Exception {
+    RecordingClient downstream = new RecordingClient();
+    MergingOutputClient client = new MergingOutputClient(downstream, 100);
+
+    // With no tablet to wait for, they are passed on right away.
+    CompletableFuture<Void> result =
+        client.applyChanges(null, records(1, 2)).toCompletableFuture();
+    assertEquals(Arrays.asList(1L, 2L), downstream.emitted());
+    downstream.completeAll();
+    assertTrue(result.isDone());
+
+    // Otherwise they are merged with the changes of the tablets, without holding them back.
+    client.addTablet("a");
+    client.applyChanges(null, records(5));
+    client.applyChanges(null, "a", records(3, 7), 4);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(1L, 2L, 3L), downstream.emitted());
+    client.updateSafeTime("a", 10);
+    downstream.completeAll();
+    assertEquals(Arrays.asList(1L, 2L, 3L, 5L, 7L), downstream.emitted());
+  }
+}
@@ -0,0 +1,316 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import com.google.common.net.HostAndPort;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.Opid;
+import org.yb.YBTestRunner;
+import org.yb.client.YBTable;
+import org.yb.util.HybridTimeUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+@RunWith(value=YBTestRunner.class)
+public class TestPoller {
+  private static final HostAndPort LEADER = HostAndPort.fromParts("127.0.0.1", 9100);
+  private static final String TABLET_ID = "parent";
+
+  // Like the tablet servers, the sources cap a response by their own limit, and not by the
+  // max_records of the request, which the tests set higher.
+  private static final int MAX_RECORDS_PER_RESPONSE = 3;
+
+  /**
+   * A tablet with a fixed number of changes, which reports that it is not found once it has
+   * returned all of them, the way a tablet which was split does. The change at index i has the
+   * hybrid time of i milliseconds.
+   */
+  private static class SplitTabletSource implements ChangesSource {
+    final long lastIndex;
+    // Whether the tablet ends once it has returned all its changes, or stays idle.
+    final boolean ends;
+    // Whether the next poll reports the tablet as not found, like a server which lost the lead.
+    boolean notFoundOnce = false;
+    boolean split = false;
+    int locates = 0;
+    int polls = 0;
+
+    SplitTabletSource(long lastIndex) {
+      this(lastIndex, true);
+    }
+
+    SplitTabletSource(long lastIndex, boolean ends) {
+      this.lastIndex = lastIndex;
+      this.ends = ends;
+    }
+
+    @Override
+    public synchronized CompletionStage<CdcService.GetChangesResponsePB> getChanges(
+        HostAndPort hp, YBTable table, String streamId, String tabletId, long term, long index,
+        int maxRecords) {
+      polls++;
+      CdcService.GetChangesResponsePB.Builder response =
+          CdcService.GetChangesResponsePB.newBuilder();
+      if (notFoundOnce || (ends && index >= lastIndex)) {
+        notFoundOnce = false;
+        split = index >= lastIndex;
+        response.setError(CdcService.CDCErrorPB.newBuilder()
+            .setCode(CdcService.CDCErrorPB.Code.TABLET_NOT_FOUND));
+        return CompletableFuture.completedFuture(response.build());
+      }
+      long end = Math.min(lastIndex, index + MAX_RECORDS_PER_RESPONSE);
+      for (long i = index + 1; i <= end; i++) {
+        response.addRecords(CdcService.CDCRecordPB.newBuilder().setTime(time(i)));
+      }
+      response.setCheckpoint(CdcService.CDCCheckpointPB.newBuilder()
+          .setOpId(Opid.OpIdPB.newBuilder().setTerm(1).setIndex(end)));
+      return CompletableFuture.completedFuture(response.build());
+    }
+
+    @Override
+    public synchronized CompletionStage<HostAndPort> locateLeader(YBTable table, String tabletId,
+                                                                  byte[] partitionKeyStart) {
+      locates++;
+      CompletableFuture<HostAndPort> result = new CompletableFuture<>();
+      if (split) {
+        result.completeExceptionally(new TabletNotFoundException(tabletId));
+      } else {
+        result.complete(LEADER);
+      }
+      return result;
+    }
+  }
+
+  private static long time(long index) {
+    return HybridTimeUtil.clockTimestampToHTTimestamp(index, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Applies the batches it is handed right away, and records the safe times they came with.
+   */
+  private static class SafeTimeClient implements OutputClient {
+    final List<Long> lastRecordTimes = new ArrayList<>();
+    final List<Long> batchSafeTimes = new ArrayList<>();
+    final List<Long> safeTimeUpdates = new ArrayList<>();
+    // The number of records handed over before the first safe time update.
+    long recordsBeforeUpdate = -1;
+    long records = 0;
+
+    @Override
+    public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized CompletionStage<Void> applyChanges(
+        YBTable table, String tabletId, List<CdcService.CDCRecordPB> changeRecords,
+        long safeTime) {
+      records += changeRecords.size();
+      lastRecordTimes.add(changeRecords.get(changeRecords.size() - 1).getTime());
+      batchSafeTimes.add(safeTime);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public synchronized void updateSafeTime(String tabletId, long safeTime) {
+      if (safeTimeUpdates.isEmpty()) {
+        recordsBeforeUpdate = records;
+      }
+      safeTimeUpdates.add(safeTime);
+    }
+
+    synchronized int getSafeTimeUpdates() {
+      return safeTimeUpdates.size();
+    }
+  }
+
+  /**
+   * Holds the batches it is handed until the test completes them.
+   */
+  private static class HoldingClient implements OutputClient {
+    final List<CompletableFuture<Void>> results = new ArrayList<>();
+    long records = 0;
+    boolean removed = false;
+    // Whether the tablet was removed before all of its batches completed.
+    boolean removedWithPendingBatches = false;
+
+    @Override
+    public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public synchronized CompletionStage<Void> applyChanges(
+        YBTable table, List<CdcService.CDCRecordPB> changeRecords) {
+      records += changeRecords.size();
+      CompletableFuture<Void> result = new CompletableFuture<>();
+      results.add(result);
+      return result;
+    }
+
+    @Override
+    public synchronized void removeTablet(String tabletId) {
+      for (CompletableFuture<Void> result : results) {
+        removedWithPendingBatches |= !result.isDone();
+      }
+      removed = true;
+    }
+
+    void completeAll() {
+      List<CompletableFuture<Void>> pending;
+      synchronized (this) {
+        pending = new ArrayList<>(results);
+      }
+      pending.forEach(result -> result.complete(null));
+    }
+
+    synchronized long getRecords() {
+      return records;
+    }
+
+    synchronized boolean isRemoved() {
+      return removed;
+    }
+  }
+
+  private PollScheduler scheduler;
+  private CmdLineOpts opts;
+
+  @Before
+  public void setUp() {
+    opts = new CmdLineOpts();
+    opts.maxRecordsPerPoll = 5;
+    opts.mergeSafeTimeLagMs = 50;
+    opts.maxInflightBatches = 4;
+    opts.pollBackoffMinMs = 1;
+    opts.pollBackoffMaxMs = 10;
+    scheduler = new PollScheduler(2, 2);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    scheduler.close();
+  }
+
+  private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+    long deadlineMs = System.currentTimeMillis() + 10000;
+    while (!condition.getAsBoolean()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadlineMs);
+      Thread.sleep(10);
+    }
+  }
+
+  private Poller newPoller(ChangesSource source, OutputClient output) {
+    return new Poller(output, null, Collections.singletonList(LEADER), null, "stream", TABLET_ID,
+                      new byte[0], LEADER, null, scheduler, source, new PollerMetrics(), opts);
+  }
+
+  @Test
+  public void testDrainSplitTablet() throws Exception {
+    SplitTabletSource source = new SplitTabletSource(7);
+    // The first poll goes to a server which no longer leads the tablet, so the tablet is looked
+    // up, found, and the poller carries on.
+    source.notFoundOnce = true;
+    HoldingClient output = new HoldingClient();
+    Poller poller = newPoller(source, output);
+    CompletableFuture<CheckpointStore.Checkpoint> drained = new CompletableFuture<>();
+    poller.drain(drained::complete);
+    poller.poll();
+
+    // All the changes are handed over, then the tablet ends.
+    waitFor(() -> output.getRecords() == 7);
+    waitFor(() -> {
+      synchronized (source) {
+        return source.split && source.locates >= 2;
+      }
+    });
+    // The checkpoint is not handed over while the batches are still being applied.
+    Thread.sleep(100);
+    assertFalse(drained.isDone());
+    assertFalse(output.isRemoved());
+    assertEquals(0, poller.getCheckpoint().index);
+
+    output.completeAll();
+    CheckpointStore.Checkpoint checkpoint = drained.get(10, TimeUnit.SECONDS);
+    assertEquals(1, checkpoint.term);
+    assertEquals(7, checkpoint.index);
+    waitFor(output::isRemoved);
+    assertFalse(output.removedWithPendingBatches);
+  }
+
+  @Test
+  public void testTabletNotFoundWithoutDrain() throws Exception {
+    SplitTabletSource source = new SplitTabletSource(3);
+    HoldingClient output = new HoldingClient();
+    Poller poller = newPoller(source, output);
+    poller.poll();
+    waitFor(() -> output.getRecords() == 3);
+    output.completeAll();
+
+    // A tablet which is not drained keeps being looked up until it is stopped or drained.
+    waitFor(() -> {
+      synchronized (source) {
+        return source.locates >= 3;
+      }
+    });
+    assertFalse(output.isRemoved());
+    CompletableFuture<CheckpointStore.Checkpoint> drained = new CompletableFuture<>();
+    poller.drain(drained::complete);
+    assertEquals(3, drained.get(10, TimeUnit.SECONDS).index);
+    waitFor(output::isRemoved);
+  }
+
+  @Test
+  public void testSafeTimeOnceCaughtUp() throws Exception {
+    SplitTabletSource source = new SplitTabletSource(7, false);
+    SafeTimeClient output = new SafeTimeClient();
+    long startMs = System.currentTimeMillis();
+    Poller poller = newPoller(source, output);
+    poller.poll();
+    waitFor(() -> output.getSafeTimeUpdates() >= 2);
+    poller.stop();
+
+    synchronized (output) {
+      // Every response came back short of max_records, but only the empty one after them shows
+      // that the tablet has caught up.
+      assertEquals(7, output.recordsBeforeUpdate);
+      assertEquals(3, output.batchSafeTimes.size());
+      // Until then, the safe time of a batch is the time of its last change.
+      assertEquals(output.lastRecordTimes, output.batchSafeTimes);
+      assertEquals(time(7), (long) output.batchSafeTimes.get(2));
+      // Once caught up, it is the time the poll was sent, less the lag.
+      for (long safeTime : output.safeTimeUpdates) {
+        assertTrue(safeTime >= time(startMs - opts.mergeSafeTimeLagMs));
+        assertTrue(safeTime <= time(System.currentTimeMillis() - opts.mergeSafeTimeLagMs));
+      }
+    }
+    synchronized (source) {
+      // One poll per response with changes, then idle polls.
+      assertTrue(source.polls >= 5);
+    }
+  }
+}
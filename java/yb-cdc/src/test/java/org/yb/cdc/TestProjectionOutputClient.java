@@ -0,0 +1,240 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertSame;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import com.google.protobuf.ByteString;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.ColumnSchema;
+import org.yb.Schema;
+import org.yb.Type;
+import org.yb.YBTestRunner;
+import org.yb.client.GetTableSchemaResponse;
+import org.yb.client.YBClient;
+import org.yb.client.YBTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+@RunWith(value=YBTestRunner.class)
+public class TestProjectionOutputClient {
+  private static final String TABLE_ID = "table";
+
+  /**
+   * Records the batches and safe times it is handed, and completes the batches right away.
+   */
+  private static class RecordingClient implements OutputClient {
+    final List<List<CdcService.CDCRecordPB>> batches = new ArrayList<>();
+    final List<Long> safeTimes = new ArrayList<>();
+
+    @Override
+    public void applyChange(YBTable table, CdcService.CDCRecordPB changeRecord) {
+      batches.add(Collections.singletonList(changeRecord));
+    }
+
+    @Override
+    public CompletionStage<Void> applyChanges(YBTable table,
+                                              List<CdcService.CDCRecordPB> changeRecords) {
+      batches.add(changeRecords);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void updateSafeTime(String tabletId, long safeTime) {
+      safeTimes.add(safeTime);
+    }
+  }
+
+  private RecordingClient downstream;
+  private YBClient client;
+
+  @Before
+  public void setUp() throws Exception {
+    downstream = new RecordingClient();
+    client = mock(YBClient.class);
+    returnSchema(1, "k", "a", "b");
+  }
+
+  /**
+   * Makes the table's schema have the given version and columns, the first of them the key.
+   */
+  private void returnSchema(int version, String... columnNames) throws Exception {
+    List<ColumnSchema> columns = new ArrayList<>();
+    for (String name : columnNames) {
+      columns.add(new ColumnSchema.ColumnSchemaBuilder(name, Type.STRING)
+                      .key(columns.isEmpty()).build());
+    }
+    GetTableSchemaResponse response = mock(GetTableSchemaResponse.class);
+    when(response.getVersion()).thenReturn(version);
+    when(response.getSchema()).thenReturn(new Schema(columns));
+    when(response.getTableName()).thenReturn("test_table");
+    when(client.getTableSchemaByUUID(TABLE_ID)).thenReturn(response);
+  }
+
+  private static CdcService.KeyValuePairPB value(String column) {
+    return CdcService.KeyValuePairPB.newBuilder().setKey(ByteString.copyFromUtf8(column)).build();
+  }
+
+  private static CdcService.CDCRecordPB record(long time,
+                                               CdcService.CDCRecordPB.OperationType operation,
+                                               String... columns) {
+    CdcService.CDCRecordPB.Builder builder = CdcService.CDCRecordPB.newBuilder()
+        .setTime(time)
+        .setOperation(operation)
+        .addKey(value("k"));
+    for (String column : columns) {
+      builder.addChanges(value(column));
+    }
+    return builder.build();
+  }
+
+  private static CdcService.CDCRecordPB write(long time, String... columns) {
+    return record(time, CdcService.CDCRecordPB.OperationType.WRITE, columns);
+  }
+
+  private static List<String> columnNames(CdcService.CDCRecordPB record) {
+    List<String> names = new ArrayList<>();
+    for (CdcService.KeyValuePairPB change : record.getChangesList()) {
+      names.add(change.getKey().toStringUtf8());
+    }
+    return names;
+  }
+
+  private ProjectionOutputClient create(
+      EnumSet<CdcService.CDCRecordPB.OperationType> opTypes, List<String> columns,
+      long schemaRefreshIntervalMs) throws Exception {
+    return new ProjectionOutputClient(downstream, client, TABLE_ID, opTypes, columns,
+                                      schemaRefreshIntervalMs);
+  }
+
+  @Test
+  public void testOpTypeFilter() throws Exception {
+    ProjectionOutputClient projection = new ProjectionOutputClient(
+        downstream, client, TABLE_ID, EnumSet.of(CdcService.CDCRecordPB.OperationType.DELETE),
+        Collections.emptyList());
+    CdcService.CDCRecordPB delete = record(2, CdcService.CDCRecordPB.OperationType.DELETE);
+    projection.applyChanges(null, "tablet", Arrays.asList(write(1, "a"), delete, write(3, "b")),
+                            3);
+    assertEquals(Collections.singletonList(Collections.singletonList(delete)),
+                 downstream.batches);
+
+    // A batch with nothing left still moves the tablet's safe time forward.
+    assertTrue(projection.applyChanges(null, "tablet", Collections.singletonList(write(4, "a")), 5)
+                   .toCompletableFuture().isDone());
+    assertEquals(1, downstream.batches.size());
+    assertEquals(Collections.singletonList(5L), downstream.safeTimes);
+
+    // Without operation types or columns, batches are passed on as they are.
+    downstream.batches.clear();
+    projection = new ProjectionOutputClient(
+        downstream, client, TABLE_ID, EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class),
+        Collections.emptyList());
+    List<CdcService.CDCRecordPB> batch = Arrays.asList(write(6, "a"), delete);
+    projection.applyChanges(null, batch);
+    assertSame(batch, downstream.batches.get(0));
+  }
+
+  @Test
+  public void testColumnProjection() throws Exception {
+    ProjectionOutputClient projection = new ProjectionOutputClient(
+        downstream, client, TABLE_ID, EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class),
+        Collections.singletonList("a"));
+    CdcService.CDCRecordPB onlyA = write(2, "a");
+    projection.applyChanges(null, Arrays.asList(write(1, "a", "b"), onlyA, write(3, "b")));
+
+    // The values of other columns are dropped, while the key and the rest of the change are kept.
+    List<CdcService.CDCRecordPB> batch = downstream.batches.get(0);
+    assertEquals(3, batch.size());
+    assertEquals(Collections.singletonList("a"), columnNames(batch.get(0)));
+    assertEquals(1L, batch.get(0).getTime());
+    assertEquals(Collections.singletonList(value("k")), batch.get(0).getKeyList());
+    assertSame(onlyA, batch.get(1));
+    assertEquals(Collections.emptyList(), columnNames(batch.get(2)));
+    assertEquals(Collections.singletonList(value("k")), batch.get(2).getKeyList());
+
+    // A column which the table does not have is rejected up front.
+    try {
+      new ProjectionOutputClient(downstream, client, TABLE_ID,
+                                 EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class),
+                                 Collections.singletonList("c"));
+      throw new AssertionError("Expected the unknown column to be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("Unknown column c"));
+    }
+  }
+
+  @Test
+  public void testSchemaRefreshedAtMostOncePerInterval() throws Exception {
+    ProjectionOutputClient projection = new ProjectionOutputClient(
+        downstream, client, TABLE_ID, EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class),
+        Collections.singletonList("a"));
+    // The schema was just fetched, so a column it does not know does not fetch it again.
+    projection.applyChanges(null, Arrays.asList(write(1, "a", "c"), write(2, "c")));
+    verify(client, times(1)).getTableSchemaByUUID(TABLE_ID);
+    assertEquals(Collections.singletonList("a"), columnNames(downstream.batches.get(0).get(0)));
+  }
+
+  @Test
+  public void testCacheDroppedOnSchemaChange() throws Exception {
+    ProjectionOutputClient projection =
+        create(EnumSet.noneOf(CdcService.CDCRecordPB.OperationType.class),
+               Arrays.asList("a", "b"), 0);
+    projection.applyChanges(null, Collections.singletonList(write(1, "a", "b")));
+    verify(client, times(1)).getTableSchemaByUUID(TABLE_ID);
+
+    // A column the schema does not know fetches it again, and while the version is the same the
+    // decision for it is kept.
+    projection.applyChanges(null, Collections.singletonList(write(2, "a", "c")));
+    verify(client, times(2)).getTableSchemaByUUID(TABLE_ID);
+    projection.applyChanges(null, Collections.singletonList(write(3, "c")));
+    verify(client, times(2)).getTableSchemaByUUID(TABLE_ID);
+
+    // A new version, which drops b and adds d, starts a new cache.
+    returnSchema(2, "k", "a", "d");
+    projection.applyChanges(null, Collections.singletonList(write(4, "a", "d")));
+    verify(client, times(3)).getTableSchemaByUUID(TABLE_ID);
+    // So the names decided for the old version are looked up in the new schema again.
+    projection.applyChanges(null, Collections.singletonList(write(5, "c")));
+    verify(client, times(4)).getTableSchemaByUUID(TABLE_ID);
+    projection.applyChanges(null, Collections.singletonList(write(6, "a", "b")));
+    verify(client, times(5)).getTableSchemaByUUID(TABLE_ID);
+    projection.applyChanges(null, Collections.singletonList(write(7, "a", "b", "c", "d")));
+    verify(client, times(5)).getTableSchemaByUUID(TABLE_ID);
+
+    // The decisions themselves follow the projected columns.
+    List<List<String>> projected = new ArrayList<>();
+    for (List<CdcService.CDCRecordPB> batch : downstream.batches) {
+      projected.add(columnNames(batch.get(0)));
+    }
+    assertEquals(Arrays.asList(Arrays.asList("a", "b"), Collections.singletonList("a"),
+                               Collections.emptyList(), Collections.singletonList("a"),
+                               Collections.emptyList(), Arrays.asList("a", "b"),
+                               Arrays.asList("a", "b")),
+                 projected);
+  }
+}
@@ -0,0 +1,197 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package org.yb.cdc;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+@RunWith(value=YBTestRunner.class)
+public class TestProtobufFileClient {
+  private static final String PREFIX = "changes";
+  private static final int NUM_THREADS = 8;
+  private static final int BATCHES_PER_THREAD = 50;
+  private static final int RECORDS_PER_BATCH = 5;
+  // Pads the records, so that they fill files quicker.
+  private static final ByteString PADDING = ByteString.copyFromUtf8(new String(new char[50]));
+
+  private Path dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("cdc-output");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+    }
+  }
+
+  private static CdcService.CDCRecordPB record(long time) {
+    return CdcService.CDCRecordPB.newBuilder()
+        .setTime(time)
+        .setOperation(CdcService.CDCRecordPB.OperationType.WRITE)
+        .addKey(CdcService.KeyValuePairPB.newBuilder().setKey(PADDING))
+        .build();
+  }
+
+  private static List<CdcService.CDCRecordPB> batch(long firstTime, int numRecords) {
+    List<CdcService.CDCRecordPB> records = new ArrayList<>();
+    for (int i = 0; i < numRecords; i++) {
+      records.add(record(firstTime + i));
+    }
+    return records;
+  }
+
+  // The size of the record in the file, with its length in front.
+  private static long delimitedSize(CdcService.CDCRecordPB record) {
+    int size = record.getSerializedSize();
+    return CodedOutputStream.computeUInt32SizeNoTag(size) + size;
+  }
+
+  // The output files, in the order they were written in.
+  private List<File> files() {
+    File[] files = dir.toFile().listFiles((d, name) -> name.startsWith(PREFIX + "-"));
+    Arrays.sort(files, Comparator.comparing(File::getName));
+    return Arrays.asList(files);
+  }
+
+  /**
+   * Returns the hybrid times of the records in the file. If partial is set, a record which is
+   * still being written at the end of the file is skipped.
+   */
+  private static List<Long> readTimes(File file, boolean partial) throws IOException {
+    List<Long> times = new ArrayList<>();
+    try (InputStream in = new FileInputStream(file)) {
+      while (true) {
+        CdcService.CDCRecordPB record;
+        try {
+          record = CdcService.CDCRecordPB.parseDelimitedFrom(in);
+        } catch (InvalidProtocolBufferException e) {
+          if (partial) {
+            break;
+          }
+          throw e;
+        }
+        if (record == null) {
+          break;
+        }
+        times.add(record.getTime());
+      }
+    }
+    return times;
+  }
+
+  private List<Long> readAllTimes(boolean partial) throws IOException {
+    List<Long> times = new ArrayList<>();
+    for (File file : files()) {
+      times.addAll(readTimes(file, partial));
+    }
+    return times;
+  }
+
+  @Test
+  public void testConcurrentBatches() throws Exception {
+    ProtobufFileClient client = new ProtobufFileClient(dir.toString(), PREFIX, 16 << 10);
+    ExecutorService threads = Executors.newFixedThreadPool(NUM_THREADS);
+    List<Future<?>> results = new ArrayList<>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      long threadTime = t * 1000000L;
+      results.add(threads.submit(() -> {
+        for (int b = 0; b < BATCHES_PER_THREAD; b++) {
+          long firstTime = threadTime + b * RECORDS_PER_BATCH;
+          client.applyChanges(null, batch(firstTime, RECORDS_PER_BATCH))
+              .toCompletableFuture().join();
+          // Once the batch is done, all of it is in the files.
+          Set<Long> written = new HashSet<>(readAllTimes(true));
+          for (int i = 0; i < RECORDS_PER_BATCH; i++) {
+            assertTrue("Missing " + (firstTime + i), written.contains(firstTime + i));
+          }
+        }
+        return null;
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get();
+    }
+    threads.shutdown();
+    client.close();
+
+    // Every record is there once, and those of a thread are in the order it handed them over.
+    List<Long> times = readAllTimes(false);
+    assertEquals(NUM_THREADS * BATCHES_PER_THREAD * RECORDS_PER_BATCH, times.size());
+    long[] lastTime = new long[NUM_THREADS];
+    Arrays.fill(lastTime, -1);
+    for (long time : times) {
+      int t = (int) (time / 1000000L);
+      assertEquals(lastTime[t] + 1, time % 1000000L);
+      lastTime[t] = time % 1000000L;
+    }
+    assertTrue("Expected the output to span files", files().size() > 1);
+  }
+
+  @Test
+  public void testRotation() throws Exception {
+    long recordSize = delimitedSize(record(0));
+    // A file is closed after the batch which takes it to 10 records or more, so with batches of
+    // 3 records each file holds 12 of them.
+    long maxFileBytes = 10 * recordSize;
+    ProtobufFileClient client = new ProtobufFileClient(dir.toString(), PREFIX, maxFileBytes);
+    for (int b = 0; b < 10; b++) {
+      client.applyChanges(null, batch(b * 3, 3)).toCompletableFuture().join();
+    }
+    client.applyChange(null, record(30));
+    client.close();
+
+    List<File> files = files();
+    assertEquals(3, files.size());
+    List<Long> expected = new ArrayList<>();
+    for (long time = 0; time <= 30; time++) {
+      expected.add(time);
+    }
+    assertEquals(expected.subList(0, 12), readTimes(files.get(0), false));
+    assertEquals(expected.subList(12, 24), readTimes(files.get(1), false));
+    assertEquals(expected.subList(24, 31), readTimes(files.get(2), false));
+    assertEquals(12 * recordSize, files.get(0).length());
+    assertEquals(12 * recordSize, files.get(1).length());
+    assertEquals(7 * recordSize, files.get(2).length());
+  }
+}
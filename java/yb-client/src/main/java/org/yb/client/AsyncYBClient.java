@@ -396,12 +396,31 @@ public class AsyncYBClient implements AutoCloseable {
   public Deferred<Void> getChanges(
           HostAndPort hp, YBTable table, String streamId, String tabletId, long term,
           long index, Callback<Void, GetChangesResponse> cb) {
+    return getChanges(hp, table, streamId, tabletId, term, index, 0, cb);
+  }
+
+  /**
+   * Get changes for a given tablet and stream.
+   * @param hp host port of the server.
+   * @param table the table to get changes for.
+   * @param streamId the stream to get changes for.
+   * @param tabletId the tablet to get changes for.
+   * @param term the leader term to start getting changes for.
+   * @param index the log index to start get changes for.
+   * @param maxRecords the maximum number of records to return, 0 for the server default.
+   * @param cb the callback to call once the RPC returns.
+   * @return a deferred object for the response from server.
+   */
+  public Deferred<Void> getChanges(
+          HostAndPort hp, YBTable table, String streamId, String tabletId, long term,
+          long index, int maxRecords, Callback<Void, GetChangesResponse> cb) {
     checkIsClosed();
     TabletClient client = newSimpleClient(hp);
     if (client == null) {
       throw new IllegalStateException("Could not create a client to " + hp.toString());
     }
-    GetChangesRequest rpc = new GetChangesRequest(table, streamId, tabletId, term, index);
+    GetChangesRequest rpc =
+        new GetChangesRequest(table, streamId, tabletId, term, index, maxRecords);
     rpc.setTimeoutMillis(defaultAdminOperationTimeoutMs);
     Deferred<GetChangesResponse> d = rpc.getDeferred();
     client.sendRpc(rpc);
@@ -27,13 +27,23 @@ public class GetChangesRequest extends YRpc<GetChangesResponse> {
   private final String tabletId;
   private final long term;
   private final long index;
+  private final int maxRecords;
 
   public GetChangesRequest(YBTable table, String streamId, String tabletId, long term, long index) {
+    this(table, streamId, tabletId, term, index, 0);
+  }
+
+  /**
+   * @param maxRecords maximum number of records to return, 0 to use the server default.
+   */
+  public GetChangesRequest(YBTable table, String streamId, String tabletId, long term, long index,
+                           int maxRecords) {
     super(table);
     this.streamId = streamId;
     this.tabletId = tabletId;
     this.term = term;
     this.index = index;
+    this.maxRecords = maxRecords;
   }
 
   @Override
@@ -48,6 +58,9 @@ public class GetChangesRequest extends YRpc<GetChangesResponse> {
       checkpointBuilder.setOpId(Opid.OpIdPB.newBuilder().setIndex(this.index).setTerm(this.term));
       builder.setFromCheckpoint(checkpointBuilder);
     }
+    if (maxRecords > 0) {
+      builder.setMaxRecords(maxRecords);
+    }
     return toChannelBuffer(header, builder.build());
   }
 
@@ -103,7 +103,8 @@ public class GetTableSchemaRequest extends YRpc<GetTableSchemaResponse> {
         respBuilder.getIdentifier().getTableId().toStringUtf8(),
         ProtobufHelper.pbToPartitionSchema(respBuilder.getPartitionSchema(), schema),
         respBuilder.getCreateTableDone(),
-        respBuilder.getTableType());
+        respBuilder.getTableType(),
+        respBuilder.getVersion());
     return new Pair<GetTableSchemaResponse, Object>(
         response, respBuilder.hasError() ? respBuilder.getError() : null);
   }
@@ -14,6 +14,7 @@
 package com.yugabyte.sample.apps;
 
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
@@ -25,11 +26,15 @@ import java.sql.DriverManager;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
@@ -55,10 +60,21 @@ import com.datastax.oss.driver.internal.core.retry.DefaultRetryPolicy;
 
 import com.yugabyte.sample.common.CmdLineOpts;
 import com.yugabyte.sample.common.CmdLineOpts.ContactPoint;
+import com.yugabyte.sample.common.ConnectionPool;
+import com.yugabyte.sample.common.CoordinatedWorker;
+import com.yugabyte.sample.common.KeyChooser;
+import com.yugabyte.sample.common.OpenLoopSchedule;
+import com.yugabyte.sample.common.Phase;
+import com.yugabyte.sample.common.PhaseSchedule;
 import com.yugabyte.sample.common.SimpleLoadGenerator;
 import com.yugabyte.sample.common.SimpleLoadGenerator.Key;
+import com.yugabyte.sample.common.metrics.Metric;
+import com.yugabyte.sample.common.metrics.MetricsExporter;
 import com.yugabyte.sample.common.metrics.MetricsTracker;
 import com.yugabyte.sample.common.metrics.MetricsTracker.MetricName;
+import com.yugabyte.sample.common.trace.OpTrace;
+import com.yugabyte.sample.common.trace.TraceRecorder;
+import com.yugabyte.sample.common.trace.TraceReplayer;
 
 import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.Jedis;
@@ -78,6 +94,11 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   // Number of uniques keys to insert by default.
   public static final int NUM_UNIQUE_KEYS = 1000000;
 
+  // Returned by doWrite and doRead, or their async variants, for an operation which the app took
+  // but counts later with completeWrite or completeRead, like one queued in a pipeline or batch.
+  // Unlike 0, it tells the IO thread that the app is not out of work.
+  public static final long QUEUED = -2;
+
   // Variable to track start time of the workload.
   private long workloadStartTime = -1;
   // Instance of the workload configuration.
@@ -100,8 +121,28 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   private volatile Pipeline jedisPipeline = null;
   private List<ContactPoint> redisServerInUse = null;
   private volatile JedisCluster jedisCluster = null;
+  // The YSQL connections shared by the IO threads, for the apps which use a pool.
+  private static volatile ConnectionPool postgresConnectionPool = null;
   // Instances of the load generator.
   private static volatile SimpleLoadGenerator simpleLoadGenerator = null;
+  // Timelines that writes and reads are issued on, when they have a target rate.
+  private static volatile OpenLoopSchedule writeSchedule = null;
+  private static volatile OpenLoopSchedule readSchedule = null;
+  // Moves the workload through the phases of --phase_file, if given.
+  private static volatile PhaseSchedule phaseSchedule = null;
+  // Limits the operations in flight across all IO threads in async mode.
+  private static volatile Semaphore inflightLimiter = null;
+  // Records the operations to --record_trace, or replays those of --replay_trace, if given.
+  private static volatile TraceRecorder traceRecorder = null;
+  private static volatile TraceReplayer traceReplayer = null;
+  // The kind and start time of the operation this instance is performing, for its trace records
+  // and for the apps which complete operations after doWrite or doRead returns.
+  private OpTrace.OpType tracedOpType = OpTrace.OpType.WRITE;
+  private long tracedOpStartTs = 0;
+  // The operation this instance is replaying.
+  private final OpTrace.Record replayedOp = new OpTrace.Record();
+  // Returned as the start time of an operation which is not to be performed.
+  private static final long NOT_STARTED = Long.MIN_VALUE;
 
   // Is this app instance the main instance?
   private boolean mainInstance = false;
@@ -164,6 +205,27 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     return DriverManager.getConnection(connectStr, props);
   }
 
+  /**
+   * Returns the pool of YSQL connections shared by all the IO threads, of --sql_pool_size
+   * connections spread over the nodes. Apps borrow a connection per operation from it rather
+   * than holding one per thread.
+   */
+  protected ConnectionPool getPostgresConnectionPool() {
+    if (postgresConnectionPool == null) {
+      synchronized (AppBase.class) {
+        if (postgresConnectionPool == null) {
+          int size = appConfig.sqlPoolSize;
+          if (size <= 0) {
+            size = configuration.getNumReaderThreads() + configuration.getNumWriterThreads();
+          }
+          LOG.info("Creating a pool of " + size + " YSQL connections");
+          postgresConnectionPool = new ConnectionPool(size, this::getPostgresConnection);
+        }
+      }
+    }
+    return postgresConnectionPool;
+  }
+
   public void initializeConnectionsAndStatements(int numThreads) { }
 
   public static SimpleStatement createKeyspaceSimpleStrategy(String keyspaceName,
@@ -330,6 +392,8 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   Random random = new Random();
   byte[] buffer;
   Checksum checksum = new Adler32();
+  // The value prefix of a key is encoded here, reused across operations like checksum.
+  final byte[] valuePrefix = new byte[Key.MAX_VALUE_STR_SIZE];
 
   // For binary values we store checksum in bytes.
   static final int CHECKSUM_SIZE = 4;
@@ -340,6 +404,8 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   static final int VALUE_SIZE_TO_USE_PREFIX = 16;
   static final byte ASCII_MARKER = (byte) 'A';
   static final byte BINARY_MARKER = (byte) 'B';
+  private static final byte[] HEX_DIGITS = {
+      '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
 
   /////////////////  Helper functions to create or verify a value of given size. ////////////////
   private static boolean isUseChecksum(int valueSize, int checksumSize) {
@@ -361,11 +427,16 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   }
 
   protected void getRandomValue(Key key, int valueSize, byte[] outBuffer) {
-    final byte[] keyValueBytes = key.getValueStr().getBytes();
-    getRandomValue(keyValueBytes, valueSize, outBuffer);
+    int prefixLength = isUsePrefix(valueSize) ? key.getValueStrBytes(valuePrefix) : 0;
+    getRandomValue(valuePrefix, prefixLength, valueSize, outBuffer);
   }
 
   protected void getRandomValue(byte[] keyValueBytes, int valueSize, byte[] outBuffer) {
+    getRandomValue(keyValueBytes, keyValueBytes.length, valueSize, outBuffer);
+  }
+
+  private void getRandomValue(byte[] keyValueBytes, int keyValueLength, int valueSize,
+                              byte[] outBuffer) {
     outBuffer[0] = appConfig.restrictValuesToAscii ? ASCII_MARKER : BINARY_MARKER;
     final int checksumSize = appConfig.restrictValuesToAscii ? CHECKSUM_ASCII_SIZE : CHECKSUM_SIZE;
     final boolean isUseChecksum = isUseChecksum(valueSize, checksumSize);
@@ -376,7 +447,7 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       // Beginning of value is not random, but has format "<MARKER><PREFIX>", where prefix is
       // "val: $key" (or part of it in case small value size). This is needed to verify expected
       // value during read.
-      final int prefixSize = Math.min(contentSize - 1 /* marker */, keyValueBytes.length);
+      final int prefixSize = Math.min(contentSize - 1 /* marker */, keyValueLength);
       System.arraycopy(keyValueBytes, 0, outBuffer, 1, prefixSize);
       i += prefixSize;
     }
@@ -407,12 +478,11 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       checksum.update(outBuffer, 0, contentSize);
       long cs = checksum.getValue();
       if (appConfig.restrictValuesToAscii) {
-        String csHexStr = Long.toHexString(cs);
-        // Prepend zeros
-        while (i < valueSize - csHexStr.length()) {
-          outBuffer[i++] = (byte) '0';
+        // Lower case hex digits, padded with zeros.
+        for (int pos = valueSize - 1; pos >= i; --pos) {
+          outBuffer[pos] = HEX_DIGITS[(int) (cs & 0xF)];
+          cs >>>= 4;
         }
-        System.arraycopy(csHexStr.getBytes(), 0, outBuffer, i, csHexStr.length());
       } else {
         while (i < valueSize) {
           outBuffer[i++] = (byte) cs;
@@ -422,21 +492,38 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     }
   }
 
+  /**
+   * Returns the number the hex digits in the given range of the buffer stand for, or -1 if any
+   * of them is not a hex digit.
+   */
+  private static long parseHex(byte[] buf, int offset, int length) {
+    long result = 0;
+    for (int i = offset; i < offset + length; ++i) {
+      int digit = Character.digit(buf[i], 16);
+      if (digit < 0) {
+        return -1;
+      }
+      result = (result << 4) | digit;
+    }
+    return result;
+  }
+
   protected boolean verifyRandomValue(Key key, byte[] value) {
     final boolean isAscii = value[0] == ASCII_MARKER;
     final int checksumSize = isAscii ? CHECKSUM_ASCII_SIZE : CHECKSUM_SIZE;
     final boolean hasChecksum = isUseChecksum(value.length, checksumSize);
     if (isUsePrefix(value.length)) {
-      final String keyValueStr = key.getValueStr();
-      final int prefixSize = Math.min(keyValueStr.length(), value.length -
+      final int prefixLength = key.getValueStrBytes(valuePrefix);
+      final int prefixSize = Math.min(prefixLength, value.length -
                              (hasChecksum ? checksumSize : 0) - 1 /* marker */);
-      final String prefix = new String(value, 1, prefixSize);
       // Check prefix.
-      if (!prefix.equals(keyValueStr.substring(0, prefixSize))) {
-        LOG.fatal("Value mismatch for key: " + key.toString() +
-                  ", expected to start with: " + keyValueStr +
-                  ", got: " + prefix);
-        return false;
+      for (int i = 0; i < prefixSize; ++i) {
+        if (value[i + 1] != valuePrefix[i]) {
+          LOG.fatal("Value mismatch for key: " + key.toString() +
+                    ", expected to start with: " + key.getValueStr() +
+                    ", got: " + new String(value, 1, prefixSize));
+          return false;
+        }
       }
     }
     if (hasChecksum) {
@@ -445,8 +532,7 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       checksum.update(value, 0, value.length - checksumSize);
       long expectedCs;
       if (isAscii) {
-        String csHexStr = new String(value, value.length - checksumSize, checksumSize);
-        expectedCs = Long.parseUnsignedLong(csHexStr, 16);
+        expectedCs = parseHex(value, value.length - checksumSize, checksumSize);
       } else {
         expectedCs = 0;
         for (int i = value.length - 1; i >= value.length - checksumSize; --i) {
@@ -524,17 +610,72 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
 
   /**
    * This call models an OLTP read for the app to perform read operations.
-   * @return Number of reads done, a value of 0 or less indicates no ops were done.
+   * @return Number of reads done, a value of 0 or less indicates no ops were done, and QUEUED that
+   * the read is counted later.
    */
   public long doRead() { return 0; }
 
   /**
    * This call models an OLTP write for the app to perform write operations.
-   * @return Number of writes done, a value of 0 or less indicates no ops were done.
+   * @return Number of writes done, a value of 0 or less indicates no ops were done, and QUEUED that
+   * the write is counted later.
    * @param threadIdx index of thread that invoked this write.
    */
   public long doWrite(int threadIdx) { return 0; }
 
+  /**
+   * Async variant of doRead, used with --max_inflight. Apps which can issue reads without
+   * blocking override this. The default performs doRead on the calling thread.
+   * @return a stage completing with the number of reads done.
+   */
+  public CompletionStage<Long> doReadAsync() {
+    return CompletableFuture.completedFuture(doRead());
+  }
+
+  /**
+   * Async variant of doWrite, used with --max_inflight. Apps which can issue writes without
+   * blocking override this. The default performs doWrite on the calling thread.
+   * @return a stage completing with the number of writes done.
+   * @param threadIdx index of thread that invoked this write.
+   */
+  public CompletionStage<Long> doWriteAsync(int threadIdx) {
+    return CompletableFuture.completedFuture(doWrite(threadIdx));
+  }
+
+  /**
+   * @return true if the app can replay the traces it records. Apps which override doReplayWrite
+   * and doReplayRead override this too, --replay_trace is rejected for the others.
+   */
+  public boolean supportsReplay() {
+    return false;
+  }
+
+  /**
+   * Replays a write recorded by the app with traceOp, on the same row and table. Apps which record
+   * their operations override this.
+   * @return Number of writes done, a value of 0 or less indicates no ops were done.
+   */
+  public long doReplayWrite(OpTrace.Record op) {
+    throw new UnsupportedOperationException(appConfig.appName + " cannot replay traces");
+  }
+
+  /**
+   * Replays a read recorded by the app with traceOp, on the same row and table.
+   * @return Number of reads done, a value of 0 or less indicates no ops were done.
+   */
+  public long doReplayRead(OpTrace.Record op) {
+    throw new UnsupportedOperationException(appConfig.appName + " cannot replay traces");
+  }
+
+  /**
+   * Called before the IO thread waits, for its turn on the target rate schedule or for a phase
+   * which runs it. Apps which queue operations to complete them later, as in a pipeline, override
+   * this to complete those which cannot wait that long.
+   * @param resumeTs when the thread resumes at the earliest, in System.nanoTime() terms, or
+   * Long.MAX_VALUE if not known
+   */
+  public void beforeWait(long resumeTs) {}
+
   /**
    * This call should implement the main logic in non-OLTP apps. Not called for OLTP apps.
    */
@@ -547,6 +688,12 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   @Override
   public void appendMessage(StringBuilder sb) {
     sb.append("Uptime: " + (System.currentTimeMillis() - workloadStartTime) + " ms | ");
+    if (writeSchedule != null) {
+      sb.append("Write schedule lag: " + writeSchedule.getLagNanos() / 1000000 + " ms | ");
+    }
+    if (readSchedule != null) {
+      sb.append("Read schedule lag: " + readSchedule.getLagNanos() / 1000000 + " ms | ");
+    }
   }
 
   /**
@@ -597,16 +744,175 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     workloadStartTime = System.currentTimeMillis();
     this.configuration = configuration;
     initialize(configuration);
+    initSchedules();
     if (enableMetrics) initMetricsTracker();
+    initPhaseSchedule(configuration == null ? null : configuration.getWorker());
+    initTrace();
+  }
+
+  private static synchronized void initTrace() {
+    try {
+      if (traceRecorder == null && appConfig.recordTracePath != null) {
+        traceRecorder = new TraceRecorder(appConfig.recordTracePath);
+        // Completes the trace however the run ends.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+          try {
+            traceRecorder.close();
+          } catch (IOException e) {
+            LOG.error("Could not complete the trace " + appConfig.recordTracePath, e);
+          }
+        }));
+      }
+      if (traceReplayer == null && appConfig.replayTracePath != null) {
+        traceReplayer = new TraceReplayer(appConfig.replayTracePath, appConfig.replaySpeed);
+        LOG.info("Replaying " + traceReplayer.getNumRecords() + " operations from " +
+                 appConfig.replayTracePath + (appConfig.replaySpeed > 0
+                     ? " at " + appConfig.replaySpeed + "x speed" : " as fast as possible"));
+      }
+    } catch (IOException e) {
+      LOG.error("Could not open the trace: ", e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * @return true if the IO threads replay a trace rather than generate operations.
+   */
+  public static boolean isReplaying() {
+    return traceReplayer != null;
+  }
+
+  private static synchronized void initSchedules() {
+    // A replay takes the timing of the operations from the trace.
+    if (appConfig.replayTracePath != null) {
+      return;
+    }
+    if (writeSchedule == null && appConfig.targetWriteOpsPerSec > 0) {
+      writeSchedule = new OpenLoopSchedule(appConfig.targetWriteOpsPerSec);
+    }
+    if (readSchedule == null && appConfig.targetReadOpsPerSec > 0) {
+      readSchedule = new OpenLoopSchedule(appConfig.targetReadOpsPerSec);
+    }
+  }
+
+  private static synchronized void initPhaseSchedule(CoordinatedWorker worker) {
+    if (phaseSchedule != null || appConfig.phases == null) {
+      return;
+    }
+    if (worker == null) {
+      phaseSchedule = new PhaseSchedule(appConfig.phases, AppBase::startPhase);
+      return;
+    }
+    // The phases of a worker start and end as the coordinator tells it to, which gets the metrics
+    // of each phase as it ends.
+    phaseSchedule = new PhaseSchedule(appConfig.phases, AppBase::startPhase, worker::drive);
+    if (metricsTracker != null) {
+      metricsTracker.addPhaseListener(worker);
+    }
+  }
+
+  /**
+   * @return the phases the workload moves through, or null if it runs as configured throughout.
+   */
+  public static PhaseSchedule getPhaseSchedule() {
+    return phaseSchedule;
+  }
+
+  /**
+   * Applies the settings of a phase as it starts, or ends the last one if null. The IO threads
+   * pick up the new schedules and key chooser with their next operation.
+   */
+  private static void startPhase(Phase phase) {
+    if (phase == null) {
+      if (metricsTracker != null) {
+        metricsTracker.startPhase(null);
+      }
+      return;
+    }
+    appConfig.valueSize = phase.valueSize;
+    appConfig.batchSize = phase.batchSize;
+    appConfig.targetReadOpsPerSec = phase.targetReadOpsPerSec;
+    appConfig.targetWriteOpsPerSec = phase.targetWriteOpsPerSec;
+    appConfig.keyDistribution = phase.keyDistribution;
+    appConfig.zipfianTheta = phase.zipfianTheta;
+    appConfig.hotspotOpFraction = phase.hotspotOpFraction;
+    appConfig.hotspotKeyFraction = phase.hotspotKeyFraction;
+    writeSchedule = phase.targetWriteOpsPerSec > 0
+        ? new OpenLoopSchedule(phase.targetWriteOpsPerSec) : null;
+    readSchedule = phase.targetReadOpsPerSec > 0
+        ? new OpenLoopSchedule(phase.targetReadOpsPerSec) : null;
+    synchronized (AppBase.class) {
+      if (simpleLoadGenerator != null) {
+        simpleLoadGenerator.setKeyChooser(createKeyChooser());
+      }
+    }
+    if (metricsTracker != null) {
+      metricsTracker.startPhase(phase.name);
+    }
+  }
+
+  /**
+   * @return true if the IO threads should issue operations asynchronously, with up to
+   * --max_inflight of them in flight at once.
+   */
+  public static boolean isAsync() {
+    return appConfig.maxInflight > 0;
+  }
+
+  /**
+   * @return the permits for operations in flight, shared by all the IO threads.
+   */
+  public static Semaphore getInflightLimiter() {
+    if (inflightLimiter == null) {
+      synchronized (AppBase.class) {
+        if (inflightLimiter == null) {
+          inflightLimiter = new Semaphore(appConfig.maxInflight);
+        }
+      }
+    }
+    return inflightLimiter;
   }
 
   public void enableMetrics() {
     initMetricsTracker();
   }
 
+  /**
+   * Returns what describes this run in the exported metrics.
+   */
+  private Map<String, String> getRunMetadata() {
+    Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("workload", appConfig.appName);
+    if (configuration != null) {
+      metadata.put("num_reader_threads", String.valueOf(configuration.getNumReaderThreads()));
+      metadata.put("num_writer_threads", String.valueOf(configuration.getNumWriterThreads()));
+    }
+    metadata.put("value_size", String.valueOf(appConfig.valueSize));
+    metadata.put("batch_size", String.valueOf(appConfig.batchSize));
+    metadata.put("key_distribution", appConfig.keyDistribution.name().toLowerCase());
+    metadata.put("target_read_ops_per_sec", String.valueOf(appConfig.targetReadOpsPerSec));
+    metadata.put("target_write_ops_per_sec", String.valueOf(appConfig.targetWriteOpsPerSec));
+    metadata.put("max_inflight", String.valueOf(appConfig.maxInflight));
+    if (configuration != null && configuration.getPhaseFile() != null) {
+      metadata.put("phase_file", configuration.getPhaseFile());
+    }
+    if (appConfig.replayTracePath != null) {
+      metadata.put("replay_trace", appConfig.replayTracePath);
+      metadata.put("replay_speed", String.valueOf(appConfig.replaySpeed));
+    }
+    metadata.put("git_sha", appConfig.gitSha == null ? "unknown" : appConfig.gitSha);
+    metadata.put("start_time_ms", String.valueOf(workloadStartTime));
+    return metadata;
+  }
+
   private synchronized void initMetricsTracker() {
     if (metricsTracker == null) {
-      metricsTracker = new MetricsTracker();
+      MetricsExporter exporter = null;
+      if (appConfig.metricsOutputDir != null || appConfig.metricsPort > 0) {
+        exporter = new MetricsExporter(appConfig.metricsOutputDir, appConfig.metricsPort,
+                                       getRunMetadata());
+      }
+      metricsTracker = new MetricsTracker(appConfig.metricsOutputDir, exporter);
       if (appConfig.appType == AppConfig.Type.OLTP) {
         metricsTracker.createMetric(MetricName.Read);
         metricsTracker.createMetric(MetricName.Write);
@@ -659,6 +965,9 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   }
 
   private boolean isOutOfTime() {
+    if (phaseSchedule != null) {
+      return phaseSchedule.isDone();
+    }
     return appConfig.runTimeSeconds > 0 &&
         (System.currentTimeMillis() - workloadStartTime > appConfig.runTimeSeconds * 1000);
   }
@@ -666,21 +975,61 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   /**
    * Called by the framework to perform write operations - internally measures the time taken to
    * perform the write op and keeps track of the number of keys written, so that we are able to
-   * report the metrics to the user.
+   * report the metrics to the user. With a target write rate, the write waits for its turn on the
+   * write schedule, and its latency is measured from when it was meant to start.
    * @param threadIdx index of thread that invoked this write.
    */
   public void performWrite(int threadIdx) {
+    long startTs = startWrite();
+    if (startTs == NOT_STARTED) {
+      return;
+    }
+    tracedOpType = OpTrace.OpType.WRITE;
+    tracedOpStartTs = startTs;
+    finishWrite(doWrite(threadIdx), startTs);
+  }
+
+  /**
+   * Like performWrite, for the async mode: the returned stage completes with the number of keys
+   * written once the write is done, without blocking the calling thread meanwhile.
+   * @param threadIdx index of thread that invoked this write.
+   */
+  public CompletionStage<Long> performWriteAsync(int threadIdx) {
+    long startTs = startWrite();
+    if (startTs == NOT_STARTED) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    tracedOpType = OpTrace.OpType.WRITE;
+    tracedOpStartTs = startTs;
+    return doWriteAsync(threadIdx).thenApply(count -> {
+      finishWrite(count, startTs);
+      return count;
+    });
+  }
+
+  /**
+   * Returns the time the next write starts at, or NOT_STARTED if the workload is done writing.
+   */
+  private long startWrite() {
     // If we have written enough keys we are done.
     if (appConfig.numKeysToWrite >= 0 && numKeysWritten.get() >= appConfig.numKeysToWrite
         || isOutOfTime()) {
       hasFinished.set(true);
-      return;
+      return NOT_STARTED;
     }
-    // Perform the write and track the number of successfully written keys.
-    long startTs = System.nanoTime();
-    long count = doWrite(threadIdx);
+    long startTs = awaitNextStart(writeSchedule);
+    return hasFinished() ? NOT_STARTED : startTs;
+  }
+
+  /**
+   * Tracks the number of successfully written keys.
+   */
+  private void finishWrite(long count, long startTs) {
     long endTs = System.nanoTime();
     if (count > 0) {
+      if (writeSchedule != null) {
+        writeSchedule.consume(count - 1);
+      }
       numKeysWritten.addAndGet(count);
       if (metricsTracker != null) {
         metricsTracker.getMetric(MetricName.Write).accumulate(count, endTs - startTs);
@@ -691,21 +1040,75 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
   /**
    * Called by the framework to perform read operations - internally measures the time taken to
    * perform the read op and keeps track of the number of keys read, so that we are able to
-   * report the metrics to the user.
+   * report the metrics to the user. With a target read rate, the read waits for its turn on the
+   * read schedule, and its latency is measured from when it was meant to start.
    */
   public void performRead() {
+    long startTs = startRead();
+    if (startTs == NOT_STARTED) {
+      return;
+    }
+    tracedOpType = OpTrace.OpType.READ;
+    tracedOpStartTs = startTs;
+    finishRead(doRead(), startTs);
+  }
 
+  /**
+   * Like performRead, for the async mode: the returned stage completes with the number of keys
+   * read once the read is done, without blocking the calling thread meanwhile.
+   */
+  public CompletionStage<Long> performReadAsync() {
+    long startTs = startRead();
+    if (startTs == NOT_STARTED) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    tracedOpType = OpTrace.OpType.READ;
+    tracedOpStartTs = startTs;
+    return doReadAsync().thenApply(count -> {
+      finishRead(count, startTs);
+      return count;
+    });
+  }
+
+  /**
+   * Returns the time the next read starts at, or NOT_STARTED if the workload is done reading.
+   */
+  private long startRead() {
     // If we have read enough keys we are done.
     if (appConfig.numKeysToRead >= 0 && numKeysRead.get() >= appConfig.numKeysToRead
         || isOutOfTime()) {
       hasFinished.set(true);
-      return;
+      return NOT_STARTED;
+    }
+    long startTs = awaitNextStart(readSchedule);
+    return hasFinished() ? NOT_STARTED : startTs;
+  }
+
+  /**
+   * Waits for the next turn on the given target rate schedule, if any, and returns the time the
+   * operation is meant to start at.
+   */
+  private long awaitNextStart(OpenLoopSchedule schedule) {
+    if (schedule == null) {
+      return System.nanoTime();
+    }
+    long startTs = schedule.claimNextStart();
+    if (startTs - System.nanoTime() > 0) {
+      beforeWait(startTs);
     }
-    // Perform the read and track the number of successfully read keys.
-    long startTs = System.nanoTime();
-    long count = doRead();
+    schedule.awaitStart(startTs, this::hasFinished);
+    return startTs;
+  }
+
+  /**
+   * Tracks the number of successfully read keys.
+   */
+  private void finishRead(long count, long startTs) {
     long endTs = System.nanoTime();
     if (count > 0) {
+      if (readSchedule != null) {
+        readSchedule.consume(count - 1);
+      }
       numKeysRead.addAndGet(count);
       if (metricsTracker != null) {
         metricsTracker.getMetric(MetricName.Read).accumulate(count, endTs - startTs);
@@ -713,6 +1116,92 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     }
   }
 
+  /**
+   * Called by the framework in place of performWrite and performRead when replaying a trace:
+   * performs the next operation of the trace once its time comes, and tracks it like a live one.
+   * Its latency is measured from when it was meant to start, so a replay which falls behind the
+   * trace shows in the latencies as a live workload falling behind its schedule does.
+   */
+  public void performReplayOp() {
+    try {
+      if (isOutOfTime() || !traceReplayer.next(replayedOp, this::hasFinished)) {
+        hasFinished.set(true);
+        return;
+      }
+    } catch (IOException e) {
+      LOG.error("Could not read the trace " + appConfig.replayTracePath, e);
+      hasFinished.set(true);
+      return;
+    }
+    if (hasFinished()) {
+      return;
+    }
+    switch (replayedOp.opType) {
+      case WRITE: finishWrite(doReplayWrite(replayedOp), replayedOp.startNanos); break;
+      case READ: finishRead(doReplayRead(replayedOp), replayedOp.startNanos); break;
+    }
+  }
+
+  /**
+   * Returns the time the operation being performed started at, as measured for its latency. For
+   * the apps which complete operations after doWrite or doRead returns, to report them with
+   * completeWrite and completeRead.
+   */
+  protected long getOpStartTs() {
+    return tracedOpStartTs;
+  }
+
+  /**
+   * Tracks writes which completed after the doWrite call which issued them returned, as in a
+   * pipeline. The doWrite call does not count them, and they are counted here instead.
+   * @param count the number of writes which succeeded
+   * @param startTs the time the writes started at, from getOpStartTs
+   */
+  protected void completeWrite(long count, long startTs) {
+    finishWrite(count, startTs);
+  }
+
+  /**
+   * Tracks reads which completed after the doRead call which issued them returned, like
+   * completeWrite.
+   */
+  protected void completeRead(long count, long startTs) {
+    finishRead(count, startTs);
+  }
+
+  /**
+   * Tracks a flush of the operations queued by an app which pipelines them, in the Flush metric.
+   * @param numOps the number of operations flushed
+   * @param latencyNanos how long the flush took
+   */
+  protected void recordFlush(long numOps, long latencyNanos) {
+    MetricsTracker tracker = metricsTracker;
+    if (tracker == null) {
+      return;
+    }
+    Metric flushes = tracker.getMetric(MetricName.Flush);
+    if (flushes == null) {
+      tracker.createMetric(MetricName.Flush);
+      flushes = tracker.getMetric(MetricName.Flush);
+    }
+    flushes.accumulate(numOps, latencyNanos);
+  }
+
+  /**
+   * Records an operation of the app to the trace, if recording one. Apps call this from doWrite
+   * and doRead (and their async variants) for each row they write or read, with what identifies
+   * the row to doReplayWrite and doReplayRead.
+   * @param table the table of the operation
+   * @param key what identifies the row within the app, such as the number of its key
+   * @param valueSize the size of the value written or read
+   */
+  protected void traceOp(String table, long key, int valueSize) {
+    TraceRecorder recorder = traceRecorder;
+    if (recorder != null) {
+      recorder.record(tracedOpType, table, key, valueSize, tracedOpStartTs);
+    }
+  }
+
   @Override
   public String appenderName() {
     return this.getClass().getSimpleName();
@@ -732,6 +1221,10 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
       cassandra_session.close();
       cassandra_session = null;
     }
+    if (mainInstance && postgresConnectionPool != null) {
+      postgresConnectionPool.close();
+      postgresConnectionPool = null;
+    }
     if (jedisClient != null) {
       jedisClient.close();
     }
@@ -741,15 +1234,22 @@ public abstract class AppBase implements MetricsTracker.StatusMessageAppender {
     if (simpleLoadGenerator == null) {
       synchronized (AppBase.class) {
         if (simpleLoadGenerator == null) {
-          simpleLoadGenerator = new SimpleLoadGenerator(0,
-              appConfig.numUniqueKeysToWrite,
-              appConfig.maxWrittenKey);
+          simpleLoadGenerator = new SimpleLoadGenerator(appConfig.startKey,
+              appConfig.startKey + appConfig.numUniqueKeysToWrite,
+              appConfig.maxWrittenKey,
+              createKeyChooser());
         }
       }
     }
     return simpleLoadGenerator;
   }
 
+  private static KeyChooser createKeyChooser() {
+    return KeyChooser.create(appConfig.keyDistribution, appConfig.numUniqueKeysToWrite,
+                             appConfig.zipfianTheta, appConfig.hotspotOpFraction,
+                             appConfig.hotspotKeyFraction);
+  }
+
   public static long numOps() {
     return numKeysRead.get() + numKeysWritten.get();
   }
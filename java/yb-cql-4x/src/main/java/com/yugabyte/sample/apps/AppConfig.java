@@ -13,7 +13,11 @@
 
 package com.yugabyte.sample.apps;
 
+import java.util.List;
+
 import com.yugabyte.sample.apps.AppBase.TableOp;
+import com.yugabyte.sample.common.KeyChooser;
+import com.yugabyte.sample.common.Phase;
 
 /**
  * This class encapsulates the various configuration parameters for the various apps.
@@ -71,6 +75,10 @@ public class AppConfig {
   // updates to existing keys.
   public long numUniqueKeysToWrite;
 
+  // The first of the numUniqueKeysToWrite keys. Several load testers coordinated to load one key
+  // space each start at their own key.
+  public long startKey = 0;
+
   // Used for RedisHash workloads. The number of subkeys that we want per key.
   public int numSubkeysPerKey = 100;
   public int numSubkeysPerWrite = 10;
@@ -140,6 +148,45 @@ public class AppConfig {
   // Run time for workload. Negative values means no limit.
   public long runTimeSeconds = -1;
 
+  // Rates at which to issue writes and reads across all IO threads, on a fixed schedule rather
+  // than as fast as the threads can. Not limited if not positive.
+  public double targetWriteOpsPerSec = -1;
+  public double targetReadOpsPerSec = -1;
+
+  // Maximum number of operations in flight across all IO threads, which issue them
+  // asynchronously. IO threads perform one operation at a time if not positive.
+  public int maxInflight = 0;
+
+  // How to pick the keys to read, and to update once all keys are written.
+  public KeyChooser.Distribution keyDistribution = KeyChooser.Distribution.UNIFORM;
+  // The skew of the ZIPFIAN and LATEST key distributions, in (0, 1).
+  public double zipfianTheta = 0.99;
+  // For the HOTSPOT key distribution, the share of operations on the hot keys, and the share of
+  // the keys which are hot.
+  public double hotspotOpFraction = 0.8;
+  public double hotspotKeyFraction = 0.2;
+
+  // The phases to run one after the other, which change the settings above as they start. The
+  // run ends with the last phase. Run as configured above, for runTimeSeconds, if null.
+  public List<Phase> phases = null;
+
+  // File to record a trace of the operations to, for replaying them later. Not recorded if null.
+  public String recordTracePath = null;
+  // Trace to replay the operations of, instead of generating them. Not replayed if null.
+  public String replayTracePath = null;
+  // How many times faster than they were recorded to replay the operations at, or as fast as
+  // possible if not positive.
+  public double replaySpeed = 1.0;
+
+  // Directory to write the metrics of the run to. Not written if null.
+  public String metricsOutputDir = null;
+
+  // Port to serve the metrics on for Prometheus to scrape. Not served if not positive.
+  public int metricsPort = 0;
+
+  // Git SHA of the build under test, recorded with the exported metrics.
+  public String gitSha = null;
+
   public String localDc;
 
   // Used by CassandraPersonalization workload.
@@ -171,6 +218,10 @@ public class AppConfig {
   // The number of client connections to establish to each host in the YugaByte DB cluster.
   public int concurrentClients = 4;
 
+  // The number of YSQL connections shared by the IO threads of the apps which use a pool. One per
+  // IO thread if not positive.
+  public int sqlPoolSize = 0;
+
   // The path to the certificate to be used for the SSL connection.
   public String sslCert = null;
   // Number of devices to simulate data for CassandraEventData workload
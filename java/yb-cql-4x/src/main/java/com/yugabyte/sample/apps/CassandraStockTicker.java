@@ -17,19 +17,32 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.log4j.Logger;
 
+import com.datastax.oss.driver.api.core.cql.AsyncResultSet;
 import com.datastax.oss.driver.api.core.cql.BoundStatement;
 import com.datastax.oss.driver.api.core.cql.PreparedStatement;
 import com.datastax.oss.driver.api.core.cql.ResultSet;
 import com.datastax.oss.driver.api.core.cql.Row;
 import com.yugabyte.sample.common.CmdLineOpts;
+import com.yugabyte.sample.common.PartitionBatchWriter;
 import com.yugabyte.sample.common.TimeseriesLoadGenerator;
-
+import com.yugabyte.sample.common.trace.OpTrace;
+
+/**
+ * With a --batch_size over 1, the data points are not written one per statement but buffered per
+ * ticker, which is the partition key of both tables, and each ticker's points written as one
+ * unlogged batch once --batch_size of them are buffered or the first has waited
+ * --batch_flush_interval_ms. The batch is routed to a node owning the ticker. The Write metric
+ * then counts points, with the latency of each from when it was generated to when its batch was
+ * written, and the Flush metric counts batches.
+ */
 public class CassandraStockTicker extends AppBase {
   private static final Logger LOG = Logger.getLogger(CassandraStockTicker.class);
   // Static initialization of this workload's config.
@@ -65,6 +78,11 @@ public class CassandraStockTicker extends AppBase {
   private static volatile PreparedStatement preparedInsertMin;
   // Lock for initializing prepared statement objects.
   private static final Object prepareInitLock = new Object();
+  // The longest time a data point waits in its ticker's batch, with a --batch_size over 1.
+  private static long batch_flush_interval_millis = 1000;
+  // The writers batching the data points per ticker into each table, with a --batch_size over 1.
+  private static volatile PartitionBatchWriter rawBatchWriter;
+  private static volatile PartitionBatchWriter minBatchWriter;
 
   @Override
   public void initialize(CmdLineOpts configuration) {
@@ -87,6 +105,11 @@ public class CassandraStockTicker extends AppBase {
             Long.parseLong(commandLine.getOptionValue("data_emit_rate_millis"));
         LOG.info("data_emit_rate_millis: " + data_emit_rate_millis);
       }
+      if (commandLine.hasOption("batch_flush_interval_ms")) {
+        batch_flush_interval_millis =
+            Long.parseLong(commandLine.getOptionValue("batch_flush_interval_ms"));
+        LOG.info("batch_flush_interval_ms: " + batch_flush_interval_millis);
+      }
 
       int ticker_symbol_idx = 0;
       while (ticker_symbol_idx < num_ticker_symbols) {
@@ -163,6 +186,7 @@ public class CassandraStockTicker extends AppBase {
     if (!dataSource.getHasEmittedData()) {
       return 0;
     }
+    traceOp(tickerTableRaw, dataSource.tickerIdx, 0);
     long startTs = dataSource.getStartTs();
     long endTs = dataSource.getEndTs();
 
@@ -176,6 +200,25 @@ public class CassandraStockTicker extends AppBase {
     return 1;
   }
 
+  @Override
+  public CompletionStage<Long> doReadAsync() {
+    // Pick a random data source.
+    TickerInfo dataSource = tickers.get(random.nextInt(tickers.size()));
+    // Make sure it has emitted data, otherwise there is nothing to read.
+    if (!dataSource.getHasEmittedData()) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    traceOp(tickerTableRaw, dataSource.tickerIdx, 0);
+
+    // Bind the select statement.
+    BoundStatement select = getPreparedSelectLatest().bind(dataSource.getTickerId());
+    // Make the query. The latest data point fits in the first page.
+    return getCassandraClient().executeAsync(select).thenApply(rs -> {
+      num_rows_read.addAndGet(rs.remaining());
+      return 1L;
+    });
+  }
+
   private PreparedStatement getPreparedInsertRaw()  {
     if (preparedInsertRaw == null) {
       synchronized (prepareInitLock) {
@@ -206,6 +249,76 @@ public class CassandraStockTicker extends AppBase {
     return preparedInsertMin;
   }
 
+  private boolean batchesWrites() {
+    return appConfig.batchSize > 1 && !isReplaying();
+  }
+
+  private PartitionBatchWriter getRawBatchWriter() {
+    if (rawBatchWriter == null) {
+      synchronized (prepareInitLock) {
+        if (rawBatchWriter == null) {
+          rawBatchWriter = new PartitionBatchWriter(
+              tickerTableRaw, this::getCassandraClient, this::rawBatchWritten,
+              batch_flush_interval_millis);
+        }
+      }
+    }
+    return rawBatchWriter;
+  }
+
+  private PartitionBatchWriter getMinBatchWriter() {
+    if (minBatchWriter == null) {
+      synchronized (prepareInitLock) {
+        if (minBatchWriter == null) {
+          minBatchWriter = new PartitionBatchWriter(
+              tickerTableMin, this::getCassandraClient, this::minBatchWritten,
+              batch_flush_interval_millis);
+        }
+      }
+    }
+    return minBatchWriter;
+  }
+
+  private void rawBatchWritten(Object ticker, int numPoints, long[] pointStartTs,
+                               long writeStartTs, long lastTs, Exception error) {
+    minBatchWritten(ticker, numPoints, pointStartTs, writeStartTs, lastTs, error);
+    if (error == null) {
+      // The latest point is only readable once its batch is written.
+      ((TickerInfo) ticker).setLastEmittedTs(lastTs);
+    }
+  }
+
+  private void minBatchWritten(Object ticker, int numPoints, long[] pointStartTs,
+                               long writeStartTs, long lastTs, Exception error) {
+    if (error != null) {
+      // The points are lost, and the error counted by the thread which wrote the batch.
+      return;
+    }
+    recordFlush(numPoints, System.nanoTime() - writeStartTs);
+    for (long startTs : pointStartTs) {
+      completeWrite(1, startTs);
+    }
+  }
+
+  /**
+   * Buffers a data point of the ticker into its batches, writing those which are full.
+   */
+  private void batchWrite(TickerInfo dataSource, long ts, String value) {
+    long startTs = getOpStartTs();
+    BoundStatement insertRaw =
+        getPreparedInsertRaw().bind(dataSource.getTickerId(), new Date(ts), value);
+    traceOp(tickerTableRaw, dataSource.tickerIdx, value.length());
+    getRawBatchWriter().add(dataSource, insertRaw, ts, startTs, appConfig.batchSize);
+
+    // With some probability, insert into the minutely table.
+    if (random.nextInt(60000) < data_emit_rate_millis) {
+      BoundStatement insertMin =
+          getPreparedInsertMin().bind(dataSource.getTickerId(), new Date(ts), value);
+      traceOp(tickerTableMin, dataSource.tickerIdx, value.length());
+      getMinBatchWriter().add(dataSource, insertMin, ts, startTs, appConfig.batchSize);
+    }
+  }
+
   @Override
   public synchronized void resetClients() {
     synchronized (prepareInitLock) {
@@ -231,7 +344,7 @@ public class CassandraStockTicker extends AppBase {
     // Pick a random data source.
     TickerInfo dataSource = tickers.get(random.nextInt(tickers.size()));
     // Enter as many data points as are needed.
-    long ts = dataSource.getDataEmitTs();
+    long ts = batchesWrites() ? dataSource.claimDataEmitTs() : dataSource.getDataEmitTs();
     long numKeysWritten = 0;
     String value = String.format("value-%s", ts);
     // If we have nothing to write, we're done.
@@ -241,11 +354,17 @@ public class CassandraStockTicker extends AppBase {
       } catch (Exception e) {}
       return 0; /* numKeysWritten */
     }
+    if (batchesWrites()) {
+      // The points are counted as their batches are written.
+      batchWrite(dataSource, ts, value);
+      return QUEUED;
+    }
 
     // Insert the row.
     BoundStatement insertRaw =
         getPreparedInsertRaw().bind(dataSource.getTickerId(), new Date(ts), value);
     ResultSet resultSet = getCassandraClient().execute(insertRaw);
+    traceOp(tickerTableRaw, dataSource.tickerIdx, value.length());
     numKeysWritten++;
     dataSource.setLastEmittedTs(ts);
 
@@ -254,17 +373,112 @@ public class CassandraStockTicker extends AppBase {
       BoundStatement insertMin =
           getPreparedInsertMin().bind(dataSource.getTickerId(), new Date(ts), value);
       resultSet = getCassandraClient().execute(insertMin);
+      traceOp(tickerTableMin, dataSource.tickerIdx, value.length());
       numKeysWritten++;
     }
 
     return numKeysWritten;
   }
 
+  @Override
+  public CompletionStage<Long> doWriteAsync(int threadIdx) {
+    // Pick a random data source.
+    TickerInfo dataSource = tickers.get(random.nextInt(tickers.size()));
+    // Several writes of a ticker may be in flight, so the timestamp is claimed for this one before
+    // the earlier ones are written.
+    long ts = dataSource.claimDataEmitTs();
+    // If we have nothing to write, we're done. The IO thread backs off instead of sleeping here.
+    if (ts == -1) {
+      return CompletableFuture.completedFuture(0L);
+    }
+    String value = String.format("value-%s", ts);
+    if (batchesWrites()) {
+      // Full batches are written synchronously, the points counted as their batches are written.
+      batchWrite(dataSource, ts, value);
+      return CompletableFuture.completedFuture(QUEUED);
+    }
+
+    // Insert the row.
+    BoundStatement insertRaw =
+        getPreparedInsertRaw().bind(dataSource.getTickerId(), new Date(ts), value);
+    traceOp(tickerTableRaw, dataSource.tickerIdx, value.length());
+    CompletionStage<Long> result = getCassandraClient().executeAsync(insertRaw).thenApply(rs -> {
+      dataSource.setLastEmittedTs(ts);
+      return 1L;
+    });
+
+    // With some probability, insert into the minutely table.
+    if (random.nextInt(60000) < data_emit_rate_millis) {
+      BoundStatement insertMin =
+          getPreparedInsertMin().bind(dataSource.getTickerId(), new Date(ts), value);
+      traceOp(tickerTableMin, dataSource.tickerIdx, value.length());
+      CompletionStage<AsyncResultSet> minResult = getCassandraClient().executeAsync(insertMin);
+      result = result.thenCombine(minResult, (numKeysWritten, rs) -> numKeysWritten + 1);
+    }
+    return result;
+  }
+
+  @Override
+  public boolean supportsReplay() {
+    return true;
+  }
+
+  /**
+   * Replays a data point written to either table by the ticker it was written by. The point is
+   * timestamped with the time it was recorded at, so that replaying a trace twice writes the same
+   * rows.
+   */
+  @Override
+  public long doReplayWrite(OpTrace.Record op) {
+    TickerInfo dataSource = tickers.get((int) (op.key % tickers.size()));
+    long ts = op.epochMillis;
+    String value = String.format("value-%s", ts);
+    PreparedStatement insert =
+        tickerTableMin.equals(op.table) ? getPreparedInsertMin() : getPreparedInsertRaw();
+    getCassandraClient().execute(insert.bind(dataSource.getTickerId(), new Date(ts), value));
+    dataSource.setLastEmittedTs(ts);
+    return 1;
+  }
+
+  /**
+   * Replays a read of the latest data point of a ticker. Unlike doRead, it reads whether or not
+   * the ticker has written data in this run, as it had when the read was recorded.
+   */
+  @Override
+  public long doReplayRead(OpTrace.Record op) {
+    TickerInfo dataSource = tickers.get((int) (op.key % tickers.size()));
+    BoundStatement select = getPreparedSelectLatest().bind(dataSource.getTickerId());
+    List<Row> rows = getCassandraClient().execute(select).all();
+    num_rows_read.addAndGet(rows.size());
+    return 1;
+  }
+
+  @Override
+  public void terminate() {
+    // Write the data points still buffered.
+    for (PartitionBatchWriter writer : Arrays.asList(rawBatchWriter, minBatchWriter)) {
+      if (writer == null) {
+        continue;
+      }
+      try {
+        writer.flush();
+      } catch (RuntimeException e) {
+        LOG.info("Could not write the buffered data points at the end of the run", e);
+      }
+    }
+    super.terminate();
+  }
+
   @Override
   public void appendMessage(StringBuilder sb) {
     super.appendMessage(sb);
     sb.append("Rows read: " + num_rows_read.get());
     sb.append(" | ");
+    PartitionBatchWriter writer = rawBatchWriter;
+    if (writer != null) {
+      sb.append(String.format("Batches written: %d (%.0f%% full) | ", writer.getNumBatches(),
+                              100 * writer.getFillRatio(appConfig.batchSize)));
+    }
   }
 
   /**
@@ -273,8 +487,9 @@ public class CassandraStockTicker extends AppBase {
    * governed by emit rate.
    */
   public static class TickerInfo extends TimeseriesLoadGenerator {
-    // The ticker id this data source represents.
+    // The ticker id this data source represents, and its index in tickers.
     String ticker_id;
+    final int tickerIdx;
     // The data emit rate.
     long dataEmitRateMs;
 
@@ -282,6 +497,7 @@ public class CassandraStockTicker extends AppBase {
       super(ticker_idx, dataEmitRateMs, appConfig.tableTTLSeconds * 1000L);
       this.dataEmitRateMs = dataEmitRateMs;
       this.ticker_id = super.getId();
+      this.tickerIdx = ticker_idx;
     }
 
     public String getTickerId() {
@@ -320,7 +536,13 @@ public class CassandraStockTicker extends AppBase {
       "--num_threads_read " + appConfig.numReaderThreads,
       "--num_threads_write " + appConfig.numWriterThreads,
       "--num_ticker_symbols " + num_ticker_symbols,
+      "--max_inflight " + appConfig.maxInflight,
       "--data_emit_rate_millis " + data_emit_rate_millis,
+      "--batch_size " + appConfig.batchSize,
+      "--batch_flush_interval_ms " + batch_flush_interval_millis,
+      "--record_trace <file>",
+      "--replay_trace <file>",
+      "--replay_speed 1",
       "--table_ttl_seconds " + appConfig.tableTTLSeconds);
   }
 }
@@ -0,0 +1,342 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.apps;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.log4j.Logger;
+
+import com.yugabyte.sample.common.CmdLineOpts;
+import com.yugabyte.sample.common.SimpleLoadGenerator.Key;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisMovedDataException;
+import redis.clients.util.JedisClusterCRC16;
+
+/**
+ * This workload writes and reads key-value pairs through YEDIS, many commands at a time. Each IO
+ * thread queues its commands in a pipeline, and syncs the pipeline once --pipeline_length commands
+ * are queued or the oldest has waited --pipeline_flush_interval_ms, so the throughput is not
+ * bounded by the round trip of each command. A thread about to wait for its turn on the target
+ * rate schedule, or for the next phase, syncs its pipeline first if the oldest command would wait
+ * longer than that.
+ *
+ * Each command is tracked on its own as its pipeline is synced: a write is recorded as written
+ * only once it succeeded, so that reads only pick keys which are there, and a read verifies the
+ * value of its key. The Read and Write metrics are per command, from when it was issued to when
+ * its pipeline was synced, and the Flush metric is per sync.
+ *
+ * With --use_redis_cluster, the commands are grouped by the hash slot of their key, and each group
+ * queued in a pipeline to the node owning the slot, as found from the JedisCluster.
+ */
+public class RedisPipelinedKeyValue extends AppBase {
+  private static final Logger LOG = Logger.getLogger(RedisPipelinedKeyValue.class);
+
+  // Static initialization of this workload's config.
+  static {
+    // Disable the read-write percentage.
+    appConfig.readIOPSPercentage = -1;
+    // Set the read and write threads to 2 each.
+    appConfig.numReaderThreads = 2;
+    appConfig.numWriterThreads = 2;
+    // Set the number of keys to read and write.
+    appConfig.numKeysToRead = -1;
+    appConfig.numKeysToWrite = -1;
+    appConfig.numUniqueKeysToWrite = NUM_UNIQUE_KEYS;
+    appConfig.redisPipelineLength = 100;
+  }
+
+  private static final int NUM_SLOTS = 16384;
+
+  // Longest time a command waits in its pipeline before the pipeline is synced.
+  private static long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+  // In cluster mode, the node owning each hash slot, as host:port.
+  private static volatile String[] slotNodes = null;
+
+  /**
+   * A command queued in a pipeline, until the pipeline is synced.
+   */
+  private static class PendingCommand {
+    final Key key;
+    final boolean isWrite;
+    final Response<String> response;
+    // When the command was issued, in System.nanoTime() terms.
+    final long startTs;
+
+    PendingCommand(Key key, boolean isWrite, Response<String> response, long startTs) {
+      this.key = key;
+      this.isWrite = isWrite;
+      this.response = response;
+      this.startTs = startTs;
+    }
+  }
+
+  // The commands queued by this instance which are yet to be synced.
+  private final List<PendingCommand> pending = new ArrayList<>();
+  // In cluster mode, the connections of this instance to the nodes and their pipelines.
+  private final Map<String, Jedis> nodeConnections = new HashMap<>();
+  private final Map<String, Pipeline> nodePipelines = new HashMap<>();
+
+  @Override
+  public void initialize(CmdLineOpts configuration) {
+    CommandLine commandLine = configuration.getCommandLine();
+    if (commandLine.hasOption("pipeline_length")) {
+      appConfig.redisPipelineLength =
+          Integer.parseInt(commandLine.getOptionValue("pipeline_length"));
+      if (appConfig.redisPipelineLength < 1) {
+        LOG.error("--pipeline_length needs to be at least 1");
+        System.exit(1);
+      }
+    }
+    if (commandLine.hasOption("pipeline_flush_interval_ms")) {
+      flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+          Long.parseLong(commandLine.getOptionValue("pipeline_flush_interval_ms")));
+    }
+  }
+
+  @Override
+  public long doRead() {
+    Key key = getSimpleLoadGenerator().getKeyToRead();
+    if (key == null) {
+      // There are no keys to read yet, only those queued to flush.
+      flushIfDue();
+      return 0;
+    }
+    String redisKey = key.asString();
+    pending.add(new PendingCommand(key, false, getPipeline(redisKey).get(redisKey),
+                                   getOpStartTs()));
+    flushIfDue();
+    // The read is counted once its pipeline is synced.
+    return QUEUED;
+  }
+
+  @Override
+  public long doWrite(int threadIdx) {
+    Key key = getSimpleLoadGenerator().getKeyToWrite();
+    String redisKey = key.asString();
+    pending.add(new PendingCommand(key, true,
+                                   getPipeline(redisKey).set(redisKey, key.getValueStr()),
+                                   getOpStartTs()));
+    flushIfDue();
+    // The write is counted once its pipeline is synced.
+    return QUEUED;
+  }
+
+  @Override
+  public void beforeWait(long resumeTs) {
+    if (!pending.isEmpty() && (resumeTs == Long.MAX_VALUE ||
+                               resumeTs - pending.get(0).startTs >= flushIntervalNanos)) {
+      flush();
+    }
+  }
+
+  /**
+   * Syncs the pipelines if they are full, or the oldest command has waited long enough.
+   */
+  private void flushIfDue() {
+    if (pending.size() >= appConfig.redisPipelineLength ||
+        !pending.isEmpty() && System.nanoTime() - pending.get(0).startTs >= flushIntervalNanos) {
+      flush();
+    }
+  }
+
+  /**
+   * Syncs the pipelines, and tracks each of the commands queued in them.
+   */
+  private void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    long flushStartTs = System.nanoTime();
+    try {
+      if (appConfig.useRedisCluster) {
+        for (Pipeline pipeline : nodePipelines.values()) {
+          pipeline.sync();
+        }
+      } else {
+        getRedisPipeline().sync();
+      }
+    } catch (RuntimeException e) {
+      // The connection is broken, and the commands on it lost.
+      for (PendingCommand command : pending) {
+        if (command.isWrite) {
+          getSimpleLoadGenerator().recordWriteFailure(command.key);
+        }
+      }
+      pending.clear();
+      closeConnections();
+      throw e;
+    }
+    recordFlush(pending.size(), System.nanoTime() - flushStartTs);
+
+    boolean slotsMoved = false;
+    for (PendingCommand command : pending) {
+      String value;
+      try {
+        value = command.response.get();
+      } catch (JedisMovedDataException e) {
+        slotsMoved = true;
+        failCommand(command, e);
+        continue;
+      } catch (RuntimeException e) {
+        failCommand(command, e);
+        continue;
+      }
+      if (command.isWrite) {
+        if (!"OK".equals(value)) {
+          failCommand(command, new IllegalStateException("SET returned " + value));
+          continue;
+        }
+        getSimpleLoadGenerator().recordWriteSuccess(command.key);
+        completeWrite(1, command.startTs);
+      } else {
+        if (value == null) {
+          LOG.error("Read key: " + command.key.asString() + " found no value");
+          continue;
+        }
+        command.key.verify(value);
+        completeRead(1, command.startTs);
+      }
+    }
+    pending.clear();
+    if (slotsMoved) {
+      // The slots moved between nodes, find where they are now.
+      LOG.info("Hash slots moved, reloading the nodes owning them");
+      slotNodes = null;
+      closeConnections();
+    }
+  }
+
+  private void failCommand(PendingCommand command, RuntimeException e) {
+    if (command.isWrite) {
+      getSimpleLoadGenerator().recordWriteFailure(command.key);
+    }
+    LOG.debug("Command on key " + command.key.asString() + " failed", e);
+  }
+
+  /**
+   * Returns the pipeline to queue a command on the key in.
+   */
+  private Pipeline getPipeline(String redisKey) {
+    if (!appConfig.useRedisCluster) {
+      return getRedisPipeline();
+    }
+    String node = getSlotNodes()[JedisClusterCRC16.getSlot(redisKey)];
+    Pipeline pipeline = nodePipelines.get(node);
+    if (pipeline == null) {
+      JedisPool pool = getRedisCluster().getClusterNodes().get(node);
+      if (pool == null) {
+        throw new IllegalStateException("No connection to node " + node + " of the cluster");
+      }
+      Jedis connection = pool.getResource();
+      nodeConnections.put(node, connection);
+      pipeline = connection.pipelined();
+      nodePipelines.put(node, pipeline);
+    }
+    return pipeline;
+  }
+
+  /**
+   * Returns the node owning each slot, from CLUSTER SLOTS on any of the nodes.
+   */
+  private String[] getSlotNodes() {
+    String[] nodes = slotNodes;
+    if (nodes != null) {
+      return nodes;
+    }
+    synchronized (RedisPipelinedKeyValue.class) {
+      if (slotNodes != null) {
+        return slotNodes;
+      }
+      nodes = new String[NUM_SLOTS];
+      JedisPool anyPool = getRedisCluster().getClusterNodes().values().iterator().next();
+      try (Jedis jedis = anyPool.getResource()) {
+        // Each range is [first slot, last slot, [host, port, ...] of its master, replicas...].
+        for (Object range : jedis.clusterSlots()) {
+          List<?> slots = (List<?>) range;
+          List<?> master = (List<?>) slots.get(2);
+          String node = new String((byte[]) master.get(0), StandardCharsets.UTF_8) + ":" +
+                        master.get(1);
+          for (long slot = (Long) slots.get(0); slot <= (Long) slots.get(1); slot++) {
+            nodes[(int) slot] = node;
+          }
+        }
+      }
+      slotNodes = nodes;
+      return nodes;
+    }
+  }
+
+  private void closeConnections() {
+    if (appConfig.useRedisCluster) {
+      for (Jedis connection : nodeConnections.values()) {
+        try {
+          connection.close();
+        } catch (RuntimeException e) {
+          LOG.debug("Could not close a connection to the cluster", e);
+        }
+      }
+      nodeConnections.clear();
+      nodePipelines.clear();
+    } else {
+      destroyClients();
+      resetClients();
+    }
+  }
+
+  @Override
+  public void terminate() {
+    // Complete the commands still queued.
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      LOG.info("Could not flush the pipeline at the end of the run", e);
+    }
+    closeConnections();
+    super.terminate();
+  }
+
+  @Override
+  public List<String> getWorkloadDescription() {
+    return Arrays.asList(
+      "Sample key-value app built on Redis that pipelines its commands. Each thread queues its",
+      " commands and syncs them at once when enough are queued or the oldest has waited long",
+      " enough. Reads verify the values written. With --use_redis_cluster, commands are grouped",
+      " by hash slot into a pipeline to the node owning it.");
+  }
+
+  @Override
+  public List<String> getWorkloadOptionalArguments() {
+    return Arrays.asList(
+      "--num_unique_keys " + appConfig.numUniqueKeysToWrite,
+      "--num_reads " + appConfig.numKeysToRead,
+      "--num_writes " + appConfig.numKeysToWrite,
+      "--num_threads_read " + appConfig.numReaderThreads,
+      "--num_threads_write " + appConfig.numWriterThreads,
+      "--pipeline_length " + appConfig.redisPipelineLength,
+      "--pipeline_flush_interval_ms " + TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos),
+      "--use_redis_cluster");
+  }
+}
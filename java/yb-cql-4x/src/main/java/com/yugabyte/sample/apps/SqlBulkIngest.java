@@ -0,0 +1,310 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.apps;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.log4j.Logger;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import com.yugabyte.sample.common.CmdLineOpts;
+import com.yugabyte.sample.common.ConnectionPool;
+import com.yugabyte.sample.common.SimpleLoadGenerator.Key;
+
+/**
+ * This workload loads key-value rows into a YSQL table as fast as it can, in batches of
+ * --batch_size rows, to measure bulk ingest. The batches are written with one of:
+ *   - insert: a prepared single-row INSERT per row, one row per batch.
+ *   - batch: the prepared INSERT batched with addBatch, which the driver rewrites into multi-row
+ *            INSERT ... VALUES statements (reWriteBatchedInserts).
+ *   - copy: a COPY FROM STDIN per batch, streaming the rows through the CopyManager.
+ * The writers share a pool of connections. The write metrics count rows, so the throughput is in
+ * rows/sec and the latency is per batch. The readers read back the rows written and verify them.
+ */
+public class SqlBulkIngest extends AppBase {
+  private static final Logger LOG = Logger.getLogger(SqlBulkIngest.class);
+
+  // Static initialization of this workload's config.
+  static {
+    // Disable the read-write percentage.
+    appConfig.readIOPSPercentage = -1;
+    // Ingest with many writers, and verify with a couple of readers.
+    appConfig.numReaderThreads = 2;
+    appConfig.numWriterThreads = 8;
+    // Load each key once, and read for as long as the workload runs.
+    appConfig.numUniqueKeysToWrite = NUM_UNIQUE_KEYS;
+    appConfig.numKeysToWrite = NUM_UNIQUE_KEYS;
+    appConfig.numKeysToRead = -1;
+    appConfig.batchSize = 500;
+  }
+
+  /**
+   * How the rows are written.
+   */
+  enum IngestMode {
+    INSERT,
+    BATCH,
+    COPY,
+  }
+
+  // The default table name to create and use for CRUD ops.
+  private static final String DEFAULT_TABLE_NAME = "SqlBulkIngest";
+  // Bytes of rows to buffer before sending them to the COPY.
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+  private static IngestMode ingestMode = IngestMode.BATCH;
+  // Rows per transaction of a COPY, committed as one transaction if not positive.
+  private static int copyChunkSize = 0;
+
+  // The number of batches and rows written so far.
+  private static final AtomicLong numBatchesWritten = new AtomicLong(0);
+  private static final AtomicLong numRowsWritten = new AtomicLong(0);
+
+  // The rows of the COPY this instance is writing, before they are sent.
+  private final StringBuilder copyBuffer = new StringBuilder(COPY_BUFFER_SIZE);
+
+  @Override
+  public void initialize(CmdLineOpts configuration) {
+    CommandLine commandLine = configuration.getCommandLine();
+    if (commandLine.hasOption("ingest_mode")) {
+      try {
+        ingestMode = IngestMode.valueOf(commandLine.getOptionValue("ingest_mode").toUpperCase());
+      } catch (IllegalArgumentException e) {
+        LOG.error("Unknown --ingest_mode " + commandLine.getOptionValue("ingest_mode") +
+                  ", expected insert, batch or copy");
+        System.exit(1);
+      }
+    }
+    if (commandLine.hasOption("copy_chunk_size")) {
+      copyChunkSize = Integer.parseInt(commandLine.getOptionValue("copy_chunk_size"));
+    }
+    // Each key is inserted once, as there are no updates to ingest.
+    if (appConfig.numKeysToWrite < 0 ||
+        appConfig.numKeysToWrite > appConfig.numUniqueKeysToWrite) {
+      appConfig.numKeysToWrite = appConfig.numUniqueKeysToWrite;
+    }
+    LOG.info("Ingest mode: " + ingestMode.name().toLowerCase() + ", rows: " +
+             appConfig.numKeysToWrite);
+  }
+
+  public String getTableName() {
+    String tableName = appConfig.tableName != null ? appConfig.tableName : DEFAULT_TABLE_NAME;
+    return tableName.toLowerCase();
+  }
+
+  @Override
+  public void createTablesIfNeeded(TableOp tableOp) throws Exception {
+    try (Connection connection = getPostgresConnection();
+         Statement statement = connection.createStatement()) {
+      if (tableOp.equals(TableOp.DropTable)) {
+        statement.execute(String.format("DROP TABLE IF EXISTS %s", getTableName()));
+        LOG.info("Dropping any table(s) left from previous runs if any");
+      }
+      statement.execute(String.format(
+          "CREATE TABLE IF NOT EXISTS %s (k text PRIMARY KEY, v text)", getTableName()));
+      LOG.info(String.format("Created table: %s", getTableName()));
+      if (tableOp.equals(TableOp.TruncateTable)) {
+        statement.execute(String.format("TRUNCATE TABLE %s", getTableName()));
+        LOG.info(String.format("Truncated table: %s", getTableName()));
+      }
+    }
+  }
+
+  @Override
+  public void dropTable() throws Exception {
+    try (Connection connection = getPostgresConnection();
+         Statement statement = connection.createStatement()) {
+      statement.execute(String.format("DROP TABLE IF EXISTS %s", getTableName()));
+      LOG.info(String.format("Dropped table: %s", getTableName()));
+    }
+  }
+
+  private String getValue(Key key) {
+    return appConfig.valueSize > 0 ? key.getValueStr(0, appConfig.valueSize)
+                                   : key.getValueStr();
+  }
+
+  @Override
+  public long doRead() {
+    Key key = getSimpleLoadGenerator().getKeyToRead();
+    if (key == null) {
+      // There are no keys to read yet.
+      return 0;
+    }
+    ConnectionPool pool = getPostgresConnectionPool();
+    Connection connection = null;
+    try {
+      connection = pool.borrow();
+      String value = null;
+      boolean found = false;
+      // Prepared once per connection of the pool.
+      PreparedStatement select = pool.prepare(
+          connection, String.format("SELECT v FROM %s WHERE k = ?", getTableName()));
+      select.setString(1, key.asString());
+      try (ResultSet rs = select.executeQuery()) {
+        if (rs.next()) {
+          found = true;
+          value = rs.getString(1);
+        }
+      }
+      pool.release(connection);
+      if (!found) {
+        LOG.error("Read key: " + key.asString() + " expected 1 row in result, got 0");
+        return 0;
+      }
+      if (!getValue(key).equals(value)) {
+        LOG.fatal("Value mismatch for key: " + key.asString() + ", expected: " +
+                  getValue(key) + ", got: " + value);
+      }
+      return 1;
+    } catch (Exception e) {
+      if (connection != null) {
+        pool.discard(connection);
+      }
+      throw new RuntimeException("Failed reading key: " + key.asString(), e);
+    }
+  }
+
+  @Override
+  public long doWrite(int threadIdx) {
+    // Take the keys of the batch, as long as there are new keys to insert.
+    int batchSize = ingestMode == IngestMode.INSERT ? 1 : appConfig.batchSize;
+    List<Key> keys = new ArrayList<>(batchSize);
+    Key newKey;
+    while (keys.size() < batchSize &&
+           (newKey = getSimpleLoadGenerator().getNewKeyToWrite()) != null) {
+      keys.add(newKey);
+    }
+    if (keys.isEmpty()) {
+      // All the keys are loaded.
+      stopApp();
+      return 0;
+    }
+
+    ConnectionPool pool = getPostgresConnectionPool();
+    Connection connection = null;
+    try {
+      connection = pool.borrow();
+      if (ingestMode == IngestMode.COPY) {
+        copy(connection, keys);
+      } else {
+        insert(pool, connection, keys);
+      }
+      pool.release(connection);
+    } catch (Exception e) {
+      if (connection != null) {
+        pool.discard(connection);
+      }
+      for (Key key : keys) {
+        getSimpleLoadGenerator().recordWriteFailure(key);
+      }
+      throw new RuntimeException("Failed writing a batch of " + keys.size() + " rows", e);
+    }
+    for (Key key : keys) {
+      getSimpleLoadGenerator().recordWriteSuccess(key);
+    }
+    numBatchesWritten.incrementAndGet();
+    numRowsWritten.addAndGet(keys.size());
+    return keys.size();
+  }
+
+  private void insert(ConnectionPool pool, Connection connection, List<Key> keys)
+      throws Exception {
+    // Prepared once per connection of the pool.
+    PreparedStatement insert = pool.prepare(
+        connection, String.format("INSERT INTO %s (k, v) VALUES (?, ?)", getTableName()));
+    if (keys.size() == 1) {
+      insert.setString(1, keys.get(0).asString());
+      insert.setString(2, getValue(keys.get(0)));
+      insert.executeUpdate();
+      return;
+    }
+    for (Key key : keys) {
+      insert.setString(1, key.asString());
+      insert.setString(2, getValue(key));
+      insert.addBatch();
+    }
+    insert.executeBatch();
+  }
+
+  private void copy(Connection connection, List<Key> keys) throws Exception {
+    String copyStmt = String.format("COPY %s (k, v) FROM STDIN", getTableName());
+    if (copyChunkSize > 0) {
+      copyStmt += " WITH (ROWS_PER_TRANSACTION " + copyChunkSize + ")";
+    }
+    CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(copyStmt);
+    copyBuffer.setLength(0);
+    for (Key key : keys) {
+      // The keys and values have no characters to escape in the text format.
+      copyBuffer.append(key.asString()).append('\t').append(getValue(key)).append('\n');
+      if (copyBuffer.length() >= COPY_BUFFER_SIZE) {
+        writeToCopy(copyIn);
+      }
+    }
+    writeToCopy(copyIn);
+    copyIn.endCopy();
+  }
+
+  private void writeToCopy(CopyIn copyIn) throws Exception {
+    if (copyBuffer.length() > 0) {
+      byte[] rows = copyBuffer.toString().getBytes(StandardCharsets.UTF_8);
+      copyIn.writeToCopy(rows, 0, rows.length);
+      copyBuffer.setLength(0);
+    }
+  }
+
+  @Override
+  public void appendMessage(StringBuilder sb) {
+    super.appendMessage(sb);
+    long batches = numBatchesWritten.get();
+    sb.append("Batches written: " + batches);
+    if (batches > 0) {
+      sb.append(String.format(" (%.1f rows/batch)", (double) numRowsWritten.get() / batches));
+    }
+    sb.append(" | ");
+  }
+
+  @Override
+  public List<String> getWorkloadDescription() {
+    return Arrays.asList(
+      "Sample bulk ingest app built on SQL. Loads key-value rows in batches, as multi-row",
+      " INSERTs, COPYs or single-row INSERTs, through a shared pool of connections. The write",
+      " throughput is in rows/sec and the write latency is per batch. Reads verify the rows",
+      " written.");
+  }
+
+  @Override
+  public List<String> getWorkloadOptionalArguments() {
+    return Arrays.asList(
+      "--num_unique_keys " + appConfig.numUniqueKeysToWrite,
+      "--num_writes " + appConfig.numKeysToWrite,
+      "--num_threads_read " + appConfig.numReaderThreads,
+      "--num_threads_write " + appConfig.numWriterThreads,
+      "--ingest_mode batch",
+      "--batch_size " + appConfig.batchSize,
+      "--copy_chunk_size " + copyChunkSize,
+      "--sql_pool_size " + appConfig.sqlPoolSize,
+      "--value_size " + appConfig.valueSize);
+  }
+}
@@ -13,6 +13,7 @@
 
 package com.yugabyte.sample.common;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -66,6 +67,7 @@ public class CmdLineOpts {
     "RedisPipelinedKeyValue",
     "RedisHashPipelined",
     "RedisYBClientKeyValue",
+    "SqlBulkIngest",
     "SqlDataLoad",
     "SqlForeignKeysAndJoins",
     "SqlInserts",
@@ -89,6 +91,9 @@ public class CmdLineOpts {
   // Command line opts parser.
   CommandLine commandLine;
 
+  // The connection to the coordinator, if this load tester is one of its workers.
+  CoordinatedWorker worker = null;
+
   public void initialize(CommandLine commandLine) throws ClassNotFoundException {
     this.commandLine = commandLine;
     if (commandLine.hasOption("uuid")) {
@@ -124,6 +129,18 @@ public class CmdLineOpts {
     }
     LOG.info("Run time (seconds): " + AppBase.appConfig.runTimeSeconds);
 
+    if (commandLine.hasOption("metrics_output_dir")) {
+      AppBase.appConfig.metricsOutputDir = commandLine.getOptionValue("metrics_output_dir");
+      LOG.info("Metrics output directory: " + AppBase.appConfig.metricsOutputDir);
+    }
+    if (commandLine.hasOption("metrics_port")) {
+      AppBase.appConfig.metricsPort = Integer.parseInt(commandLine.getOptionValue("metrics_port"));
+      LOG.info("Metrics port: " + AppBase.appConfig.metricsPort);
+    }
+    if (commandLine.hasOption("git_sha")) {
+      AppBase.appConfig.gitSha = commandLine.getOptionValue("git_sha");
+    }
+
     // Get the proxy contact points.
     List<String> hostPortList = Arrays.asList(commandLine.getOptionValue("nodes").split(","));
     for (String hostPort : hostPortList) {
@@ -165,6 +182,15 @@ public class CmdLineOpts {
         LOG.info("Batch size : " + AppBase.appConfig.batchSize);
     }
 
+    // The phases override the thread counts, so this needs to be done after they are set.
+    if (commandLine.hasOption("phase_file")) {
+      initializePhases(commandLine.getOptionValue("phase_file"));
+    }
+    // A worker takes its keys, rates and phases from the coordinator instead.
+    if (commandLine.hasOption("coordinator")) {
+      initializeWorker(commandLine.getOptionValue("coordinator"));
+    }
+
     if (commandLine.hasOption("with_local_dc")) {
       if (AppBase.appConfig.disableYBLoadBalancingPolicy == true) {
         LOG.error("--disable_yb_load_balancing_policy cannot be used with --with_local_dc");
@@ -189,10 +215,26 @@ public class CmdLineOpts {
       AppBase.appConfig.concurrentClients = Integer.parseInt(
           commandLine.getOptionValue("concurrent_clients"));
     }
+    if (commandLine.hasOption("sql_pool_size")) {
+      AppBase.appConfig.sqlPoolSize =
+          Integer.parseInt(commandLine.getOptionValue("sql_pool_size"));
+    }
     if (commandLine.hasOption("ssl_cert")) {
       AppBase.appConfig.sslCert = commandLine.getOptionValue("ssl_cert");
     }
 
+    if (commandLine.hasOption("max_inflight")) {
+      AppBase.appConfig.maxInflight = Integer.parseInt(commandLine.getOptionValue("max_inflight"));
+      LOG.info("Max operations in flight: " + AppBase.appConfig.maxInflight);
+    }
+
+    if (commandLine.hasOption("record_trace")) {
+      AppBase.appConfig.recordTracePath = commandLine.getOptionValue("record_trace");
+    }
+    if (commandLine.hasOption("replay_trace")) {
+      initializeReplay(commandLine);
+    }
+
     if (commandLine.hasOption("num_indexes")) {
       AppBase.appConfig.numIndexes =
           Integer.parseInt(commandLine.getOptionValue("num_indexes"));
@@ -247,6 +289,22 @@ public class CmdLineOpts {
     return numWriterThreads;
   }
 
+  public CoordinatedWorker getWorker() {
+    return worker;
+  }
+
+  public int getNumWorkers() {
+    return Integer.parseInt(commandLine.getOptionValue("num_workers", "0"));
+  }
+
+  public int getCoordinatorPort() {
+    return Integer.parseInt(commandLine.getOptionValue("coordinator_port", "0"));
+  }
+
+  public String getPhaseFile() {
+    return commandLine.getOptionValue("phase_file");
+  }
+
   public boolean getReadOnly() {
     return readOnly;
   }
@@ -310,6 +368,116 @@ public class CmdLineOpts {
     }
     LOG.info("Num reader threads: " + numReaderThreads +
              ", num writer threads: " + numWriterThreads);
+
+    // A total target rate is split between reads and writes like the threads are, unless the
+    // rate of either is given on its own.
+    if (cmd.hasOption("target_ops_per_sec") && numReaderThreads + numWriterThreads > 0) {
+      double targetOpsPerSec = Double.parseDouble(cmd.getOptionValue("target_ops_per_sec"));
+      double readShare = 1.0 * numReaderThreads / (numReaderThreads + numWriterThreads);
+      AppBase.appConfig.targetReadOpsPerSec = targetOpsPerSec * readShare;
+      AppBase.appConfig.targetWriteOpsPerSec = targetOpsPerSec * (1 - readShare);
+    }
+    if (cmd.hasOption("target_read_ops_per_sec")) {
+      AppBase.appConfig.targetReadOpsPerSec =
+          Double.parseDouble(cmd.getOptionValue("target_read_ops_per_sec"));
+    }
+    if (cmd.hasOption("target_write_ops_per_sec")) {
+      AppBase.appConfig.targetWriteOpsPerSec =
+          Double.parseDouble(cmd.getOptionValue("target_write_ops_per_sec"));
+    }
+    if (AppBase.appConfig.targetReadOpsPerSec > 0 || AppBase.appConfig.targetWriteOpsPerSec > 0) {
+      LOG.info("Target read ops/sec: " + AppBase.appConfig.targetReadOpsPerSec +
+               ", target write ops/sec: " + AppBase.appConfig.targetWriteOpsPerSec);
+    }
+  }
+
+  private void initializePhases(String phaseFile) {
+    List<Phase> phases = null;
+    try {
+      phases = Phase.parse(phaseFile, Phase.fromConfig(AppBase.appConfig, numReaderThreads,
+                                                       numWriterThreads));
+    } catch (IOException e) {
+      LOG.error("Could not read the phase file " + phaseFile, e);
+      System.exit(1);
+    } catch (IllegalArgumentException e) {
+      LOG.error("Invalid phase file " + phaseFile + ": " + e.getMessage(), e);
+      System.exit(1);
+    }
+    usePhases(phases);
+  }
+
+  private void initializeWorker(String coordinatorHostPort) {
+    try {
+      worker = CoordinatedWorker.connect(ContactPoint.fromHostPort(coordinatorHostPort));
+    } catch (IOException e) {
+      LOG.error("Could not get an assignment from the coordinator at " + coordinatorHostPort, e);
+      System.exit(1);
+    }
+    Coordinator.Assignment assignment = worker.getAssignment();
+    loadTesterUUID = assignment.uuid;
+    LOG.info("Using the UUID of the coordinator : " + loadTesterUUID);
+    AppBase.appConfig.startKey = assignment.startKey;
+    AppBase.appConfig.numUniqueKeysToWrite = assignment.numUniqueKeys;
+    AppBase.appConfig.maxWrittenKey = assignment.maxWrittenKey;
+    AppBase.appConfig.numKeysToWrite = assignment.numKeysToWrite;
+    AppBase.appConfig.numKeysToRead = assignment.numKeysToRead;
+    usePhases(Phase.fromJson(assignment.phases, Phase.fromConfig(AppBase.appConfig,
+                                                                 numReaderThreads,
+                                                                 numWriterThreads)));
+  }
+
+  private void initializeReplay(CommandLine commandLine) {
+    if (commandLine.hasOption("phase_file") || commandLine.hasOption("coordinator") ||
+        commandLine.hasOption("record_trace")) {
+      LOG.error("--replay_trace cannot be used with --phase_file, --coordinator or " +
+                "--record_trace");
+      System.exit(1);
+    }
+    boolean supportsReplay = false;
+    try {
+      supportsReplay = appClass.newInstance().supportsReplay();
+    } catch (Exception e) {
+      LOG.error("Could not create instance of " + appClass.getName(), e);
+    }
+    if (!supportsReplay) {
+      LOG.error("--replay_trace is not supported by " + appClass.getSimpleName());
+      System.exit(1);
+    }
+    AppBase.appConfig.replayTracePath = commandLine.getOptionValue("replay_trace");
+    if (commandLine.hasOption("replay_speed")) {
+      AppBase.appConfig.replaySpeed =
+          Double.parseDouble(commandLine.getOptionValue("replay_speed"));
+    }
+  }
+
+  private void usePhases(List<Phase> phases) {
+    for (Phase phase : phases) {
+      if (readOnly && phase.numWriterThreads > 0) {
+        LOG.error("Phase " + phase.name + " has write threads in a read only load.");
+        System.exit(1);
+      }
+      if (phase.batchSize > AppBase.appConfig.numUniqueKeysToWrite) {
+        LOG.error("The batch size of phase " + phase.name +
+                  " cannot be more than the number of unique keys");
+        System.exit(1);
+      }
+      try {
+        KeyChooser.create(phase.keyDistribution,
+                          Math.max(1, AppBase.appConfig.numUniqueKeysToWrite),
+                          phase.zipfianTheta, phase.hotspotOpFraction, phase.hotspotKeyFraction);
+      } catch (IllegalArgumentException e) {
+        LOG.error("Phase " + phase.name + ": " + e.getMessage());
+        System.exit(1);
+      }
+      LOG.info("Phase " + phase);
+    }
+    AppBase.appConfig.phases = phases;
+    // Enough threads are started for the busiest phase, and the others leave some of them idle.
+    numReaderThreads = PhaseSchedule.getMaxThreads(phases, IOPSThread.IOType.Read);
+    numWriterThreads = PhaseSchedule.getMaxThreads(phases, IOPSThread.IOType.Write);
+    LOG.info("Num reader threads: " + numReaderThreads +
+             ", num writer threads: " + numWriterThreads + " over " + phases.size() +
+             " phases, run time (seconds): " + PhaseSchedule.getTotalDurationSecs(phases));
   }
 
   private void initializeNumKeys(CommandLine cmd) {
@@ -328,6 +496,38 @@ public class CmdLineOpts {
     if (cmd.hasOption("value_size")) {
       AppBase.appConfig.valueSize = Integer.parseInt(cmd.getOptionValue("value_size"));
     }
+    if (cmd.hasOption("key_distribution")) {
+      String distribution = cmd.getOptionValue("key_distribution");
+      try {
+        AppBase.appConfig.keyDistribution =
+            KeyChooser.Distribution.valueOf(distribution.toUpperCase());
+      } catch (IllegalArgumentException e) {
+        LOG.error("Unknown key distribution " + distribution + ", expected one of " +
+                  Arrays.toString(KeyChooser.Distribution.values()));
+        System.exit(1);
+      }
+    }
+    if (cmd.hasOption("zipfian_theta")) {
+      AppBase.appConfig.zipfianTheta = Double.parseDouble(cmd.getOptionValue("zipfian_theta"));
+    }
+    if (cmd.hasOption("hotspot_op_fraction")) {
+      AppBase.appConfig.hotspotOpFraction =
+          Double.parseDouble(cmd.getOptionValue("hotspot_op_fraction"));
+    }
+    if (cmd.hasOption("hotspot_key_fraction")) {
+      AppBase.appConfig.hotspotKeyFraction =
+          Double.parseDouble(cmd.getOptionValue("hotspot_key_fraction"));
+    }
+    try {
+      // Check the parameters of the distribution up front rather than in the IO threads.
+      KeyChooser.create(AppBase.appConfig.keyDistribution,
+                        Math.max(1, AppBase.appConfig.numUniqueKeysToWrite),
+                        AppBase.appConfig.zipfianTheta, AppBase.appConfig.hotspotOpFraction,
+                        AppBase.appConfig.hotspotKeyFraction);
+    } catch (IllegalArgumentException e) {
+      LOG.error(e.getMessage());
+      System.exit(1);
+    }
     if (cmd.hasOption("sleep_time")) {
       AppBase.appConfig.sleepTime =
           Integer.parseInt(cmd.getOptionValue("sleep_time"));
@@ -389,6 +589,7 @@ public class CmdLineOpts {
         (AppBase.appConfig.numKeysToWrite - AppBase.appConfig.numUniqueKeysToWrite));
     LOG.info("Num keys to read: " + AppBase.appConfig.numKeysToRead);
     LOG.info("Value size: " + AppBase.appConfig.valueSize);
+    LOG.info("Key distribution: " + AppBase.appConfig.keyDistribution);
     LOG.info("Restrict values to ASCII strings: " + AppBase.appConfig.restrictValuesToAscii);
     LOG.info("Perform sanity check at end of app run: " + AppBase.appConfig.sanityCheckAtEnd);
   }
@@ -445,6 +646,14 @@ public class CmdLineOpts {
     options.addOption("num_threads", true, "The total number of threads.");
     options.addOption("num_threads_read", true, "The number of threads that perform reads.");
     options.addOption("num_threads_write", true, "The number of threads that perform writes.");
+    options.addOption("target_ops_per_sec", true,
+        "Issue operations at this total rate on a fixed schedule, split between reads and " +
+        "writes like the threads are, instead of as fast as possible. Latencies are measured " +
+        "from when each operation was scheduled to start.");
+    options.addOption("target_read_ops_per_sec", true,
+        "Issue reads at this rate on a fixed schedule. Overrides --target_ops_per_sec.");
+    options.addOption("target_write_ops_per_sec", true,
+        "Issue writes at this rate on a fixed schedule. Overrides --target_ops_per_sec.");
     options.addOption("num_writes", true, "The total number of writes to perform.");
     options.addOption("num_reads", true, "The total number of reads to perform.");
     options.addOption(
@@ -471,6 +680,15 @@ public class CmdLineOpts {
     options.addOption("skip_workload", false, "Skip running workload.");
     options.addOption("run_time", true,
         "Run time for workload. Negative value means forever (default).");
+    options.addOption("metrics_output_dir", true,
+        "Directory to write the metrics to: the throughput and latency percentiles of every " +
+        "interval to intervals.csv and intervals.jsonl, those of the whole run along with the " +
+        "run metadata to summary.json and summary.csv, and the latency histograms of the whole " +
+        "run, one per operation type.");
+    options.addOption("metrics_port", true,
+        "Port to serve the metrics of the last interval on, at /metrics, for Prometheus.");
+    options.addOption("git_sha", true,
+        "Git SHA of the build under test, recorded in the run metadata of the exported metrics.");
     options.addOption("use_redis_cluster", false, "Use redis cluster client.");
     options.addOption("username", true,
         "User name to connect to the database using. ");
@@ -479,10 +697,41 @@ public class CmdLineOpts {
             "If this option is set, the --username option is required.");
     options.addOption("concurrent_clients", true,
         "The number of client connections to establish to each host in the YugaByte DB cluster.");
+    options.addOption("sql_pool_size", true,
+        "Number of YSQL connections shared by the IO threads of the apps which pool them. " +
+        "Default one per IO thread.");
     options.addOption("ssl_cert", true,
       "Use an SSL connection while connecting to YugaByte.");
+    options.addOption("max_inflight", true,
+        "Issue operations asynchronously, with at most this many in flight across all " +
+        "threads. A few threads per operation type are then enough to load the cluster.");
     options.addOption("batch_size", true,
                       "Number of keys to write in a batch (for apps that support batching).");
+    options.addOption("phase_file", true,
+        "JSON file of phases to run one after the other, each with a name, a duration_secs and " +
+        "any of num_threads_read, num_threads_write, target_ops_per_sec, " +
+        "target_read_ops_per_sec, target_write_ops_per_sec, key_distribution, zipfian_theta, " +
+        "hotspot_op_fraction, hotspot_key_fraction, value_size and batch_size, which otherwise " +
+        "keep their value from the phase before, or from the command line. Metrics are also " +
+        "reported per phase. Overrides --run_time.");
+    options.addOption("record_trace", true,
+        "File to record the operations of the workload to, for replaying them with " +
+        "--replay_trace.");
+    options.addOption("replay_trace", true,
+        "Trace recorded with --record_trace to replay the operations of, at the times they " +
+        "were issued at, instead of generating operations. The reader and writer threads all " +
+        "take the operations in turn.");
+    options.addOption("replay_speed", true,
+        "How many times faster than they were recorded to replay the operations of " +
+        "--replay_trace at. Replays as fast as possible if 0. Default 1.");
+    options.addOption("num_workers", true,
+        "[Coordinator] Number of worker load testers to split the keys and target rates of the " +
+        "workload between. The workers run its phases in lockstep, and the coordinator merges " +
+        "their metrics.");
+    options.addOption("coordinator_port", true,
+        "[Coordinator] Port to wait for the workers at.");
+    options.addOption("coordinator", true,
+        "host:port of the coordinator to run the workload for, as one of its workers.");
 
     // Options for CassandraTimeseries workload.
     options.addOption("num_users", true, "[CassandraTimeseries] The total number of users.");
@@ -502,12 +751,38 @@ public class CmdLineOpts {
     // Options for CassandraStockTicker workload.
     options.addOption("num_ticker_symbols", true,
                       "[CassandraStockTicker] The total number of stock ticker symbols.");
+    options.addOption("batch_flush_interval_ms", true,
+        "[CassandraStockTicker] With a --batch_size over 1, the data points are batched per " +
+        "ticker, and a batch is written once full or once its first point has waited this long. " +
+        "Default 1000.");
+
+    // Options for SqlBulkIngest workload.
+    options.addOption("ingest_mode", true,
+        "[SqlBulkIngest] How to write the rows: insert (a prepared single-row INSERT per row), " +
+        "batch (--batch_size rows per batched, multi-row INSERT) or copy (--batch_size rows per " +
+        "COPY FROM STDIN). Default batch.");
+    options.addOption("copy_chunk_size", true,
+        "[SqlBulkIngest] Rows per transaction of each COPY. Each COPY is one transaction if 0.");
 
     // Options for the key-value workloads.
     options.addOption("num_unique_keys", true,
                       "[KV workloads only] Number of unique keys to write into the DB.");
     options.addOption("max_written_key", true,
         "[KV workloads only, reusing existing table] Max written key number.");
+    options.addOption("key_distribution", true,
+        "[KV workloads only] How to pick the keys to read, and to update once all keys are " +
+        "written: uniform (default), zipfian (a few hot keys scattered over the key space), " +
+        "hotspot (--hotspot_op_fraction of the operations on the lowest --hotspot_key_fraction " +
+        "of the keys), latest (the most recently written keys are hot) or sequential.");
+    options.addOption("zipfian_theta", true,
+        "[KV workloads only] Skew of the zipfian and latest key distributions, in (0, 1). " +
+        "Default 0.99.");
+    options.addOption("hotspot_op_fraction", true,
+        "[KV workloads only] Share of operations on the hot keys of the hotspot key " +
+        "distribution. Default 0.8.");
+    options.addOption("hotspot_key_fraction", true,
+        "[KV workloads only] Share of keys which are hot in the hotspot key distribution. " +
+        "Default 0.2.");
 
     // Options for CassandraBatchTimeseries app.
     options.addOption("read_batch_size", true,
@@ -548,6 +823,10 @@ public class CmdLineOpts {
         "pipeline_length", true,
         "[RedisPipelinedKeyValue/RedisHashPipelined] Number of commands to be sent out"
             + " in a redis pipelined sync.");
+    options.addOption(
+        "pipeline_flush_interval_ms", true,
+        "[RedisPipelinedKeyValue] Longest time (in ms) a command waits in the pipeline for it to "
+            + "fill up before the pipeline is synced anyway. Default 10.");
 
     options.addOption(
         "num_subkeys_per_key", true,
@@ -0,0 +1,144 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A fixed number of JDBC connections shared by the IO threads of a workload.
+ *
+ * Connections are opened as they are first needed, up to the size of the pool, and a thread
+ * borrowing one when all are in use waits for one to be released. A connection which failed is
+ * discarded instead of released, and a new one opened in its place when next needed, so a node
+ * going down costs the pool the connections to it only.
+ *
+ * The statements a workload runs over and over are prepared once per connection with prepare, and
+ * kept with the connection for as long as it is in the pool, so that the driver can plan them on
+ * the server once rather than for every use.
+ */
+public class ConnectionPool implements AutoCloseable {
+  private static final Logger LOG = Logger.getLogger(ConnectionPool.class);
+
+  private final Callable<Connection> connectionFactory;
+  private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+  // The statements prepared on each connection, by SQL. Only the thread which borrowed a
+  // connection uses its statements.
+  private final Map<Connection, Map<String, PreparedStatement>> statements =
+      new ConcurrentHashMap<>();
+  // Permits for the connections which are idle or not yet opened.
+  private final Semaphore available;
+  private final int size;
+  private volatile boolean closed = false;
+
+  /**
+   * @param size the most connections to have open
+   * @param connectionFactory opens a connection
+   */
+  public ConnectionPool(int size, Callable<Connection> connectionFactory) {
+    this.size = size;
+    this.connectionFactory = connectionFactory;
+    this.available = new Semaphore(size);
+  }
+
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Takes a connection, opening one if none is idle. Waits if all the connections are in use.
+   * The connection is to be given back with release or discard.
+   */
+  public Connection borrow() throws Exception {
+    if (closed) {
+      throw new SQLException("The connection pool is closed");
+    }
+    available.acquire();
+    try {
+      Connection connection = idle.poll();
+      return connection != null ? connection : connectionFactory.call();
+    } catch (Exception e) {
+      available.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the statement prepared on the borrowed connection for the given SQL, preparing it if
+   * this is its first use on the connection. The statement is not to be closed, it is closed with
+   * the connection.
+   */
+  public PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+    Map<String, PreparedStatement> prepared =
+        statements.computeIfAbsent(connection, c -> new HashMap<>());
+    PreparedStatement statement = prepared.get(sql);
+    if (statement == null) {
+      statement = connection.prepareStatement(sql);
+      prepared.put(sql, statement);
+    }
+    return statement;
+  }
+
+  /**
+   * Gives back a connection after use, in autocommit mode, for the next thread to use.
+   */
+  public void release(Connection connection) {
+    if (closed) {
+      close(connection);
+      return;
+    }
+    idle.add(connection);
+    available.release();
+  }
+
+  /**
+   * Gives back a connection which failed, closing it.
+   */
+  public void discard(Connection connection) {
+    close(connection);
+    available.release();
+  }
+
+  private void close(Connection connection) {
+    // Closing the connection closes its statements.
+    statements.remove(connection);
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      LOG.debug("Could not close a connection of the pool", e);
+    }
+  }
+
+  /**
+   * Closes the idle connections, and those in use as they are released.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    Connection connection;
+    while ((connection = idle.poll()) != null) {
+      close(connection);
+    }
+  }
+}
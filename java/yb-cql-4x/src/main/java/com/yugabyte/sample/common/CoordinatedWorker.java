@@ -0,0 +1,140 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.yugabyte.sample.common.CmdLineOpts.ContactPoint;
+import com.yugabyte.sample.common.metrics.Metric;
+import com.yugabyte.sample.common.metrics.MetricsTracker;
+
+/**
+ * The side of a load tester run by a Coordinator. It takes its assignment from the coordinator,
+ * starts and ends the phases of the workload as the coordinator tells it to, and sends back the
+ * metrics over each phase as it ends.
+ */
+public class CoordinatedWorker implements MetricsTracker.PhaseListener {
+  private static final Logger LOG = Logger.getLogger(CoordinatedWorker.class);
+
+  private final Coordinator.Connection connection;
+  private final Coordinator.Assignment assignment;
+  private PhaseSchedule schedule;
+  // The index of the phase running, and of the one whose metrics are being reported.
+  private volatile int phaseIndex = -1;
+  private volatile int reportingPhaseIndex = -1;
+
+  private CoordinatedWorker(Coordinator.Connection connection,
+                            Coordinator.Assignment assignment) {
+    this.connection = connection;
+    this.assignment = assignment;
+  }
+
+  /**
+   * Connects to the coordinator and waits for the assignment of this worker, which comes once all
+   * the workers have connected.
+   */
+  public static CoordinatedWorker connect(ContactPoint coordinator) throws IOException {
+    LOG.info("Connecting to the coordinator at " + coordinator.ToString());
+    Socket socket = new Socket();
+    Coordinator.Connection connection;
+    Coordinator.Assignment assignment;
+    try {
+      socket.connect(new InetSocketAddress(coordinator.getHost(), coordinator.getPort()),
+                     Coordinator.CONNECT_TIMEOUT_MS);
+      connection = new Coordinator.Connection(socket);
+      connection.setReadTimeout(Coordinator.HANDSHAKE_TIMEOUT_MS);
+      connection.send(new JSONObject().put("type", "hello"));
+      JSONObject message = connection.receive();
+      if (message == null || !"assign".equals(message.optString("type"))) {
+        throw new IOException("Expected an assignment from the coordinator, got " + message);
+      }
+      assignment = Coordinator.Assignment.fromJson(message);
+      connection.setReadTimeout(assignment.getReadTimeoutMs());
+    } catch (IOException | RuntimeException e) {
+      socket.close();
+      throw e;
+    }
+    LOG.info("Worker " + assignment.workerIndex + " of " + assignment.numWorkers + ", keys " +
+             assignment.startKey + " to " + (assignment.startKey + assignment.numUniqueKeys - 1));
+    return new CoordinatedWorker(connection, assignment);
+  }
+
+  Coordinator.Assignment getAssignment() {
+    return assignment;
+  }
+
+  /**
+   * Tells the coordinator this worker is ready, and drives the phases as the coordinator tells it
+   * to from then on. Used as the driver of the phase schedule.
+   */
+  public void drive(PhaseSchedule schedule) {
+    this.schedule = schedule;
+    Thread reader = new Thread(this::readCommands, "Coordinated Worker");
+    reader.setDaemon(true);
+    reader.start();
+    connection.send(new JSONObject().put("type", "ready"));
+  }
+
+  private void readCommands() {
+    try {
+      JSONObject message;
+      while ((message = connection.receive()) != null) {
+        switch (message.getString("type")) {
+          case "start_phase":
+            reportingPhaseIndex = phaseIndex;
+            phaseIndex = message.getInt("index");
+            schedule.startPhase(phaseIndex);
+            break;
+          case "stop":
+            reportingPhaseIndex = phaseIndex;
+            schedule.finish();
+            connection.send(new JSONObject().put("type", "done"));
+            return;
+          default:
+            LOG.warn("Unexpected message from the coordinator: " + message);
+        }
+      }
+      LOG.error("The coordinator closed the connection, ending the run.");
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Lost the coordinator, ending the run.", e);
+    } finally {
+      schedule.finish();
+      try {
+        connection.close();
+      } catch (IOException e) {
+        // Closed either way.
+      }
+    }
+  }
+
+  @Override
+  public void phaseEnded(String phase, List<Metric.Snapshot> snapshots) {
+    JSONArray metrics = new JSONArray();
+    for (Metric.Snapshot snapshot : snapshots) {
+      metrics.put(snapshot.encode());
+    }
+    connection.send(new JSONObject()
+        .put("type", "phase_metrics")
+        .put("index", reportingPhaseIndex)
+        .put("phase", phase)
+        .put("metrics", metrics));
+  }
+}
@@ -0,0 +1,561 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.yugabyte.sample.apps.AppBase;
+import com.yugabyte.sample.common.metrics.Metric;
+import com.yugabyte.sample.common.metrics.MetricsExporter;
+
+/**
+ * Runs one workload on several load tester processes, so that together they load a cluster more
+ * than one JVM can.
+ *
+ * The coordinator is started with the options of the workload, --num_workers and
+ * --coordinator_port, and each worker with the same options and --coordinator pointing at it.
+ * Once all the workers have connected, the coordinator gives each a range of the key space of its
+ * own, under the same key prefix, and its share of the target rates. It then starts the phases of
+ * the workload on all the workers at once, or the one phase of --run_time seconds if there is no
+ * phase file. At the end of every phase, the workers send their latency histograms over it, which
+ * the coordinator merges into the metrics of all the workers over the phase and over the run.
+ *
+ * The coordinator and the workers talk JSON, one message per line, over TCP.
+ */
+public class Coordinator {
+  private static final Logger LOG = Logger.getLogger(Coordinator.class);
+
+  // How long to wait for the workers to report the metrics of the last phase, once it ends.
+  private static final long REPORT_TIMEOUT_MS = 60000;
+  // How long a worker waits to connect to the coordinator, and the coordinator for a connection to
+  // say it is a worker.
+  static final int CONNECT_TIMEOUT_MS = 30000;
+  // How long to wait for all the workers to connect, and then to get ready.
+  static final long HANDSHAKE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+  /**
+   * What one worker loads: its key range, with the key prefix all the workers share, and its
+   * phases, with its share of their target rates.
+   */
+  static class Assignment {
+    final int workerIndex;
+    final int numWorkers;
+    // The key prefix, or null for none.
+    final UUID uuid;
+    final long startKey;
+    final long numUniqueKeys;
+    final long maxWrittenKey;
+    // Operations to perform, or negative for no limit.
+    final long numKeysToWrite;
+    final long numKeysToRead;
+    final JSONArray phases;
+
+    Assignment(int workerIndex, int numWorkers, UUID uuid, long startKey, long numUniqueKeys,
+               long maxWrittenKey, long numKeysToWrite, long numKeysToRead, JSONArray phases) {
+      this.workerIndex = workerIndex;
+      this.numWorkers = numWorkers;
+      this.uuid = uuid;
+      this.startKey = startKey;
+      this.numUniqueKeys = numUniqueKeys;
+      this.maxWrittenKey = maxWrittenKey;
+      this.numKeysToWrite = numKeysToWrite;
+      this.numKeysToRead = numKeysToRead;
+      this.phases = phases;
+    }
+
+    JSONObject toJson() {
+      JSONObject json = new JSONObject()
+          .put("type", "assign")
+          .put("worker_index", workerIndex)
+          .put("num_workers", numWorkers)
+          .put("start_key", startKey)
+          .put("num_unique_keys", numUniqueKeys)
+          .put("max_written_key", maxWrittenKey)
+          .put("num_writes", numKeysToWrite)
+          .put("num_reads", numKeysToRead)
+          .put("phases", phases);
+      if (uuid != null) {
+        json.put("uuid", uuid.toString());
+      }
+      return json;
+    }
+
+    /**
+     * Returns the longest the coordinator and the worker go without a message from each other: for
+     * all the workers to get ready, and then for the longest phase and the report of its metrics.
+     */
+    long getReadTimeoutMs() {
+      long longestPhaseSecs = 0;
+      for (int i = 0; i < phases.length(); i++) {
+        longestPhaseSecs =
+            Math.max(longestPhaseSecs, phases.getJSONObject(i).getLong("duration_secs"));
+      }
+      return HANDSHAKE_TIMEOUT_MS + TimeUnit.SECONDS.toMillis(longestPhaseSecs) +
+             REPORT_TIMEOUT_MS;
+    }
+
+    static Assignment fromJson(JSONObject json) {
+      return new Assignment(json.getInt("worker_index"), json.getInt("num_workers"),
+                            json.has("uuid") ? UUID.fromString(json.getString("uuid")) : null,
+                            json.getLong("start_key"), json.getLong("num_unique_keys"),
+                            json.getLong("max_written_key"), json.getLong("num_writes"),
+                            json.getLong("num_reads"), json.getJSONArray("phases"));
+    }
+  }
+
+  /**
+   * A connection between the coordinator and a worker, which carries a JSON message per line.
+   */
+  static class Connection implements Closeable {
+    private final Socket socket;
+    private final BufferedReader in;
+    private final PrintWriter out;
+
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      this.in = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out = new PrintWriter(
+          new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Makes receive() fail once it has waited for a message for the given time.
+     */
+    void setReadTimeout(long timeoutMs) throws IOException {
+      socket.setSoTimeout((int) Math.min(timeoutMs, Integer.MAX_VALUE));
+    }
+
+    synchronized void send(JSONObject message) {
+      out.println(message.toString());
+      out.flush();
+    }
+
+    /**
+     * @return the next message, or null once the other end has closed the connection.
+     */
+    JSONObject receive() throws IOException {
+      String line = in.readLine();
+      return line == null ? null : new JSONObject(line);
+    }
+
+    String getRemoteAddress() {
+      return String.valueOf(socket.getRemoteSocketAddress());
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.close();
+    }
+  }
+
+  private final int numWorkers;
+  private final int port;
+  private final List<Phase> phases;
+  // The phase file the phases come from, or null for the one phase of --run_time.
+  private final String phaseFile;
+  private final List<Connection> workers = new ArrayList<>();
+  private final CountDownLatch workersReady;
+  private final CountDownLatch workersDone;
+  // The metrics each worker reported for each phase, by phase index and worker index.
+  private final List<Map<Integer, List<Metric.Snapshot>>> phaseReports = new ArrayList<>();
+  private final boolean[] phaseReported;
+  // The merged metrics of each phase once reported, and of the whole run.
+  private final List<List<Metric.Snapshot>> phaseSummaries = new ArrayList<>();
+  private List<Metric.Snapshot> runSummary;
+  // Why a worker failed before it got ready, which fails the run.
+  private volatile String workerFailure;
+  private final MetricsExporter exporter;
+
+  Coordinator(CmdLineOpts configuration) {
+    this(configuration.getNumWorkers(), configuration.getCoordinatorPort(),
+         getPhases(configuration), configuration.getPhaseFile());
+  }
+
+  Coordinator(int numWorkers, int port, List<Phase> phases, String phaseFile) {
+    this.numWorkers = numWorkers;
+    this.port = port;
+    this.phases = phases;
+    this.phaseFile = phaseFile;
+    for (int i = 0; i < phases.size(); i++) {
+      phaseReports.add(new HashMap<>());
+      phaseSummaries.add(null);
+    }
+    this.phaseReported = new boolean[phases.size()];
+    this.workersReady = new CountDownLatch(numWorkers);
+    this.workersDone = new CountDownLatch(numWorkers);
+    this.exporter = AppBase.appConfig.metricsOutputDir == null ? null
+        : new MetricsExporter(AppBase.appConfig.metricsOutputDir, 0, getRunMetadata());
+  }
+
+  private static List<Phase> getPhases(CmdLineOpts configuration) {
+    if (AppBase.appConfig.phases != null) {
+      return AppBase.appConfig.phases;
+    }
+    Phase settings = Phase.fromConfig(AppBase.appConfig, configuration.getNumReaderThreads(),
+                                      configuration.getNumWriterThreads());
+    return Collections.singletonList(
+        settings.withDuration("run", AppBase.appConfig.runTimeSeconds));
+  }
+
+  private Map<String, String> getRunMetadata() {
+    Map<String, String> metadata = new LinkedHashMap<>();
+    metadata.put("workload", AppBase.appConfig.appName);
+    metadata.put("num_workers", String.valueOf(numWorkers));
+    if (phaseFile != null) {
+      metadata.put("phase_file", phaseFile);
+    }
+    metadata.put("git_sha",
+                 AppBase.appConfig.gitSha == null ? "unknown" : AppBase.appConfig.gitSha);
+    metadata.put("start_time_ms", String.valueOf(System.currentTimeMillis()));
+    return metadata;
+  }
+
+  /**
+   * Splits the key space and the target rates evenly between the workers.
+   */
+  Assignment getAssignment(int workerIndex) {
+    long numKeys = AppBase.appConfig.numUniqueKeysToWrite;
+    long startKey = AppBase.appConfig.startKey + workerIndex * (numKeys / numWorkers) +
+                    Math.min(workerIndex, numKeys % numWorkers);
+    long workerNumKeys = numKeys / numWorkers + (workerIndex < numKeys % numWorkers ? 1 : 0);
+    // The keys of the range which were written before, if reusing a table.
+    long maxWrittenKey = Math.max(startKey - 1,
+        Math.min(AppBase.appConfig.maxWrittenKey, startKey + workerNumKeys - 1));
+    JSONArray workerPhases = new JSONArray();
+    for (Phase phase : phases) {
+      workerPhases.put(phase.withScaledRates(1.0 / numWorkers).toJson());
+    }
+    return new Assignment(workerIndex, numWorkers, CmdLineOpts.loadTesterUUID, startKey,
+                          workerNumKeys, maxWrittenKey,
+                          split(AppBase.appConfig.numKeysToWrite, workerIndex),
+                          split(AppBase.appConfig.numKeysToRead, workerIndex),
+                          workerPhases);
+  }
+
+  private long split(long numOps, int workerIndex) {
+    if (numOps < 0) {
+      return numOps;
+    }
+    return numOps / numWorkers + (workerIndex < numOps % numWorkers ? 1 : 0);
+  }
+
+  void run() throws IOException, InterruptedException {
+    try (ServerSocket server = new ServerSocket(port)) {
+      run(server);
+    }
+  }
+
+  /**
+   * Runs the workload on the workers which connect to the given socket.
+   * @throws IOException if a worker fails, or the workers take too long, before the phases start
+   */
+  void run(ServerSocket server) throws IOException, InterruptedException {
+    try {
+      acceptWorkers(server);
+      long deadlineMs = System.currentTimeMillis() + HANDSHAKE_TIMEOUT_MS;
+      while (!workersReady.await(1, TimeUnit.SECONDS)) {
+        checkWorkers();
+        if (System.currentTimeMillis() > deadlineMs) {
+          throw new IOException("Timed out waiting for " + workersReady.getCount() +
+                                " workers to get ready");
+        }
+      }
+      checkWorkers();
+      runPhases();
+    } finally {
+      // Those still connected end their run once the connection closes.
+      for (Connection worker : workers) {
+        closeQuietly(worker);
+      }
+    }
+  }
+
+  private void acceptWorkers(ServerSocket server) throws IOException {
+    LOG.info("Waiting for " + numWorkers + " workers at port " + server.getLocalPort());
+    // Wakes up every second to check for the workers which failed already.
+    server.setSoTimeout(1000);
+    long deadlineMs = System.currentTimeMillis() + HANDSHAKE_TIMEOUT_MS;
+    while (workers.size() < numWorkers) {
+      checkWorkers();
+      Socket socket;
+      try {
+        socket = server.accept();
+      } catch (SocketTimeoutException e) {
+        if (System.currentTimeMillis() > deadlineMs) {
+          throw new IOException("Timed out waiting for " + (numWorkers - workers.size()) +
+                                " workers to connect");
+        }
+        continue;
+      }
+      Connection worker = new Connection(socket);
+      JSONObject hello;
+      try {
+        worker.setReadTimeout(CONNECT_TIMEOUT_MS);
+        hello = worker.receive();
+      } catch (IOException | RuntimeException e) {
+        hello = null;
+      }
+      if (hello == null || !"hello".equals(hello.optString("type"))) {
+        LOG.warn("Ignoring connection from " + worker.getRemoteAddress() +
+                 " which is not a worker");
+        closeQuietly(worker);
+        continue;
+      }
+      int workerIndex = workers.size();
+      Assignment assignment = getAssignment(workerIndex);
+      worker.setReadTimeout(assignment.getReadTimeoutMs());
+      workers.add(worker);
+      worker.send(assignment.toJson());
+      LOG.info("Worker " + workerIndex + " connected from " + worker.getRemoteAddress());
+      Thread reader = new Thread(() -> readReports(workerIndex, worker),
+                                 "Coordinator Worker " + workerIndex);
+      reader.setDaemon(true);
+      reader.start();
+    }
+  }
+
+  private void checkWorkers() throws IOException {
+    if (workerFailure != null) {
+      throw new IOException(workerFailure);
+    }
+  }
+
+  private void runPhases() throws InterruptedException {
+    LOG.info("All " + numWorkers + " workers ready, starting the phases.");
+    long phaseEndNanos = System.nanoTime();
+    for (int i = 0; i < phases.size(); i++) {
+      Phase phase = phases.get(i);
+      LOG.info("Starting phase " + (i + 1) + " of " + phases.size() + ", " + phase);
+      broadcast(new JSONObject().put("type", "start_phase").put("index", i));
+      phaseEndNanos += TimeUnit.SECONDS.toNanos(phase.durationSecs);
+      long sleepNanos;
+      while ((sleepNanos = phaseEndNanos - System.nanoTime()) > 0 && !allWorkersGone()) {
+        TimeUnit.NANOSECONDS.sleep(Math.min(sleepNanos, TimeUnit.SECONDS.toNanos(1)));
+      }
+    }
+    broadcast(new JSONObject().put("type", "stop"));
+    if (!workersDone.await(REPORT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+      LOG.warn("Timed out waiting for " + workersDone.getCount() + " workers to report.");
+    }
+    reportRun();
+  }
+
+  private boolean allWorkersGone() {
+    return workersDone.getCount() == 0;
+  }
+
+  private void broadcast(JSONObject message) {
+    for (Connection worker : workers) {
+      worker.send(message);
+    }
+  }
+
+  private void readReports(int workerIndex, Connection worker) {
+    boolean ready = false;
+    try {
+      JSONObject message;
+      while ((message = worker.receive()) != null) {
+        switch (message.getString("type")) {
+          case "ready":
+            ready = true;
+            workersReady.countDown();
+            break;
+          case "phase_metrics":
+            List<Metric.Snapshot> snapshots = new ArrayList<>();
+            JSONArray metrics = message.getJSONArray("metrics");
+            for (int i = 0; i < metrics.length(); i++) {
+              snapshots.add(Metric.Snapshot.decode(metrics.getJSONObject(i)));
+            }
+            addPhaseReport(message.getInt("index"), workerIndex, snapshots);
+            break;
+          case "done":
+            return;
+          default:
+            LOG.warn("Unexpected message from worker " + workerIndex + ": " + message);
+        }
+      }
+      LOG.error("Worker " + workerIndex + " disconnected before the end of the run.");
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Lost worker " + workerIndex, e);
+    } finally {
+      if (!ready) {
+        workerFailure = "Worker " + workerIndex + " failed before starting";
+      }
+      workersDone.countDown();
+      closeQuietly(worker);
+    }
+  }
+
+  private static void closeQuietly(Connection worker) {
+    try {
+      worker.close();
+    } catch (IOException e) {
+      // Closed either way.
+    }
+  }
+
+  private synchronized void addPhaseReport(int phaseIndex, int workerIndex,
+                                           List<Metric.Snapshot> snapshots) {
+    if (phaseIndex < 0 || phaseIndex >= phases.size()) {
+      LOG.warn("Worker " + workerIndex + " reported unknown phase " + phaseIndex);
+      return;
+    }
+    phaseReports.get(phaseIndex).put(workerIndex, snapshots);
+    if (phaseReports.get(phaseIndex).size() == numWorkers) {
+      reportPhase(phaseIndex);
+    }
+  }
+
+  /**
+   * Merges the snapshots of each metric, in the order the metrics first appear.
+   */
+  private static List<Metric.Snapshot> merge(List<List<Metric.Snapshot>> reports,
+                                             boolean consecutive) {
+    Map<String, List<Metric.Snapshot>> byName = new LinkedHashMap<>();
+    for (List<Metric.Snapshot> report : reports) {
+      for (Metric.Snapshot snapshot : report) {
+        byName.computeIfAbsent(snapshot.name, name -> new ArrayList<>()).add(snapshot);
+      }
+    }
+    List<Metric.Snapshot> merged = new ArrayList<>();
+    for (Map.Entry<String, List<Metric.Snapshot>> entry : byName.entrySet()) {
+      merged.add(Metric.Snapshot.merge(entry.getKey(), entry.getValue(), consecutive));
+    }
+    return merged;
+  }
+
+  private static String format(List<Metric.Snapshot> snapshots) {
+    StringBuilder sb = new StringBuilder();
+    for (Metric.Snapshot snapshot : snapshots) {
+      sb.append(String.format("%s  |  ", Metric.formatSummary(snapshot)));
+    }
+    return sb.toString();
+  }
+
+  private synchronized void reportPhase(int phaseIndex) {
+    if (phaseReported[phaseIndex]) {
+      return;
+    }
+    phaseReported[phaseIndex] = true;
+    Map<Integer, List<Metric.Snapshot>> reports = phaseReports.get(phaseIndex);
+    String name = phases.get(phaseIndex).name;
+    List<Metric.Snapshot> merged = merge(new ArrayList<>(reports.values()), false);
+    phaseSummaries.set(phaseIndex, merged);
+    LOG.info("Phase " + name + " summary over " + reports.size() + " of " + numWorkers +
+             " workers: " + format(merged));
+    if (exporter != null) {
+      exporter.exportPhase(name, merged);
+    }
+  }
+
+  private synchronized void reportRun() {
+    // The phases some workers did not report are reported over those which did.
+    for (int i = 0; i < phases.size(); i++) {
+      if (!phaseReported[i] && !phaseReports.get(i).isEmpty()) {
+        reportPhase(i);
+      }
+    }
+    // The phases of each worker follow each other, while the workers run side by side.
+    List<List<Metric.Snapshot>> workerReports = new ArrayList<>();
+    for (int workerIndex = 0; workerIndex < numWorkers; workerIndex++) {
+      List<List<Metric.Snapshot>> workerPhases = new ArrayList<>();
+      for (Map<Integer, List<Metric.Snapshot>> reports : phaseReports) {
+        if (reports.containsKey(workerIndex)) {
+          workerPhases.add(reports.get(workerIndex));
+        }
+      }
+      workerReports.add(merge(workerPhases, true));
+    }
+    List<Metric.Snapshot> merged = merge(workerReports, false);
+    runSummary = merged;
+    LOG.info("Run summary over " + numWorkers + " workers: " + format(merged));
+    if (exporter == null) {
+      return;
+    }
+    exporter.exportSummary(merged);
+    exporter.close();
+    for (Metric.Snapshot snapshot : merged) {
+      File file = new File(AppBase.appConfig.metricsOutputDir,
+                           snapshot.name.toLowerCase() + "_latency.hgrm");
+      try (PrintStream out = new PrintStream(file)) {
+        snapshot.writeHistogram(out);
+      } catch (FileNotFoundException e) {
+        LOG.error("Could not write latency histogram to " + file, e);
+      }
+    }
+  }
+
+  /**
+   * @return the metrics of all the workers over the given phase, or null if not reported yet.
+   */
+  synchronized List<Metric.Snapshot> getPhaseSummary(int phaseIndex) {
+    return phaseSummaries.get(phaseIndex);
+  }
+
+  /**
+   * @return the metrics of all the workers over the run, or null until it ends.
+   */
+  synchronized List<Metric.Snapshot> getRunSummary() {
+    return runSummary;
+  }
+
+  /**
+   * Runs the coordinator, with the options of the workload along with --num_workers and
+   * --coordinator_port.
+   */
+  public static void main(String[] args) throws Exception {
+    CmdLineOpts configuration = CmdLineOpts.createFromArgs(args);
+    if (configuration.getNumWorkers() <= 0) {
+      LOG.error("The coordinator needs --num_workers.");
+      System.exit(1);
+    }
+    if (AppBase.appConfig.phases == null && AppBase.appConfig.runTimeSeconds <= 0) {
+      LOG.error("The coordinator needs a --phase_file or a positive --run_time.");
+      System.exit(1);
+    }
+    try {
+      new Coordinator(configuration).run();
+    } catch (IOException e) {
+      LOG.error("The run failed.", e);
+      System.exit(1);
+    }
+  }
+}
@@ -13,6 +13,11 @@
 
 package com.yugabyte.sample.common;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.apache.log4j.Logger;
 
 import com.yugabyte.sample.apps.AppBase;
@@ -21,6 +26,17 @@ import com.yugabyte.sample.apps.AppBase;
  * A class that encapsulates a single IO thread. The thread has an index (which is an integer),
  * models an OLTP app and an IO type (read or write). It performs the required IO as long as
  * the app has not completed all its IO.
+ *
+ * In async mode, the thread does not wait for an operation to complete before issuing the next
+ * one. It issues as long as it gets a permit from the in-flight limiter shared by all IO threads,
+ * and each completion hands its permit back, so operations are issued as fast as they complete.
+ *
+ * When the workload runs in phases, the threads of each IO type are numbered from 0, and a
+ * thread only issues operations while the current phase runs more threads of its type than its
+ * index. It keeps its connections while it waits, so phases start without reconnecting.
+ *
+ * When replaying a trace, all the threads take the operations of the trace in turn, whatever
+ * their IO type, each issuing one at a time at the time it was recorded at.
  */
 public class IOPSThread extends Thread {
   private static final Logger LOG = Logger.getLogger(IOPSThread.class);
@@ -41,7 +57,19 @@ public class IOPSThread extends Thread {
   // The app that is being run.
   protected AppBase app;
 
-  private int numExceptions = 0;
+  private final AtomicInteger numExceptions = new AtomicInteger(0);
+
+  // Async mode state: the operations of this thread in flight, and the number of operations
+  // which failed in a row.
+  private final AtomicInteger numInflight = new AtomicInteger(0);
+  private final AtomicInteger numConsecutiveAsyncExceptions = new AtomicInteger(0);
+
+  // Number of operations failing in a row after which an async thread backs off, as a failure
+  // among many successful operations in flight is no reason to stop issuing.
+  private static final int ASYNC_BACKOFF_EXCEPTIONS = 10;
+
+  // How long to wait for the operations in flight once the app has finished.
+  private static final long DRAIN_TIMEOUT_MS = 60000;
 
   private volatile boolean ioThreadFailed = false;
 
@@ -55,7 +83,7 @@ public class IOPSThread extends Thread {
   }
 
   public int getNumExceptions() {
-    return numExceptions;
+    return numExceptions.get();
   }
 
   public boolean hasFailed() {
@@ -80,16 +108,33 @@ public class IOPSThread extends Thread {
   public void run() {
     try {
       LOG.debug("Starting " + ioType.toString() + " IOPS thread #" + threadIdx);
+      PhaseSchedule phases = AppBase.getPhaseSchedule();
+      if (phases != null) {
+        phases.start();
+      }
+      // Replays are performed one operation at a time per thread, whatever the IO type.
+      boolean replaying = AppBase.isReplaying();
+      if (AppBase.isAsync() && !replaying) {
+        runAsync();
+        return;
+      }
       int numConsecutiveExceptions = 0;
       while (!app.hasFinished()) {
+        if (!awaitActivePhase(phases)) {
+          break;
+        }
         try {
-          switch (ioType) {
-            case Write: app.performWrite(threadIdx); break;
-            case Read: app.performRead(); break;
+          if (replaying) {
+            app.performReplayOp();
+          } else {
+            switch (ioType) {
+              case Write: app.performWrite(threadIdx); break;
+              case Read: app.performRead(); break;
+            }
           }
           numConsecutiveExceptions = 0;
         } catch (RuntimeException e) {
-          numExceptions++;
+          numExceptions.incrementAndGet();
           if (numConsecutiveExceptions++ % 10 == 0 || printAllExceptions) {
             app.reportException(e);
           }
@@ -116,4 +161,102 @@ public class IOPSThread extends Thread {
       app.terminate();
     }
   }
+
+  /**
+   * Waits until the current phase runs this thread, if the workload runs in phases.
+   * @return false if the workload has finished instead.
+   */
+  private boolean awaitActivePhase(PhaseSchedule phases) {
+    if (phases == null || phases.isActive(ioType, threadIdx)) {
+      return true;
+    }
+    // The thread waits for a phase which runs it, for as long as it takes.
+    app.beforeWait(Long.MAX_VALUE);
+    if (phases.awaitActive(ioType, threadIdx, app::hasFinished)) {
+      return true;
+    }
+    app.stopApp();
+    return false;
+  }
+
+  private void runAsync() {
+    Semaphore inflight = AppBase.getInflightLimiter();
+    PhaseSchedule phases = AppBase.getPhaseSchedule();
+    while (!app.hasFinished() && !ioThreadFailed) {
+      if (!awaitActivePhase(phases)) {
+        break;
+      }
+      try {
+        if (numConsecutiveAsyncExceptions.get() >= ASYNC_BACKOFF_EXCEPTIONS) {
+          Thread.sleep(1000);
+        }
+        inflight.acquire();
+      } catch (InterruptedException e) {
+        LOG.error("Async IOPS thread interrupted.", e);
+        ioThreadFailed = true;
+        break;
+      }
+      numInflight.incrementAndGet();
+      CompletableFuture<Long> op;
+      try {
+        switch (ioType) {
+          case Write: op = app.performWriteAsync(threadIdx).toCompletableFuture(); break;
+          case Read: op = app.performReadAsync().toCompletableFuture(); break;
+          default: throw new IllegalStateException("Unknown IO type " + ioType);
+        }
+      } catch (RuntimeException e) {
+        op = new CompletableFuture<>();
+        op.completeExceptionally(e);
+      }
+      op.whenComplete((count, error) -> onAsyncOpDone(inflight, error));
+
+      // An operation which was done right away without doing anything means the app has nothing
+      // to do for now, so do not spin on it. One which the app queued to count later does not.
+      if (op.isDone() && !op.isCompletedExceptionally() && op.join() <= 0 &&
+          op.join() != AppBase.QUEUED) {
+        try {
+          Thread.sleep(1);
+        } catch (InterruptedException e) {
+          ioThreadFailed = true;
+          break;
+        }
+      }
+    }
+
+    long deadlineMs = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+    while (numInflight.get() > 0 && System.currentTimeMillis() < deadlineMs) {
+      try {
+        Thread.sleep(10);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    if (numInflight.get() > 0) {
+      LOG.warn("IOPS thread #" + threadIdx + " finished with " + numInflight.get() +
+               " operations still in flight");
+    }
+  }
+
+  private void onAsyncOpDone(Semaphore inflight, Throwable error) {
+    numInflight.decrementAndGet();
+    inflight.release();
+    if (error == null) {
+      numConsecutiveAsyncExceptions.set(0);
+      return;
+    }
+    if (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    numExceptions.incrementAndGet();
+    int numConsecutiveExceptions = numConsecutiveAsyncExceptions.getAndIncrement();
+    if (numConsecutiveExceptions % 10 == 0 || printAllExceptions) {
+      app.reportException(error instanceof Exception ? (Exception) error
+                                                     : new RuntimeException(error));
+    }
+    if (numConsecutiveExceptions + 1 > 500) {
+      LOG.error("Had more than " + (numConsecutiveExceptions + 1)
+                + " consecutive exceptions. Exiting.", error);
+      ioThreadFailed = true;
+    }
+  }
 }
@@ -0,0 +1,218 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Picks which of the keys written so far to read or update next.
+ *
+ * Keys are picked from [0, maxKey), where maxKey grows while the keys are being loaded. The skewed
+ * distributions are defined over the whole key space, with their constants computed up front, and
+ * folded into the part of it written so far, so that picking a key takes a few arithmetic
+ * operations and allocates nothing.
+ */
+public abstract class KeyChooser {
+
+  public enum Distribution {
+    // Every key is equally likely.
+    UNIFORM,
+    // A few keys get most operations, following a Zipfian distribution over the key space. The
+    // hot keys are scattered over the key space rather than being the lowest ones.
+    ZIPFIAN,
+    // hotOpFraction of the operations go to the lowest hotKeyFraction of the keys.
+    HOTSPOT,
+    // The most recently written keys get most operations, following a Zipfian distribution.
+    LATEST,
+    // Keys are visited in order, wrapping around at the highest one.
+    SEQUENTIAL
+  }
+
+  /**
+   * @param maxKey one more than the highest key to pick. Expected to be positive.
+   * @return a key in [0, maxKey).
+   */
+  public abstract long nextKey(long maxKey);
+
+  /**
+   * Creates a key chooser.
+   * @param distribution the distribution of the keys picked
+   * @param numKeys the size of the whole key space
+   * @param zipfianTheta the skew of the ZIPFIAN and LATEST distributions, in (0, 1)
+   * @param hotOpFraction the share of operations on the hot keys, for HOTSPOT
+   * @param hotKeyFraction the share of keys which are hot, for HOTSPOT
+   */
+  public static KeyChooser create(Distribution distribution, long numKeys, double zipfianTheta,
+                                  double hotOpFraction, double hotKeyFraction) {
+    switch (distribution) {
+      case UNIFORM:
+        return new Uniform();
+      case ZIPFIAN:
+        return new ScrambledZipfian(new Zipfian(numKeys, zipfianTheta));
+      case HOTSPOT:
+        return new Hotspot(hotOpFraction, hotKeyFraction);
+      case LATEST:
+        return new Latest(new Zipfian(numKeys, zipfianTheta));
+      case SEQUENTIAL:
+        return new Sequential();
+    }
+    throw new IllegalArgumentException("Unknown key distribution " + distribution);
+  }
+
+  private static class Uniform extends KeyChooser {
+    @Override
+    public long nextKey(long maxKey) {
+      return ThreadLocalRandom.current().nextLong(maxKey);
+    }
+  }
+
+  /**
+   * Ranks from a Zipfian distribution over [0, numKeys), rank 0 being the most likely, using the
+   * method of Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+   */
+  static class Zipfian {
+    // Terms of the zeta sum added up one by one. The rest are approximated.
+    private static final int EXACT_ZETA_TERMS = 1 << 20;
+
+    private final long numKeys;
+    private final double alpha;
+    private final double zetan;
+    private final double eta;
+    // Below 1, the scaled uniform sample maps to rank 0, and below rank1Bound to rank 1.
+    private final double rank1Bound;
+
+    Zipfian(long numKeys, double theta) {
+      if (numKeys < 1) {
+        throw new IllegalArgumentException("Expected a positive number of keys, got " + numKeys);
+      }
+      if (theta <= 0 || theta >= 1) {
+        throw new IllegalArgumentException("Expected a Zipfian theta in (0, 1), got " + theta);
+      }
+      this.numKeys = numKeys;
+      this.alpha = 1.0 / (1.0 - theta);
+      this.zetan = zeta(numKeys, theta);
+      double zeta2 = zeta(Math.min(2, numKeys), theta);
+      this.eta = (1 - Math.pow(2.0 / numKeys, 1 - theta)) / (1 - zeta2 / zetan);
+      this.rank1Bound = 1.0 + Math.pow(0.5, theta);
+    }
+
+    /**
+     * Returns the sum of 1 / i^theta for i in [1, n]. Past EXACT_ZETA_TERMS, the rest of the sum
+     * is approximated with the Euler-Maclaurin formula, which is accurate to well below a part in
+     * a billion there and keeps this fast for any key space.
+     */
+    static double zeta(long n, double theta) {
+      long exactTerms = Math.min(n, EXACT_ZETA_TERMS);
+      double sum = 0;
+      for (long i = 1; i <= exactTerms; i++) {
+        sum += 1 / Math.pow(i, theta);
+      }
+      if (n > exactTerms) {
+        double m = exactTerms;
+        double integral = (Math.pow(n, 1 - theta) - Math.pow(m, 1 - theta)) / (1 - theta);
+        double ends = (Math.pow(n, -theta) - Math.pow(m, -theta)) / 2;
+        double slopes = -theta * (Math.pow(n, -theta - 1) - Math.pow(m, -theta - 1)) / 12;
+        sum += integral + ends + slopes;
+      }
+      return sum;
+    }
+
+    long nextRank() {
+      double uz = ThreadLocalRandom.current().nextDouble() * zetan;
+      if (uz < 1) {
+        return 0;
+      }
+      if (uz < rank1Bound) {
+        return 1;
+      }
+      double u = uz / zetan;
+      long rank = (long) (numKeys * Math.pow(eta * u - eta + 1, alpha));
+      return Math.min(rank, numKeys - 1);
+    }
+  }
+
+  private static class ScrambledZipfian extends KeyChooser {
+    private static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME_64 = 1099511628211L;
+
+    private final Zipfian zipfian;
+
+    ScrambledZipfian(Zipfian zipfian) {
+      this.zipfian = zipfian;
+    }
+
+    // The FNV-1 hash of the bytes of the rank.
+    private static long fnvHash(long rank) {
+      long hash = FNV_OFFSET_BASIS_64;
+      for (int i = 0; i < Long.BYTES; i++) {
+        hash = (hash ^ (rank & 0xff)) * FNV_PRIME_64;
+        rank >>>= 8;
+      }
+      return hash & Long.MAX_VALUE;
+    }
+
+    @Override
+    public long nextKey(long maxKey) {
+      return fnvHash(zipfian.nextRank()) % maxKey;
+    }
+  }
+
+  private static class Hotspot extends KeyChooser {
+    private final double hotOpFraction;
+    private final double hotKeyFraction;
+
+    Hotspot(double hotOpFraction, double hotKeyFraction) {
+      if (hotOpFraction < 0 || hotOpFraction > 1 || hotKeyFraction <= 0 || hotKeyFraction > 1) {
+        throw new IllegalArgumentException(String.format(
+            "Expected hotspot fractions of operations in [0, 1] and of keys in (0, 1], got %f " +
+            "and %f", hotOpFraction, hotKeyFraction));
+      }
+      this.hotOpFraction = hotOpFraction;
+      this.hotKeyFraction = hotKeyFraction;
+    }
+
+    @Override
+    public long nextKey(long maxKey) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      long numHotKeys = Math.max(1, (long) (maxKey * hotKeyFraction));
+      if (numHotKeys >= maxKey || random.nextDouble() < hotOpFraction) {
+        return random.nextLong(numHotKeys);
+      }
+      return random.nextLong(numHotKeys, maxKey);
+    }
+  }
+
+  private static class Latest extends KeyChooser {
+    private final Zipfian zipfian;
+
+    Latest(Zipfian zipfian) {
+      this.zipfian = zipfian;
+    }
+
+    @Override
+    public long nextKey(long maxKey) {
+      return maxKey - 1 - zipfian.nextRank() % maxKey;
+    }
+  }
+
+  private static class Sequential extends KeyChooser {
+    private final AtomicLong nextKey = new AtomicLong(0);
+
+    @Override
+    public long nextKey(long maxKey) {
+      return Math.floorMod(nextKey.getAndIncrement(), maxKey);
+    }
+  }
+}
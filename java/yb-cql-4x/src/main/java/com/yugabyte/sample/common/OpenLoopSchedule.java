@@ -0,0 +1,94 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * A timeline of intended start times for operations issued at a fixed rate, shared by all the IO
+ * threads of one IO type.
+ *
+ * Each operation claims the next slot on the timeline and waits for it, whichever thread runs it.
+ * When the server stalls, the slots keep passing, so the operations that were due in the meantime
+ * are issued back to back once threads free up. Measuring their latency from the intended start,
+ * rather than from when they were actually sent, counts the time they spent waiting for the stall
+ * to end, the way a client issuing at this rate would have seen it.
+ */
+public class OpenLoopSchedule {
+  // Longest time to park at once, so that a stopped app is noticed at low rates.
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final long intervalNanos;
+  // The intended start time of the next operation, or 0 until the first one.
+  private final AtomicLong nextStartNanos = new AtomicLong(0);
+
+  public OpenLoopSchedule(double opsPerSec) {
+    if (opsPerSec <= 0) {
+      throw new IllegalArgumentException("Expected a positive rate, got " + opsPerSec);
+    }
+    this.intervalNanos = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / opsPerSec));
+  }
+
+  /**
+   * Claims the next slot of the timeline and waits until it comes.
+   * @param stopped tells whether to give up waiting
+   * @return the intended start time, in System.nanoTime() terms
+   */
+  public long awaitNextStart(BooleanSupplier stopped) {
+    long startNanos = claimNextStart();
+    awaitStart(startNanos, stopped);
+    return startNanos;
+  }
+
+  /**
+   * Claims the next slot of the timeline, for the caller to wait for with awaitStart.
+   * @return the intended start time, in System.nanoTime() terms
+   */
+  public long claimNextStart() {
+    nextStartNanos.compareAndSet(0, System.nanoTime());
+    return nextStartNanos.getAndAdd(intervalNanos);
+  }
+
+  /**
+   * Waits until the given start time comes.
+   * @param stopped tells whether to give up waiting
+   */
+  public void awaitStart(long startNanos, BooleanSupplier stopped) {
+    long waitNanos;
+    while ((waitNanos = startNanos - System.nanoTime()) > 0 && !stopped.getAsBoolean()) {
+      LockSupport.parkNanos(Math.min(waitNanos, MAX_PARK_NANOS));
+    }
+  }
+
+  /**
+   * Gives up the slots of further operations which were done along with the last one, as when
+   * a write covers a batch of keys, so that the rate is kept in operations rather than requests.
+   */
+  public void consume(long numOps) {
+    if (numOps > 0) {
+      nextStartNanos.addAndGet(numOps * intervalNanos);
+    }
+  }
+
+  /**
+   * @return how far behind its timeline the schedule is, in nanoseconds, or 0 if it is not.
+   */
+  public long getLagNanos() {
+    long next = nextStartNanos.get();
+    return next == 0 ? 0 : Math.max(0, System.nanoTime() - next);
+  }
+}
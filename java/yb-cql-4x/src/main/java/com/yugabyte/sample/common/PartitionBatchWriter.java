@@ -0,0 +1,221 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.log4j.Logger;
+
+import com.datastax.oss.driver.api.core.CqlSession;
+import com.datastax.oss.driver.api.core.cql.BatchStatement;
+import com.datastax.oss.driver.api.core.cql.BatchableStatement;
+import com.datastax.oss.driver.api.core.cql.BoundStatement;
+import com.datastax.oss.driver.api.core.cql.DefaultBatchType;
+
+/**
+ * Buffers the writes of a time series workload per partition, and writes each partition's
+ * buffer as one unlogged batch, the way collectors ingest data points.
+ *
+ * A partition's buffer is written once it holds --batch_size points, by the thread adding the
+ * last of them, or once its first point has waited --batch_flush_interval_ms, by a flusher
+ * thread. The points of a batch all share a partition key, so the batch carries the routing key
+ * of its first statement, and is sent to a node owning that partition, as a single statement on
+ * it would be.
+ */
+public class PartitionBatchWriter {
+  private static final Logger LOG = Logger.getLogger(PartitionBatchWriter.class);
+
+  /**
+   * Told about each batch as it is written, to track the points in it.
+   */
+  public interface BatchListener {
+    /**
+     * @param numPoints the number of points in the batch
+     * @param pointStartTs when the write of each point of the batch started, as passed to add
+     * @param writeStartTs when the batch started to be written, in System.nanoTime() terms
+     * @param lastTs the latest timestamp of the data points of the batch, in milliseconds
+     * @param error why the batch failed, or null if it succeeded
+     */
+    void batchWritten(Object partition, int numPoints, long[] pointStartTs, long writeStartTs,
+                      long lastTs, Exception error);
+  }
+
+  /**
+   * The points of a partition waiting to be written.
+   */
+  private static class Buffer {
+    final List<BatchableStatement<?>> statements = new ArrayList<>();
+    long[] pointStartTs = new long[8];
+    long lastTs;
+  }
+
+  private final String name;
+  private final Supplier<CqlSession> session;
+  private final BatchListener listener;
+  private final long flushIntervalNanos;
+  private final Map<Object, Buffer> buffers = new ConcurrentHashMap<>();
+  // The number of batches written, and the number of points in them, for the fill ratio.
+  private final AtomicLong numBatches = new AtomicLong(0);
+  private final AtomicLong numBatchedPoints = new AtomicLong(0);
+
+  /**
+   * @param name names the flusher thread
+   * @param session the session to write the batches with
+   * @param listener told about each batch written
+   * @param flushIntervalMillis the longest time a point waits in its buffer
+   */
+  public PartitionBatchWriter(String name, Supplier<CqlSession> session, BatchListener listener,
+                              long flushIntervalMillis) {
+    this.name = name;
+    this.session = session;
+    this.listener = listener;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+    Thread flusher = new Thread(this::flushExpired, name + " Flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+  }
+
+  /**
+   * Adds a data point to the buffer of its partition, and writes the buffer if it is full.
+   * @param partition the partition key of the statement
+   * @param statement writes the data point
+   * @param ts the timestamp of the data point
+   * @param startTs when the write of the point started, in System.nanoTime() terms
+   * @param batchSize the number of points to write in a batch
+   */
+  public void add(Object partition, BoundStatement statement, long ts, long startTs,
+                  int batchSize) {
+    Buffer full = null;
+    Buffer buffer = buffers.computeIfAbsent(partition, p -> new Buffer());
+    synchronized (buffer) {
+      int numPoints = buffer.statements.size();
+      if (numPoints == buffer.pointStartTs.length) {
+        buffer.pointStartTs = Arrays.copyOf(buffer.pointStartTs, 2 * numPoints);
+      }
+      buffer.pointStartTs[numPoints] = startTs;
+      buffer.statements.add(statement);
+      buffer.lastTs = Math.max(buffer.lastTs, ts);
+      if (buffer.statements.size() >= batchSize) {
+        full = takePoints(buffer);
+      }
+    }
+    if (full != null) {
+      write(partition, full);
+    }
+  }
+
+  /**
+   * Takes the points out of a buffer, to write them. Called with the buffer locked.
+   */
+  private static Buffer takePoints(Buffer buffer) {
+    Buffer points = new Buffer();
+    points.statements.addAll(buffer.statements);
+    points.pointStartTs = Arrays.copyOf(buffer.pointStartTs, buffer.statements.size());
+    points.lastTs = buffer.lastTs;
+    buffer.statements.clear();
+    return points;
+  }
+
+  private void write(Object partition, Buffer points) {
+    long writeStartTs = System.nanoTime();
+    int numPoints = points.statements.size();
+    BoundStatement first = (BoundStatement) points.statements.get(0);
+    BatchStatement batch = BatchStatement.newInstance(DefaultBatchType.UNLOGGED,
+                                                      points.statements)
+        .setRoutingKeyspace(first.getRoutingKeyspace())
+        .setRoutingKey(first.getRoutingKey())
+        .setIdempotent(true);
+    numBatches.incrementAndGet();
+    numBatchedPoints.addAndGet(numPoints);
+    try {
+      session.get().execute(batch);
+    } catch (RuntimeException e) {
+      listener.batchWritten(partition, numPoints, points.pointStartTs, writeStartTs, points.lastTs,
+                            e);
+      throw e;
+    }
+    listener.batchWritten(partition, numPoints, points.pointStartTs, writeStartTs, points.lastTs,
+                          null);
+  }
+
+  /**
+   * Writes the buffers whose first point has waited long enough, until the process exits.
+   */
+  private void flushExpired() {
+    long sleepMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) / 4);
+    while (true) {
+      try {
+        Thread.sleep(sleepMillis);
+      } catch (InterruptedException e) {
+        return;
+      }
+      long now = System.nanoTime();
+      for (Map.Entry<Object, Buffer> entry : buffers.entrySet()) {
+        Buffer buffer = entry.getValue();
+        Buffer expired = null;
+        synchronized (buffer) {
+          if (!buffer.statements.isEmpty() &&
+              now - buffer.pointStartTs[0] >= flushIntervalNanos) {
+            expired = takePoints(buffer);
+          }
+        }
+        if (expired != null) {
+          try {
+            write(entry.getKey(), expired);
+          } catch (RuntimeException e) {
+            LOG.warn(name + " could not write a batch of " + expired.statements.size() +
+                     " points", e);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the points of all the buffers, as at the end of the workload.
+   */
+  public void flush() {
+    for (Map.Entry<Object, Buffer> entry : buffers.entrySet()) {
+      Buffer buffer = entry.getValue();
+      Buffer points = null;
+      synchronized (buffer) {
+        if (!buffer.statements.isEmpty()) {
+          points = takePoints(buffer);
+        }
+      }
+      if (points != null) {
+        write(entry.getKey(), points);
+      }
+    }
+  }
+
+  /**
+   * @return the mean number of points per batch written, over the batch size, or 0 if none.
+   */
+  public double getFillRatio(int batchSize) {
+    long batches = numBatches.get();
+    return batches == 0 ? 0 : (double) numBatchedPoints.get() / batches / batchSize;
+  }
+
+  public long getNumBatches() {
+    return numBatches.get();
+  }
+}
@@ -0,0 +1,223 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.yugabyte.sample.apps.AppConfig;
+
+/**
+ * One phase of a workload which changes shape over time, such as a ramp, a steady state, a spike
+ * or a soak.
+ *
+ * The phases are read from a JSON file holding an array of phases, or an object with the array
+ * under "phases". Each phase takes the same settings as the command line options of the same
+ * name, and a setting which a phase leaves out keeps its value from the phase before, or from
+ * the command line for the first phase. For example:
+ *
+ *   [{"name": "ramp", "duration_secs": 60, "target_ops_per_sec": 1000},
+ *    {"name": "steady", "duration_secs": 600, "target_ops_per_sec": 5000},
+ *    {"name": "spike", "duration_secs": 30, "num_threads_write": 64, "target_ops_per_sec": -1,
+ *     "key_distribution": "hotspot"},
+ *    {"name": "soak", "duration_secs": 3600, "num_threads_write": 8, "target_ops_per_sec": 2000,
+ *     "value_size": 4096}]
+ *
+ * A target rate which is not positive means no target. Rates and thread counts are applied as
+ * the phase starts; value and batch sizes reach the apps which read them for every operation.
+ */
+public class Phase {
+  public final String name;
+  public final long durationSecs;
+  public final int numReaderThreads;
+  public final int numWriterThreads;
+  public final double targetReadOpsPerSec;
+  public final double targetWriteOpsPerSec;
+  public final KeyChooser.Distribution keyDistribution;
+  public final double zipfianTheta;
+  public final double hotspotOpFraction;
+  public final double hotspotKeyFraction;
+  public final int valueSize;
+  public final int batchSize;
+
+  private Phase(String name, long durationSecs, int numReaderThreads, int numWriterThreads,
+                double targetReadOpsPerSec, double targetWriteOpsPerSec,
+                KeyChooser.Distribution keyDistribution, double zipfianTheta,
+                double hotspotOpFraction, double hotspotKeyFraction, int valueSize,
+                int batchSize) {
+    this.name = name;
+    this.durationSecs = durationSecs;
+    this.numReaderThreads = numReaderThreads;
+    this.numWriterThreads = numWriterThreads;
+    this.targetReadOpsPerSec = targetReadOpsPerSec;
+    this.targetWriteOpsPerSec = targetWriteOpsPerSec;
+    this.keyDistribution = keyDistribution;
+    this.zipfianTheta = zipfianTheta;
+    this.hotspotOpFraction = hotspotOpFraction;
+    this.hotspotKeyFraction = hotspotKeyFraction;
+    this.valueSize = valueSize;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Returns the settings of the command line, as the phase before the first one.
+   */
+  static Phase fromConfig(AppConfig config, int numReaderThreads, int numWriterThreads) {
+    return new Phase("", 0, numReaderThreads, numWriterThreads, config.targetReadOpsPerSec,
+                     config.targetWriteOpsPerSec, config.keyDistribution, config.zipfianTheta,
+                     config.hotspotOpFraction, config.hotspotKeyFraction, config.valueSize,
+                     config.batchSize);
+  }
+
+  private static Phase fromJson(JSONObject json, Phase previous, int index) {
+    String name = json.optString("name", "phase-" + index);
+    long durationSecs = json.getLong("duration_secs");
+    if (durationSecs <= 0) {
+      throw new IllegalArgumentException(
+          "Expected a positive duration_secs in phase " + name + ", got " + durationSecs);
+    }
+    int numReaderThreads = json.optInt("num_threads_read", previous.numReaderThreads);
+    int numWriterThreads = json.optInt("num_threads_write", previous.numWriterThreads);
+    if (numReaderThreads < 0 || numWriterThreads < 0) {
+      throw new IllegalArgumentException("Expected thread counts of at least 0 in phase " + name);
+    }
+
+    double targetReadOpsPerSec = previous.targetReadOpsPerSec;
+    double targetWriteOpsPerSec = previous.targetWriteOpsPerSec;
+    // A total target rate is split between reads and writes like the threads are, unless the
+    // rate of either is given on its own.
+    if (json.has("target_ops_per_sec")) {
+      double targetOpsPerSec = json.getDouble("target_ops_per_sec");
+      int numThreads = numReaderThreads + numWriterThreads;
+      double readShare = numThreads == 0 ? 0 : 1.0 * numReaderThreads / numThreads;
+      targetReadOpsPerSec = targetOpsPerSec * readShare;
+      targetWriteOpsPerSec = targetOpsPerSec * (1 - readShare);
+    }
+    targetReadOpsPerSec = json.optDouble("target_read_ops_per_sec", targetReadOpsPerSec);
+    targetWriteOpsPerSec = json.optDouble("target_write_ops_per_sec", targetWriteOpsPerSec);
+
+    KeyChooser.Distribution keyDistribution = previous.keyDistribution;
+    if (json.has("key_distribution")) {
+      keyDistribution =
+          KeyChooser.Distribution.valueOf(json.getString("key_distribution").toUpperCase());
+    }
+    return new Phase(name, durationSecs, numReaderThreads, numWriterThreads,
+                     targetReadOpsPerSec, targetWriteOpsPerSec, keyDistribution,
+                     json.optDouble("zipfian_theta", previous.zipfianTheta),
+                     json.optDouble("hotspot_op_fraction", previous.hotspotOpFraction),
+                     json.optDouble("hotspot_key_fraction", previous.hotspotKeyFraction),
+                     json.optInt("value_size", previous.valueSize),
+                     json.optInt("batch_size", previous.batchSize));
+  }
+
+  /**
+   * Reads the phases from a file.
+   * @param path the file
+   * @param first the settings before the first phase
+   */
+  static List<Phase> parse(String path, Phase first) throws IOException {
+    String text = new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    JSONArray array;
+    try {
+      Object value = new JSONTokener(text).nextValue();
+      array = value instanceof JSONObject ? ((JSONObject) value).getJSONArray("phases")
+                                          : (JSONArray) value;
+    } catch (JSONException | ClassCastException e) {
+      throw new IllegalArgumentException("Expected an array of phases in " + path, e);
+    }
+    if (array.length() == 0) {
+      throw new IllegalArgumentException("No phases in " + path);
+    }
+    return fromJson(array, first);
+  }
+
+  /**
+   * Reads phases written by toJson(), or those of a phase file.
+   * @param first the settings before the first phase
+   */
+  static List<Phase> fromJson(JSONArray array, Phase first) {
+    List<Phase> phases = new ArrayList<>(array.length());
+    Phase previous = first;
+    for (int i = 0; i < array.length(); i++) {
+      try {
+        previous = fromJson(array.getJSONObject(i), previous, i);
+      } catch (JSONException e) {
+        throw new IllegalArgumentException("Invalid phase " + i, e);
+      }
+      phases.add(previous);
+    }
+    return Collections.unmodifiableList(phases);
+  }
+
+  /**
+   * Returns all the settings of the phase, in the format of the phase file.
+   */
+  JSONObject toJson() {
+    return new JSONObject()
+        .put("name", name)
+        .put("duration_secs", durationSecs)
+        .put("num_threads_read", numReaderThreads)
+        .put("num_threads_write", numWriterThreads)
+        .put("target_read_ops_per_sec", targetReadOpsPerSec)
+        .put("target_write_ops_per_sec", targetWriteOpsPerSec)
+        .put("key_distribution", keyDistribution.name().toLowerCase())
+        .put("zipfian_theta", zipfianTheta)
+        .put("hotspot_op_fraction", hotspotOpFraction)
+        .put("hotspot_key_fraction", hotspotKeyFraction)
+        .put("value_size", valueSize)
+        .put("batch_size", batchSize);
+  }
+
+  /**
+   * Returns the phase with its target rates scaled, as for one of several load testers sharing
+   * them.
+   */
+  Phase withScaledRates(double scale) {
+    return new Phase(name, durationSecs, numReaderThreads, numWriterThreads,
+                     targetReadOpsPerSec * scale, targetWriteOpsPerSec * scale, keyDistribution,
+                     zipfianTheta, hotspotOpFraction, hotspotKeyFraction, valueSize, batchSize);
+  }
+
+  /**
+   * Returns the settings of the phase with another name and duration.
+   */
+  Phase withDuration(String name, long durationSecs) {
+    return new Phase(name, durationSecs, numReaderThreads, numWriterThreads, targetReadOpsPerSec,
+                     targetWriteOpsPerSec, keyDistribution, zipfianTheta, hotspotOpFraction,
+                     hotspotKeyFraction, valueSize, batchSize);
+  }
+
+  public int getNumThreads(IOPSThread.IOType ioType) {
+    return ioType == IOPSThread.IOType.Read ? numReaderThreads : numWriterThreads;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %d s, %d read threads, %d write threads, target read/write ops/sec: %.1f/%.1f, " +
+        "key distribution: %s, value size: %d, batch size: %d",
+        name, durationSecs, numReaderThreads, numWriterThreads, targetReadOpsPerSec,
+        targetWriteOpsPerSec, keyDistribution, valueSize, batchSize);
+  }
+}
@@ -0,0 +1,205 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Moves a running workload through its phases, one after the other.
+ *
+ * The IO threads are started once, as many of each IO type as the busiest phase needs, and keep
+ * their connections for the whole run. A thread whose index is beyond the thread count of the
+ * current phase for its IO type waits in awaitActive() until a phase needs it again. The settings
+ * of each phase are applied by the callback given, from the thread driving the phases.
+ *
+ * By default, each phase starts when the one before has run for its duration. A coordinator
+ * running several load testers in lockstep drives the phases instead, by calling startPhase() and
+ * finish() as it tells them to.
+ */
+public class PhaseSchedule {
+  private static final Logger LOG = Logger.getLogger(PhaseSchedule.class);
+
+  // Longest time an idle IO thread waits at once, so that a stopped app is noticed.
+  private static final long MAX_WAIT_MS = 100;
+
+  private final List<Phase> phases;
+  // Called with each phase as it starts, and with null once the last one has ended.
+  private final Consumer<Phase> onPhaseStart;
+  // Called once the IO threads start, to start driving the phases.
+  private final Consumer<PhaseSchedule> driver;
+  private boolean started = false;
+  // The phase running, or null before the first one.
+  private volatile Phase currentPhase = null;
+  private volatile boolean done = false;
+
+  public PhaseSchedule(List<Phase> phases, Consumer<Phase> onPhaseStart) {
+    this(phases, onPhaseStart, PhaseSchedule::startTimedPhases);
+  }
+
+  /**
+   * @param driver called once the IO threads start, to start driving the phases
+   */
+  public PhaseSchedule(List<Phase> phases, Consumer<Phase> onPhaseStart,
+                       Consumer<PhaseSchedule> driver) {
+    this.phases = phases;
+    this.onPhaseStart = onPhaseStart;
+    this.driver = driver;
+  }
+
+  /**
+   * Starts driving the phases, unless they have been started already.
+   */
+  public void start() {
+    synchronized (this) {
+      if (started) {
+        return;
+      }
+      started = true;
+    }
+    driver.accept(this);
+  }
+
+  private static void startTimedPhases(PhaseSchedule schedule) {
+    Thread thread = new Thread(schedule::runTimedPhases, "Phase Scheduler");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Applies the settings of a phase and lets the IO threads it runs issue operations.
+   * @param index the index of the phase, in the order of the phase file
+   */
+  public void startPhase(int index) {
+    Phase phase = phases.get(index);
+    LOG.info("Starting phase " + (index + 1) + " of " + phases.size() + ", " + phase);
+    onPhaseStart.accept(phase);
+    synchronized (this) {
+      currentPhase = phase;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Ends the last phase, and with it the run.
+   */
+  public void finish() {
+    synchronized (this) {
+      if (done) {
+        return;
+      }
+      done = true;
+      notifyAll();
+    }
+    LOG.info("All phases done.");
+    onPhaseStart.accept(null);
+  }
+
+  private void runTimedPhases() {
+    long phaseEndNanos = System.nanoTime();
+    for (int i = 0; i < phases.size(); i++) {
+      Phase phase = phases.get(i);
+      startPhase(i);
+      // The ends of the phases are kept on the timeline of the first one, so that the time taken
+      // to apply the settings of each does not add up over the run.
+      phaseEndNanos += TimeUnit.SECONDS.toNanos(phase.durationSecs);
+      long sleepNanos;
+      while ((sleepNanos = phaseEndNanos - System.nanoTime()) > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleepNanos);
+        } catch (InterruptedException e) {
+          LOG.info("Phase " + phase.name + " interrupted, ending the run.");
+          break;
+        }
+      }
+    }
+    finish();
+  }
+
+  /**
+   * @return the phase running, or null before the first one.
+   */
+  public Phase getCurrentPhase() {
+    return currentPhase;
+  }
+
+  /**
+   * @return true once the last phase has ended.
+   */
+  public boolean isDone() {
+    return done;
+  }
+
+  /**
+   * @return true if the current phase has an IO thread of the given type and index, so that
+   * awaitActive() returns without waiting.
+   */
+  public boolean isActive(IOPSThread.IOType ioType, int threadIdx) {
+    Phase phase = currentPhase;
+    return phase != null && threadIdx < phase.getNumThreads(ioType) && !done;
+  }
+
+  /**
+   * Waits until the current phase has an IO thread of the given type and index.
+   * @param stopped tells whether to give up waiting
+   * @return true if the thread should issue operations, false if the phases are done or it was
+   * told to stop.
+   */
+  public boolean awaitActive(IOPSThread.IOType ioType, int threadIdx, BooleanSupplier stopped) {
+    if (isActive(ioType, threadIdx)) {
+      return true;
+    }
+    synchronized (this) {
+      while (!done && !stopped.getAsBoolean()) {
+        Phase phase = currentPhase;
+        if (phase != null && threadIdx < phase.getNumThreads(ioType)) {
+          return true;
+        }
+        try {
+          wait(MAX_WAIT_MS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the most IO threads of the given type that any of the phases runs.
+   */
+  public static int getMaxThreads(List<Phase> phases, IOPSThread.IOType ioType) {
+    int maxThreads = 0;
+    for (Phase phase : phases) {
+      maxThreads = Math.max(maxThreads, phase.getNumThreads(ioType));
+    }
+    return maxThreads;
+  }
+
+  /**
+   * @return the time all the phases take, in seconds.
+   */
+  public static long getTotalDurationSecs(List<Phase> phases) {
+    long durationSecs = 0;
+    for (Phase phase : phases) {
+      durationSecs += phase.durationSecs;
+    }
+    return durationSecs;
+  }
+}
@@ -14,10 +14,7 @@
 package com.yugabyte.sample.common;
 
 import java.security.MessageDigest;
-import java.util.HashSet;
 import java.util.Random;
-import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.codec.binary.Hex;
@@ -26,7 +23,39 @@ import org.apache.log4j.Logger;
 public class SimpleLoadGenerator {
   private static final Logger LOG = Logger.getLogger(SimpleLoadGenerator.class);
 
+  /**
+   * Writes the decimal digits of a number to the buffer at the offset, the same as
+   * Long.toString() would have them.
+   * @return the offset right after the last digit
+   */
+  static int writeDecimal(long value, byte[] buf, int offset) {
+    if (value == 0) {
+      buf[offset] = '0';
+      return offset + 1;
+    }
+    if (value < 0) {
+      buf[offset++] = '-';
+    } else {
+      // Work with the negated value, which covers Long.MIN_VALUE too.
+      value = -value;
+    }
+    int numDigits = 0;
+    for (long v = value; v != 0; v /= 10) {
+      numDigits++;
+    }
+    int end = offset + numDigits;
+    for (int pos = end - 1; value != 0; value /= 10) {
+      buf[pos--] = (byte) ('0' - value % 10);
+    }
+    return end;
+  }
+
   public static class Key {
+    // The bytes getValueStr() starts with.
+    private static final byte[] VALUE_STR_PREFIX = {'v', 'a', 'l', ':'};
+    // The most bytes getValueStr() takes: the prefix, a sign and the 19 digits of a long.
+    public static final int MAX_VALUE_STR_SIZE = VALUE_STR_PREFIX.length + 20;
+
     // The underlying key is an integer.
     Long key;
     // The randomized loadtester prefix.
@@ -58,6 +87,16 @@ public class SimpleLoadGenerator {
       return ("val:" + key.toString());
     }
 
+    /**
+     * Writes the bytes of getValueStr() to the start of the buffer, without allocating.
+     * @param buf buffer of at least MAX_VALUE_STR_SIZE bytes
+     * @return the number of bytes written
+     */
+    public int getValueStrBytes(byte[] buf) {
+      System.arraycopy(VALUE_STR_PREFIX, 0, buf, 0, VALUE_STR_PREFIX.length);
+      return writeDecimal(key, buf, VALUE_STR_PREFIX.length);
+    }
+
     public String getValueStr(int idx, int size) {
       StringBuilder sb = new StringBuilder();
       sb.append("val");
@@ -84,20 +123,18 @@ public class SimpleLoadGenerator {
     }
   }
 
-  // The key to start from.
+  // The key to start from. Keys are tracked and picked by their index from here, so that several
+  // load testers can each load a range of the key space of their own.
   final long startKey;
   // The key to write till.
   final long endKey;
-  // The max key that was successfully written consecutively.
-  AtomicLong maxWrittenKey;
-  // The max key that has been generated and handed out so far.
+  // Tracks the max key index that was successfully written consecutively, and the keys that
+  // failed.
+  final WrittenKeysTracker writtenKeys;
+  // The max key index that has been generated and handed out so far.
   AtomicLong maxGeneratedKey;
-  // Set of keys that failed to write.
-  final Set<Long> failedKeys;
-  // Keys that have been written above maxWrittenKey.
-  final Set<Long> writtenKeys;
-  // A background thread to track keys written and increment maxWrittenKey.
-  Thread writtenKeysTracker;
+  // Picks the keys to read, and to update once all keys are written.
+  volatile KeyChooser keyChooser;
   // The prefix for the key.
   String keyPrefix;
   // Random number generator.
@@ -105,40 +142,29 @@ public class SimpleLoadGenerator {
 
   public SimpleLoadGenerator(long startKey, final long endKey,
                              long maxWrittenKey) {
+    this(startKey, endKey, maxWrittenKey, KeyChooser.create(
+        KeyChooser.Distribution.UNIFORM, endKey, 0, 0, 1));
+  }
+
+  /**
+   * @param startKey the first key to write
+   * @param endKey one more than the last key to write
+   * @param maxWrittenKey the last key already written, or startKey - 1 for none
+   */
+  public SimpleLoadGenerator(long startKey, final long endKey,
+                             long maxWrittenKey, KeyChooser keyChooser) {
     this.startKey = startKey;
     this.endKey = endKey;
-    this.maxWrittenKey = new AtomicLong(maxWrittenKey);
-    this.maxGeneratedKey = new AtomicLong(maxWrittenKey);
-    failedKeys = new HashSet<Long>();
-    writtenKeys = new HashSet<Long>();
-    writtenKeysTracker = new Thread("Written Keys Tracker") {
-        @Override
-        public void run() {
-          do {
-            long key = SimpleLoadGenerator.this.maxWrittenKey.get() + 1;
-            synchronized (this) {
-              if (failedKeys.contains(key) || writtenKeys.remove(key)) {
-                SimpleLoadGenerator.this.maxWrittenKey.set(key);
-                if (key == endKey - 1) {
-                  // We've inserted all requested keys, no need to track
-                  // maxWrittenKey/writtenKeys anymore.
-                  break;
-                }
-              } else {
-                try {
-                  wait();
-                } catch (InterruptedException e) {
-                  // Ignore
-                }
-              };
-            }
-          } while (true);
-        }
-      };
-    // Make tracker a daemon thread so that it will not block the load tester from exiting
-    // when done.
-    writtenKeysTracker.setDaemon(true);
-    writtenKeysTracker.start();
+    this.writtenKeys = new WrittenKeysTracker(maxWrittenKey - startKey);
+    this.maxGeneratedKey = new AtomicLong(maxWrittenKey - startKey);
+    this.keyChooser = keyChooser;
+  }
+
+  /**
+   * Changes how the keys to read and update are picked, as when a new phase of the workload starts.
+   */
+  public void setKeyChooser(KeyChooser keyChooser) {
+    this.keyChooser = keyChooser;
   }
 
   public void setKeyPrefix(String prefix) {
@@ -146,20 +172,12 @@ public class SimpleLoadGenerator {
   }
 
   public void recordWriteSuccess(Key key) {
-    if (key.asNumber() > maxWrittenKey.get()) {
-      synchronized (writtenKeysTracker) {
-        writtenKeys.add(key.asNumber());
-        writtenKeysTracker.notify();
-      }
-    }
+    writtenKeys.recordSuccess(key.asNumber() - startKey);
   }
 
   public void recordWriteFailure(Key key) {
-    synchronized (writtenKeysTracker) {
-      if (key != null) {
-        failedKeys.add(key.asNumber());
-        writtenKeysTracker.notify();
-      }
+    if (key != null) {
+      writtenKeys.recordFailure(key.asNumber() - startKey);
     }
   }
 
@@ -167,12 +185,12 @@ public class SimpleLoadGenerator {
   public Key getKeyToWrite() {
     Key retKey = null;
     do {
-      long maxKey = maxWrittenKey.get();
+      long maxKey = writtenKeys.getMaxWrittenKey();
       // Return a random key to update if we have already written all keys.
-      if (maxKey != -1 && maxKey == endKey - 1) {
-        retKey = generateKey(ThreadLocalRandom.current().nextLong(maxKey));
+      if (maxKey != -1 && maxKey == endKey - startKey - 1) {
+        retKey = generateKey(startKey + keyChooser.nextKey(maxKey));
       } else {
-        retKey = generateKey(maxGeneratedKey.incrementAndGet());
+        retKey = generateKey(startKey + maxGeneratedKey.incrementAndGet());
       }
 
       if (retKey == null) {
@@ -185,26 +203,38 @@ public class SimpleLoadGenerator {
     return retKey;
   }
 
+  /**
+   * Hands out the next key which was not handed out before, for apps which only insert new keys.
+   * Unlike a check of stillLoading() followed by getKeyToWrite(), no two threads can both get
+   * past the end of the range.
+   * @return the key, or null once all the keys of the range have been handed out.
+   */
+  public Key getNewKeyToWrite() {
+    long lastKey = endKey - startKey - 1;
+    long prevKey = maxGeneratedKey.getAndUpdate(key -> Math.min(key + 1, lastKey));
+    return prevKey >= lastKey ? null : generateKey(startKey + prevKey + 1);
+  }
+
   public Key getKeyToRead() {
-    long maxKey = maxWrittenKey.get();
+    long maxKey = writtenKeys.getMaxWrittenKey();
     if (maxKey < 0) {
       return null;
     } else if (maxKey == 0) {
-      return generateKey(0);
+      return generateKey(startKey);
     }
     do {
-      long key = ThreadLocalRandom.current().nextLong(maxKey);
-      if (!failedKeys.contains(key))
-        return generateKey(key);
+      long key = keyChooser.nextKey(maxKey);
+      if (!writtenKeys.isFailed(key))
+        return generateKey(startKey + key);
     } while (true);
   }
 
   public long getMaxWrittenKey() {
-    return maxWrittenKey.get();
+    return startKey + writtenKeys.getMaxWrittenKey();
   }
 
   public long getMaxGeneratedKey() {
-    return maxGeneratedKey.get();
+    return startKey + maxGeneratedKey.get();
   }
 
   public Key generateKey(long key) {
@@ -212,6 +242,6 @@ public class SimpleLoadGenerator {
   }
 
   public boolean stillLoading() {
-    return maxGeneratedKey.get() < endKey - 1;
+    return maxGeneratedKey.get() < endKey - startKey - 1;
   }
 }
@@ -29,6 +29,9 @@ public class TimeseriesLoadGenerator {
   // State variable tracking the last timestamp emitted by this source (assumed to be the same
   // across all the nodes). -1 indicates no data point has been emitted.
   long lastEmittedTs = -1;
+  // The timestamp of the last data point handed out by claimDataEmitTs, which may not be written
+  // yet. -1 if none.
+  long lastClaimedTs = -1;
   // The time interval for generating data points. One data point is generated every
   // dataEmitRateMs milliseconds.
   long dataEmitRateMs;
@@ -83,6 +86,28 @@ public class TimeseriesLoadGenerator {
     return lastEmittedTs + dataEmitRateMs;
   }
 
+  /**
+   * Like getDataEmitTs, for writers which buffer the data points before writing them: the
+   * timestamp returned is claimed, so that the next call returns the one after it although the
+   * point is not written yet. setLastEmittedTs is still to be called once it is.
+   */
+  public synchronized long claimDataEmitTs() {
+    long lastTs = Math.max(lastEmittedTs, lastClaimedTs);
+    long ts = System.currentTimeMillis();
+    if (ts - lastTs < dataEmitRateMs) {
+      return -1;
+    }
+    if (lastTs == -1) {
+      lastClaimedTs = ts - (ts % dataEmitRateMs);
+      return lastClaimedTs;
+    }
+    if ((ts - lastTs) / dataEmitRateMs > 1) {
+      turnVerificationOff(ts);
+    }
+    lastClaimedTs = lastTs + dataEmitRateMs;
+    return lastClaimedTs;
+  }
+
   /**
    * @return true if this generator has emitted any data so far.
    */
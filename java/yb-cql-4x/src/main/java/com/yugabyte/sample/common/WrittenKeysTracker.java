@@ -0,0 +1,145 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tracks which of the keys handed out for writing are done, and the highest key up to which all
+ * of them are, without locks or a helper thread.
+ *
+ * Keys just above the high-water mark are tracked in a sliding window of bits, kept in a ring of
+ * longs: a key which is done, whether written or failed, sets its bit. The thread which sets the
+ * bit right above the mark moves the mark up over all the contiguous set bits, a word at a time,
+ * clearing them for the keys one window further on. Only one thread moves the mark at a time, and
+ * a thread which finds another one at it leaves the work to it. Keys further ahead than the
+ * window, which only happens when one write is very slow, go to an overflow set until the window
+ * reaches them.
+ *
+ * Failed keys are also kept in a concurrent set, so that readers can skip them.
+ */
+public class WrittenKeysTracker {
+  // Number of keys above the high-water mark tracked in the window. A power of two.
+  static final int WINDOW_BITS = 1 << 20;
+  private static final int WINDOW_WORDS = WINDOW_BITS / Long.SIZE;
+
+  private final AtomicLongArray window = new AtomicLongArray(WINDOW_WORDS);
+  // Done keys which were too far ahead of the window when they were recorded.
+  private final Set<Long> overflow = ConcurrentHashMap.newKeySet();
+  private final Set<Long> failedKeys = ConcurrentHashMap.newKeySet();
+  // The highest key up to which all keys are done.
+  private volatile long maxWrittenKey;
+  // Held by the thread moving maxWrittenKey up.
+  private final AtomicBoolean advancing = new AtomicBoolean(false);
+
+  public WrittenKeysTracker(long maxWrittenKey) {
+    this.maxWrittenKey = maxWrittenKey;
+  }
+
+  public long getMaxWrittenKey() {
+    return maxWrittenKey;
+  }
+
+  public boolean isFailed(long key) {
+    return !failedKeys.isEmpty() && failedKeys.contains(key);
+  }
+
+  public void recordSuccess(long key) {
+    markDone(key);
+  }
+
+  public void recordFailure(long key) {
+    failedKeys.add(key);
+    markDone(key);
+  }
+
+  private static int wordIndex(long key) {
+    return (int) ((key >>> 6) & (WINDOW_WORDS - 1));
+  }
+
+  private static long bitMask(long key) {
+    return 1L << (key & (Long.SIZE - 1));
+  }
+
+  private boolean isSet(long key) {
+    return (window.get(wordIndex(key)) & bitMask(key)) != 0;
+  }
+
+  private void markDone(long key) {
+    long mark = maxWrittenKey;
+    // While another thread is moving the mark, it will soon make room for the key in the window.
+    while (key - mark > WINDOW_BITS && advancing.get()) {
+      Thread.yield();
+      mark = maxWrittenKey;
+    }
+    if (key <= mark) {
+      return;
+    }
+    boolean overflowed = key - mark > WINDOW_BITS;
+    if (overflowed) {
+      overflow.add(key);
+    } else {
+      // The bit of a key is only reused once the mark has passed it, and the mark only moves
+      // after clearing the bit, so it cannot be cleared under us.
+      int index = wordIndex(key);
+      long mask = bitMask(key);
+      long word;
+      do {
+        word = window.get(index);
+      } while (!window.compareAndSet(index, word, word | mask));
+    }
+    // The mark is read again after marking the key: if the thread moving it has not reached
+    // the key below yet, it will find the key marked once it does.
+    if (overflowed || key == maxWrittenKey + 1) {
+      advance();
+    }
+  }
+
+  private void advance() {
+    while (advancing.compareAndSet(false, true)) {
+      long mark = maxWrittenKey;
+      try {
+        while (true) {
+          long next = mark + 1;
+          int index = wordIndex(next);
+          int bit = (int) (next & (Long.SIZE - 1));
+          // The number of set bits in a row from the next key up to the end of its word.
+          int run = Long.numberOfTrailingZeros(~(window.get(index) >>> bit));
+          if (run > 0) {
+            long mask = (run == Long.SIZE ? -1L : (1L << run) - 1) << bit;
+            long word;
+            do {
+              word = window.get(index);
+            } while (!window.compareAndSet(index, word, word & ~mask));
+            mark += run;
+          } else if (!overflow.isEmpty() && overflow.remove(next)) {
+            mark = next;
+          } else {
+            break;
+          }
+          maxWrittenKey = mark;
+        }
+      } finally {
+        advancing.set(false);
+      }
+      // A thread which set the next bit while we held the flag left it to us.
+      if (!isSet(mark + 1) && (overflow.isEmpty() || !overflow.contains(mark + 1))) {
+        return;
+      }
+    }
+  }
+}
@@ -13,20 +13,81 @@
 
 package com.yugabyte.sample.common.metrics;
 
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
 import org.apache.log4j.Logger;
+import org.json.JSONObject;
 
+/**
+ * Tracks the throughput and latency of one type of operation.
+ *
+ * Every thread that accumulates into the metric records latencies in a recorder of its own, so
+ * the IO threads never wait for each other or for the metrics tracker. The tracker merges the
+ * recorders when it takes a snapshot. Latencies are kept in microseconds, per request: a batch of
+ * operations counts once towards the latency percentiles, and numOps times towards throughput.
+ * Besides intervals and the whole run, the metric covers the current phase of the workload, if it
+ * runs in phases.
+ */
 public class Metric {
   private static final Logger LOG = Logger.getLogger(Metric.class);
+
+  // Latencies above this are recorded as this.
+  private static final long MAX_LATENCY_MICROS = TimeUnit.HOURS.toMicros(1);
+  // Two significant digits keep each recorder small, since there is one per IO thread.
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  /**
+   * The recorder of one thread, along with the histogram it last handed out, for reuse.
+   */
+  private static class ThreadRecorder {
+    final SingleWriterRecorder recorder =
+        new SingleWriterRecorder(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+    Histogram spare = null;
+  }
+
   String name;
+  private final ThreadLocal<ThreadRecorder> threadRecorder =
+      ThreadLocal.withInitial(this::newThreadRecorder);
+  private final List<ThreadRecorder> recorders = new CopyOnWriteArrayList<>();
+  private final LongAdder curOpCount = new LongAdder();
+  private final LongAdder totalOpCount = new LongAdder();
+  private final LongAdder phaseOpCount = new LongAdder();
+
+  // The following are only used under the lock, by the thread taking snapshots.
   private final Object lock = new Object();
-  private long curOpCount = 0;
-  private long curOpLatencyNanos = 0;
-  private long totalOpCount = 0;
+  private final Histogram intervalHistogram =
+      new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+  private final Histogram totalHistogram = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+  private final Histogram phaseHistogram = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+  private final long startNanos;
   private long lastSnapshotNanos;
+  private long phaseStartNanos;
 
   public Metric(String name) {
     this.name = name;
-    lastSnapshotNanos = System.nanoTime();
+    startNanos = System.nanoTime();
+    lastSnapshotNanos = startNanos;
+    phaseStartNanos = startNanos;
+  }
+
+  private ThreadRecorder newThreadRecorder() {
+    ThreadRecorder recorder = new ThreadRecorder();
+    recorders.add(recorder);
+    return recorder;
+  }
+
+  public String getName() {
+    return name;
   }
 
   /**
@@ -35,28 +96,227 @@ public class Metric {
    * @param batchLatencyNanos whole batch latency
    */
   public void accumulate(long numOps, long batchLatencyNanos) {
-    synchronized(lock) {
-      curOpCount += numOps;
-      curOpLatencyNanos += batchLatencyNanos * numOps;
-      totalOpCount += numOps;
+    curOpCount.add(numOps);
+    totalOpCount.add(numOps);
+    phaseOpCount.add(numOps);
+    long latencyMicros = Math.min(Math.max(batchLatencyNanos / 1000, 0), MAX_LATENCY_MICROS);
+    threadRecorder.get().recorder.recordValue(latencyMicros);
+  }
+
+  /**
+   * Moves what the threads recorded since the last call into the interval, total and phase
+   * histograms.
+   */
+  private void collect() {
+    for (ThreadRecorder recorder : recorders) {
+      recorder.spare = recorder.recorder.getIntervalHistogram(recorder.spare);
+      intervalHistogram.add(recorder.spare);
+      totalHistogram.add(recorder.spare);
+      phaseHistogram.add(recorder.spare);
     }
   }
 
-  public String getMetricsAndReset() {
-    String msg = null;
-    synchronized(lock) {
+  /**
+   * The throughput and latencies of a metric over an interval, a phase or the whole run. Latencies
+   * are in milliseconds. The snapshots of phases and of the whole run keep their histogram, so
+   * that those of several load testers can be merged.
+   */
+  public static class Snapshot {
+    public final String name;
+    public final double elapsedSecs;
+    // Operations and requests in the interval.
+    public final long ops;
+    public final long requests;
+    // Operations since the start of the run.
+    public final long totalOps;
+    public final double opsPerSec;
+    public final double meanMs;
+    public final double p50Ms;
+    public final double p95Ms;
+    public final double p99Ms;
+    public final double p999Ms;
+    public final double maxMs;
+    private final long elapsedNanos;
+    // A copy of the latency histogram, in microseconds, or null if not kept.
+    private final Histogram histogram;
+
+    Snapshot(String name, long elapsedNanos, long ops, long totalOps, Histogram histogram) {
+      this(name, elapsedNanos, ops, totalOps, histogram, false);
+    }
+
+    Snapshot(String name, long elapsedNanos, long ops, long totalOps, Histogram histogram,
+             boolean keepHistogram) {
+      this.name = name;
+      this.elapsedNanos = elapsedNanos;
+      this.histogram = keepHistogram ? histogram.copy() : null;
+      this.elapsedSecs = elapsedNanos / 1e9;
+      this.ops = ops;
+      this.requests = histogram.getTotalCount();
+      this.totalOps = totalOps;
+      this.opsPerSec = (elapsedNanos == 0) ? 0 : (ops * 1000000000 * 1.0 / elapsedNanos);
+      this.meanMs = histogram.getMean() / 1000;
+      this.p50Ms = histogram.getValueAtPercentile(50) / 1000.0;
+      this.p95Ms = histogram.getValueAtPercentile(95) / 1000.0;
+      this.p99Ms = histogram.getValueAtPercentile(99) / 1000.0;
+      this.p999Ms = histogram.getValueAtPercentile(99.9) / 1000.0;
+      this.maxMs = histogram.getMaxValue() / 1000.0;
+    }
+
+    /**
+     * Encodes the snapshot, along with its histogram, for another process to merge.
+     */
+    public JSONObject encode() {
+      JSONObject json = new JSONObject()
+          .put("name", name)
+          .put("elapsed_nanos", elapsedNanos)
+          .put("ops", ops)
+          .put("total_ops", totalOps);
+      if (histogram != null) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        json.put("histogram", Base64.getEncoder().encodeToString(
+            Arrays.copyOf(buffer.array(), length)));
+      }
+      return json;
+    }
+
+    /**
+     * Decodes a snapshot encoded by encode().
+     */
+    public static Snapshot decode(JSONObject json) {
+      Histogram histogram = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+      if (json.has("histogram")) {
+        byte[] bytes = Base64.getDecoder().decode(json.getString("histogram"));
+        try {
+          histogram = Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(bytes),
+                                                               MAX_LATENCY_MICROS);
+        } catch (DataFormatException e) {
+          throw new IllegalArgumentException("Invalid histogram in snapshot of " +
+                                             json.optString("name"), e);
+        }
+      }
+      return new Snapshot(json.getString("name"), json.getLong("elapsed_nanos"),
+                          json.getLong("ops"), json.getLong("total_ops"), histogram, true);
+    }
+
+    /**
+     * Merges the snapshots of the same metric over the same time from several load testers, or
+     * over consecutive times from one, into one. The latencies are those of all the requests, and
+     * the throughput that of all the operations over the longest snapshot, or over the sum of the
+     * snapshots if consecutive.
+     */
+    public static Snapshot merge(String name, List<Snapshot> snapshots, boolean consecutive) {
+      Histogram histogram = new Histogram(MAX_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+      long elapsedNanos = 0;
+      long ops = 0;
+      long totalOps = 0;
+      for (Snapshot snapshot : snapshots) {
+        if (snapshot.histogram != null) {
+          histogram.add(snapshot.histogram);
+        }
+        elapsedNanos = consecutive ? elapsedNanos + snapshot.elapsedNanos
+                                   : Math.max(elapsedNanos, snapshot.elapsedNanos);
+        ops += snapshot.ops;
+        totalOps = consecutive ? Math.max(totalOps, snapshot.totalOps)
+                               : totalOps + snapshot.totalOps;
+      }
+      return new Snapshot(name, elapsedNanos, ops, totalOps, histogram, true);
+    }
+
+    /**
+     * Writes the latency distribution, in milliseconds, in the percentile distribution format of
+     * HdrHistogram. Writes nothing if the histogram was not kept.
+     */
+    public void writeHistogram(PrintStream out) {
+      if (histogram != null) {
+        histogram.outputPercentileDistribution(out, 1000.0);
+      }
+    }
+
+    String formatLatencies() {
+      return String.format("%.2f ms/op, p50: %.2f ms, p95: %.2f ms, p99: %.2f ms, " +
+                           "p99.9: %.2f ms, max: %.2f ms",
+                           meanMs, p50Ms, p95Ms, p99Ms, p999Ms, maxMs);
+    }
+  }
+
+  /**
+   * Returns the throughput and latencies since the last call, and starts a new interval.
+   */
+  public Snapshot getSnapshotAndReset() {
+    synchronized (lock) {
+      collect();
       long currNanos = System.nanoTime();
-      long elapsedNanos = currNanos - lastSnapshotNanos;
-      LOG.debug("currentOpLatency: " + curOpLatencyNanos + ", currentOpCount: " + curOpCount);
-      double ops_per_sec =
-          (elapsedNanos == 0) ? 0 : (curOpCount * 1000000000 * 1.0 / elapsedNanos);
-      double latency = (curOpCount == 0) ? 0 : (curOpLatencyNanos / 1000000 * 1.0 / curOpCount);
-      msg = String.format("%s: %.2f ops/sec (%.2f ms/op), %d total ops",
-                          name, ops_per_sec, latency, totalOpCount);
-      curOpCount = 0;
-      curOpLatencyNanos = 0;
+      long opCount = curOpCount.sumThenReset();
+      LOG.debug("currentOpCount: " + opCount + ", requests: " +
+                intervalHistogram.getTotalCount());
+      Snapshot snapshot = new Snapshot(name, currNanos - lastSnapshotNanos, opCount,
+                                       totalOpCount.sum(), intervalHistogram);
+      intervalHistogram.reset();
       lastSnapshotNanos = currNanos;
+      return snapshot;
+    }
+  }
+
+  /**
+   * Returns the throughput and latencies since the last call, as the current phase ends, and
+   * starts the next one.
+   */
+  public Snapshot getPhaseSnapshotAndReset() {
+    synchronized (lock) {
+      collect();
+      long currNanos = System.nanoTime();
+      Snapshot snapshot = new Snapshot(name, currNanos - phaseStartNanos,
+                                       phaseOpCount.sumThenReset(), totalOpCount.sum(),
+                                       phaseHistogram, true);
+      phaseHistogram.reset();
+      phaseStartNanos = currNanos;
+      return snapshot;
+    }
+  }
+
+  /**
+   * Returns the throughput and latencies over the whole run.
+   */
+  public Snapshot getSummarySnapshot() {
+    synchronized (lock) {
+      collect();
+      long opCount = totalOpCount.sum();
+      return new Snapshot(name, System.nanoTime() - startNanos, opCount, opCount, totalHistogram);
+    }
+  }
+
+  static String format(Snapshot snapshot) {
+    return String.format("%s: %.2f ops/sec (%s), %d total ops",
+                         snapshot.name, snapshot.opsPerSec, snapshot.formatLatencies(),
+                         snapshot.totalOps);
+  }
+
+  public String getMetricsAndReset() {
+    return format(getSnapshotAndReset());
+  }
+
+  /**
+   * Returns the throughput and latencies over the whole run.
+   */
+  public String getSummary() {
+    return formatSummary(getSummarySnapshot());
+  }
+
+  public static String formatSummary(Snapshot snapshot) {
+    return String.format("%s: %.2f ops/sec (%s), %d total ops, %d requests",
+                         snapshot.name, snapshot.opsPerSec, snapshot.formatLatencies(),
+                         snapshot.totalOps, snapshot.requests);
+  }
+
+  /**
+   * Writes the latency distribution over the whole run, in milliseconds, in the percentile
+   * distribution format of HdrHistogram.
+   */
+  public void writeSummaryHistogram(PrintStream out) {
+    synchronized (lock) {
+      collect();
+      totalHistogram.outputPercentileDistribution(out, 1000.0);
     }
-    return msg;
   }
 }
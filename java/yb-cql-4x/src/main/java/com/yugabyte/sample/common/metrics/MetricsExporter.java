@@ -0,0 +1,340 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exports the metrics of a run in machine readable form, along with metadata describing the run,
+ * so that runs can be compared by tools rather than by reading logs.
+ *
+ * With an output directory, every interval adds a row per metric to intervals.csv and a line to
+ * intervals.jsonl, and the end of the run writes the throughput and latencies over the whole run,
+ * with the metadata, to summary.json and summary.csv. When the workload runs in phases, the lines
+ * of intervals.jsonl name their phase, and the end of every phase adds its metrics to phases.csv
+ * and phases.jsonl. With a port, the metrics of the last interval and the op counts of the run are
+ * served at /metrics for Prometheus to scrape.
+ */
+public class MetricsExporter {
+  private static final Logger LOG = Logger.getLogger(MetricsExporter.class);
+
+  private static final String CSV_HEADER =
+      "timestamp_ms,metric,elapsed_secs,ops,requests,total_ops,ops_per_sec," +
+      "mean_ms,p50_ms,p95_ms,p99_ms,p99_9_ms,max_ms";
+  private static final String PHASES_CSV_HEADER = CSV_HEADER + ",phase";
+  private static final String PROMETHEUS_PREFIX = "yb_sample_apps_";
+
+  private final String outputDir;
+  private final int port;
+  private final Map<String, String> metadata;
+  private PrintStream intervalsCsv;
+  private PrintStream intervalsJson;
+  private PrintStream phasesCsv;
+  private PrintStream phasesJson;
+  // The phase of the workload running, or null if it does not run in phases.
+  private volatile String phase = null;
+  private HttpServer server;
+  // The snapshots of the last interval, served to Prometheus.
+  private volatile List<Metric.Snapshot> lastSnapshots = Collections.emptyList();
+
+  /**
+   * @param outputDir directory to write the metrics files to, or null for none
+   * @param port port to serve the metrics for Prometheus on, or not positive for none
+   * @param metadata describes the run, such as the workload and thread counts
+   */
+  public MetricsExporter(String outputDir, int port, Map<String, String> metadata) {
+    this.outputDir = outputDir;
+    this.port = port;
+    this.metadata = new LinkedHashMap<>(metadata);
+    if (outputDir != null) {
+      new File(outputDir).mkdirs();
+      intervalsCsv = open("intervals.csv");
+      if (intervalsCsv != null) {
+        intervalsCsv.println(CSV_HEADER);
+      }
+      intervalsJson = open("intervals.jsonl");
+    }
+  }
+
+  /**
+   * Starts serving the metrics for Prometheus, if there is a port for it. The threads of the
+   * server are daemons if the calling thread is.
+   */
+  public synchronized void startServer() {
+    if (port <= 0 || server != null) {
+      return;
+    }
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+      server.createContext("/metrics", this::handleScrape);
+      server.start();
+      LOG.info("Serving metrics for Prometheus at port " + port);
+    } catch (IOException e) {
+      LOG.error("Could not serve metrics at port " + port, e);
+      server = null;
+    }
+  }
+
+  /**
+   * Sets the phase of the workload the following intervals belong to.
+   */
+  public void setPhase(String phase) {
+    this.phase = phase;
+  }
+
+  private PrintStream open(String fileName) {
+    File file = new File(outputDir, fileName);
+    try {
+      return new PrintStream(new FileOutputStream(file), false, "UTF-8");
+    } catch (IOException e) {
+      LOG.error("Could not open " + file + " to write metrics to", e);
+      return null;
+    }
+  }
+
+  private static String toCsv(long timestampMs, Metric.Snapshot snapshot) {
+    return String.format(Locale.ROOT, "%d,%s,%.3f,%d,%d,%d,%.2f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f",
+                         timestampMs, snapshot.name, snapshot.elapsedSecs, snapshot.ops,
+                         snapshot.requests, snapshot.totalOps, snapshot.opsPerSec,
+                         snapshot.meanMs, snapshot.p50Ms, snapshot.p95Ms, snapshot.p99Ms,
+                         snapshot.p999Ms, snapshot.maxMs);
+  }
+
+  private static JSONObject toJson(Metric.Snapshot snapshot) {
+    return new JSONObject()
+        .put("elapsed_secs", snapshot.elapsedSecs)
+        .put("ops", snapshot.ops)
+        .put("requests", snapshot.requests)
+        .put("total_ops", snapshot.totalOps)
+        .put("ops_per_sec", snapshot.opsPerSec)
+        .put("mean_ms", snapshot.meanMs)
+        .put("p50_ms", snapshot.p50Ms)
+        .put("p95_ms", snapshot.p95Ms)
+        .put("p99_ms", snapshot.p99Ms)
+        .put("p99_9_ms", snapshot.p999Ms)
+        .put("max_ms", snapshot.maxMs);
+  }
+
+  private static JSONObject toJson(List<Metric.Snapshot> snapshots) {
+    JSONObject metrics = new JSONObject();
+    for (Metric.Snapshot snapshot : snapshots) {
+      metrics.put(snapshot.name, toJson(snapshot));
+    }
+    return metrics;
+  }
+
+  /**
+   * Exports the metrics of the interval which just ended.
+   */
+  public synchronized void exportInterval(List<Metric.Snapshot> snapshots) {
+    lastSnapshots = snapshots;
+    long timestampMs = System.currentTimeMillis();
+    if (intervalsCsv != null) {
+      for (Metric.Snapshot snapshot : snapshots) {
+        intervalsCsv.println(toCsv(timestampMs, snapshot));
+      }
+      intervalsCsv.flush();
+    }
+    if (intervalsJson != null) {
+      JSONObject interval = new JSONObject().put("timestamp_ms", timestampMs);
+      String currentPhase = phase;
+      if (currentPhase != null) {
+        interval.put("phase", currentPhase);
+      }
+      intervalsJson.println(interval.put("metrics", toJson(snapshots)));
+      intervalsJson.flush();
+    }
+  }
+
+  /**
+   * Exports the metrics over a phase of the workload which just ended.
+   */
+  public synchronized void exportPhase(String phaseName, List<Metric.Snapshot> snapshots) {
+    if (outputDir == null) {
+      return;
+    }
+    if (phasesCsv == null && phasesJson == null) {
+      phasesCsv = open("phases.csv");
+      if (phasesCsv != null) {
+        phasesCsv.println(PHASES_CSV_HEADER);
+      }
+      phasesJson = open("phases.jsonl");
+    }
+    long timestampMs = System.currentTimeMillis();
+    if (phasesCsv != null) {
+      for (Metric.Snapshot snapshot : snapshots) {
+        phasesCsv.println(toCsv(timestampMs, snapshot) + ',' + csvField(phaseName));
+      }
+      phasesCsv.flush();
+    }
+    if (phasesJson != null) {
+      phasesJson.println(new JSONObject()
+          .put("timestamp_ms", timestampMs)
+          .put("phase", phaseName)
+          .put("metrics", toJson(snapshots)));
+      phasesJson.flush();
+    }
+  }
+
+  /**
+   * Exports the metrics over the whole run, with the metadata of the run.
+   */
+  public synchronized void exportSummary(List<Metric.Snapshot> snapshots) {
+    if (outputDir == null) {
+      return;
+    }
+    long timestampMs = System.currentTimeMillis();
+    File jsonFile = new File(outputDir, "summary.json");
+    try (PrintStream out = new PrintStream(jsonFile, "UTF-8")) {
+      out.println(new JSONObject()
+          .put("timestamp_ms", timestampMs)
+          .put("metadata", new JSONObject(metadata))
+          .put("metrics", toJson(snapshots))
+          .toString(2));
+    } catch (IOException e) {
+      LOG.error("Could not write the metrics summary to " + jsonFile, e);
+    }
+    File csvFile = new File(outputDir, "summary.csv");
+    try (PrintStream out = new PrintStream(csvFile, "UTF-8")) {
+      StringBuilder header = new StringBuilder(CSV_HEADER);
+      StringBuilder metadataValues = new StringBuilder();
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        header.append(',').append(entry.getKey());
+        metadataValues.append(',').append(csvField(entry.getValue()));
+      }
+      out.println(header);
+      for (Metric.Snapshot snapshot : snapshots) {
+        out.println(toCsv(timestampMs, snapshot) + metadataValues);
+      }
+    } catch (IOException e) {
+      LOG.error("Could not write the metrics summary to " + csvFile, e);
+    }
+  }
+
+  private static String csvField(String value) {
+    if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+
+  private static String prometheusLabel(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static void appendGauge(StringBuilder sb, String name, String labels, double value) {
+    sb.append(PROMETHEUS_PREFIX).append(name).append('{').append(labels).append("} ")
+      .append(value).append('\n');
+  }
+
+  /**
+   * Returns the metrics in the Prometheus text exposition format.
+   */
+  String toPrometheus() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# HELP ").append(PROMETHEUS_PREFIX)
+      .append("run_info Metadata of the load tester run.\n");
+    sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("run_info gauge\n");
+    StringBuilder runLabels = new StringBuilder();
+    for (Map.Entry<String, String> entry : metadata.entrySet()) {
+      if (runLabels.length() > 0) {
+        runLabels.append(',');
+      }
+      runLabels.append(entry.getKey()).append("=\"")
+               .append(prometheusLabel(entry.getValue())).append('"');
+    }
+    appendGauge(sb, "run_info", runLabels.toString(), 1);
+    String currentPhase = phase;
+    if (currentPhase != null) {
+      sb.append("# HELP ").append(PROMETHEUS_PREFIX)
+        .append("phase_info Phase of the workload running.\n");
+      sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("phase_info gauge\n");
+      appendGauge(sb, "phase_info", "phase=\"" + prometheusLabel(currentPhase) + "\"", 1);
+    }
+
+    List<Metric.Snapshot> snapshots = lastSnapshots;
+    sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("ops_total counter\n");
+    for (Metric.Snapshot snapshot : snapshots) {
+      appendGauge(sb, "ops_total", "op=\"" + snapshot.name + "\"", snapshot.totalOps);
+    }
+    sb.append("# HELP ").append(PROMETHEUS_PREFIX)
+      .append("ops_per_second Throughput over the last interval.\n");
+    sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("ops_per_second gauge\n");
+    for (Metric.Snapshot snapshot : snapshots) {
+      appendGauge(sb, "ops_per_second", "op=\"" + snapshot.name + "\"", snapshot.opsPerSec);
+    }
+    sb.append("# HELP ").append(PROMETHEUS_PREFIX)
+      .append("latency_ms Request latency over the last interval.\n");
+    sb.append("# TYPE ").append(PROMETHEUS_PREFIX).append("latency_ms gauge\n");
+    for (Metric.Snapshot snapshot : snapshots) {
+      String op = "op=\"" + snapshot.name + "\",stat=";
+      appendGauge(sb, "latency_ms", op + "\"mean\"", snapshot.meanMs);
+      appendGauge(sb, "latency_ms", op + "\"p50\"", snapshot.p50Ms);
+      appendGauge(sb, "latency_ms", op + "\"p95\"", snapshot.p95Ms);
+      appendGauge(sb, "latency_ms", op + "\"p99\"", snapshot.p99Ms);
+      appendGauge(sb, "latency_ms", op + "\"p99.9\"", snapshot.p999Ms);
+      appendGauge(sb, "latency_ms", op + "\"max\"", snapshot.maxMs);
+    }
+    return sb.toString();
+  }
+
+  private void handleScrape(HttpExchange exchange) throws IOException {
+    byte[] body = toPrometheus().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  public synchronized void close() {
+    if (intervalsCsv != null) {
+      intervalsCsv.close();
+      intervalsCsv = null;
+    }
+    if (intervalsJson != null) {
+      intervalsJson.close();
+      intervalsJson = null;
+    }
+    if (phasesCsv != null) {
+      phasesCsv.close();
+      phasesCsv = null;
+    }
+    if (phasesJson != null) {
+      phasesJson.close();
+      phasesJson = null;
+    }
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+}
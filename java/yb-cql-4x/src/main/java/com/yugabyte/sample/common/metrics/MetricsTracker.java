@@ -13,8 +13,14 @@
 
 package com.yugabyte.sample.common.metrics;
 
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -27,10 +33,17 @@ public class MetricsTracker extends Thread {
     public void appendMessage(StringBuilder sb);
   }
 
-  // The type of metrics supported.
+  // Interface to be told about the metrics over each phase of the workload as it ends.
+  public static interface PhaseListener {
+    public void phaseEnded(String phase, List<Metric.Snapshot> snapshots);
+  }
+
+  // The type of metrics supported. Flush is only tracked by the apps which pipeline their
+  // operations, created as they first record one.
   public static enum MetricName {
     Read,
     Write,
+    Flush,
   }
   // Map to store all the metrics objects.
   Map<MetricName, Metric> metrics = new ConcurrentHashMap<MetricName, Metric>();
@@ -44,8 +57,25 @@ public class MetricsTracker extends Thread {
   // Map of custom appenders.
   Map<String, StatusMessageAppender> appenders =
       new ConcurrentHashMap<String, StatusMessageAppender>();
+  // Directory to write the latency histograms of the whole run to, if not null.
+  String outputDir;
+  // Exports the metrics of each interval and of the whole run, if not null.
+  MetricsExporter exporter;
+  // The phase of the workload running, if it runs in phases.
+  private String phase = null;
+  private final List<PhaseListener> phaseListeners = new CopyOnWriteArrayList<>();
 
   public MetricsTracker() {
+    this(null);
+  }
+
+  public MetricsTracker(String outputDir) {
+    this(outputDir, null);
+  }
+
+  public MetricsTracker(String outputDir, MetricsExporter exporter) {
+    this.outputDir = outputDir;
+    this.exporter = exporter;
     this.setDaemon(true);
   }
 
@@ -53,6 +83,10 @@ public class MetricsTracker extends Thread {
     appenders.put(appender.appenderName(), appender);
   }
 
+  public void addPhaseListener(PhaseListener listener) {
+    phaseListeners.add(listener);
+  }
+
   public void createMetric(MetricName metricName) {
     synchronized (initLock) {
       if (!metrics.containsKey(metricName)) {
@@ -66,8 +100,83 @@ public class MetricsTracker extends Thread {
   }
 
   public void getMetricsAndReset(StringBuilder sb) {
+    List<Metric.Snapshot> snapshots = new ArrayList<>();
     for (MetricName metricName : MetricName.values()) {
-      sb.append(String.format("%s  |  ", metrics.get(metricName).getMetricsAndReset()));
+      Metric metric = metrics.get(metricName);
+      if (metric == null) {
+        continue;
+      }
+      Metric.Snapshot snapshot = metric.getSnapshotAndReset();
+      snapshots.add(snapshot);
+      sb.append(String.format("%s  |  ", Metric.format(snapshot)));
+    }
+    if (exporter != null) {
+      exporter.exportInterval(snapshots);
+    }
+  }
+
+  /**
+   * Ends the current phase of the workload, if any, logging and exporting the metrics over it,
+   * and starts the next one.
+   * @param nextPhase the name of the phase starting, or null after the last one
+   */
+  public synchronized void startPhase(String nextPhase) {
+    List<Metric.Snapshot> snapshots = new ArrayList<>();
+    StringBuilder sb = new StringBuilder("Phase " + phase + " summary: ");
+    for (MetricName metricName : MetricName.values()) {
+      Metric metric = metrics.get(metricName);
+      if (metric == null) {
+        continue;
+      }
+      Metric.Snapshot snapshot = metric.getPhaseSnapshotAndReset();
+      snapshots.add(snapshot);
+      sb.append(String.format("%s  |  ", Metric.formatSummary(snapshot)));
+    }
+    if (phase != null) {
+      LOG.info(sb.toString());
+      if (exporter != null) {
+        exporter.exportPhase(phase, snapshots);
+      }
+      for (PhaseListener listener : phaseListeners) {
+        listener.phaseEnded(phase, snapshots);
+      }
+    }
+    phase = nextPhase;
+    if (exporter != null) {
+      exporter.setPhase(nextPhase);
+    }
+  }
+
+  /**
+   * Logs the throughput and latency percentiles of each metric over the whole run, writes their
+   * latency histograms to the output directory if there is one, and exports them.
+   */
+  public void reportSummary() {
+    // A run stopped before its last phase ended still reports the phase it stopped in.
+    startPhase(null);
+    StringBuilder sb = new StringBuilder("Run summary: ");
+    List<Metric.Snapshot> snapshots = new ArrayList<>();
+    for (MetricName metricName : MetricName.values()) {
+      Metric metric = metrics.get(metricName);
+      if (metric == null) {
+        continue;
+      }
+      Metric.Snapshot snapshot = metric.getSummarySnapshot();
+      snapshots.add(snapshot);
+      sb.append(String.format("%s  |  ", Metric.formatSummary(snapshot)));
+      if (outputDir != null) {
+        File file = new File(outputDir, metricName.name().toLowerCase() + "_latency.hgrm");
+        try (PrintStream out = new PrintStream(file)) {
+          metric.writeSummaryHistogram(out);
+        } catch (FileNotFoundException e) {
+          LOG.error("Could not write latency histogram to " + file, e);
+        }
+      }
+    }
+    LOG.info(sb.toString());
+    if (exporter != null) {
+      exporter.exportSummary(snapshots);
+      exporter.close();
     }
   }
 
@@ -76,6 +185,10 @@ public class MetricsTracker extends Thread {
     synchronized (initLock) {
       if (!hasStarted) {
         hasStarted = true;
+        if (outputDir != null) {
+          new File(outputDir).mkdirs();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::reportSummary));
         super.start();
       }
     }
@@ -83,6 +196,10 @@ public class MetricsTracker extends Thread {
 
   @Override
   public void run() {
+    if (exporter != null) {
+      // Started from this daemon thread, so that the server does not keep the app from exiting.
+      exporter.startServer();
+    }
     while (true) {
       try {
         Thread.sleep(5000);
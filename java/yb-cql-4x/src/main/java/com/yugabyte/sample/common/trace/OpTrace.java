@@ -0,0 +1,80 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.trace;
+
+/**
+ * The binary format of a trace of the operations of a workload, for replaying them later.
+ *
+ * A trace is a header, then a record per operation, then a footer naming the tables. All numbers
+ * are big-endian.
+ *
+ *   header: magic (8 bytes), version (4), record size (4), wall clock time of the start of the
+ *           trace in milliseconds (8), number of records (8), offset of the footer (8)
+ *   record: op type (1), table id (1), value size (4), key (8), start of the operation in
+ *           microseconds since the start of the trace (8)
+ *   footer: number of tables (2), then for each table its id (1), the length of its name (2) and
+ *           its name in UTF-8
+ *
+ * The records all have the same size, so that threads replaying a trace can each claim the next
+ * record by its index. They are in the order the operations were issued in, which is the order of
+ * their start times up to the latency of the operations.
+ */
+public final class OpTrace {
+  static final long MAGIC = 0x5942545243453031L; // "YBTRCE01"
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 40;
+  static final int RECORD_SIZE = 22;
+  // The offsets of the fields of the header which are filled in as the trace is closed.
+  static final int NUM_RECORDS_OFFSET = 24;
+  static final int FOOTER_OFFSET_OFFSET = 32;
+  static final int MAX_TABLES = 256;
+
+  public enum OpType {
+    READ((byte) 1),
+    WRITE((byte) 2);
+
+    final byte code;
+
+    OpType(byte code) {
+      this.code = code;
+    }
+
+    static OpType fromCode(byte code) {
+      switch (code) {
+        case 1: return READ;
+        case 2: return WRITE;
+      }
+      throw new IllegalArgumentException("Unknown op type " + code + " in trace");
+    }
+  }
+
+  /**
+   * One operation of a trace. Replaying threads reuse one record each.
+   */
+  public static class Record {
+    public OpType opType;
+    // The table the operation was on, as named by the app.
+    public String table;
+    // What the app identified the row by, such as the number of a key.
+    public long key;
+    public int valueSize;
+    // The wall clock time the operation was issued at when recorded, in milliseconds.
+    public long epochMillis;
+    // The time the operation is to start at when replayed, in System.nanoTime() terms.
+    public long startNanos;
+  }
+
+  private OpTrace() {
+  }
+}
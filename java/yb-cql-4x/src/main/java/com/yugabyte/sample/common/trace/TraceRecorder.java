@@ -0,0 +1,213 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Records the operations of a workload to a trace file, in the format of OpTrace.
+ *
+ * Records are appended to a buffer shared by all the IO threads. Full buffers are handed to a
+ * writer thread, which writes them out and hands them back, so recording an operation takes a
+ * short critical section and no IO. Only if the writer falls NUM_BUFFERS behind does recording
+ * wait for it. The trace is complete once closed, which writes the table names and fills in the
+ * header.
+ */
+public class TraceRecorder implements Closeable {
+  private static final Logger LOG = Logger.getLogger(TraceRecorder.class);
+
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int NUM_BUFFERS = 4;
+  // Tells the writer thread to stop.
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  private final String path;
+  private final FileChannel channel;
+  // The buffers to write out, in order, and those written out and free to fill again.
+  private final BlockingQueue<ByteBuffer> fullBuffers = new LinkedBlockingQueue<>();
+  private final BlockingQueue<ByteBuffer> freeBuffers = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  // The buffer being filled, or null once recording stopped.
+  private ByteBuffer buffer;
+  private final long startNanos;
+  private final Map<String, Integer> tableIds = new HashMap<>();
+  private final List<String> tables = new ArrayList<>();
+  private long numRecords = 0;
+  private boolean closed = false;
+  // Set once writing out the trace failed, which stops recording.
+  private volatile boolean failed = false;
+
+  public TraceRecorder(String path) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+    for (int i = 0; i < NUM_BUFFERS; i++) {
+      freeBuffers.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+    }
+    this.buffer = freeBuffers.remove();
+    this.writer = new Thread(this::writeBuffers, "Trace Recorder");
+    writer.setDaemon(true);
+    writer.start();
+    this.startNanos = System.nanoTime();
+    buffer.putLong(OpTrace.MAGIC);
+    buffer.putInt(OpTrace.VERSION);
+    buffer.putInt(OpTrace.RECORD_SIZE);
+    buffer.putLong(System.currentTimeMillis());
+    // The number of records and the offset of the footer, filled in by close().
+    buffer.putLong(0);
+    buffer.putLong(0);
+  }
+
+  /**
+   * Records an operation.
+   * @param table the table of the operation
+   * @param key what the app identifies the row by, to replay the operation on the same one
+   * @param valueSize the size of the value written or read
+   * @param opStartNanos the time the operation started at, in System.nanoTime() terms
+   */
+  public synchronized void record(OpTrace.OpType opType, String table, long key, int valueSize,
+                                  long opStartNanos) {
+    if (closed || failed) {
+      return;
+    }
+    Integer tableId = tableIds.get(table);
+    if (tableId == null) {
+      if (tables.size() == OpTrace.MAX_TABLES) {
+        LOG.warn("Not recording the operations on " + table + ", the trace already has " +
+                 OpTrace.MAX_TABLES + " tables.");
+        return;
+      }
+      tableId = tables.size();
+      tableIds.put(table, tableId);
+      tables.add(table);
+    }
+    if (buffer.remaining() < OpTrace.RECORD_SIZE && !handOver()) {
+      return;
+    }
+    buffer.put(opType.code);
+    buffer.put((byte) (int) tableId);
+    buffer.putInt(valueSize);
+    buffer.putLong(key);
+    buffer.putLong(Math.max(0, (opStartNanos - startNanos) / 1000));
+    numRecords++;
+  }
+
+  /**
+   * Hands the full buffer to the writer thread and takes a free one, waiting for the writer if it
+   * has none. Stops recording if interrupted, rather than failing the operations.
+   */
+  private boolean handOver() {
+    fullBuffers.add(buffer);
+    try {
+      buffer = freeBuffers.take();
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      LOG.error("Interrupted waiting to write the trace to " + path + ", stopping recording.");
+      buffer = null;
+      failed = true;
+      return false;
+    }
+  }
+
+  /**
+   * Writes out the buffers handed over until told to stop. Stops recording if that fails, rather
+   * than failing the operations, but keeps handing the buffers back so that none waits for them.
+   */
+  private void writeBuffers() {
+    try {
+      ByteBuffer full;
+      while ((full = fullBuffers.take()) != END) {
+        if (!failed) {
+          full.flip();
+          try {
+            while (full.hasRemaining()) {
+              channel.write(full);
+            }
+          } catch (IOException e) {
+            LOG.error("Could not write the trace to " + path + ", stopping recording.", e);
+            failed = true;
+          }
+        }
+        full.clear();
+        freeBuffers.add(full);
+      }
+    } catch (InterruptedException e) {
+      LOG.error("Interrupted writing the trace to " + path + ", stopping recording.");
+      failed = true;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    if (buffer != null) {
+      fullBuffers.add(buffer);
+    }
+    fullBuffers.add(END);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted writing the trace to " + path);
+    }
+    if (failed) {
+      channel.close();
+      return;
+    }
+    // All the buffers are free once the writer is done.
+    buffer = freeBuffers.remove();
+    long footerOffset = channel.position();
+    for (int i = 0; i < tables.size(); i++) {
+      byte[] name = tables.get(i).getBytes(StandardCharsets.UTF_8);
+      if (i == 0) {
+        buffer.putShort((short) tables.size());
+      }
+      buffer.put((byte) i);
+      buffer.putShort((short) name.length);
+      buffer.put(name);
+    }
+    if (tables.isEmpty()) {
+      buffer.putShort((short) 0);
+    }
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    ByteBuffer header = ByteBuffer.allocate(2 * Long.BYTES);
+    header.putLong(numRecords).putLong(footerOffset).flip();
+    channel.write(header, OpTrace.NUM_RECORDS_OFFSET);
+    channel.close();
+    LOG.info("Recorded " + numRecords + " operations to " + path);
+  }
+}
@@ -0,0 +1,180 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hands out the operations of a trace to the threads replaying it, each at its time.
+ *
+ * The records are read through memory mappings of a window of the trace at a time, mapped as the
+ * threads reach them and dropped once they are past, so traces of any size are streamed without
+ * being read into the heap. Each thread claims the next record with an atomic increment and
+ * waits until the time the operation was issued at, counted from the start of the replay and
+ * divided by the speed. The operations are then issued at the rate they were recorded at, scaled,
+ * by as many threads as there are, and a replay which falls behind issues the operations that are
+ * due back to back.
+ */
+public class TraceReplayer implements Closeable {
+  // Records per mapping. About 256MB, well under the 2GB limit of a mapping.
+  static final long WINDOW_RECORDS = (256 << 20) / OpTrace.RECORD_SIZE;
+  // Longest time to park at once, so that a stopped app is noticed.
+  private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+  private final String path;
+  private final FileChannel channel;
+  private final long startEpochMillis;
+  private final long numRecords;
+  private final String[] tables = new String[OpTrace.MAX_TABLES];
+  // The operations are replayed at this many times the speed they were recorded at, or as fast
+  // as possible if not positive.
+  private final double speed;
+  private final long windowRecords;
+  private final AtomicLong nextRecord = new AtomicLong(0);
+  private final AtomicReferenceArray<MappedByteBuffer> windows;
+  // The time the replay started at, or 0 until the first operation.
+  private final AtomicLong startNanos = new AtomicLong(0);
+
+  public TraceReplayer(String path, double speed) throws IOException {
+    this(path, speed, WINDOW_RECORDS);
+  }
+
+  /**
+   * @param windowRecords the number of records per mapping, smaller than WINDOW_RECORDS in tests
+   */
+  TraceReplayer(String path, double speed, long windowRecords) throws IOException {
+    this.path = path;
+    this.speed = speed;
+    this.windowRecords = windowRecords;
+    this.channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+    ByteBuffer header = ByteBuffer.allocate(OpTrace.HEADER_SIZE);
+    readFully(header, 0);
+    if (header.getLong(0) != OpTrace.MAGIC) {
+      throw new IOException(path + " is not a trace");
+    }
+    if (header.getInt(8) != OpTrace.VERSION || header.getInt(12) != OpTrace.RECORD_SIZE) {
+      throw new IOException("Unsupported version " + header.getInt(8) + " of trace " + path);
+    }
+    this.startEpochMillis = header.getLong(16);
+    this.numRecords = header.getLong(OpTrace.NUM_RECORDS_OFFSET);
+    long footerOffset = header.getLong(OpTrace.FOOTER_OFFSET_OFFSET);
+    if (footerOffset == 0) {
+      throw new IOException("Trace " + path + " was not closed, it is incomplete");
+    }
+    readTables(footerOffset);
+    long numWindows = (numRecords + windowRecords - 1) / windowRecords;
+    this.windows = new AtomicReferenceArray<>((int) numWindows);
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Trace " + path + " is truncated");
+      }
+    }
+    buffer.flip();
+  }
+
+  private void readTables(long footerOffset) throws IOException {
+    ByteBuffer footer = ByteBuffer.allocate((int) (channel.size() - footerOffset));
+    readFully(footer, footerOffset);
+    int numTables = footer.getShort();
+    for (int i = 0; i < numTables; i++) {
+      int tableId = footer.get() & 0xff;
+      byte[] name = new byte[footer.getShort()];
+      footer.get(name);
+      tables[tableId] = new String(name, StandardCharsets.UTF_8);
+    }
+  }
+
+  public long getNumRecords() {
+    return numRecords;
+  }
+
+  private MappedByteBuffer getWindow(int window) throws IOException {
+    MappedByteBuffer mapping = windows.get(window);
+    if (mapping == null) {
+      long firstRecord = window * windowRecords;
+      long size = Math.min(windowRecords, numRecords - firstRecord) * OpTrace.RECORD_SIZE;
+      mapping = channel.map(FileChannel.MapMode.READ_ONLY,
+                            OpTrace.HEADER_SIZE + firstRecord * OpTrace.RECORD_SIZE, size);
+      if (!windows.compareAndSet(window, null, mapping)) {
+        mapping = windows.get(window);
+      }
+      // The window before the last is done with, up to threads still reading their record in it,
+      // which hold on to it meanwhile.
+      if (window >= 2) {
+        windows.set(window - 2, null);
+      }
+    }
+    return mapping;
+  }
+
+  /**
+   * Claims the next operation of the trace and waits until its time comes.
+   * @param record filled in with the operation
+   * @param stopped tells whether to give up waiting
+   * @return false once all the operations have been handed out.
+   */
+  public boolean next(OpTrace.Record record, BooleanSupplier stopped) throws IOException {
+    long index = nextRecord.getAndIncrement();
+    if (index >= numRecords) {
+      return false;
+    }
+    MappedByteBuffer window = getWindow((int) (index / windowRecords));
+    int position = (int) (index % windowRecords) * OpTrace.RECORD_SIZE;
+    record.opType = OpTrace.OpType.fromCode(window.get(position));
+    record.table = tables[window.get(position + 1) & 0xff];
+    record.valueSize = window.getInt(position + 2);
+    record.key = window.getLong(position + 6);
+    long offsetMicros = window.getLong(position + 14);
+    record.epochMillis = startEpochMillis + offsetMicros / 1000;
+
+    startNanos.compareAndSet(0, System.nanoTime());
+    if (speed <= 0) {
+      record.startNanos = System.nanoTime();
+      return true;
+    }
+    record.startNanos = startNanos.get() + (long) (offsetMicros * 1000 / speed);
+    long waitNanos;
+    while ((waitNanos = record.startNanos - System.nanoTime()) > 0 && !stopped.getAsBoolean()) {
+      LockSupport.parkNanos(Math.min(waitNanos, MAX_PARK_NANOS));
+    }
+    return true;
+  }
+
+  /**
+   * @return how many of the operations have been handed out.
+   */
+  public long getNumReplayed() {
+    return Math.min(nextRecord.get(), numRecords);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
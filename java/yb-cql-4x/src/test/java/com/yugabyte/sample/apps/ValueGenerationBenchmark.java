@@ -0,0 +1,92 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.apps;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.yugabyte.sample.common.SimpleLoadGenerator.Key;
+
+/**
+ * Measures AppBase.getRandomValue and verifyRandomValue across value sizes, for binary and ASCII
+ * values. Run with -prof gc to see the allocation rate per operation. Run with:
+ *   java -cp <test classpath> com.yugabyte.sample.apps.ValueGenerationBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ValueGenerationBenchmark {
+
+  @Param({"8", "64", "256", "1024", "4096"})
+  int valueSize;
+
+  @Param({"false", "true"})
+  boolean ascii;
+
+  AppBase app;
+  Key[] keys;
+  byte[] value;
+  int next = 0;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    AppBase.appConfig.restrictValuesToAscii = ascii;
+    app = new AppBase() {};
+    keys = new Key[1024];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = new Key(1000000L * i + i, null);
+    }
+    value = new byte[valueSize];
+    app.getRandomValue(keys[0], value);
+  }
+
+  private Key nextKey() {
+    return keys[next++ & (keys.length - 1)];
+  }
+
+  @Benchmark
+  public byte[] generate() {
+    return app.getRandomValue(nextKey(), value);
+  }
+
+  @Benchmark
+  public boolean verify() {
+    return app.verifyRandomValue(keys[0], value);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(ValueGenerationBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
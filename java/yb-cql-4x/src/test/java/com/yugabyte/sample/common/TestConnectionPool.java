@@ -0,0 +1,98 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertNotSame;
+import static org.yb.AssertionWrappers.assertSame;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestConnectionPool {
+  /**
+   * A connection which only prepares statements, and counts how many it prepared.
+   */
+  private static class FakeConnection {
+    final Connection connection;
+    int numPrepared = 0;
+    boolean closed = false;
+
+    FakeConnection() {
+      connection = (Connection) Proxy.newProxyInstance(
+          Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+          (proxy, method, args) -> {
+            switch (method.getName()) {
+              case "prepareStatement":
+                numPrepared++;
+                return Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class}, (p, m, a) -> null);
+              case "close":
+                closed = true;
+                return null;
+              case "hashCode":
+                return System.identityHashCode(proxy);
+              case "equals":
+                return proxy == args[0];
+              default:
+                throw new UnsupportedOperationException(method.getName());
+            }
+          });
+    }
+  }
+
+  @Test
+  public void testStatementsPreparedOncePerConnection() throws Exception {
+    List<FakeConnection> opened = new ArrayList<>();
+    ConnectionPool pool = new ConnectionPool(1, () -> {
+      FakeConnection fake = new FakeConnection();
+      opened.add(fake);
+      return fake.connection;
+    });
+
+    Connection connection = pool.borrow();
+    PreparedStatement insert = pool.prepare(connection, "INSERT");
+    PreparedStatement select = pool.prepare(connection, "SELECT");
+    assertNotSame(insert, select);
+    pool.release(connection);
+
+    // The connection keeps its statements across borrows.
+    connection = pool.borrow();
+    assertSame(opened.get(0).connection, connection);
+    assertSame(insert, pool.prepare(connection, "INSERT"));
+    assertSame(select, pool.prepare(connection, "SELECT"));
+    assertEquals(2, opened.get(0).numPrepared);
+
+    // A discarded connection takes its statements with it, and the next one prepares its own.
+    pool.discard(connection);
+    assertTrue(opened.get(0).closed);
+    connection = pool.borrow();
+    assertEquals(2, opened.size());
+    assertSame(opened.get(1).connection, connection);
+    assertNotSame(insert, pool.prepare(connection, "INSERT"));
+    assertEquals(1, opened.get(1).numPrepared);
+    pool.release(connection);
+    pool.close();
+    assertTrue(opened.get(1).closed);
+  }
+}
@@ -0,0 +1,231 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertNotNull;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import com.yugabyte.sample.apps.AppBase;
+import com.yugabyte.sample.apps.AppConfig;
+import com.yugabyte.sample.common.metrics.Metric;
+
+@RunWith(value=YBTestRunner.class)
+public class TestCoordinator {
+  private static final long TIMEOUT_SECS = 30;
+
+  private AppConfig savedConfig;
+  private ServerSocket server;
+
+  @Before
+  public void setUp() throws IOException {
+    savedConfig = AppBase.appConfig;
+    AppBase.appConfig = new AppConfig();
+    server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    AppBase.appConfig = savedConfig;
+    server.close();
+  }
+
+  private static List<Phase> twoPhases() {
+    AppConfig config = new AppConfig();
+    config.targetReadOpsPerSec = 1000;
+    config.targetWriteOpsPerSec = 300;
+    Phase settings = Phase.fromConfig(config, 2, 3);
+    return Arrays.asList(settings.withDuration("load", 1), settings.withDuration("steady", 1));
+  }
+
+  private CompletableFuture<Void> runInBackground(Coordinator coordinator) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    Thread thread = new Thread(() -> {
+      try {
+        coordinator.run(server);
+        result.complete(null);
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return result;
+  }
+
+  /**
+   * Connects to the coordinator as a worker, and returns the connection once assigned.
+   */
+  private Coordinator.Connection connectWorker(JSONObject[] assignment) throws IOException {
+    Coordinator.Connection connection =
+        new Coordinator.Connection(new Socket(server.getInetAddress(), server.getLocalPort()));
+    connection.setReadTimeout(TimeUnit.SECONDS.toMillis(TIMEOUT_SECS));
+    connection.send(new JSONObject().put("type", "hello"));
+    assignment[0] = connection.receive();
+    assertNotNull(assignment[0]);
+    assertEquals("assign", assignment[0].getString("type"));
+    return connection;
+  }
+
+  private static JSONObject phaseMetrics(int index, int requests, long latencyMs) {
+    Metric metric = new Metric("Write");
+    for (int i = 0; i < requests; i++) {
+      metric.accumulate(1, TimeUnit.MILLISECONDS.toNanos(latencyMs));
+    }
+    return new JSONObject()
+        .put("type", "phase_metrics")
+        .put("index", index)
+        .put("metrics", new JSONArray().put(metric.getPhaseSnapshotAndReset().encode()));
+  }
+
+  private static void expect(Coordinator.Connection connection, String type, int index)
+      throws IOException {
+    JSONObject message = connection.receive();
+    assertNotNull(message);
+    assertEquals(type, message.getString("type"));
+    if (index >= 0) {
+      assertEquals(index, message.getInt("index"));
+    }
+  }
+
+  /**
+   * Goes through both phases like a worker, reporting the given requests and latency in each.
+   */
+  private static CompletableFuture<Void> driveWorker(Coordinator.Connection connection,
+                                                     int[] requests, long latencyMs) {
+    CompletableFuture<Void> result = new CompletableFuture<>();
+    Thread thread = new Thread(() -> {
+      try {
+        connection.send(new JSONObject().put("type", "ready"));
+        expect(connection, "start_phase", 0);
+        expect(connection, "start_phase", 1);
+        connection.send(phaseMetrics(0, requests[0], latencyMs));
+        expect(connection, "stop", -1);
+        connection.send(phaseMetrics(1, requests[1], latencyMs));
+        connection.send(new JSONObject().put("type", "done"));
+        result.complete(null);
+      } catch (Throwable t) {
+        result.completeExceptionally(t);
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+    return result;
+  }
+
+  private static void assertAssignment(JSONObject json, int workerIndex, long startKey,
+                                       long numUniqueKeys, long maxWrittenKey, long numWrites) {
+    Coordinator.Assignment assignment = Coordinator.Assignment.fromJson(json);
+    assertEquals(workerIndex, assignment.workerIndex);
+    assertEquals(2, assignment.numWorkers);
+    assertEquals(startKey, assignment.startKey);
+    assertEquals(numUniqueKeys, assignment.numUniqueKeys);
+    assertEquals(maxWrittenKey, assignment.maxWrittenKey);
+    assertEquals(numWrites, assignment.numKeysToWrite);
+    assertEquals(-1L, assignment.numKeysToRead);
+    // Each worker takes half of the target rates.
+    List<Phase> phases = Phase.fromJson(assignment.phases, Phase.fromConfig(new AppConfig(), 0, 0));
+    assertEquals(2, phases.size());
+    for (Phase phase : phases) {
+      assertEquals(500.0, phase.targetReadOpsPerSec, 0.001);
+      assertEquals(150.0, phase.targetWriteOpsPerSec, 0.001);
+      assertEquals(2, phase.numReaderThreads);
+      assertEquals(3, phase.numWriterThreads);
+      assertEquals(1L, phase.durationSecs);
+    }
+    assertEquals("load", phases.get(0).name);
+    assertEquals("steady", phases.get(1).name);
+  }
+
+  @Test
+  public void testTwoWorkers() throws Exception {
+    AppBase.appConfig.startKey = 1000;
+    AppBase.appConfig.numUniqueKeysToWrite = 101;
+    AppBase.appConfig.maxWrittenKey = 1040;
+    AppBase.appConfig.numKeysToWrite = 11;
+    AppBase.appConfig.numKeysToRead = -1;
+    Coordinator coordinator = new Coordinator(2, 0, twoPhases(), null);
+    CompletableFuture<Void> run = runInBackground(coordinator);
+
+    JSONObject[] assignment0 = new JSONObject[1];
+    JSONObject[] assignment1 = new JSONObject[1];
+    Coordinator.Connection worker0 = connectWorker(assignment0);
+    Coordinator.Connection worker1 = connectWorker(assignment1);
+    // The first worker takes the odd key, and only the keys written before in its range count as
+    // written.
+    assertAssignment(assignment0[0], 0, 1000, 51, 1040, 6);
+    assertAssignment(assignment1[0], 1, 1051, 50, 1050, 5);
+
+    CompletableFuture<Void> done0 = driveWorker(worker0, new int[] {10, 5}, 2);
+    CompletableFuture<Void> done1 = driveWorker(worker1, new int[] {30, 15}, 8);
+    done0.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+    done1.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+    run.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+
+    // The latencies of the phase are those of the requests of both workers.
+    List<Metric.Snapshot> phase0 = coordinator.getPhaseSummary(0);
+    assertEquals(1, phase0.size());
+    assertEquals("Write", phase0.get(0).name);
+    assertEquals(40L, phase0.get(0).ops);
+    assertEquals(40L, phase0.get(0).requests);
+    assertEquals(8.0, phase0.get(0).maxMs, 0.1);
+    assertEquals(8.0, phase0.get(0).p50Ms, 0.1);
+    assertEquals(6.5, phase0.get(0).meanMs, 0.1);
+
+    List<Metric.Snapshot> phase1 = coordinator.getPhaseSummary(1);
+    assertEquals(20L, phase1.get(0).ops);
+    assertEquals(20L, phase1.get(0).requests);
+    assertEquals(6.5, phase1.get(0).meanMs, 0.1);
+
+    List<Metric.Snapshot> run1 = coordinator.getRunSummary();
+    assertEquals(1, run1.size());
+    assertEquals(60L, run1.get(0).ops);
+    assertEquals(60L, run1.get(0).requests);
+    assertEquals(8.0, run1.get(0).maxMs, 0.1);
+  }
+
+  @Test
+  public void testWorkerFailsBeforeReady() throws Exception {
+    Coordinator coordinator = new Coordinator(2, 0, twoPhases(), null);
+    CompletableFuture<Void> run = runInBackground(coordinator);
+
+    // The first worker drops before it gets ready, while the second has not connected yet.
+    Coordinator.Connection worker0 = connectWorker(new JSONObject[1]);
+    worker0.close();
+    try {
+      run.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+      throw new AssertionError("Expected the run to fail");
+    } catch (ExecutionException e) {
+      assertTrue("Unexpected failure " + e.getCause(), e.getCause() instanceof IOException);
+      assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("Worker 0"));
+    }
+  }
+}
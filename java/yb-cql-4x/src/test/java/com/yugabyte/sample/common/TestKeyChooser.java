@@ -0,0 +1,141 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestKeyChooser {
+  private static final long NUM_KEYS = 1000;
+  private static final double THETA = 0.99;
+  private static final int NUM_PICKS = 200000;
+
+  private static KeyChooser create(KeyChooser.Distribution distribution) {
+    return KeyChooser.create(distribution, NUM_KEYS, THETA, 0.9, 0.1);
+  }
+
+  /**
+   * Returns how many times each key was picked out of NUM_PICKS, with maxKey of NUM_KEYS.
+   */
+  private static long[] pick(KeyChooser chooser) {
+    long[] counts = new long[(int) NUM_KEYS];
+    for (int i = 0; i < NUM_PICKS; i++) {
+      counts[(int) chooser.nextKey(NUM_KEYS)]++;
+    }
+    return counts;
+  }
+
+  // The probability of the given rank of the Zipfian distribution over NUM_KEYS keys.
+  private static double rankProbability(long rank) {
+    return Math.pow(rank + 1, -THETA) / KeyChooser.Zipfian.zeta(NUM_KEYS, THETA);
+  }
+
+  @Test
+  public void testKeysInRange() {
+    for (KeyChooser.Distribution distribution : KeyChooser.Distribution.values()) {
+      KeyChooser chooser = KeyChooser.create(distribution, 1000000, THETA, 0.9, 0.1);
+      // The keys are loaded while they are picked, past the size of the key space too.
+      for (long maxKey = 1; maxKey <= 2000000; maxKey = maxKey * 3 / 2 + 1) {
+        for (int i = 0; i < 1000; i++) {
+          long key = chooser.nextKey(maxKey);
+          assertTrue(distribution + " picked " + key + " of " + maxKey,
+                     key >= 0 && key < maxKey);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testHotspot() {
+    for (double hotOpFraction : new double[] {0.9, 0.3}) {
+      long[] counts = pick(KeyChooser.create(KeyChooser.Distribution.HOTSPOT, NUM_KEYS, THETA,
+                                             hotOpFraction, 0.2));
+      long hotPicks = 0;
+      for (int key = 0; key < NUM_KEYS / 5; key++) {
+        hotPicks += counts[key];
+      }
+      assertEquals(hotOpFraction, (double) hotPicks / NUM_PICKS, 0.01);
+    }
+  }
+
+  @Test
+  public void testZipfianRanks() {
+    KeyChooser.Zipfian zipfian = new KeyChooser.Zipfian(NUM_KEYS, THETA);
+    long[] counts = new long[(int) NUM_KEYS];
+    for (int i = 0; i < NUM_PICKS; i++) {
+      counts[(int) zipfian.nextRank()]++;
+    }
+    assertEquals(rankProbability(0), (double) counts[0] / NUM_PICKS, 0.005);
+    assertEquals(rankProbability(1), (double) counts[1] / NUM_PICKS, 0.005);
+    // The rest follow the distribution more loosely.
+    long top10 = 0;
+    double expectedTop10 = 0;
+    for (int rank = 0; rank < 10; rank++) {
+      top10 += counts[rank];
+      expectedTop10 += rankProbability(rank);
+    }
+    assertEquals(expectedTop10, (double) top10 / NUM_PICKS, 0.03);
+  }
+
+  @Test
+  public void testZipfianScattered() {
+    long[] counts = pick(create(KeyChooser.Distribution.ZIPFIAN));
+    int hottest = 0;
+    for (int key = 1; key < NUM_KEYS; key++) {
+      if (counts[key] > counts[hottest]) {
+        hottest = key;
+      }
+    }
+    // The hottest key gets about the share of rank 0, and other ranks may land on it too.
+    double share = (double) counts[hottest] / NUM_PICKS;
+    assertTrue("Hottest key got " + share, share > rankProbability(0) - 0.005);
+    assertTrue("Hottest key got " + share, share < rankProbability(0) + 0.02);
+    // The hot keys are not the lowest ones.
+    long lowest = 0;
+    for (int key = 0; key < 10; key++) {
+      lowest += counts[key];
+    }
+    assertTrue("The lowest keys got " + lowest, lowest < NUM_PICKS / 10);
+  }
+
+  @Test
+  public void testLatest() {
+    long[] counts = pick(create(KeyChooser.Distribution.LATEST));
+    assertEquals(rankProbability(0), (double) counts[(int) NUM_KEYS - 1] / NUM_PICKS, 0.005);
+    assertEquals(rankProbability(1), (double) counts[(int) NUM_KEYS - 2] / NUM_PICKS, 0.005);
+    long latestHalf = 0;
+    for (int key = (int) NUM_KEYS / 2; key < NUM_KEYS; key++) {
+      latestHalf += counts[key];
+    }
+    assertTrue("The latest half got " + latestHalf, latestHalf > NUM_PICKS * 0.8);
+  }
+
+  @Test
+  public void testZetaTail() {
+    for (double theta : new double[] {0.5, 0.99}) {
+      for (long n : new long[] {(1 << 20) + 12345, 3 << 20}) {
+        double exact = 0;
+        for (long i = 1; i <= n; i++) {
+          exact += 1 / Math.pow(i, theta);
+        }
+        double zeta = KeyChooser.Zipfian.zeta(n, theta);
+        assertEquals("zeta(" + n + ", " + theta + ")", exact, zeta, exact * 1e-9);
+      }
+    }
+  }
+}
@@ -0,0 +1,193 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import com.yugabyte.sample.apps.AppConfig;
+
+@RunWith(value=YBTestRunner.class)
+public class TestPhase {
+  private static final double DELTA = 0.001;
+  private static final String PHASES =
+      "[{\"name\": \"ramp\", \"duration_secs\": 60, \"target_ops_per_sec\": 1000},\n" +
+      " {\"name\": \"steady\", \"duration_secs\": 600, \"target_ops_per_sec\": 5000},\n" +
+      " {\"name\": \"spike\", \"duration_secs\": 30, \"num_threads_write\": 64,\n" +
+      "  \"target_ops_per_sec\": -1, \"key_distribution\": \"hotspot\"},\n" +
+      " {\"duration_secs\": 3600, \"num_threads_write\": 8, \"target_ops_per_sec\": 2000,\n" +
+      "  \"value_size\": 4096}]";
+
+  private Path file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = Files.createTempFile("phases", ".json");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  // The settings of the command line, with 2 reader and 6 writer threads.
+  private static Phase commandLine() {
+    AppConfig config = new AppConfig();
+    config.valueSize = 100;
+    config.batchSize = 10;
+    config.targetReadOpsPerSec = 50;
+    config.targetWriteOpsPerSec = -1;
+    return Phase.fromConfig(config, 2, 6);
+  }
+
+  private List<Phase> parse(String json) throws IOException {
+    Files.write(file, json.getBytes(StandardCharsets.UTF_8));
+    return Phase.parse(file.toString(), commandLine());
+  }
+
+  private void assertInvalid(String json) throws IOException {
+    try {
+      parse(json);
+      throw new AssertionError("Expected " + json + " to be rejected");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
+
+  private static void assertSamePhase(Phase expected, Phase actual) {
+    assertEquals(expected.name, actual.name);
+    assertEquals(expected.durationSecs, actual.durationSecs);
+    assertEquals(expected.numReaderThreads, actual.numReaderThreads);
+    assertEquals(expected.numWriterThreads, actual.numWriterThreads);
+    assertEquals(expected.targetReadOpsPerSec, actual.targetReadOpsPerSec, DELTA);
+    assertEquals(expected.targetWriteOpsPerSec, actual.targetWriteOpsPerSec, DELTA);
+    assertEquals(expected.keyDistribution, actual.keyDistribution);
+    assertEquals(expected.zipfianTheta, actual.zipfianTheta, DELTA);
+    assertEquals(expected.hotspotOpFraction, actual.hotspotOpFraction, DELTA);
+    assertEquals(expected.hotspotKeyFraction, actual.hotspotKeyFraction, DELTA);
+    assertEquals(expected.valueSize, actual.valueSize);
+    assertEquals(expected.batchSize, actual.batchSize);
+  }
+
+  @Test
+  public void testParse() throws IOException {
+    List<Phase> phases = parse(PHASES);
+    assertEquals(4, phases.size());
+
+    // The first phase takes what it leaves out from the command line, and splits its target rate
+    // between reads and writes like the threads are.
+    Phase ramp = phases.get(0);
+    assertEquals("ramp", ramp.name);
+    assertEquals(60L, ramp.durationSecs);
+    assertEquals(2, ramp.numReaderThreads);
+    assertEquals(6, ramp.numWriterThreads);
+    assertEquals(250.0, ramp.targetReadOpsPerSec, DELTA);
+    assertEquals(750.0, ramp.targetWriteOpsPerSec, DELTA);
+    assertEquals(KeyChooser.Distribution.UNIFORM, ramp.keyDistribution);
+    assertEquals(100, ramp.valueSize);
+    assertEquals(10, ramp.batchSize);
+
+    Phase steady = phases.get(1);
+    assertEquals(1250.0, steady.targetReadOpsPerSec, DELTA);
+    assertEquals(3750.0, steady.targetWriteOpsPerSec, DELTA);
+
+    // A rate which is not positive is no target.
+    Phase spike = phases.get(2);
+    assertEquals(64, spike.numWriterThreads);
+    assertTrue(spike.targetReadOpsPerSec <= 0);
+    assertTrue(spike.targetWriteOpsPerSec <= 0);
+    assertEquals(KeyChooser.Distribution.HOTSPOT, spike.keyDistribution);
+
+    // Later phases take what they leave out from the phase before.
+    Phase soak = phases.get(3);
+    assertEquals("phase-3", soak.name);
+    assertEquals(2, soak.numReaderThreads);
+    assertEquals(8, soak.numWriterThreads);
+    assertEquals(400.0, soak.targetReadOpsPerSec, DELTA);
+    assertEquals(1600.0, soak.targetWriteOpsPerSec, DELTA);
+    assertEquals(KeyChooser.Distribution.HOTSPOT, soak.keyDistribution);
+    assertEquals(4096, soak.valueSize);
+    assertEquals(10, soak.batchSize);
+
+    assertEquals(64, PhaseSchedule.getMaxThreads(phases, IOPSThread.IOType.Write));
+    assertEquals(2, PhaseSchedule.getMaxThreads(phases, IOPSThread.IOType.Read));
+    assertEquals(4290L, PhaseSchedule.getTotalDurationSecs(phases));
+  }
+
+  @Test
+  public void testParseObject() throws IOException {
+    List<Phase> phases = parse("{\"phases\": " + PHASES + "}");
+    List<Phase> expected = parse(PHASES);
+    assertEquals(expected.size(), phases.size());
+    for (int i = 0; i < phases.size(); i++) {
+      assertSamePhase(expected.get(i), phases.get(i));
+    }
+  }
+
+  @Test
+  public void testSeparateRates() throws IOException {
+    // The rate of reads or writes given on its own wins over the split of the total.
+    Phase phase = parse("[{\"duration_secs\": 1, \"num_threads_read\": 0, " +
+                        "\"target_ops_per_sec\": 1000, \"target_read_ops_per_sec\": 10}]").get(0);
+    assertEquals(10.0, phase.targetReadOpsPerSec, DELTA);
+    assertEquals(1000.0, phase.targetWriteOpsPerSec, DELTA);
+
+    // Without a total, the rates of the command line carry over.
+    phase = parse("[{\"duration_secs\": 1, \"target_write_ops_per_sec\": 20}]").get(0);
+    assertEquals(50.0, phase.targetReadOpsPerSec, DELTA);
+    assertEquals(20.0, phase.targetWriteOpsPerSec, DELTA);
+  }
+
+  @Test
+  public void testJsonRoundTrip() throws IOException {
+    List<Phase> phases = parse(PHASES);
+    JSONArray array = new JSONArray();
+    for (Phase phase : phases) {
+      array.put(phase.toJson());
+    }
+    // Phases read back from their JSON take nothing from the settings before them.
+    Phase other = Phase.fromConfig(new AppConfig(), 5, 5);
+    List<Phase> readBack = Phase.fromJson(new JSONArray(array.toString()), other);
+    assertEquals(phases.size(), readBack.size());
+    for (int i = 0; i < phases.size(); i++) {
+      assertSamePhase(phases.get(i), readBack.get(i));
+    }
+  }
+
+  @Test
+  public void testInvalidPhases() throws IOException {
+    assertInvalid("[]");
+    assertInvalid("{\"phases\": []}");
+    assertInvalid("{\"name\": \"ramp\", \"duration_secs\": 60}");
+    assertInvalid("42");
+    assertInvalid("[{\"name\": \"ramp\", \"duration_secs\": 60");
+    assertInvalid("[{\"name\": \"ramp\"}]");
+    assertInvalid("[{\"duration_secs\": 0}]");
+    assertInvalid("[{\"duration_secs\": 60, \"num_threads_read\": -1}]");
+    assertInvalid("[{\"duration_secs\": 60, \"key_distribution\": \"bell\"}]");
+    assertInvalid("[{\"duration_secs\": 60}, 42]");
+  }
+}
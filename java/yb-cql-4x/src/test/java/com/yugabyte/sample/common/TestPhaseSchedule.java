@@ -0,0 +1,135 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertNull;
+import static org.yb.AssertionWrappers.assertSame;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+import com.yugabyte.sample.apps.AppConfig;
+
+@RunWith(value=YBTestRunner.class)
+public class TestPhaseSchedule {
+  private static final long TIMEOUT_SECS = 10;
+
+  // A phase with one reader and two writers, then one with no reader and four writers.
+  private static final List<Phase> PHASES = Arrays.asList(
+      Phase.fromConfig(new AppConfig(), 1, 2).withDuration("first", 1),
+      Phase.fromConfig(new AppConfig(), 0, 4).withDuration("second", 1));
+
+  // The phases started, in order, with null for the end of the run.
+  private final List<Phase> started = Collections.synchronizedList(new ArrayList<>());
+
+  /**
+   * Returns a schedule whose phases the test drives.
+   */
+  private PhaseSchedule driven() {
+    PhaseSchedule schedule = new PhaseSchedule(PHASES, started::add, s -> {});
+    schedule.start();
+    return schedule;
+  }
+
+  private static CompletableFuture<Boolean> awaitInBackground(PhaseSchedule schedule,
+                                                              IOPSThread.IOType ioType,
+                                                              int threadIdx) {
+    CompletableFuture<Boolean> result = new CompletableFuture<>();
+    Thread thread = new Thread(
+        () -> result.complete(schedule.awaitActive(ioType, threadIdx, () -> false)));
+    thread.setDaemon(true);
+    thread.start();
+    return result;
+  }
+
+  @Test
+  public void testActiveThreads() throws Exception {
+    PhaseSchedule schedule = driven();
+    // No thread runs before the first phase.
+    assertNull(schedule.getCurrentPhase());
+    assertFalse(schedule.isActive(IOPSThread.IOType.Write, 0));
+    assertFalse(schedule.awaitActive(IOPSThread.IOType.Write, 0, () -> true));
+
+    schedule.startPhase(0);
+    assertSame(PHASES.get(0), schedule.getCurrentPhase());
+    assertTrue(schedule.isActive(IOPSThread.IOType.Read, 0));
+    assertFalse(schedule.isActive(IOPSThread.IOType.Read, 1));
+    assertTrue(schedule.isActive(IOPSThread.IOType.Write, 1));
+    assertFalse(schedule.isActive(IOPSThread.IOType.Write, 2));
+    assertTrue(schedule.awaitActive(IOPSThread.IOType.Write, 1, () -> false));
+
+    // A thread beyond the current phase waits for a phase which runs it.
+    CompletableFuture<Boolean> writer3 = awaitInBackground(schedule, IOPSThread.IOType.Write, 3);
+    Thread.sleep(200);
+    assertFalse(writer3.isDone());
+    schedule.startPhase(1);
+    assertTrue(writer3.get(TIMEOUT_SECS, TimeUnit.SECONDS));
+    assertFalse(schedule.isActive(IOPSThread.IOType.Read, 0));
+
+    // A thread which no phase runs anymore is let go at the end of the run.
+    CompletableFuture<Boolean> reader0 = awaitInBackground(schedule, IOPSThread.IOType.Read, 0);
+    Thread.sleep(200);
+    assertFalse(reader0.isDone());
+    schedule.finish();
+    assertFalse(reader0.get(TIMEOUT_SECS, TimeUnit.SECONDS));
+    assertTrue(schedule.isDone());
+    assertFalse(schedule.isActive(IOPSThread.IOType.Write, 0));
+
+    // The end of the run is only reported once.
+    schedule.finish();
+    assertEquals(Arrays.asList(PHASES.get(0), PHASES.get(1), null), started);
+  }
+
+  @Test
+  public void testAwaitStopped() throws Exception {
+    PhaseSchedule schedule = driven();
+    schedule.startPhase(0);
+    boolean[] stopped = {false};
+    CompletableFuture<Boolean> writer2 = new CompletableFuture<>();
+    Thread thread = new Thread(() -> writer2.complete(
+        schedule.awaitActive(IOPSThread.IOType.Write, 2, () -> stopped[0])));
+    thread.setDaemon(true);
+    thread.start();
+    Thread.sleep(200);
+    assertFalse(writer2.isDone());
+    // A stopped app is noticed without a phase starting.
+    stopped[0] = true;
+    assertFalse(writer2.get(TIMEOUT_SECS, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTimedPhases() throws Exception {
+    PhaseSchedule schedule = new PhaseSchedule(PHASES, started::add);
+    schedule.start();
+    // Starting again does not start the phases over.
+    schedule.start();
+    assertTrue(schedule.awaitActive(IOPSThread.IOType.Write, 3, () -> false));
+    long deadlineMs = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECS);
+    while (!schedule.isDone()) {
+      assertTrue("Timed out waiting", System.currentTimeMillis() < deadlineMs);
+      Thread.sleep(10);
+    }
+    assertEquals(Arrays.asList(PHASES.get(0), PHASES.get(1), null), started);
+  }
+}
@@ -0,0 +1,202 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestWrittenKeysTracker {
+  private static final int NUM_THREADS = 8;
+
+  private static boolean shouldFail(long key) {
+    return key % 97 == 0;
+  }
+
+  /**
+   * Records keys 0 to numKeys - 1 from NUM_THREADS threads. Each thread gets every
+   * NUM_THREADS-th key and records them shuffled within blocks of blockSize, so keys complete out
+   * of order both within and across threads. Meanwhile, a checker thread asserts that the mark
+   * never passes a key which is not recorded yet, and never goes back.
+   */
+  private static void recordConcurrently(WrittenKeysTracker tracker, int numKeys, int blockSize)
+      throws Exception {
+    AtomicIntegerArray recorded = new AtomicIntegerArray(numKeys);
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch start = new CountDownLatch(1);
+
+    List<Thread> writers = new ArrayList<>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int threadIdx = t;
+      writers.add(new Thread(() -> {
+        List<Long> keys = new ArrayList<>();
+        for (long key = threadIdx; key < numKeys; key += NUM_THREADS) {
+          keys.add(key);
+        }
+        Random random = new Random(threadIdx);
+        for (int from = 0; from < keys.size(); from += blockSize) {
+          Collections.shuffle(keys.subList(from, Math.min(from + blockSize, keys.size())), random);
+        }
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (long key : keys) {
+          recorded.set((int) key, 1);
+          if (shouldFail(key)) {
+            tracker.recordFailure(key);
+          } else {
+            tracker.recordSuccess(key);
+          }
+        }
+      }));
+    }
+    Thread checker = new Thread(() -> {
+      try {
+        long checked = -1;
+        while (!done.get()) {
+          long mark = tracker.getMaxWrittenKey();
+          assertTrue("The mark went back from " + checked + " to " + mark, mark >= checked);
+          for (long key = checked + 1; key <= mark; key++) {
+            assertEquals("Key " + key + " is below the mark " + mark + " but not recorded",
+                         1, recorded.get((int) key));
+          }
+          checked = mark;
+        }
+      } catch (Throwable t) {
+        error.set(t);
+      }
+    });
+
+    writers.forEach(Thread::start);
+    checker.start();
+    start.countDown();
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    done.set(true);
+    checker.join();
+    if (error.get() != null) {
+      throw new AssertionError(error.get());
+    }
+  }
+
+  private static void assertFailedKeys(WrittenKeysTracker tracker, long numKeys) {
+    for (long key = 0; key < numKeys; key++) {
+      assertEquals("Key " + key, shouldFail(key), tracker.isFailed(key));
+    }
+  }
+
+  @Test
+  public void testOutOfOrder() throws Exception {
+    int numKeys = 200000;
+    WrittenKeysTracker tracker = new WrittenKeysTracker(-1);
+    recordConcurrently(tracker, numKeys, 1000);
+    assertEquals(numKeys - 1, tracker.getMaxWrittenKey());
+    assertFailedKeys(tracker, numKeys);
+  }
+
+  @Test
+  public void testWindowWrapsAround() throws Exception {
+    // The window is reused several times over.
+    int numKeys = 3 * WrittenKeysTracker.WINDOW_BITS + 12345;
+    WrittenKeysTracker tracker = new WrittenKeysTracker(-1);
+    recordConcurrently(tracker, numKeys, 100);
+    assertEquals(numKeys - 1, tracker.getMaxWrittenKey());
+    assertFailedKeys(tracker, numKeys);
+  }
+
+  @Test
+  public void testStartsAfterExistingKeys() {
+    WrittenKeysTracker tracker = new WrittenKeysTracker(99);
+    // Keys at or below the starting mark are ignored.
+    tracker.recordSuccess(50);
+    tracker.recordSuccess(101);
+    assertEquals(99, tracker.getMaxWrittenKey());
+    tracker.recordFailure(100);
+    assertEquals(101, tracker.getMaxWrittenKey());
+    assertTrue(tracker.isFailed(100));
+    assertFalse(tracker.isFailed(101));
+  }
+
+  @Test
+  public void testOverflow() {
+    int window = WrittenKeysTracker.WINDOW_BITS;
+    WrittenKeysTracker tracker = new WrittenKeysTracker(-1);
+    // Further ahead than the window while key 0 is slow, so these go to the overflow set.
+    long[] farKeys = {window, window + 1L, window + 10L, 2L * window + 5};
+    for (long key : farKeys) {
+      tracker.recordSuccess(key);
+    }
+    tracker.recordFailure(window + 2L);
+    assertEquals(-1, tracker.getMaxWrittenKey());
+
+    // The keys in between, last to first, so that the mark only moves with the last one.
+    for (long key = window - 1; key >= 0; key--) {
+      tracker.recordSuccess(key);
+    }
+    assertEquals(window + 2L, tracker.getMaxWrittenKey());
+    assertTrue(tracker.isFailed(window + 2L));
+
+    for (long key = window + 3L; key < window + 10L; key++) {
+      tracker.recordSuccess(key);
+    }
+    assertEquals(window + 10L, tracker.getMaxWrittenKey());
+    for (long key = window + 11L; key < 2L * window + 5; key++) {
+      tracker.recordSuccess(key);
+    }
+    assertEquals(2L * window + 5, tracker.getMaxWrittenKey());
+  }
+
+  @Test
+  public void testOverflowConcurrently() throws Exception {
+    int window = WrittenKeysTracker.WINDOW_BITS;
+    int numKeys = window + window / 4;
+    WrittenKeysTracker tracker = new WrittenKeysTracker(-1);
+    // Key 0 is held back until the others have been recorded, so the last quarter of them are
+    // further ahead than the window and overflow.
+    List<Thread> writers = new ArrayList<>();
+    for (int t = 0; t < NUM_THREADS; t++) {
+      final int threadIdx = t;
+      writers.add(new Thread(() -> {
+        for (long key = threadIdx == 0 ? NUM_THREADS : threadIdx; key < numKeys;
+             key += NUM_THREADS) {
+          tracker.recordSuccess(key);
+        }
+      }));
+    }
+    writers.forEach(Thread::start);
+    for (Thread writer : writers) {
+      writer.join();
+    }
+    assertEquals(-1, tracker.getMaxWrittenKey());
+    tracker.recordSuccess(0);
+    assertEquals(numKeys - 1, tracker.getMaxWrittenKey());
+  }
+}
@@ -0,0 +1,238 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+
+package com.yugabyte.sample.common;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares WrittenKeysTracker with the tracker SimpleLoadGenerator used before it, which kept the
+ * written and failed keys in sets under a lock and had a helper thread move the high-water mark.
+ *
+ * The writers benchmark only records writes, the way IO threads do when there are no reads. The
+ * mixed one adds readers which look up random keys below the mark, as getKeyToRead does. In both,
+ * each writer records the keys it gets in order, so keys complete slightly out of order across
+ * writers. Run with:
+ *   java -cp <test classpath> com.yugabyte.sample.common.WrittenKeysTrackerBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WrittenKeysTrackerBenchmark {
+
+  interface Tracker {
+    long getMaxWrittenKey();
+    boolean isFailed(long key);
+    void recordSuccess(long key);
+    void recordFailure(long key);
+    void close();
+  }
+
+  static class LockFreeTracker implements Tracker {
+    final WrittenKeysTracker tracker = new WrittenKeysTracker(-1);
+
+    @Override
+    public long getMaxWrittenKey() {
+      return tracker.getMaxWrittenKey();
+    }
+
+    @Override
+    public boolean isFailed(long key) {
+      return tracker.isFailed(key);
+    }
+
+    @Override
+    public void recordSuccess(long key) {
+      tracker.recordSuccess(key);
+    }
+
+    @Override
+    public void recordFailure(long key) {
+      tracker.recordFailure(key);
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * The tracker SimpleLoadGenerator used before, with a way to stop its helper thread.
+   */
+  static class LegacyTracker implements Tracker {
+    final AtomicLong maxWrittenKey = new AtomicLong(-1);
+    final Set<Long> failedKeys = new HashSet<Long>();
+    final Set<Long> writtenKeys = new HashSet<Long>();
+    final Thread writtenKeysTracker;
+    volatile boolean stopped = false;
+
+    LegacyTracker() {
+      writtenKeysTracker = new Thread("Written Keys Tracker") {
+        @Override
+        public void run() {
+          while (!stopped) {
+            long key = maxWrittenKey.get() + 1;
+            synchronized (this) {
+              if (failedKeys.contains(key) || writtenKeys.remove(key)) {
+                maxWrittenKey.set(key);
+              } else {
+                try {
+                  wait();
+                } catch (InterruptedException e) {
+                  // Ignore
+                }
+              }
+            }
+          }
+        }
+      };
+      writtenKeysTracker.setDaemon(true);
+      writtenKeysTracker.start();
+    }
+
+    @Override
+    public long getMaxWrittenKey() {
+      return maxWrittenKey.get();
+    }
+
+    @Override
+    public boolean isFailed(long key) {
+      return failedKeys.contains(key);
+    }
+
+    @Override
+    public void recordSuccess(long key) {
+      if (key > maxWrittenKey.get()) {
+        synchronized (writtenKeysTracker) {
+          writtenKeys.add(key);
+          writtenKeysTracker.notify();
+        }
+      }
+    }
+
+    @Override
+    public void recordFailure(long key) {
+      synchronized (writtenKeysTracker) {
+        failedKeys.add(key);
+        writtenKeysTracker.notify();
+      }
+    }
+
+    @Override
+    public void close() {
+      stopped = true;
+      synchronized (writtenKeysTracker) {
+        writtenKeysTracker.notify();
+      }
+    }
+  }
+
+  @State(Scope.Group)
+  public static class TrackerState {
+    @Param({"lockfree", "legacy"})
+    String tracker;
+
+    // One write in this many fails.
+    @Param({"1000"})
+    int failureInterval;
+
+    Tracker keys;
+    final AtomicLong nextKey = new AtomicLong(-1);
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      keys = tracker.equals("legacy") ? new LegacyTracker() : new LockFreeTracker();
+      nextKey.set(-1);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+      keys.close();
+    }
+  }
+
+  private static long write(TrackerState state) {
+    long key = state.nextKey.incrementAndGet();
+    if (key % state.failureInterval == 0) {
+      state.keys.recordFailure(key);
+    } else {
+      state.keys.recordSuccess(key);
+    }
+    return key;
+  }
+
+  private static long read(TrackerState state) {
+    long maxKey = state.keys.getMaxWrittenKey();
+    if (maxKey <= 0) {
+      return maxKey;
+    }
+    long key;
+    do {
+      key = ThreadLocalRandom.current().nextLong(maxKey);
+    } while (state.keys.isFailed(key));
+    return key;
+  }
+
+  @Benchmark
+  @Group("writers")
+  @GroupThreads(8)
+  public long writersOnly(TrackerState state) {
+    return write(state);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(4)
+  public long mixedWrite(TrackerState state) {
+    return write(state);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(4)
+  public long mixedRead(TrackerState state) {
+    return read(state);
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = new OptionsBuilder()
+        .include(WrittenKeysTrackerBenchmark.class.getSimpleName())
+        .build();
+    new Runner(options).run();
+  }
+}
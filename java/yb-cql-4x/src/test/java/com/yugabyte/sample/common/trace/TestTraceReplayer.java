@@ -0,0 +1,118 @@
+// Copyright (c) YugaByte, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+// in compliance with the License.  You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software distributed under the License
+// is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+// or implied.  See the License for the specific language governing permissions and limitations
+// under the License.
+//
+package com.yugabyte.sample.common.trace;
+
+import static org.yb.AssertionWrappers.assertEquals;
+import static org.yb.AssertionWrappers.assertFalse;
+import static org.yb.AssertionWrappers.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.yb.YBTestRunner;
+
+@RunWith(value=YBTestRunner.class)
+public class TestTraceReplayer {
+  // More than fit a buffer of the recorder, so that the writer thread writes several.
+  private static final int NUM_RECORDS = 100000;
+  // Records per mapping of the replayer, so that the replay goes through many of them.
+  private static final long WINDOW_RECORDS = 1000;
+  private static final String[] TABLES = {"raw", "minutely", "hourly"};
+
+  private Path trace;
+
+  @Before
+  public void setUp() throws IOException {
+    trace = Files.createTempFile("trace", ".bin");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(trace);
+  }
+
+  private static OpTrace.OpType opType(int i) {
+    return i % 3 == 0 ? OpTrace.OpType.READ : OpTrace.OpType.WRITE;
+  }
+
+  /**
+   * Records NUM_RECORDS operations, the i-th of them starting i milliseconds after the first.
+   */
+  private void recordTrace() throws IOException {
+    try (TraceRecorder recorder = new TraceRecorder(trace.toString())) {
+      long firstStartNanos = System.nanoTime();
+      for (int i = 0; i < NUM_RECORDS; i++) {
+        recorder.record(opType(i), TABLES[i % TABLES.length], i * 7L, i % 500,
+                        firstStartNanos + i * 1000000L);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    recordTrace();
+
+    try (TraceReplayer replayer = new TraceReplayer(trace.toString(), 0, WINDOW_RECORDS)) {
+      assertEquals((long) NUM_RECORDS, replayer.getNumRecords());
+      OpTrace.Record record = new OpTrace.Record();
+      long firstEpochMillis = 0;
+      for (int i = 0; i < NUM_RECORDS; i++) {
+        assertTrue(replayer.next(record, () -> false));
+        assertEquals(opType(i), record.opType);
+        assertEquals(TABLES[i % TABLES.length], record.table);
+        assertEquals(i * 7L, record.key);
+        assertEquals(i % 500, record.valueSize);
+        if (i == 0) {
+          firstEpochMillis = record.epochMillis;
+        }
+        assertEquals(firstEpochMillis + i, record.epochMillis);
+      }
+      assertFalse(replayer.next(record, () -> false));
+      assertEquals((long) NUM_RECORDS, replayer.getNumReplayed());
+    }
+  }
+
+  @Test
+  public void testEmptyTrace() throws IOException {
+    new TraceRecorder(trace.toString()).close();
+
+    try (TraceReplayer replayer = new TraceReplayer(trace.toString(), 1.0)) {
+      assertEquals(0L, replayer.getNumRecords());
+      assertFalse(replayer.next(new OpTrace.Record(), () -> false));
+    }
+  }
+
+  @Test
+  public void testUnclosedTraceRejected() throws IOException {
+    recordTrace();
+    // The footer offset is only filled in as the trace is closed, so a trace which the recording
+    // process did not get to close has none.
+    try (RandomAccessFile file = new RandomAccessFile(trace.toFile(), "rw")) {
+      file.seek(OpTrace.FOOTER_OFFSET_OFFSET);
+      file.writeLong(0);
+    }
+
+    try {
+      new TraceReplayer(trace.toString(), 1.0).close();
+      throw new AssertionError("Expected the unclosed trace to be rejected");
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("was not closed"));
+    }
+  }
+}
@@ -18,14 +18,22 @@ import com.yugabyte.yw.models.InstanceType;
 import com.yugabyte.yw.models.PriceComponent;
 import com.yugabyte.yw.models.Provider;
 import com.yugabyte.yw.models.Region;
+import com.yugabyte.yw.models.Universe;
 import com.yugabyte.yw.models.helpers.DeviceInfo;
 import com.yugabyte.yw.models.helpers.NodeDetails;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.yugabyte.yw.cloud.PublicCloudConstants.GP2_SIZE;
 import static com.yugabyte.yw.cloud.PublicCloudConstants.IO1_PIOPS;
@@ -43,6 +51,70 @@ public class UniverseResourceDetails {
   public int numNodes = 0;
   public HashSet<String> azList = new HashSet<>();
 
+  // Bumped every time a price component or an instance type changes, so that cached universe
+  // costs computed against an older price table are recomputed.
+  private static final AtomicLong pricingGeneration = new AtomicLong();
+
+  // Universe UUID -> resource details computed for given universe version and pricing generation.
+  private static final Map<UUID, CachedDetails> universeCache = new ConcurrentHashMap<>();
+
+  private static class CachedDetails {
+    // The universe version the resource details were computed for. Updates which save the details
+    // without incrementing it invalidate the cached details instead.
+    final int universeVersion;
+    final long pricingGeneration;
+    final UniverseResourceDetails details;
+
+    CachedDetails(int universeVersion, long pricingGeneration, UniverseResourceDetails details) {
+      this.universeVersion = universeVersion;
+      this.pricingGeneration = pricingGeneration;
+      this.details = details;
+    }
+  }
+
+  /**
+   * Memoizes the provider, region, instance type and price component lookups made while computing
+   * resource details, so that universes sharing the same provider and region only hit the DB once
+   * per (provider, region, code). A context is meant to live for the duration of a single request.
+   */
+  public static class Context {
+    private final Map<UUID, Optional<Provider>> providers = new HashMap<>();
+    private final Map<List<Object>, Optional<Region>> regions = new HashMap<>();
+    private final Map<List<Object>, Optional<InstanceType>> instanceTypes = new HashMap<>();
+    private final Map<List<Object>, Optional<PriceComponent>> priceComponents = new HashMap<>();
+
+    Provider getProvider(UUID providerUuid) {
+      return providers.computeIfAbsent(providerUuid,
+        k -> Optional.ofNullable(Provider.get(providerUuid))).orElse(null);
+    }
+
+    Region getRegion(Provider provider, String regionCode) {
+      return regions.computeIfAbsent(Arrays.asList(provider.uuid, regionCode),
+        k -> Optional.ofNullable(Region.getByCode(provider, regionCode))).orElse(null);
+    }
+
+    InstanceType getInstanceType(UUID providerUuid, String instanceTypeCode) {
+      return instanceTypes.computeIfAbsent(Arrays.asList(providerUuid, instanceTypeCode),
+        k -> Optional.ofNullable(InstanceType.get(providerUuid, instanceTypeCode))).orElse(null);
+    }
+
+    PriceComponent getPriceComponent(UUID providerUuid, String regionCode, String componentCode) {
+      return priceComponents.computeIfAbsent(
+        Arrays.asList(providerUuid, regionCode, componentCode),
+        k -> Optional.ofNullable(PriceComponent.get(providerUuid, regionCode, componentCode)))
+        .orElse(null);
+    }
+  }
+
+  /**
+   * Invalidates all the cached universe resource details. Called whenever the price table or the
+   * instance type definitions change.
+   */
+  public static void invalidateCache() {
+    pricingGeneration.incrementAndGet();
+    universeCache.clear();
+  }
+
   public void addCostPerHour(double price) {
     pricePerHour += price;
   }
@@ -76,6 +148,10 @@ public class UniverseResourceDetails {
   }
 
   public void addPrice(UniverseDefinitionTaskParams params) {
+    addPrice(params, new Context());
+  }
+
+  public void addPrice(UniverseDefinitionTaskParams params, Context context) {
 
     // Calculate price
     double hourlyPrice = 0.0;
@@ -85,13 +161,13 @@ public class UniverseResourceDetails {
       if (nodeDetails.placementUuid != null) {
         userIntent = params.getClusterByUuid(nodeDetails.placementUuid).userIntent;
       }
-      Provider provider = Provider.get(UUID.fromString(userIntent.provider));
+      Provider provider = context.getProvider(UUID.fromString(userIntent.provider));
       if (!nodeDetails.isActive()) {
         continue;
       }
-      Region region = Region.getByCode(provider, nodeDetails.cloudInfo.region);
+      Region region = context.getRegion(provider, nodeDetails.cloudInfo.region);
 
-      PriceComponent instancePrice = PriceComponent.get(provider.uuid, region.code,
+      PriceComponent instancePrice = context.getPriceComponent(provider.uuid, region.code,
               userIntent.instanceType);
       if (instancePrice == null) {
         continue;
@@ -108,15 +184,16 @@ public class UniverseResourceDetails {
         PriceComponent sizePrice;
         switch (userIntent.deviceInfo.storageType) {
           case IO1:
-            PriceComponent piopsPrice = PriceComponent.get(provider.uuid, region.code, IO1_PIOPS);
-            sizePrice = PriceComponent.get(provider.uuid, region.code, IO1_SIZE);
+            PriceComponent piopsPrice =
+              context.getPriceComponent(provider.uuid, region.code, IO1_PIOPS);
+            sizePrice = context.getPriceComponent(provider.uuid, region.code, IO1_SIZE);
             if (piopsPrice != null && sizePrice != null) {
               hourlyEBSPrice += (numVolumes * (diskIops * piopsPrice.priceDetails.pricePerHour));
               hourlyEBSPrice += (numVolumes * (volumeSize * sizePrice.priceDetails.pricePerHour));
             }
             break;
           case GP2:
-            sizePrice = PriceComponent.get(provider.uuid, region.code, GP2_SIZE);
+            sizePrice = context.getPriceComponent(provider.uuid, region.code, GP2_SIZE);
             if (sizePrice != null) {
               hourlyEBSPrice += (numVolumes * volumeSize * sizePrice.priceDetails.pricePerHour);
             }
@@ -143,6 +220,20 @@ public class UniverseResourceDetails {
    */
   public static UniverseResourceDetails create(Collection<NodeDetails> nodes,
                                                UniverseDefinitionTaskParams params) {
+    return create(nodes, params, new Context());
+  }
+
+  /**
+   * Same as above, but reuses the lookups memoized in the given context.
+   *
+   * @param nodes Nodes that make up this universe.
+   * @param params Parameters describing this universe.
+   * @param context Lookup cache shared across the universes handled by one request.
+   * @return a UniverseResourceDetails object containing info on the universe's resources.
+   */
+  public static UniverseResourceDetails create(Collection<NodeDetails> nodes,
+                                               UniverseDefinitionTaskParams params,
+                                               Context context) {
     UniverseResourceDetails details = new UniverseResourceDetails();
     for (Cluster cluster : params.clusters) {
       details.addNumNodes(cluster.userIntent.numNodes);
@@ -156,7 +247,7 @@ public class UniverseResourceDetails {
         details.addVolumeCount(userIntent.deviceInfo.numVolumes);
         details.addVolumeSizeGB(userIntent.deviceInfo.volumeSize * userIntent.deviceInfo.numVolumes);
         details.addAz(node.cloudInfo.az);
-        InstanceType instanceType = InstanceType.get(UUID.fromString(userIntent.provider),
+        InstanceType instanceType = context.getInstanceType(UUID.fromString(userIntent.provider),
                 node.cloudInfo.instance_type);
         if (instanceType == null) {
           LOG.error("Couldn't find instance type " + node.cloudInfo.instance_type +
@@ -167,7 +258,43 @@ public class UniverseResourceDetails {
         }
       }
     }
-    details.addPrice(params);
+    details.addPrice(params, context);
+    return details;
+  }
+
+  /**
+   * Returns the resource details of an existing universe. The result is cached and only
+   * recomputed when the universe version or the price table change, so callers must treat the
+   * returned object as read-only.
+   *
+   * @param universe The universe to get the resource details of.
+   * @param context Lookup cache shared across the universes handled by one request.
+   * @return a UniverseResourceDetails object containing info on the universe's resources.
+   */
+  public static UniverseResourceDetails create(Universe universe, Context context) {
+    long generation = pricingGeneration.get();
+    CachedDetails cached = universeCache.get(universe.universeUUID);
+    if (cached != null && cached.pricingGeneration == generation
+        && cached.universeVersion == universe.version) {
+      return cached.details;
+    }
+    UniverseResourceDetails details =
+      create(universe.getNodes(), universe.getUniverseDetails(), context);
+    universeCache.put(universe.universeUUID,
+      new CachedDetails(universe.version, generation, details));
     return details;
   }
+
+  public static UniverseResourceDetails create(Universe universe) {
+    return create(universe, new Context());
+  }
+
+  /**
+   * Drops the cached resource details of a universe, e.g. when the universe is deleted.
+   *
+   * @param universeUUID UUID of the universe.
+   */
+  public static void invalidate(UUID universeUUID) {
+    universeCache.remove(universeUUID);
+  }
 }
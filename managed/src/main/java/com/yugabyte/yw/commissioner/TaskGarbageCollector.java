@@ -15,9 +15,16 @@ import scala.concurrent.ExecutionContext;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.time.Duration;
-import java.util.List;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Singleton
 public class TaskGarbageCollector {
@@ -32,6 +39,7 @@ public class TaskGarbageCollector {
   static final String TASK_INFO_METRIC_NAME = "yw_task_info_gc_count";
   static final String NUM_TASK_GC_RUNS = "yw_task_gc_run_count";
   static final String NUM_TASK_GC_ERRORS = "yw_task_gc_error_count";
+  static final String NUM_TASK_GC_SCANNED = "yw_task_gc_scanned_count";
 
   // Counter label
   static final String CUSTOMER_UUID_LABEL = "customer_uuid";
@@ -39,6 +47,8 @@ public class TaskGarbageCollector {
   // Config names
   static final String YB_TASK_GC_GC_CHECK_INTERVAL = "yb.taskGC.gc_check_interval";
   static final String YB_TASK_GC_TASK_RETENTION_DURATION = "yb.taskGC.task_retention_duration";
+  static final String YB_TASK_GC_BATCH_SIZE = "yb.taskGC.batch_size";
+  static final String YB_TASK_GC_BATCH_DELAY = "yb.taskGC.batch_delay";
 
   private final Scheduler scheduler;
   private final RuntimeConfigFactory runtimeConfigFactory;
@@ -47,6 +57,13 @@ public class TaskGarbageCollector {
   private final Optional<Counter> purgedTaskInfoCount;
   private final Optional<Counter> numTaskGCRuns;
   private final Optional<Counter> numTaskGCErrors;
+  private final Optional<Counter> numTaskGCScanned;
+
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  // Id of the last customer task looked at by an unfinished gc pass, per customer. A pass that
+  // gets interrupted resumes from here on the next run instead of starting over.
+  private final Map<UUID, Long> resumeAfterId = new ConcurrentHashMap<>();
 
   private static <V> Optional<V> tryOrLog(Callable<V> callable, String failureMessage) {
     if (EXPORT_PROM_METRIC) {
@@ -67,10 +84,18 @@ public class TaskGarbageCollector {
       "Failed to build prometheus Counter for name: " + NUM_TASK_GC_ERRORS);
   }
 
+  private static Optional<Counter> registerNumTaskGCScanned(CollectorRegistry promRegistry) {
+    return tryOrLog(
+      () -> Counter.build(NUM_TASK_GC_SCANNED,
+        "Number of completed customer tasks looked at by gc")
+        .register(promRegistry),
+      "Failed to build prometheus Counter for name: " + NUM_TASK_GC_SCANNED);
+  }
+
   private static Optional<Counter> registerNumTaskGCRuns(CollectorRegistry promRegistry) {
     return tryOrLog(
       () -> Counter.build(NUM_TASK_GC_RUNS,
-        "Number of times customer gc checks are run")
+        "Number of customer gc batches run")
         .register(promRegistry),
       "Failed to build prometheus Counter for name: " + NUM_TASK_GC_RUNS);
   }
@@ -117,6 +142,7 @@ public class TaskGarbageCollector {
     purgedTaskInfoCount = registerPurgedTaskInfoCount(promRegistry);
     numTaskGCRuns = registerNumTaskGCRuns(promRegistry);
     numTaskGCErrors = registerNumTaskGCErrors(promRegistry);
+    numTaskGCScanned = registerNumTaskGCScanned(promRegistry);
   }
 
   public void start() {
@@ -136,31 +162,68 @@ public class TaskGarbageCollector {
   }
 
   private void scheduleRunner() {
-    Customer.getAll().forEach(this::checkCustomer);
+    if (!running.compareAndSet(false, true)) {
+      LOG.info("Previous task GC still running");
+      return;
+    }
+    purgeNextBatch(new ArrayDeque<>(Customer.getAll()));
   }
 
-  private void checkCustomer(Customer c) {
-    List<CustomerTask> staleTasks = CustomerTask.findOlderThan(c, taskRetentionDuration(c));
-    purgeStaleTasks(c, staleTasks);
+  /**
+   * Deletes one batch of stale tasks of the customer at the head of the queue, and schedules the
+   * next batch after the configured delay. Moves on to the next customer once a batch comes back
+   * short, which completes the pass for that customer.
+   */
+  private void purgeNextBatch(Queue<Customer> customers) {
+    boolean scheduledNext = false;
+    try {
+      Customer c = customers.peek();
+      if (c == null) {
+        return;
+      }
+      int batchSize = batchSize();
+      Date cutoffDate =
+        new Date(Instant.now().minus(taskRetentionDuration(c)).toEpochMilli());
+      CustomerTask.PurgeResult result = CustomerTask.purgeCompletedBatch(c, cutoffDate,
+        resumeAfterId.getOrDefault(c.getUuid(), -1L), batchSize);
+      recordPurge(c, result);
+      if (result.numScanned < batchSize) {
+        resumeAfterId.remove(c.getUuid());
+        customers.poll();
+      } else {
+        resumeAfterId.put(c.getUuid(), result.lastId);
+      }
+      scheduler.scheduleOnce(batchDelay(), () -> purgeNextBatch(customers),
+        this.executionContext);
+      scheduledNext = true;
+    } catch (Exception e) {
+      LOG.error("Error running task GC", e);
+      numTaskGCErrors.ifPresent(Counter::inc);
+    } finally {
+      if (!scheduledNext) {
+        running.set(false);
+      }
+    }
   }
 
   @VisibleForTesting
-  void purgeStaleTasks(Customer c, List<CustomerTask> staleTasks) {
+  void recordPurge(Customer c, CustomerTask.PurgeResult result) {
     numTaskGCRuns.ifPresent(Counter::inc);
-    int numRowsGCdInThisRun = 0;
-    for (CustomerTask customerTask : staleTasks) {
-      int numRowsDeleted = customerTask.cascadeDeleteCompleted();
-      numRowsGCdInThisRun += numRowsDeleted;
-      if (numRowsDeleted > 0) {
-        purgedCustomerTaskCount
-          .ifPresent(counter -> counter.labels(c.getUuid().toString()).inc());
-        purgedTaskInfoCount
-          .ifPresent(counter -> counter.labels(c.getUuid().toString()).inc(numRowsDeleted - 1));
-      } else {
-        numTaskGCErrors.ifPresent(Counter::inc);
-      }
+    numTaskGCScanned.ifPresent(counter -> counter.inc(result.numScanned));
+    if (result.numCustomerTasks > 0) {
+      purgedCustomerTaskCount
+        .ifPresent(counter -> counter.labels(c.getUuid().toString())
+          .inc(result.numCustomerTasks));
+      purgedTaskInfoCount
+        .ifPresent(counter -> counter.labels(c.getUuid().toString())
+          .inc(result.numTaskInfos));
     }
-    LOG.info("Garbage collected {} rows", numRowsGCdInThisRun);
+    int numSkipped = result.numScanned - result.numCustomerTasks;
+    if (numSkipped > 0) {
+      numTaskGCErrors.ifPresent(counter -> counter.inc(numSkipped));
+    }
+    LOG.info("Garbage collected {} rows, skipped {} customer tasks, resuming after id {}",
+      result.numCustomerTasks + result.numTaskInfos, numSkipped, result.lastId);
   }
 
   /**
@@ -171,6 +234,20 @@ public class TaskGarbageCollector {
       .getDuration(YB_TASK_GC_GC_CHECK_INTERVAL);
   }
 
+  /**
+   * How many completed customer tasks to look at in one batch.
+   */
+  private int batchSize() {
+    return runtimeConfigFactory.staticApplicationConf().getInt(YB_TASK_GC_BATCH_SIZE);
+  }
+
+  /**
+   * How long to wait between two batches, which bounds the rate at which rows get deleted.
+   */
+  private Duration batchDelay() {
+    return runtimeConfigFactory.staticApplicationConf().getDuration(YB_TASK_GC_BATCH_DELAY);
+  }
+
   /**
    * For how many days to retain a completed task before garbage collecting it.
    */
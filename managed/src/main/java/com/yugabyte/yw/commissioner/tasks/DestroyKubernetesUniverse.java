@@ -132,6 +132,7 @@ public class DestroyKubernetesUniverse extends DestroyUniverse {
 
       // Run all the tasks.
       subTaskGroupQueue.run();
+      closeMetricsConnection();
     } catch (Throwable t) {
       // If for any reason destroy fails we would just unlock the universe for update
       try {
@@ -92,6 +92,7 @@ public class DestroyUniverse extends UniverseTaskBase {
 
       // Run all the tasks.
       subTaskGroupQueue.run();
+      closeMetricsConnection();
 
       AlertManager alertManager = Play.current().injector().instanceOf(AlertManager.class);
       alertManager.resolveAlerts(params().customerUUID, params().universeUUID, "%");
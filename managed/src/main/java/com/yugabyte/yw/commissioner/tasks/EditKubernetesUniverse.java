@@ -205,6 +205,8 @@ public class EditKubernetesUniverse extends KubernetesTaskBase {
       LOG.error("Error executing task {}, error='{}'", getName(), t.getMessage(), t);
       throw t;
     } finally {
+      // The nodes may have changed even if the edit failed.
+      closeMetricsConnection();
       unlockUniverseForUpdate();
     }
     LOG.info("Finished {} task.", getName());
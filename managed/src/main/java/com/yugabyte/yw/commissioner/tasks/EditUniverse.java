@@ -92,6 +92,8 @@ public class EditUniverse extends UniverseDefinitionTaskBase {
       LOG.error("Error executing task {} with error='{}'.", getName(), t.getMessage(), t);
       throw t;
     } finally {
+      // The nodes may have changed even if the edit failed.
+      closeMetricsConnection();
       // Mark the update of the universe as done. This will allow future edits/updates to the
       // universe to happen.
       unlockUniverseForUpdate(errorString);
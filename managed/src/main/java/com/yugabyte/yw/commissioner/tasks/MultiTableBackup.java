@@ -10,20 +10,37 @@
 
 package com.yugabyte.yw.commissioner.tasks;
 
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.typesafe.config.Config;
+import com.yugabyte.yw.commissioner.SubTaskGroup;
 import com.yugabyte.yw.commissioner.SubTaskGroupQueue;
 import com.yugabyte.yw.commissioner.UserTaskDetails;
+import com.yugabyte.yw.commissioner.tasks.subtasks.BackupTable;
+import com.yugabyte.yw.common.config.RuntimeConfigFactory;
 import com.yugabyte.yw.common.services.YBClientService;
 import com.yugabyte.yw.forms.BackupTableParams;
 import com.yugabyte.yw.forms.ITaskParams;
+import com.yugabyte.yw.metrics.MetricQueryHelper;
+import com.yugabyte.yw.metrics.MetricQueryResponse;
 import com.yugabyte.yw.models.Backup;
+import com.yugabyte.yw.models.TaskInfo;
 import com.yugabyte.yw.models.Universe;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.yb.Common.TableType;
 
@@ -37,6 +54,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import play.api.Play;
+import play.libs.Json;
 
 import static com.yugabyte.yw.common.Util.getUUIDRepresentation;
 
@@ -44,8 +62,27 @@ public class MultiTableBackup extends UniverseTaskBase {
 
   public static final Logger LOG = LoggerFactory.getLogger(MultiTableBackup.class);
 
+  static final String YB_BACKUP_MAX_PARALLEL_TABLES = "yb.backup.max_parallel_tables";
+  static final String YB_BACKUP_TSERVERS_PER_PARALLEL_TABLE =
+    "yb.backup.tservers_per_parallel_table";
+  static final String YB_BACKUP_SMALL_TABLE_SIZE = "yb.backup.small_table_size";
+
   public YBClientService ybService;
 
+  private MetricQueryHelper metricQueryHelper;
+
+  private RuntimeConfigFactory runtimeConfigFactory;
+
+  // Executor running the table backups, sized to the number of tables backed up in parallel.
+  private ExecutorService backupExecutor;
+
+  // Estimated size in bytes of each table, keyed by table UUID.
+  private Map<UUID, Long> tableSizes = new HashMap<>();
+
+  // Size and throughput of each backup that completed, reported in the task details.
+  private final ArrayNode backupStats = Json.newArray();
+  private final AtomicLong bytesBackedUp = new AtomicLong();
+
   public static class Params extends BackupTableParams {
     public UUID customerUUID;
     public List<UUID> tableUUIDList = new ArrayList<>();
@@ -59,6 +96,8 @@ public class MultiTableBackup extends UniverseTaskBase {
   public void initialize(ITaskParams params) {
     super.initialize(params);
     ybService = Play.current().injector().instanceOf(YBClientService.class);
+    metricQueryHelper = Play.current().injector().instanceOf(MetricQueryHelper.class);
+    runtimeConfigFactory = Play.current().injector().instanceOf(RuntimeConfigFactory.class);
   }
 
   @Override
@@ -66,6 +105,7 @@ public class MultiTableBackup extends UniverseTaskBase {
     List<BackupTableParams> backupParamsList = new ArrayList<>();
     BackupTableParams tableBackupParams = new BackupTableParams();
     Set<String> tablesToBackup = new HashSet<>();
+    long backupStartTimeMs = -1;
     try {
       checkUniverseVersion();
       subTaskGroupQueue = new SubTaskGroupQueue(userTaskUUID);
@@ -77,6 +117,7 @@ public class MultiTableBackup extends UniverseTaskBase {
       Universe universe = Universe.get(params().universeUUID);
       String masterAddresses = universe.getMasterAddresses(true);
       String certificate = universe.getCertificate();
+      tableSizes = queryTableSizes(universe);
 
       YBClient client = null;
       Set<UUID> tableSet = new HashSet<>(params().tableUUIDList);
@@ -204,9 +245,16 @@ public class MultiTableBackup extends UniverseTaskBase {
       subTaskGroupQueue = new SubTaskGroupQueue(userTaskUUID);
 
       LOG.info("Successfully started scheduled backup of tables.");
+      Config config = runtimeConfigFactory.forUniverse(universe);
+      int parallelism = backupParallelism(universe, config);
       if (params().keyspace == null && params().tableUUIDList.size() == 0) {
-        // Full universe backup, each table to be sequentially backed up
-        tableBackupParams.backupList = backupParamsList;
+        // Full universe backup, kept as a single backup whose list entries are backed up in
+        // parallel.
+        List<BackupTableParams> groupedParamsList =
+          groupSmallTables(backupParamsList, config.getBytes(YB_BACKUP_SMALL_TABLE_SIZE));
+        LOG.info("Backing up {} keyspaces/tables in {} backups, {} at a time.",
+          backupParamsList.size(), groupedParamsList.size(), parallelism);
+        tableBackupParams.backupList = groupedParamsList;
         tableBackupParams.storageConfigUUID = params().storageConfigUUID;
         tableBackupParams.actionType = BackupTableParams.ActionType.CREATE;
         tableBackupParams.storageConfigUUID = params().storageConfigUUID;
@@ -218,30 +266,35 @@ public class MultiTableBackup extends UniverseTaskBase {
         tableBackupParams.backupType = params().backupType;
         Backup backup = Backup.create(params().customerUUID, tableBackupParams);
 
-        for (BackupTableParams backupParams : backupParamsList) {
+        for (BackupTableParams backupParams : groupedParamsList) {
           createEncryptedUniverseKeyBackupTask(backupParams).setSubTaskGroupType(
             UserTaskDetails.SubTaskGroupType.CreatingTableBackup
           );
         }
-        createTableBackupTask(tableBackupParams, backup).setSubTaskGroupType(
-          UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
+        createBackupListTask(tableBackupParams, backup, parallelism)
+          .setSubTaskGroupType(UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
       } else if (params().keyspace != null && (params().backupType == TableType.PGSQL_TABLE_TYPE ||
         (params().backupType == TableType.YQL_TABLE_TYPE && params().transactionalBackup))) {
+        // A YSQL or transactional YCQL keyspace is backed up from a single snapshot, so there is
+        // nothing to run in parallel.
         Backup backup = Backup.create(params().customerUUID, tableBackupParams);
         createEncryptedUniverseKeyBackupTask(backup.getBackupInfo()).setSubTaskGroupType(
           UserTaskDetails.SubTaskGroupType.CreatingTableBackup
         );
-        createTableBackupTask(tableBackupParams, backup).setSubTaskGroupType(
-          UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
+        createTableBackupTask(tableBackupParams, backup, this::recordTableBackedUp)
+          .setSubTaskGroupType(UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
       } else {
-        for (BackupTableParams tableParams : backupParamsList) {
-          Backup backup = Backup.create(params().customerUUID, tableParams);
+        List<BackupTableParams> groupedParamsList =
+          groupSmallTables(backupParamsList, config.getBytes(YB_BACKUP_SMALL_TABLE_SIZE));
+        LOG.info("Backing up {} tables in {} backups, {} at a time.",
+          backupParamsList.size(), groupedParamsList.size(), parallelism);
+        for (BackupTableParams tableParams : groupedParamsList) {
           createEncryptedUniverseKeyBackupTask(tableParams).setSubTaskGroupType(
             UserTaskDetails.SubTaskGroupType.CreatingTableBackup
           );
-          createTableBackupTask(tableParams, backup).setSubTaskGroupType(
-            UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
         }
+        createParallelTableBackupTask(groupedParamsList, parallelism).setSubTaskGroupType(
+          UserTaskDetails.SubTaskGroupType.CreatingTableBackup);
       }
 
       // Marks the update of this universe as a success only if all the tasks before it succeeded.
@@ -252,6 +305,7 @@ public class MultiTableBackup extends UniverseTaskBase {
 
       unlockUniverseForUpdate();
 
+      backupStartTimeMs = System.currentTimeMillis();
       subTaskGroupQueue.run();
     } catch (Throwable t) {
       LOG.error("Error executing task {} with error='{}'.", getName(), t.getMessage(), t);
@@ -261,11 +315,187 @@ public class MultiTableBackup extends UniverseTaskBase {
       unlockUniverseForUpdate();
       throw t;
     } finally {
+      if (backupExecutor != null) {
+        backupExecutor.shutdownNow();
+      }
+      if (backupStartTimeMs >= 0) {
+        saveBackupStats(System.currentTimeMillis() - backupStartTimeMs);
+      }
       updateBackupState(false);
     }
     LOG.info("Finished {} task.", getName());
   }
 
+  /**
+   * Number of table backups to run at the same time. Each table backup uploads from all the
+   * tservers holding tablet leaders, so this scales with the number of tservers.
+   */
+  private int backupParallelism(Universe universe, Config config) {
+    int tserversPerTable = Math.max(1, config.getInt(YB_BACKUP_TSERVERS_PER_PARALLEL_TABLE));
+    int parallelism = universe.getTServers().size() / tserversPerTable;
+    return Math.max(1, Math.min(config.getInt(YB_BACKUP_MAX_PARALLEL_TABLES), parallelism));
+  }
+
+  /**
+   * Merges tables smaller than smallTableSize into multi-table backups of their keyspace, up to
+   * smallTableSize bytes each, so that small tables share one snapshot. Returns the backups
+   * largest first, so that the longest ones start early.
+   */
+  private List<BackupTableParams> groupSmallTables(List<BackupTableParams> paramsList,
+                                                   long smallTableSize) {
+    List<BackupTableParams> result = new ArrayList<>();
+    Map<String, BackupTableParams> openGroups = new HashMap<>();
+    for (BackupTableParams tableParams : paramsList) {
+      long size = estimateSize(tableParams);
+      if (tableParams.backupType != TableType.YQL_TABLE_TYPE || tableParams.tableUUID == null ||
+          size < 0 || size >= smallTableSize) {
+        result.add(tableParams);
+        continue;
+      }
+      BackupTableParams group = openGroups.get(tableParams.keyspace);
+      if (group == null) {
+        group = createBackupParams(tableParams.backupType, tableParams.keyspace);
+        openGroups.put(tableParams.keyspace, group);
+        result.add(group);
+      }
+      populateBackupParams(group, tableParams.backupType, tableParams.keyspace,
+        tableParams.tableName, tableParams.tableUUID);
+      if (estimateSize(group) >= smallTableSize) {
+        openGroups.remove(tableParams.keyspace);
+      }
+    }
+    // Backups of unknown size go first, as they may be the largest.
+    result.sort(Comparator.comparingLong((BackupTableParams tableParams) -> {
+      long size = estimateSize(tableParams);
+      return size < 0 ? Long.MAX_VALUE : size;
+    }).reversed());
+    return result;
+  }
+
+  /**
+   * Creates a single group holding the backups of all the given tables, which runs at most
+   * parallelism of them at a time.
+   */
+  private SubTaskGroup createParallelTableBackupTask(List<BackupTableParams> paramsList,
+                                                     int parallelism) {
+    backupExecutor = createBackupExecutor(parallelism);
+    SubTaskGroup subTaskGroup = new SubTaskGroup("BackupTable", backupExecutor, true);
+    for (BackupTableParams tableParams : paramsList) {
+      Backup backup = Backup.create(params().customerUUID, tableParams);
+      BackupTable task = new BackupTable(backup, this::recordTableBackedUp);
+      task.initialize(tableParams);
+      task.setUserTaskUUID(userTaskUUID);
+      subTaskGroup.addTask(task);
+    }
+    subTaskGroupQueue.add(subTaskGroup);
+    return subTaskGroup;
+  }
+
+  /**
+   * Creates the backup of the whole universe, which backs up at most parallelism of the entries
+   * of its backup list at a time.
+   */
+  private SubTaskGroup createBackupListTask(BackupTableParams tableParams, Backup backup,
+                                            int parallelism) {
+    backupExecutor = createBackupExecutor(parallelism);
+    SubTaskGroup subTaskGroup = new SubTaskGroup("BackupTable", executor, true);
+    BackupTable task = new BackupTable(backup, this::recordTableBackedUp, backupExecutor);
+    task.initialize(tableParams);
+    task.setUserTaskUUID(userTaskUUID);
+    subTaskGroup.addTask(task);
+    subTaskGroupQueue.add(subTaskGroup);
+    return subTaskGroup;
+  }
+
+  private ExecutorService createBackupExecutor(int parallelism) {
+    ThreadFactory namedThreadFactory =
+      new ThreadFactoryBuilder().setNameFormat("TaskPool-" + getName() + "-Backup-%d").build();
+    return Executors.newFixedThreadPool(parallelism, namedThreadFactory);
+  }
+
+  private void recordTableBackedUp(BackupTableParams tableParams, long durationMs) {
+    ObjectNode stats = Json.newObject();
+    stats.put("keyspace", tableParams.keyspace);
+    if (tableParams.tableNameList != null) {
+      stats.set("tables", Json.toJson(tableParams.tableNameList));
+    } else if (tableParams.tableName != null) {
+      stats.put("table", tableParams.tableName);
+    }
+    stats.put("durationMs", durationMs);
+    long size = estimateSize(tableParams);
+    if (size >= 0) {
+      stats.put("sizeBytes", size);
+      stats.put("bytesPerSec", size * 1000 / Math.max(1, durationMs));
+      bytesBackedUp.addAndGet(size);
+    }
+    LOG.info("Backed up {}:{} in {} ms, {} bytes.", tableParams.keyspace,
+      tableParams.tableNameList != null ? tableParams.tableNameList : tableParams.tableName,
+      durationMs, size);
+    synchronized (backupStats) {
+      backupStats.add(stats);
+    }
+  }
+
+  private void saveBackupStats(long durationMs) {
+    ObjectNode stats = Json.newObject();
+    stats.put("durationMs", durationMs);
+    stats.put("sizeBytes", bytesBackedUp.get());
+    stats.put("bytesPerSec", bytesBackedUp.get() * 1000 / Math.max(1, durationMs));
+    synchronized (backupStats) {
+      stats.set("tables", backupStats.deepCopy());
+    }
+    TaskInfo userTaskInfo = TaskInfo.get(userTaskUUID);
+    if (userTaskInfo == null) {
+      return;
+    }
+    ObjectNode details = userTaskInfo.getTaskDetails().deepCopy();
+    details.set("backupStats", stats);
+    userTaskInfo.setTaskDetails(details);
+    userTaskInfo.save();
+  }
+
+  // Sum of the sizes of the tables in the backup, -1 if any is unknown.
+  private long estimateSize(BackupTableParams tableParams) {
+    List<UUID> tableUUIDs = tableParams.tableUUIDList;
+    if (tableUUIDs == null) {
+      tableUUIDs = tableParams.tableUUID == null ? Collections.emptyList() :
+        Collections.singletonList(tableParams.tableUUID);
+    }
+    if (tableUUIDs.isEmpty()) {
+      return -1;
+    }
+    long size = 0;
+    for (UUID tableUUID : tableUUIDs) {
+      Long tableSize = tableSizes.get(tableUUID);
+      if (tableSize == null) {
+        return -1;
+      }
+      size += tableSize;
+    }
+    return size;
+  }
+
+  private Map<UUID, Long> queryTableSizes(Universe universe) {
+    Map<UUID, Long> result = new HashMap<>();
+    try {
+      List<MetricQueryResponse.Entry> values = metricQueryHelper.queryDirect(
+        "sum by (table_id) (rocksdb_total_sst_file_size{node_prefix=\"" +
+          universe.getUniverseDetails().nodePrefix + "\"})");
+      for (MetricQueryResponse.Entry entry : values) {
+        String tableID = entry.labels.get("table_id");
+        if (tableID == null || tableID.isEmpty() ||
+            entry.values == null || entry.values.size() == 0) {
+          continue;
+        }
+        result.put(getUUIDRepresentation(tableID), entry.values.get(0).getRight().longValue());
+      }
+    } catch (Exception e) {
+      LOG.warn("Error querying table sizes for universe {}, backing up tables one by one.",
+        universe.universeUUID, e);
+    }
+    return result;
+  }
+
   // Helper method to update passed in reference object
   private void populateBackupParams(BackupTableParams backupParams,
                                     TableType backupType,
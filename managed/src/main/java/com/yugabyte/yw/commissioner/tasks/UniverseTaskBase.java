@@ -7,6 +7,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.BiConsumer;
 
 import com.yugabyte.yw.commissioner.tasks.subtasks.*;
 import com.yugabyte.yw.common.*;
@@ -31,6 +32,7 @@ import com.yugabyte.yw.commissioner.tasks.params.NodeTaskParams;
 import com.yugabyte.yw.commissioner.tasks.subtasks.nodes.UpdateNodeProcess;
 
 import com.yugabyte.yw.common.services.YBClientService;
+import com.yugabyte.yw.metrics.YBMetricQueryComponent;
 import com.yugabyte.yw.forms.UniverseTaskParams.EncryptionAtRestConfig.OpType;
 import com.yugabyte.yw.forms.UniverseDefinitionTaskParams.Cluster;
 import com.yugabyte.yw.models.Universe.UniverseUpdater;
@@ -298,6 +300,16 @@ public abstract class UniverseTaskBase extends AbstractTaskBase {
     LOG.trace("Unlocked universe {} for updates.", taskParams().universeUUID);
   }
 
+  /**
+   * Closes the cached connection used to query the native metrics of the universe, once its nodes
+   * changed or are gone.
+   */
+  public void closeMetricsConnection() {
+    YBMetricQueryComponent metricQueryComponent =
+      Play.current().injector().instanceOf(YBMetricQueryComponent.class);
+    metricQueryComponent.closeConnection(taskParams().universeUUID);
+  }
+
   /**
    * Create a task to mark the change on a universe as success.
    */
@@ -984,6 +996,12 @@ public abstract class UniverseTaskBase extends AbstractTaskBase {
   }
 
   public SubTaskGroup createTableBackupTask(BackupTableParams taskParams, Backup backup) {
+    return createTableBackupTask(taskParams, backup, null);
+  }
+
+  public SubTaskGroup createTableBackupTask(
+      BackupTableParams taskParams, Backup backup,
+      BiConsumer<BackupTableParams, Long> onTableBackedUp) {
     SubTaskGroup subTaskGroup;
     if (backup == null) {
       subTaskGroup = new SubTaskGroup("BackupTable", executor);
@@ -991,7 +1009,7 @@ public abstract class UniverseTaskBase extends AbstractTaskBase {
       subTaskGroup = new SubTaskGroup("BackupTable", executor, true);
     }
 
-    BackupTable task = new BackupTable(backup);
+    BackupTable task = new BackupTable(backup, onTableBackedUp);
     task.initialize(taskParams);
     task.setUserTaskUUID(userTaskUUID);
     subTaskGroup.addTask(task);
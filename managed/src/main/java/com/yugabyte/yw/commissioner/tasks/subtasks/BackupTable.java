@@ -22,15 +22,38 @@ import com.yugabyte.yw.models.Universe;
 import play.api.Play;
 import play.libs.Json;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 
 public class BackupTable extends AbstractTaskBase {
 
   Backup backup;
 
+  // Called with the params and the time taken in milliseconds of each successful table backup.
+  private final BiConsumer<BackupTableParams, Long> onTableBackedUp;
+
+  // Runs the backups of the backup list, one after another if null.
+  private final ExecutorService backupListExecutor;
+
   public BackupTable(Backup backup) {
+    this(backup, null);
+  }
+
+  public BackupTable(Backup backup, BiConsumer<BackupTableParams, Long> onTableBackedUp) {
+    this(backup, onTableBackedUp, null);
+  }
+
+  public BackupTable(Backup backup, BiConsumer<BackupTableParams, Long> onTableBackedUp,
+                     ExecutorService backupListExecutor) {
     this.backup = backup;
+    this.onTableBackedUp = onTableBackedUp;
+    this.backupListExecutor = backupListExecutor;
   }
 
   @Override
@@ -57,20 +80,28 @@ public class BackupTable extends AbstractTaskBase {
       Map<String, String> config = universe.getConfig();
       if (config.isEmpty() || config.getOrDefault(Universe.TAKE_BACKUPS, "true").equals("true")) {
         if (taskParams().backupList != null) {
-          for (BackupTableParams backupParams : taskParams().backupList) {
-            ShellResponse response = tableManager.createBackup(backupParams);
-            JsonNode jsonNode = Json.parse(response.message);
-            if (response.code != 0 || jsonNode.has("error")) {
-              LOG.error("Response code={}, hasError={}.", response.code, jsonNode.has("error"));
-
-              throw new RuntimeException(response.message);
-            } else {
-              LOG.info("[" + getName() + "] STDOUT: " + response.message);
+          if (backupListExecutor == null) {
+            for (BackupTableParams backupParams : taskParams().backupList) {
+              createBackup(backupParams);
+            }
+          } else {
+            List<Future<?>> futures = new ArrayList<>();
+            for (BackupTableParams backupParams : taskParams().backupList) {
+              futures.add(backupListExecutor.submit(() -> createBackup(backupParams)));
+            }
+            try {
+              for (Future<?> future : futures) {
+                future.get();
+              }
+            } catch (ExecutionException e) {
+              futures.forEach(future -> future.cancel(true));
+              throw new RuntimeException(e.getCause().getMessage(), e.getCause());
             }
           }
 
           backup.transitionState(Backup.BackupState.Completed);
         } else {
+          long startTimeMs = System.currentTimeMillis();
           ShellResponse response = tableManager.createBackup(taskParams());
           JsonNode jsonNode = Json.parse(response.message);
           if (response.code != 0 || jsonNode.has("error")) {
@@ -79,6 +110,7 @@ public class BackupTable extends AbstractTaskBase {
             throw new RuntimeException(response.message);
           } else {
             LOG.info("[" + getName() + "] STDOUT: " + response.message);
+            reportBackedUp(taskParams(), startTimeMs);
             backup.transitionState(Backup.BackupState.Completed);
           }
         }
@@ -92,4 +124,24 @@ public class BackupTable extends AbstractTaskBase {
       throw new RuntimeException(e);
     }
   }
+
+  private void createBackup(BackupTableParams backupParams) {
+    long startTimeMs = System.currentTimeMillis();
+    ShellResponse response = tableManager.createBackup(backupParams);
+    JsonNode jsonNode = Json.parse(response.message);
+    if (response.code != 0 || jsonNode.has("error")) {
+      LOG.error("Response code={}, hasError={}.", response.code, jsonNode.has("error"));
+
+      throw new RuntimeException(response.message);
+    } else {
+      LOG.info("[" + getName() + "] STDOUT: " + response.message);
+      reportBackedUp(backupParams, startTimeMs);
+    }
+  }
+
+  private void reportBackedUp(BackupTableParams backupParams, long startTimeMs) {
+    if (onTableBackedUp != null) {
+      onTableBackedUp.accept(backupParams, System.currentTimeMillis() - startTimeMs);
+    }
+  }
 }
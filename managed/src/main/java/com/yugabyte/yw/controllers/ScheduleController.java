@@ -3,10 +3,12 @@
 package com.yugabyte.yw.controllers;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.inject.Inject;
 import com.yugabyte.yw.common.ApiResponse;
 import com.yugabyte.yw.models.Audit;
 import com.yugabyte.yw.models.Customer;
 import com.yugabyte.yw.models.Schedule;
+import com.yugabyte.yw.scheduler.Scheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import play.libs.Json;
@@ -18,6 +20,9 @@ import java.util.UUID;
 public class ScheduleController extends AuthenticatedController {
   public static final Logger LOG = LoggerFactory.getLogger(ScheduleController.class);
 
+  @Inject
+  Scheduler scheduler;
+
   public Result list(UUID customerUUID) {
     Customer customer = Customer.get(customerUUID);
     if (customer == null) {
@@ -43,6 +48,7 @@ public class ScheduleController extends AuthenticatedController {
 
     try {
       schedule.stopSchedule();
+      scheduler.scheduleUpdated(schedule);
     } catch (Exception e) {
       return ApiResponse.error(INTERNAL_SERVER_ERROR, "Unable to delete Schedule UUID: " + scheduleUUID);
     }
@@ -21,6 +21,7 @@ import com.yugabyte.yw.models.*;
 import com.yugabyte.yw.models.helpers.ColumnDetails;
 import com.yugabyte.yw.models.helpers.TableDetails;
 import com.yugabyte.yw.models.helpers.TaskType;
+import com.yugabyte.yw.scheduler.Scheduler;
 import com.yugabyte.yw.metrics.MetricQueryHelper;
 import com.yugabyte.yw.metrics.MetricQueryResponse;
 
@@ -63,6 +64,9 @@ public class TablesController extends AuthenticatedController {
   @Inject
   Commissioner commissioner;
 
+  @Inject
+  Scheduler scheduler;
+
   // The YB client to use.
   public YBClientService ybService;
 
@@ -364,6 +368,7 @@ public class TablesController extends AuthenticatedController {
           TaskType.MultiTableBackup, taskParams.schedulingFrequency,
           taskParams.cronExpression);
       UUID scheduleUUID = schedule.getScheduleUUID();
+      scheduler.scheduleUpdated(schedule);
       LOG.info("Submitted universe backup to be scheduled {}, schedule uuid = {}.",
           universeUUID, scheduleUUID);
       resultNode.put("scheduleUUID", scheduleUUID.toString());
@@ -430,6 +435,7 @@ public class TablesController extends AuthenticatedController {
           TaskType.BackupUniverse, taskParams.schedulingFrequency,
           taskParams.cronExpression);
       UUID scheduleUUID = schedule.getScheduleUUID();
+      scheduler.scheduleUpdated(schedule);
       LOG.info("Submitted backup to be scheduled {}:{}, schedule uuid = {}.",
           tableUUID, taskParams.tableName, scheduleUUID);
       resultNode.put("scheduleUUID", scheduleUUID.toString());
@@ -9,6 +9,7 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.inject.Inject;
 import com.yugabyte.yw.cloud.PublicCloudConstants;
 import com.yugabyte.yw.cloud.UniverseResourceDetails;
@@ -59,6 +60,14 @@ import static com.yugabyte.yw.forms.UniverseTaskParams.EncryptionAtRestConfig.Op
 public class UniverseController extends AuthenticatedController {
   public static final Logger LOG = LoggerFactory.getLogger(UniverseController.class);
 
+  // Fields that can be selected with the "fields" query parameter of the universe list API.
+  private static final Set<String> UNIVERSE_LIST_FIELDS = ImmutableSet.of("universeUUID", "name",
+    "creationDate", "version", "dnsName", "pricePerHour", "resources", "universeDetails",
+    "universeConfig");
+
+  // Upper bound on the "limit" query parameter of the universe list API.
+  private static final int MAX_UNIVERSE_LIST_LIMIT = 1000;
+
   @Inject
   FormFactory formFactory;
 
@@ -913,6 +922,12 @@ public class UniverseController extends AuthenticatedController {
   /**
    * List the universes for a given customer.
    *
+   * Supports the following optional query parameters:
+   *   - fields: comma separated list of fields to include for each universe (see
+   *             UNIVERSE_LIST_FIELDS). When not set, the full universe json is returned.
+   *   - offset, limit: return only a page of the universes, ordered by creation date and name.
+   *             The total number of universes is returned in the X-Total-Count header.
+   *
    * @return
    */
   public Result list(UUID customerUUID) {
@@ -921,20 +936,120 @@ public class UniverseController extends AuthenticatedController {
     if (customer == null) {
       return ApiResponse.error(BAD_REQUEST, "Invalid Customer UUID: " + customerUUID);
     }
+
+    Set<String> fields = null;
+    String fieldsParam = request().getQueryString("fields");
+    if (fieldsParam != null) {
+      fields = Arrays.stream(fieldsParam.split(","))
+        .map(String::trim)
+        .filter(f -> !f.isEmpty())
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+      Set<String> unknownFields = new HashSet<>(fields);
+      unknownFields.removeAll(UNIVERSE_LIST_FIELDS);
+      if (fields.isEmpty() || !unknownFields.isEmpty()) {
+        return ApiResponse.error(BAD_REQUEST, "Invalid fields " + unknownFields +
+          ", supported fields are " + UNIVERSE_LIST_FIELDS);
+      }
+    }
+
+    String offsetParam = request().getQueryString("offset");
+    String limitParam = request().getQueryString("limit");
+    boolean paginated = offsetParam != null || limitParam != null;
+    int offset = 0;
+    int limit = MAX_UNIVERSE_LIST_LIMIT;
+    try {
+      if (offsetParam != null) {
+        offset = Integer.parseInt(offsetParam);
+      }
+      if (limitParam != null) {
+        limit = Integer.parseInt(limitParam);
+      }
+    } catch (NumberFormatException e) {
+      return ApiResponse.error(BAD_REQUEST, "Invalid offset or limit: " + e.getMessage());
+    }
+    if (offset < 0 || limit <= 0 || limit > MAX_UNIVERSE_LIST_LIMIT) {
+      return ApiResponse.error(BAD_REQUEST, String.format(
+        "Offset should be non-negative and limit should be between 1 and %d",
+        MAX_UNIVERSE_LIST_LIMIT));
+    }
+
+    Set<UUID> universeUUIDs = customer.getUniverseUUIDs();
+    Collection<Universe> universeList = paginated
+      ? Universe.getPage(universeUUIDs, offset, limit)
+      : customer.getUniverses();
+
+    // Share the price and instance type lookups across all the universes of this customer.
+    UniverseResourceDetails.Context context = new UniverseResourceDetails.Context();
     ArrayNode universes = Json.newArray();
-    // TODO: Restrict the list api json payload, possibly to only include UUID, Name etc
-    for (Universe universe : customer.getUniverses()) {
-      ObjectNode universePayload = (ObjectNode) universe.toJson();
+    for (Universe universe : universeList) {
+      UniverseResourceDetails details = null;
       try {
-        UniverseResourceDetails details = UniverseResourceDetails.create(universe.getNodes(),
-          universe.getUniverseDetails());
-        universePayload.put("pricePerHour", details.pricePerHour);
+        details = UniverseResourceDetails.create(universe, context);
       } catch (Exception e) {
         LOG.error("Unable to fetch cost for universe {}.", universe.universeUUID);
       }
-      universes.add(universePayload);
+      if (fields == null) {
+        ObjectNode universePayload = (ObjectNode) universe.toJson();
+        if (details != null) {
+          universePayload.put("pricePerHour", details.pricePerHour);
+        }
+        universes.add(universePayload);
+      } else {
+        universes.add(projectUniverse(universe, details, fields));
+      }
+    }
+    Result result = ApiResponse.success(universes);
+    if (paginated) {
+      result = result.withHeader("X-Total-Count", String.valueOf(universeUUIDs.size()));
+    }
+    return result;
+  }
+
+  /**
+   * Builds the json of a universe restricted to the given fields. Only the fields that need the
+   * full universe json (e.g. universeDetails) pay for its serialization.
+   */
+  private static ObjectNode projectUniverse(Universe universe, UniverseResourceDetails details,
+                                            Set<String> fields) {
+    ObjectNode json = Json.newObject();
+    JsonNode fullJson = null;
+    for (String field : fields) {
+      switch (field) {
+        case "universeUUID":
+          json.put(field, universe.universeUUID.toString());
+          break;
+        case "name":
+          json.put(field, universe.name);
+          break;
+        case "creationDate":
+          json.put(field, universe.creationDate.getTime());
+          break;
+        case "version":
+          json.put(field, universe.version);
+          break;
+        case "dnsName":
+          json.put(field, universe.getDnsName());
+          break;
+        case "pricePerHour":
+          if (details != null) {
+            json.put(field, details.pricePerHour);
+          }
+          break;
+        case "resources":
+          json.set(field, details == null ? null : Json.toJson(details));
+          break;
+        case "universeConfig":
+          json.set(field, universe.config);
+          break;
+        default:
+          if (fullJson == null) {
+            fullJson = universe.toJson();
+          }
+          json.set(field, fullJson.get(field));
+          break;
+      }
     }
-    return ApiResponse.success(universes);
+    return json;
   }
 
   /**
@@ -1384,8 +1499,7 @@ public class UniverseController extends AuthenticatedController {
     Customer customer = Customer.get(customerUUID);
 
     try {
-      return ApiResponse.success(Json.toJson(UniverseResourceDetails.create(universe.getNodes(),
-        universe.getUniverseDetails())));
+      return ApiResponse.success(Json.toJson(UniverseResourceDetails.create(universe)));
     } catch (Exception e) {
       return ApiResponse.error(INTERNAL_SERVER_ERROR,
         "Error getting cost for customer " + customerUUID);
@@ -1405,10 +1519,10 @@ public class UniverseController extends AuthenticatedController {
       return ApiResponse.error(BAD_REQUEST,
         "No universe found for customer with ID: " + customerUUID);
     }
+    UniverseResourceDetails.Context context = new UniverseResourceDetails.Context();
     for (Universe universe : universeSet) {
       try {
-        response.add(Json.toJson(UniverseResourceDetails.create(universe.getNodes(),
-          universe.getUniverseDetails())));
+        response.add(Json.toJson(UniverseResourceDetails.create(universe, context)));
       } catch (Exception e) {
         LOG.error("Could not add cost details for Universe with UUID: " + universe.universeUUID);
       }
@@ -2,8 +2,13 @@
 package com.yugabyte.yw.metrics;
 
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.HostDistance;
 import com.datastax.driver.core.JdkSSLOptions;
+import com.datastax.driver.core.PoolingOptions;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.QueryOptions;
 import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.SSLOptions;
@@ -44,6 +49,9 @@ import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
@@ -61,6 +69,7 @@ import org.yb.client.YBClient;
 import org.yb.util.ServerInfo;
 
 import play.Configuration;
+import play.inject.ApplicationLifecycle;
 import play.libs.Json;
 
 @Singleton
@@ -106,8 +115,18 @@ public class YBMetricQueryComponent {
                                                 "\"result\":%s}}";
 
   private static final String METRICS_TABLE = "system.metrics";
-  private static final String QUERY_FORMAT = "select * from %s where metric = '%s' " +
-                                             "and node = '%s' and ts >= %d and ts < %d";
+  private static final String QUERY_FORMAT = "select * from %s where metric = ? " +
+                                             "and node = ? and ts >= ? and ts < ?";
+
+  // Number of rows fetched per page when reading metrics, rows are consumed page by page.
+  private static final int METRICS_FETCH_SIZE = 1000;
+
+  // Max number of connections per host in the pool of the cached metrics session.
+  private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+  // How long the tserver name/uuid/ip mappings of a universe are reused before being refetched
+  // from the master.
+  private static final long TSERVER_MAPPINGS_TTL_MS = TimeUnit.MINUTES.toMillis(1);
 
   // Array of metrics whose values should be retrieved from details column instead of value column.
   private static final List<String> METRICS_WITH_DETAILS_VALUE = Arrays.asList(
@@ -135,26 +154,115 @@ public class YBMetricQueryComponent {
     Average
   }
 
-  private class CassandraConnection {
+  // Cached CQL connections used to query native metrics, one per universe.
+  private final Map<UUID, CassandraConnection> connections = new ConcurrentHashMap<>();
+
+  // Cached tserver mappings, one per universe.
+  private final Map<UUID, TServerMappings> tserverMappings = new ConcurrentHashMap<>();
+
+  static class CassandraConnection {
     Cluster cluster = null;
     Session session = null;
+    PreparedStatement selectMetric = null;
+    // The contact points and certificate the connection was created with, so that the connection
+    // is recreated when the universe nodes change.
+    String connectionKey = null;
+
+    void close() {
+      if (session != null) session.close();
+      if (cluster != null) cluster.close();
+    }
+  }
+
+  @Inject
+  void registerStopHook(ApplicationLifecycle lifecycle) {
+    lifecycle.addStopHook(() -> {
+      closeConnections();
+      return CompletableFuture.completedFuture(null);
+    });
+  }
+
+  /**
+   * Closes all the cached CQL connections.
+   */
+  public void closeConnections() {
+    for (UUID universeUUID : connections.keySet()) {
+      closeConnection(universeUUID);
+    }
+  }
+
+  /**
+   * Closes the cached CQL connection of a universe, if any.
+   */
+  public void closeConnection(UUID universeUUID) {
+    CassandraConnection cc = connections.remove(universeUUID);
+    if (cc != null) {
+      cc.close();
+    }
+    tserverMappings.remove(universeUUID);
+  }
+
+  private CassandraConnection getCassandraConnection(Universe universe) {
+    return getCassandraConnection(universe.universeUUID,
+                                  Util.getNodesAsInet(universe.universeUUID),
+                                  universe.getCertificate());
+  }
+
+  /**
+   * Returns the cached connection of a universe, creating it if there is none, or if the one
+   * cached was created for other contact points or another certificate, or was closed.
+   */
+  CassandraConnection getCassandraConnection(UUID universeUUID,
+                                             List<InetSocketAddress> addresses,
+                                             String certificate) {
+    String connectionKey = addresses.toString() + ":" + certificate;
+    CassandraConnection cc = connections.get(universeUUID);
+    if (cc != null && connectionKey.equals(cc.connectionKey) && !cc.session.isClosed()) {
+      return cc;
+    }
+    synchronized (this) {
+      cc = connections.get(universeUUID);
+      if (cc != null && connectionKey.equals(cc.connectionKey) && !cc.session.isClosed()) {
+        return cc;
+      }
+      if (cc != null) {
+        connections.remove(universeUUID);
+        cc.close();
+      }
+      cc = createCassandraConnection(addresses, certificate);
+      if (cc.session != null) {
+        cc.connectionKey = connectionKey;
+        connections.put(universeUUID, cc);
+      }
+      return cc;
+    }
   }
 
-  private CassandraConnection createCassandraConnection(UUID universeUUID) {
+  CassandraConnection createCassandraConnection(List<InetSocketAddress> addresses,
+                                                String certificate) {
     CassandraConnection cc = new CassandraConnection();
-    List<InetSocketAddress> addresses = Util.getNodesAsInet(universeUUID);
     if (addresses.isEmpty()) {
       return cc;
     }
+    PoolingOptions poolingOptions = new PoolingOptions()
+      .setConnectionsPerHost(HostDistance.LOCAL, 1, MAX_CONNECTIONS_PER_HOST)
+      .setConnectionsPerHost(HostDistance.REMOTE, 1, MAX_CONNECTIONS_PER_HOST);
     Cluster.Builder builder = Cluster.builder()
-                              .addContactPointsWithPorts(addresses);
-    String certificate = Universe.get(universeUUID).getCertificate();
+                              .addContactPointsWithPorts(addresses)
+                              .withPoolingOptions(poolingOptions)
+                              .withQueryOptions(
+                                new QueryOptions().setFetchSize(METRICS_FETCH_SIZE));
     if (certificate != null) {
       builder.withSSL(SslHelper.getSSLOptions(certificate));
     }
     cc.cluster = builder.build();
-
-    cc.session = cc.cluster.connect();
+    try {
+      cc.session = cc.cluster.connect();
+      cc.selectMetric = cc.session.prepare(String.format(QUERY_FORMAT, METRICS_TABLE));
+    } catch (Exception e) {
+      cc.close();
+      throw e;
+    }
     return cc;
   }
 
@@ -169,6 +277,9 @@ public class YBMetricQueryComponent {
   class TServerMappings {
     public Map<String, String> nameToUUID;
     public Map<String, String> uuidToIP;
+    // Version of the universe and time at which the mappings were fetched.
+    int universeVersion;
+    long fetchTimeMs;
 
     public TServerMappings(Map<String, String> nameToUUID,
                            Map<String, String> uuidToIP) {
@@ -178,6 +289,21 @@ public class YBMetricQueryComponent {
   };
 
   private TServerMappings getTservers(Universe universe) {
+    TServerMappings cached = tserverMappings.get(universe.universeUUID);
+    if (cached != null && cached.universeVersion == universe.version &&
+        System.currentTimeMillis() - cached.fetchTimeMs < TSERVER_MAPPINGS_TTL_MS) {
+      return cached;
+    }
+    TServerMappings mappings = fetchTservers(universe);
+    if (!mappings.nameToUUID.isEmpty()) {
+      mappings.universeVersion = universe.version;
+      mappings.fetchTimeMs = System.currentTimeMillis();
+      tserverMappings.put(universe.universeUUID, mappings);
+    }
+    return mappings;
+  }
+
+  private TServerMappings fetchTservers(Universe universe) {
     YBClient client = null;
     Map<String, String> nameToUUID = new HashMap<>();
     Map<String, String> uuidToIP = new HashMap<>();
@@ -208,15 +334,13 @@ public class YBMetricQueryComponent {
     return new TServerMappings(nameToUUID, uuidToIP);
   }
 
-  private ResultSet cassandraTserverSelectQuery(String metric, String tserverUUID,
-                                                Session session, Universe universe,
-                                                long startMs, long endMs) {
-    int count = 0;
-    ResultSet rs = null;
-    String queryString = String.format(QUERY_FORMAT, METRICS_TABLE, metric,
-                                       tserverUUID.toString(), (startMs * 1000),
-                                       (endMs * 1000));
-    return session.execute(queryString);
+  // The start and end of the time range are in seconds since the epoch.
+  ResultSetFuture cassandraTserverSelectQuery(String metric, String tserverUUID,
+                                              CassandraConnection cc,
+                                              long startSecs, long endSecs) {
+    return cc.session.executeAsync(cc.selectMetric.bind(metric, tserverUUID,
+                                                        new Date(startSecs * 1000),
+                                                        new Date(endSecs * 1000)));
   }
 
   // Convert the map to the required output format.
@@ -330,30 +454,29 @@ public class YBMetricQueryComponent {
     return timeRangeMap;
   }
 
-  private List<ResultSet> queryRunner(String metricName, Session session,
+  private List<ResultSet> queryRunner(String metricName, CassandraConnection cc,
                                       Map<String, String> tserverMap,
-                                      JsonNode params, Universe universe,
-                                      long start, long end) {
-    List<ResultSet> results = new ArrayList<>();
+                                      JsonNode params, long start, long end) {
+    // Issue the queries of all the tservers in parallel. The rows of each result set are then
+    // fetched page by page while they are being consumed.
+    List<ResultSetFuture> futures = new ArrayList<>();
     // Check if metric needs to be reported for only a single tserver.
     if (params.has("exported_instance")) {
       String tserverName = params.path("exported_instance").asText();
-      ResultSet rs = cassandraTserverSelectQuery(metricName,
-                                                 tserverMap.get(tserverName),
-                                                 session, universe,
-                                                 start, end);
-      if (rs != null && rs.iterator().hasNext()) {
-        results.add(rs);
+      String tserverUUID = tserverMap.get(tserverName);
+      if (tserverUUID != null) {
+        futures.add(cassandraTserverSelectQuery(metricName, tserverUUID, cc, start, end));
       }
     } else {
-      // TODO: Maybe query for all tservers and split here rather than make more
-      // database calls.
       for (Entry<String, String> entry : tserverMap.entrySet()) {
-        ResultSet rs = cassandraTserverSelectQuery(metricName, entry.getValue(),
-                                                   session, universe, start, end);
-        if (rs != null && rs.iterator().hasNext()) {
-          results.add(rs);
-        }
+        futures.add(cassandraTserverSelectQuery(metricName, entry.getValue(), cc, start, end));
+      }
+    }
+    List<ResultSet> results = new ArrayList<>();
+    for (ResultSetFuture future : futures) {
+      ResultSet rs = future.getUninterruptibly();
+      if (rs != null && !rs.isExhausted()) {
+        results.add(rs);
       }
     }
     return results;
@@ -411,7 +534,7 @@ public class YBMetricQueryComponent {
 
       switch (queryKey) {
         case "total_rpcs_per_sec":
-          cc = createCassandraConnection(universe.universeUUID);
+          cc = getCassandraConnection(universe);
           if (cc.session == null) {
             return responseJson;
           }
@@ -419,10 +542,9 @@ public class YBMetricQueryComponent {
             String metricName = String.format(COUNT_METRIC_STRING, method);
             List<ResultSet> results = queryRunner(
               metricName,
-              cc.session,
+              cc,
               tserverMaps.nameToUUID,
               params,
-              universe,
               startTime,
               endTime
             );
@@ -432,7 +554,7 @@ public class YBMetricQueryComponent {
           }
           break;
         case "tserver_ops_latency":
-          cc = createCassandraConnection(universe.universeUUID);
+          cc = getCassandraConnection(universe);
           if (cc.session == null) {
             return responseJson;
           }
@@ -441,19 +563,17 @@ public class YBMetricQueryComponent {
             String metricSum = String.format(SUM_METRIC_STRING, method);
             List<ResultSet> resultCount = queryRunner(
               metricCount,
-              cc.session,
+              cc,
               tserverMaps.nameToUUID,
               params,
-              universe,
               startTime,
               endTime
             );
             List<ResultSet> resultSum = queryRunner(
               metricSum,
-              cc.session,
+              cc,
               tserverMaps.nameToUUID,
               params,
-              universe,
               startTime,
               endTime
             );
@@ -466,25 +586,23 @@ public class YBMetricQueryComponent {
           }
           break;
         case "disk_usage":
-          cc = createCassandraConnection(universe.universeUUID);
+          cc = getCassandraConnection(universe);
           if (cc.session == null) {
             return responseJson;
           }
           List<ResultSet> totalDiskRaw = queryRunner(
             TOTAL_DISK_STRING,
-            cc.session,
+            cc,
             tserverMaps.nameToUUID,
             params,
-            universe,
             startTime,
             endTime
           );
           List<ResultSet> freeDiskRaw = queryRunner(
             FREE_DISK_STRING,
-            cc.session,
+            cc,
             tserverMaps.nameToUUID,
             params,
-            universe,
             startTime,
             endTime
           );
@@ -494,25 +612,23 @@ public class YBMetricQueryComponent {
           insertMetrics(metricResults, freeDiskMetrics, "free");
           break;
         case "cpu_usage":
-          cc = createCassandraConnection(universe.universeUUID);
+          cc = getCassandraConnection(universe);
           if (cc.session == null) {
             return responseJson;
           }
           List<ResultSet> userCpuRaw = queryRunner(
             CPU_USAGE_USER_STRING,
-            cc.session,
+            cc,
             tserverMaps.nameToUUID,
             params,
-            universe,
             startTime,
             endTime
           );
           List<ResultSet> systemCpuRaw = queryRunner(
             CPU_USAGE_SYSTEM_STRING,
-            cc.session,
+            cc,
             tserverMaps.nameToUUID,
             params,
-            universe,
             startTime,
             endTime
           );
@@ -522,16 +638,15 @@ public class YBMetricQueryComponent {
           insertMetrics(metricResults, systemCpuMetrics, "system");
           break;
         case "node_up":
-          cc = createCassandraConnection(universe.universeUUID);
+          cc = getCassandraConnection(universe);
           if (cc.session == null) {
             return responseJson;
           }
           List<ResultSet> results = queryRunner(
             "node_up",
-            cc.session,
+            cc,
             tserverMaps.nameToUUID,
             params,
-            universe,
             startTime,
             endTime
           );
@@ -575,10 +690,6 @@ public class YBMetricQueryComponent {
         default:
           LOG.warn("Query: " + queryKey + " not supported.");
       }
-      if (cc != null) {
-        if (cc.session != null) cc.session.close();
-        if (cc.cluster != null) cc.cluster.close();
-      }
       if (!metricResults.isEmpty()) {
         String returnJson = String.format(RESPONSE_FORMAT, metricResults);
         responseJson = Util.convertStringToJson(returnJson);
@@ -98,6 +98,11 @@ public class Backup extends Model {
       params.storageLocation = String.format("univ-%s/backup-%s-%d/multi-table-%s",
         params.universeUUID, tsFormat.format(new Date()), abs(backupUUID.hashCode()),
         params.keyspace);
+      // A universe backup may hold several groups of tables of the same keyspace.
+      if (!params.tableUUIDList.isEmpty()) {
+        params.storageLocation = String.format("%s-%d",
+          params.storageLocation, abs(params.tableUUIDList.hashCode()));
+      }
     } else if (params.tableName == null && params.keyspace != null) {
       params.storageLocation = String.format("univ-%s/backup-%s-%d/keyspace-%s",
         params.universeUUID, tsFormat.format(new Date()), abs(backupUUID.hashCode()),
@@ -195,8 +200,9 @@ public class Backup extends Model {
     // Get current timestamp.
     Date now = new Date();
     List<Backup> expiredBackups = Backup.find.query().where()
-      .lt("expiry", now)
       .eq("state", BackupState.Completed)
+      .lt("expiry", now)
+      .orderBy("expiry asc")
       .findList();
 
     Map<UUID, List<Backup>> expiredBackupsByCustomerUUID = new HashMap<>();
@@ -19,7 +19,10 @@ import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -352,6 +355,99 @@ public class CustomerTask extends Model {
     return 2 + subTasks.size();
   }
 
+  /**
+   * Result of deleting one batch of completed customer tasks.
+   */
+  public static class PurgeResult {
+    // Number of customer tasks looked at by the batch.
+    public final int numScanned;
+    // Id of the last customer task looked at, -1 if none were.
+    public final long lastId;
+    // Number of customer_task rows deleted.
+    public final int numCustomerTasks;
+    // Number of task_info rows (root tasks and subtasks) deleted.
+    public final int numTaskInfos;
+
+    public PurgeResult(int numScanned, long lastId, int numCustomerTasks, int numTaskInfos) {
+      this.numScanned = numScanned;
+      this.lastId = lastId;
+      this.numCustomerTasks = numCustomerTasks;
+      this.numTaskInfos = numTaskInfos;
+    }
+  }
+
+  /**
+   * Batched version of cascadeDeleteCompleted: looks at up to batchSize customer tasks of the
+   * customer that completed before the cutoff and have an id greater than afterId, in id order,
+   * and deletes those whose task_info tree is complete with a few set based deletes.
+   * Tasks with an incomplete task_info tree are skipped the same way as cascadeDeleteCompleted
+   * skips them.
+   */
+  @Transactional
+  public static PurgeResult purgeCompletedBatch(Customer customer, Date cutoffDate,
+                                                long afterId, int batchSize) {
+    List<CustomerTask> batch = find.query().select("id, taskUUID").where()
+      .eq("customerUUID", customer.uuid)
+      .le("completion_time", cutoffDate)
+      .gt("id", afterId)
+      .orderBy("id asc")
+      .setMaxRows(batchSize)
+      .findList();
+    if (batch.isEmpty()) {
+      return new PurgeResult(0, -1, 0, 0);
+    }
+    long lastId = batch.get(batch.size() - 1).id;
+
+    Set<UUID> rootTaskUUIDs = batch.stream()
+      .map(CustomerTask::getTaskUUID)
+      .filter(Objects::nonNull)
+      .collect(Collectors.toSet());
+    Set<UUID> deletableTaskUUIDs = new HashSet<>();
+    Set<UUID> successfulTaskUUIDs = new HashSet<>();
+    if (!rootTaskUUIDs.isEmpty()) {
+      TaskInfo.find.query().select("uuid, taskState").where()
+        .idIn(rootTaskUUIDs)
+        .in("task_state", TaskInfo.State.Success, TaskInfo.State.Failure)
+        .findList()
+        .forEach(taskInfo -> {
+          deletableTaskUUIDs.add(taskInfo.getTaskUUID());
+          if (taskInfo.getTaskState() == TaskInfo.State.Success) {
+            successfulTaskUUIDs.add(taskInfo.getTaskUUID());
+          }
+        });
+    }
+    if (!successfulTaskUUIDs.isEmpty()) {
+      TaskInfo.find.query().select("parentUuid").where()
+        .in("parent_uuid", successfulTaskUUIDs)
+        .notIn("task_state", TaskInfo.State.Success, TaskInfo.State.Failure)
+        .findList()
+        .forEach(subTask -> {
+          LOG.warn("Successful task_info.uuid ({}) has incomplete subtask {}",
+            subTask.getParentUUID(), subTask);
+          deletableTaskUUIDs.remove(subTask.getParentUUID());
+        });
+    }
+    if (deletableTaskUUIDs.isEmpty()) {
+      return new PurgeResult(batch.size(), lastId, 0, 0);
+    }
+
+    List<Long> deletableIds = batch.stream()
+      .filter(customerTask -> deletableTaskUUIDs.contains(customerTask.taskUUID))
+      .map(customerTask -> customerTask.id)
+      .collect(Collectors.toList());
+    // Note: delete leaf nodes first to preserve referential integrity.
+    int numTaskInfos = TaskInfo.find.query().where()
+      .in("parent_uuid", deletableTaskUUIDs)
+      .delete();
+    numTaskInfos += TaskInfo.find.query().where()
+      .idIn(deletableTaskUUIDs)
+      .delete();
+    int numCustomerTasks = find.query().where()
+      .idIn(deletableIds)
+      .delete();
+    return new PurgeResult(batch.size(), lastId, numCustomerTasks, numTaskInfos);
+  }
+
   public static CustomerTask findByTaskUUID(UUID taskUUID) {
     return find.query().where().eq("task_uuid", taskUUID).findOne();
   }
@@ -6,6 +6,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.ImmutableList;
 import com.typesafe.config.Config;
 import com.yugabyte.yw.cloud.PublicCloudConstants;
+import com.yugabyte.yw.cloud.UniverseResourceDetails;
 import io.ebean.Ebean;
 import io.ebean.Finder;
 import io.ebean.Model;
@@ -178,6 +179,7 @@ public class InstanceType extends Model {
       // Exactly one row should have been modified.
       LOG.error("Running query [" + updateQuery + "] updated " + modifiedCount + " rows");
     }
+    UniverseResourceDetails.invalidateCache();
     return instanceType;
   }
 
@@ -203,6 +205,7 @@ public class InstanceType extends Model {
     for (InstanceType instanceType : findByProvider(provider, config)) {
       instanceType.delete();
     }
+    UniverseResourceDetails.invalidateCache();
   }
 
   private static Predicate<InstanceType> supportedInstanceTypes(List<String> supportedPrefixes) {
@@ -2,6 +2,7 @@
 package com.yugabyte.yw.models;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.yugabyte.yw.cloud.UniverseResourceDetails;
 import io.ebean.Finder;
 import io.ebean.Model;
 import org.slf4j.Logger;
@@ -74,6 +75,7 @@ public class PriceComponent extends Model {
   public void setPriceDetails(PriceDetails details) {
     this.priceDetailsJson = Json.stringify(Json.toJson(details));
     this.save();
+    UniverseResourceDetails.invalidateCache();
   }
 
   public PriceDetails priceDetails = new PriceDetails();
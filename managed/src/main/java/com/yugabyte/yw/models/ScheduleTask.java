@@ -65,14 +65,11 @@ public class ScheduleTask extends Model {
   }
 
   public static ScheduleTask getLastTask(UUID scheduleUUID) {
-    List<ScheduleTask> tasks = find.query().where()
+    return find.query().where()
       .eq("schedule_uuid", scheduleUUID)
       .orderBy("scheduled_time desc")
-      .findList();
-    if (tasks.isEmpty()) {
-      return null;
-    }
-    return tasks.get(0);
+      .setMaxRows(1)
+      .findOne();
   }
 
   public void setCompletedTime() {
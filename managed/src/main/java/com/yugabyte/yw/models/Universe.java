@@ -140,7 +140,7 @@ public class Universe extends Model {
     UniverseDefinitionTaskParams params = getUniverseDetails();
     Collection<NodeDetails> nodes = getNodes();
     try {
-      json.set("resources", Json.toJson(UniverseResourceDetails.create(nodes, params)));
+      json.set("resources", Json.toJson(UniverseResourceDetails.create(this)));
     } catch (Exception e) {
       json.set("resources", null);
     }
@@ -321,7 +321,16 @@ public class Universe extends Model {
     if (universe == null) {
       throw new RuntimeException("Cannot find universe " + universeUUID);
     }
+    parseDetails(universe);
 
+    // Return the universe object.
+    return universe;
+  }
+
+  /**
+   * Fills in the universe details of a universe loaded from the DB, from their JSON.
+   */
+  private static void parseDetails(Universe universe) {
     JsonNode detailsJson = Json.parse(universe.universeDetailsJson);
     universe.universeDetails = Json.fromJson(detailsJson, UniverseDefinitionTaskParams.class);
 
@@ -336,9 +345,6 @@ public class Universe extends Model {
         Json.fromJson(detailsJson.get("placementInfo"), PlacementInfo.class);
       universe.universeDetails.upsertPrimaryCluster(userIntent, placementInfo);
     }
-
-    // Return the universe object.
-    return universe;
   }
 
   public static Set<Universe> get(Set<UUID> universeUUIDs) {
@@ -349,6 +355,29 @@ public class Universe extends Model {
     return universes;
   }
 
+  /**
+   * Returns a page of the given universes, ordered by creation date and name. The universes in
+   * the requested page are loaded from the DB in a single query.
+   *
+   * @param universeUUIDs the universes to page through.
+   * @param offset        number of universes to skip.
+   * @param limit         maximum number of universes to return.
+   * @return the universes in the requested page.
+   */
+  public static List<Universe> getPage(Set<UUID> universeUUIDs, int offset, int limit) {
+    if (universeUUIDs.isEmpty()) {
+      return new ArrayList<>();
+    }
+    List<Universe> universes = find.query().where()
+      .idIn(universeUUIDs)
+      .orderBy("creationDate asc, name asc")
+      .setFirstRow(offset)
+      .setMaxRows(limit)
+      .findList();
+    universes.forEach(Universe::parseDetails);
+    return universes;
+  }
+
   public static Universe getUniverseByName(String universeName) {
     if (checkIfUniverseExists(universeName)) {
       return find.query().where().eq("name", universeName).findOne();
@@ -438,6 +467,7 @@ public class Universe extends Model {
     // Delete the universe.
     LOG.info("Deleting universe " + universe.name + ":" + universeUUID);
     universe.delete();
+    UniverseResourceDetails.invalidate(universeUUID);
   }
 
   /**
@@ -755,6 +785,11 @@ public class Universe extends Model {
       System.exit(1);
     }
 
+    // The cached resource details are keyed on the version, which this update did not change.
+    if (updateDetails && !incrementVersion) {
+      UniverseResourceDetails.invalidate(universeUUID);
+    }
+
     // Update and return the current version number.
     this.version = newVersion;
     return this.version;
@@ -12,11 +12,11 @@
 package com.yugabyte.yw.scheduler;
 
 import akka.actor.ActorSystem;
-import com.cronutils.model.Cron;
 import com.cronutils.model.definition.CronDefinitionBuilder;
 import com.cronutils.model.time.ExecutionTime;
 import com.cronutils.parser.CronParser;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.yugabyte.yw.commissioner.Commissioner;
@@ -25,6 +25,8 @@ import com.yugabyte.yw.commissioner.tasks.MultiTableBackup;
 import com.yugabyte.yw.forms.BackupTableParams;
 import com.yugabyte.yw.models.*;
 import com.yugabyte.yw.models.helpers.TaskType;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Gauge;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import play.libs.Json;
@@ -34,10 +36,16 @@ import scala.concurrent.duration.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -51,13 +59,53 @@ public class Scheduler {
   private final int YB_SCHEDULER_INTERVAL = 2;
   private final int MIN_TO_SEC = 60;
 
+  // How often due schedules are checked for, i.e. the maximum delay between the time a
+  // schedule is due and the time it is fired.
+  private static final int YB_SCHEDULER_TICK_SECS = 1;
+
+  // How long to wait before checking a schedule again when it could not be fired because the
+  // previous task is still running or the universe is locked.
+  private static final int YB_SCHEDULER_RECHECK_SECS = 30;
+
+  static final String SCHEDULE_LAG_METRIC_NAME = "yw_schedule_lag_ms";
+
+  private static final CronParser CRON_PARSER =
+    new CronParser(CronDefinitionBuilder.instanceDefinitionFor(UNIX));
+
   private final ActorSystem actorSystem;
   private final ExecutionContext executionContext;
 
   private final AtomicBoolean running = new AtomicBoolean(false);
+  private final AtomicBoolean reconciling = new AtomicBoolean(false);
 
   private final Commissioner commissioner;
 
+  // Next fire time of every active schedule, earliest first. Entries are never removed from the
+  // middle of the queue: an entry is only valid while it is the one mapped in pendingSchedules.
+  private final PriorityBlockingQueue<ScheduleEntry> scheduleQueue =
+    new PriorityBlockingQueue<>();
+  private final Map<UUID, ScheduleEntry> pendingSchedules = new ConcurrentHashMap<>();
+
+  // Parsed cron expressions, keyed by the expression text.
+  private final Map<String, ExecutionTime> executionTimes = new ConcurrentHashMap<>();
+
+  private Gauge scheduleLag = null;
+
+  private static class ScheduleEntry implements Comparable<ScheduleEntry> {
+    final UUID scheduleUUID;
+    final long fireTimeMs;
+
+    ScheduleEntry(UUID scheduleUUID, long fireTimeMs) {
+      this.scheduleUUID = scheduleUUID;
+      this.fireTimeMs = fireTimeMs;
+    }
+
+    @Override
+    public int compareTo(ScheduleEntry other) {
+      return Long.compare(fireTimeMs, other.fireTimeMs);
+    }
+  }
+
   @Inject
   Scheduler(ActorSystem actorSystem, ExecutionContext executionContext, Commissioner commissioner) {
     this.actorSystem = actorSystem;
@@ -69,113 +117,268 @@ public class Scheduler {
   }
 
   private void initialize() {
+    try {
+      scheduleLag = Gauge.build(SCHEDULE_LAG_METRIC_NAME,
+        "Delay in milliseconds between the time a schedule was due and the time it was fired")
+        .register(CollectorRegistry.defaultRegistry);
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Failed to build prometheus gauge for name: " + SCHEDULE_LAG_METRIC_NAME);
+    }
+
+    // Reloads the schedule queue from the database and deletes expired backups.
     this.actorSystem.scheduler().schedule(
       Duration.create(0, TimeUnit.MINUTES), // initialDelay
       Duration.create(YB_SCHEDULER_INTERVAL, TimeUnit.MINUTES), // interval
+      this::reconcileRunner,
+      this.executionContext
+    );
+    // Fires the schedules that are due.
+    this.actorSystem.scheduler().schedule(
+      Duration.create(YB_SCHEDULER_TICK_SECS, TimeUnit.SECONDS), // initialDelay
+      Duration.create(YB_SCHEDULER_TICK_SECS, TimeUnit.SECONDS), // interval
       this::scheduleRunner,
       this.executionContext
     );
   }
 
   /**
-   * Iterates through all the schedule entries and runs the tasks that are due to be scheduled.
+   * Updates the in-memory schedule queue after a schedule was created or changed state, so that
+   * a new schedule is picked up without waiting for the next reconciliation.
+   */
+  public void scheduleUpdated(Schedule schedule) {
+    UUID scheduleUUID = schedule.getScheduleUUID();
+    if (schedule.getStatus() != Schedule.State.Active) {
+      pendingSchedules.remove(scheduleUUID);
+      return;
+    }
+    long fireTimeMs = nextFireTime(schedule,
+      ScheduleTask.getLastTask(scheduleUUID), System.currentTimeMillis(), true);
+    if (fireTimeMs >= 0) {
+      enqueue(new ScheduleEntry(scheduleUUID, fireTimeMs));
+    }
+  }
+
+  /**
+   * Returns the schedules waiting to be fired, earliest first.
+   */
+  @VisibleForTesting
+  List<UUID> getQueuedSchedules() {
+    List<ScheduleEntry> entries = new ArrayList<>(scheduleQueue);
+    entries.sort(null);
+    List<UUID> scheduleUUIDs = new ArrayList<>();
+    for (ScheduleEntry entry : entries) {
+      if (pendingSchedules.get(entry.scheduleUUID) == entry) {
+        scheduleUUIDs.add(entry.scheduleUUID);
+      }
+    }
+    return scheduleUUIDs;
+  }
+
+  private void enqueue(ScheduleEntry entry) {
+    pendingSchedules.put(entry.scheduleUUID, entry);
+    scheduleQueue.add(entry);
+  }
+
+  /**
+   * Brings the schedule queue in sync with the active schedules in the database, which also
+   * covers schedules paused or stopped outside of this class, and deletes expired backups.
    */
-  private void scheduleRunner() {
+  @VisibleForTesting
+  void reconcileRunner() {
     if (HighAvailabilityConfig.isFollower()) {
       LOG.debug("Skipping scheduler for follower platform");
+      pendingSchedules.clear();
+      scheduleQueue.clear();
       return;
     }
 
-    // Check if last scheduled thread is still running.
-    if (running.get()) {
-      LOG.info("Previous scheduler still running");
+    if (!reconciling.compareAndSet(false, true)) {
+      LOG.info("Previous schedule reconciliation still running");
       return;
     }
 
-    LOG.info("Running scheduler");
     try {
-      running.set(true);
+      long now = System.currentTimeMillis();
+      Set<UUID> activeSchedules = new HashSet<>();
       for (Schedule schedule : Schedule.getAllActive()) {
-        Date currentTime = new Date();
-        long frequency = schedule.getFrequency();
-        String cronExpression = schedule.getCronExpression();
-        if (cronExpression == null && frequency == 0) {
-          LOG.error("Scheduled task does not have a recurrence specified {}",
-            schedule.getScheduleUUID());
+        UUID scheduleUUID = schedule.getScheduleUUID();
+        activeSchedules.add(scheduleUUID);
+        if (pendingSchedules.containsKey(scheduleUUID)) {
           continue;
         }
-        TaskType taskType = schedule.getTaskType();
-        // TODO: Come back and maybe address if using relations between schedule and
-        //  schedule_task is
-        // a better approach.
-        ScheduleTask lastTask = ScheduleTask.getLastTask(schedule.getScheduleUUID());
-        Date lastScheduledTime = null;
-        Date lastCompletedTime = null;
-        if (lastTask != null) {
-          lastScheduledTime = lastTask.getScheduledTime();
-          lastCompletedTime = lastTask.getCompletedTime();
-        }
-        boolean runTask = false;
-        long diff = 0;
-
-        // Check if task needs to be scheduled again.
-        if (lastScheduledTime != null && lastCompletedTime != null) {
-          diff = Math.abs(currentTime.getTime() - lastScheduledTime.getTime());
-        } else if (lastScheduledTime == null) {
-          diff = Long.MAX_VALUE;
-        }
-        // If frequency if specified, check if the task needs to be scheduled.
-        // The check sees the difference between the last scheduled task and the current
-        // time. If the diff is greater than the frequency, means we need to run the task
-        // again.
-        if (frequency != 0L && diff > frequency) {
-          runTask = true;
-        }
-        // In the case frequency is not defined and we have a cron expression, we compute
-        // solely in accordance to the cron execution time. If the execution time is within the
-        // scheduler interval, we run the task.
-        else if (cronExpression != null) {
-          CronParser unixCronParser =
-            new CronParser(CronDefinitionBuilder.instanceDefinitionFor(UNIX));
-          Cron parsedUnixCronExpression = unixCronParser.parse(cronExpression);
-          Instant now = Instant.now();
-          // LocalDateTime now = LocalDateTime.ofInstant(Instant.now(), ZoneId.of("UTC"));
-          ZonedDateTime utcNow = now.atZone(ZoneId.of("UTC"));
-          ExecutionTime executionTime = ExecutionTime.forCron(parsedUnixCronExpression);
-          long timeFromLastExecution =
-            executionTime.timeFromLastExecution(utcNow).get().getSeconds();
-          if (timeFromLastExecution < YB_SCHEDULER_INTERVAL * MIN_TO_SEC) {
-            // In case the last task was completed, or the last task was never even scheduled,
-            // we run the task. If the task was scheduled, but didn't complete, we skip this
-            // iteration completely.
-            if (lastCompletedTime != null || lastScheduledTime == null) {
-              runTask = true;
-            } else {
-              LOG.warn("Previous scheduled task still running, skipping this iteration's task. " +
-                "Will try again next at {}.", executionTime.nextExecution(utcNow).get());
-            }
-          }
-        }
-
-        if (runTask) {
-          if (taskType == TaskType.BackupUniverse) {
-            this.runBackupTask(schedule);
-          }
-          if (taskType == TaskType.MultiTableBackup) {
-            this.runMultiTableBackupsTask(schedule);
-          }
+        long fireTimeMs =
+          nextFireTime(schedule, ScheduleTask.getLastTask(scheduleUUID), now, true);
+        if (fireTimeMs >= 0) {
+          enqueue(new ScheduleEntry(scheduleUUID, fireTimeMs));
         }
       }
+      pendingSchedules.keySet().retainAll(activeSchedules);
+
       Map<Customer, List<Backup>> expiredBackups = Backup.getExpiredBackups();
       expiredBackups.forEach((customer, backups) ->
         backups.forEach(backup -> this.runDeleteBackupTask(customer, backup)));
     } catch (Exception e) {
-      LOG.error("Error Running scheduler thread", e);
+      LOG.error("Error reconciling schedules", e);
+    } finally {
+      reconciling.set(false);
+    }
+  }
+
+  /**
+   * Pops the schedule entries that are due and runs their tasks.
+   */
+  @VisibleForTesting
+  void scheduleRunner() {
+    if (HighAvailabilityConfig.isFollower()) {
+      return;
+    }
+
+    // Check if last scheduled thread is still running.
+    if (!running.compareAndSet(false, true)) {
+      LOG.debug("Previous scheduler still running");
+      return;
+    }
+
+    try {
+      ScheduleEntry entry;
+      while ((entry = scheduleQueue.peek()) != null &&
+             entry.fireTimeMs <= System.currentTimeMillis()) {
+        scheduleQueue.poll();
+        // Superseded by a later update, or the schedule is no longer active.
+        if (pendingSchedules.get(entry.scheduleUUID) != entry) {
+          continue;
+        }
+        try {
+          fireSchedule(entry);
+        } catch (Exception e) {
+          LOG.error("Error running schedule " + entry.scheduleUUID, e);
+          pendingSchedules.remove(entry.scheduleUUID, entry);
+        }
+      }
     } finally {
       running.set(false);
     }
   }
 
+  private void fireSchedule(ScheduleEntry entry) {
+    long now = System.currentTimeMillis();
+    long lagMs = now - entry.fireTimeMs;
+    if (scheduleLag != null) {
+      scheduleLag.set(lagMs);
+    }
+
+    Schedule schedule = Schedule.get(entry.scheduleUUID);
+    if (schedule == null || schedule.getStatus() != Schedule.State.Active) {
+      pendingSchedules.remove(entry.scheduleUUID, entry);
+      return;
+    }
+    LOG.info("Running schedule {}, {} ms after it was due", entry.scheduleUUID, lagMs);
+
+    // TODO: Come back and maybe address if using relations between schedule and schedule_task
+    // is a better approach.
+    ScheduleTask lastTask = ScheduleTask.getLastTask(schedule.getScheduleUUID());
+    Date lastScheduledTime = null;
+    Date lastCompletedTime = null;
+    if (lastTask != null) {
+      lastScheduledTime = lastTask.getScheduledTime();
+      lastCompletedTime = lastTask.getCompletedTime();
+    }
+    boolean runTask = false;
+    long diff = 0;
+
+    // Check if task needs to be scheduled again.
+    if (lastScheduledTime != null && lastCompletedTime != null) {
+      diff = Math.abs(now - lastScheduledTime.getTime());
+    } else if (lastScheduledTime == null) {
+      diff = Long.MAX_VALUE;
+    }
+    // If frequency if specified, the entry fires once the difference between the last
+    // scheduled task and the current time exceeds the frequency.
+    if (schedule.getFrequency() != 0L) {
+      runTask = diff > schedule.getFrequency();
+    }
+    // In the case frequency is not defined and we have a cron expression, the entry fires at
+    // the cron execution time. In case the last task was completed, or the last task was never
+    // even scheduled, we run the task. If the task was scheduled, but didn't complete, we skip
+    // this execution completely.
+    else if (lastCompletedTime != null || lastScheduledTime == null) {
+      runTask = true;
+    } else {
+      LOG.warn("Previous scheduled task still running, skipping this iteration's task.");
+    }
+
+    if (runTask) {
+      TaskType taskType = schedule.getTaskType();
+      if (taskType == TaskType.BackupUniverse) {
+        this.runBackupTask(schedule);
+      }
+      if (taskType == TaskType.MultiTableBackup) {
+        this.runMultiTableBackupsTask(schedule);
+      }
+    }
+
+    long fireTimeMs = nextFireTime(schedule, ScheduleTask.getLastTask(entry.scheduleUUID),
+      System.currentTimeMillis(), false);
+    if (fireTimeMs >= 0) {
+      enqueue(new ScheduleEntry(entry.scheduleUUID, fireTimeMs));
+    } else {
+      pendingSchedules.remove(entry.scheduleUUID, entry);
+    }
+  }
+
+  /**
+   * Computes when the given schedule is next due, or -1 if it never is.
+   *
+   * @param catchUp whether a cron execution missed within the last scheduler interval should
+   *                still be run, as is the case when the schedule is first loaded.
+   */
+  private long nextFireTime(Schedule schedule, ScheduleTask lastTask, long now, boolean catchUp) {
+    long frequency = schedule.getFrequency();
+    String cronExpression = schedule.getCronExpression();
+    if (cronExpression == null && frequency == 0) {
+      LOG.error("Scheduled task does not have a recurrence specified {}",
+        schedule.getScheduleUUID());
+      return -1;
+    }
+    long recheckTimeMs = now + TimeUnit.SECONDS.toMillis(YB_SCHEDULER_RECHECK_SECS);
+
+    if (frequency != 0L) {
+      if (lastTask == null || lastTask.getScheduledTime() == null) {
+        return catchUp ? now : recheckTimeMs;
+      }
+      if (lastTask.getCompletedTime() == null) {
+        return recheckTimeMs;
+      }
+      long dueTimeMs = lastTask.getScheduledTime().getTime() + frequency + 1;
+      // A due schedule that did not get a new task was blocked by a locked universe.
+      return catchUp ? Math.max(dueTimeMs, now) : Math.max(dueTimeMs, recheckTimeMs);
+    }
+
+    ExecutionTime executionTime;
+    try {
+      executionTime = executionTimes.computeIfAbsent(cronExpression,
+        expression -> ExecutionTime.forCron(CRON_PARSER.parse(expression)));
+    } catch (IllegalArgumentException e) {
+      LOG.error("Invalid cron expression {} for schedule {}", cronExpression,
+        schedule.getScheduleUUID());
+      return -1;
+    }
+    ZonedDateTime utcNow = Instant.ofEpochMilli(now).atZone(ZoneId.of("UTC"));
+    if (catchUp) {
+      Optional<ZonedDateTime> lastExecution = executionTime.lastExecution(utcNow);
+      if (lastExecution.isPresent() &&
+          now - lastExecution.get().toInstant().toEpochMilli() <
+            TimeUnit.SECONDS.toMillis(YB_SCHEDULER_INTERVAL * MIN_TO_SEC) &&
+          (lastTask == null || lastTask.getScheduledTime() == null ||
+           lastTask.getScheduledTime().toInstant().isBefore(lastExecution.get().toInstant()))) {
+        return now;
+      }
+    }
+    return executionTime.nextExecution(utcNow)
+      .map(next -> next.toInstant().toEpochMilli())
+      .orElse(-1L);
+  }
+
   private void runBackupTask(Schedule schedule) {
     UUID customerUUID = schedule.getCustomerUUID();
     Customer customer = Customer.get(customerUUID);
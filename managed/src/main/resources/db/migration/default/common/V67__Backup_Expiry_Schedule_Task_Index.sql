@@ -0,0 +1,5 @@
+-- Copyright (c) YugaByte, Inc.
+
+create index if not exists ix_backup_state_expiry on backup (state, expiry);
+create index if not exists ix_schedule_task_schedule_uuid_scheduled_time
+  on schedule_task (schedule_uuid, scheduled_time);
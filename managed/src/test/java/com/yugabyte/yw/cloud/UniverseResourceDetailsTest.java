@@ -12,6 +12,7 @@ import com.yugabyte.yw.models.InstanceType;
 import com.yugabyte.yw.models.PriceComponent;
 import com.yugabyte.yw.models.Provider;
 import com.yugabyte.yw.models.Region;
+import com.yugabyte.yw.models.Universe;
 import com.yugabyte.yw.models.helpers.CloudSpecificInfo;
 import com.yugabyte.yw.models.helpers.DeviceInfo;
 import com.yugabyte.yw.models.helpers.NodeDetails;
@@ -32,7 +33,9 @@ import static com.yugabyte.yw.common.ApiUtils.getDummyUserIntent;
 import static com.yugabyte.yw.models.helpers.NodeDetails.NodeState.ToBeRemoved;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -338,4 +341,35 @@ public class UniverseResourceDetailsTest extends FakeDBApplication {
     assertThat(details.ebsPricePerHour, equalTo(0.0));
     assertThat(details.pricePerHour, equalTo(0.0));
   }
+
+  @Test
+  public void testCreateForUniverseIsCached() {
+    Universe universe = ModelFactory.createUniverse();
+    UniverseResourceDetails details = UniverseResourceDetails.create(universe);
+    assertThat(UniverseResourceDetails.create(universe), sameInstance(details));
+
+    // Reading the universe again keeps the cached details, while a new version invalidates them.
+    assertThat(UniverseResourceDetails.create(Universe.get(universe.universeUUID)),
+        sameInstance(details));
+    universe = Universe.saveDetails(universe.universeUUID, u -> {});
+    UniverseResourceDetails savedDetails = UniverseResourceDetails.create(universe);
+    assertThat(savedDetails, not(sameInstance(details)));
+    assertThat(UniverseResourceDetails.create(universe), sameInstance(savedDetails));
+
+    // Changing the details invalidates them, even when the version is not incremented.
+    details = savedDetails;
+    int version = universe.version;
+    universe = Universe.saveDetails(universe.universeUUID,
+        u -> u.getUniverseDetails().nodePrefix = "changed-prefix", false);
+    assertThat(universe.version, equalTo(version));
+    UniverseResourceDetails newDetails = UniverseResourceDetails.create(universe);
+    assertThat(newDetails, not(sameInstance(details)));
+    assertThat(UniverseResourceDetails.create(Universe.get(universe.universeUUID)),
+        sameInstance(newDetails));
+
+    // So does any change to the price table.
+    PriceComponent.upsert(provider.uuid, region.code, testInstanceType,
+        new PriceComponent.PriceDetails());
+    assertThat(UniverseResourceDetails.create(universe), not(sameInstance(newDetails)));
+  }
 }
@@ -16,7 +16,6 @@ import org.mockito.junit.MockitoJUnitRunner;
 import scala.concurrent.ExecutionContext;
 
 import java.time.Duration;
-import java.util.Collections;
 import java.util.UUID;
 
 import static com.yugabyte.yw.commissioner.TaskGarbageCollector.*;
@@ -117,23 +116,23 @@ public class TaskGarbageCollectorTest extends TestCase {
 
     TaskGarbageCollector gc = new TaskGarbageCollector(
       mockScheduler, mockRuntimeConfigFactory, mockExecutionContext, testRegistry);
-    gc.purgeStaleTasks(mockCustomer, Collections.emptyList());
+    gc.recordPurge(mockCustomer, new CustomerTask.PurgeResult(0, -1, 0, 0));
 
     checkCounters(customerUuid, 1.0, 0.0, null, null);
+    assertEquals(0.0, testRegistry.getSampleValue(NUM_TASK_GC_SCANNED));
   }
 
   @Test
   public void testPurge() {
     UUID customerUuid = UUID.randomUUID();
     when(mockCustomer.getUuid()).thenReturn(customerUuid);
-    // Pretend we deleted 5 rows in all:
-    when(mockCustomerTask.cascadeDeleteCompleted()).thenReturn(5);
-
+    // Pretend we deleted 1 customer task and 4 task info rows:
     TaskGarbageCollector gc = new TaskGarbageCollector(
       mockScheduler, mockRuntimeConfigFactory, mockExecutionContext, testRegistry);
-    gc.purgeStaleTasks(mockCustomer, Collections.singletonList(mockCustomerTask));
+    gc.recordPurge(mockCustomer, new CustomerTask.PurgeResult(1, 10, 1, 4));
 
     checkCounters(customerUuid, 1.0, 0.0, 1.0, 4.0);
+    assertEquals(1.0, testRegistry.getSampleValue(NUM_TASK_GC_SCANNED));
   }
 
   // Test that if we do not delete when there are referential integrity issues; then we report such
@@ -141,12 +140,10 @@ public class TaskGarbageCollectorTest extends TestCase {
   @Test
   public void testPurge_invalidData() {
     UUID customerUuid = UUID.randomUUID();
-    // Pretend we deleted 5 rows in all:
-    when(mockCustomerTask.cascadeDeleteCompleted()).thenReturn(0);
-
+    // Pretend we looked at 1 customer task but could not delete it:
     TaskGarbageCollector gc = new TaskGarbageCollector(
       mockScheduler, mockRuntimeConfigFactory, mockExecutionContext, testRegistry);
-    gc.purgeStaleTasks(mockCustomer, Collections.singletonList(mockCustomerTask));
+    gc.recordPurge(mockCustomer, new CustomerTask.PurgeResult(1, 10, 0, 0));
 
     checkCounters(customerUuid, 1.0, 1.0, null, null);
   }
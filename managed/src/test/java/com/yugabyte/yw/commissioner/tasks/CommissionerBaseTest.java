@@ -24,6 +24,8 @@ import com.yugabyte.yw.common.TableManager;
 import com.yugabyte.yw.common.ShellProcessHandler;
 import com.yugabyte.yw.common.ShellResponse;
 import com.yugabyte.yw.common.services.YBClientService;
+import com.yugabyte.yw.metrics.MetricQueryHelper;
+import com.yugabyte.yw.metrics.YBMetricQueryComponent;
 import com.yugabyte.yw.models.Customer;
 import com.yugabyte.yw.models.Provider;
 import com.yugabyte.yw.models.TaskInfo;
@@ -81,6 +83,8 @@ public abstract class CommissionerBaseTest extends WithApplication {
   protected PlayCacheSessionStore mockSessionStore;
   protected ApiHelper mockApiHelper;
   protected QueryAlerts mockQueryAlerts;
+  protected YBMetricQueryComponent mockYBMetricQueryComponent;
+  protected MetricQueryHelper mockMetricQueryHelper;
 
   Customer defaultCustomer;
   Provider defaultProvider;
@@ -113,6 +117,8 @@ public abstract class CommissionerBaseTest extends WithApplication {
     mockSessionStore = mock(PlayCacheSessionStore.class);
     mockApiHelper = mock(ApiHelper.class);
     mockQueryAlerts = mock(QueryAlerts.class);
+    mockYBMetricQueryComponent = mock(YBMetricQueryComponent.class);
+    mockMetricQueryHelper = mock(MetricQueryHelper.class);
 
     return new GuiceApplicationBuilder()
         .configure((Map) Helpers.inMemoryDatabase())
@@ -134,6 +140,8 @@ public abstract class CommissionerBaseTest extends WithApplication {
         .overrides(bind(PlaySessionStore.class).toInstance(mockSessionStore))
         .overrides(bind(ApiHelper.class).toInstance(mockApiHelper))
         .overrides(bind(QueryAlerts.class).toInstance(mockQueryAlerts))
+        .overrides(bind(YBMetricQueryComponent.class).toInstance(mockYBMetricQueryComponent))
+        .overrides(bind(MetricQueryHelper.class).toInstance(mockMetricQueryHelper))
         .build();
   }
 
@@ -5,6 +5,7 @@ package com.yugabyte.yw.commissioner.tasks;
 import static com.yugabyte.yw.common.ModelFactory.createUniverse;
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
@@ -80,6 +81,8 @@ public class DestroyUniverseTest extends CommissionerBaseTest {
     assertEquals(2, alerts.size());
     assertEquals(Alert.State.RESOLVED, alerts.get(0).state);
     assertEquals(Alert.State.RESOLVED, alerts.get(1).state);
+    // The cached connection to query the metrics of the universe is closed with it.
+    verify(mockYBMetricQueryComponent).closeConnection(defaultUniverse.universeUUID);
   }
 
   private TaskInfo submitTask(DestroyUniverse.Params taskParams, int version) {
@@ -4,19 +4,25 @@ package com.yugabyte.yw.commissioner.tasks;
 
 import com.yugabyte.yw.commissioner.Commissioner;
 import com.yugabyte.yw.commissioner.tasks.MultiTableBackup;
+import com.yugabyte.yw.common.ApiUtils;
 import com.yugabyte.yw.common.ModelFactory;
 import com.yugabyte.yw.common.ShellProcessHandler;
 import com.yugabyte.yw.common.ShellResponse;
+import com.yugabyte.yw.common.config.impl.SettableRuntimeConfigFactory;
+import com.yugabyte.yw.forms.BackupTableParams;
+import com.yugabyte.yw.metrics.MetricQueryResponse;
 import com.yugabyte.yw.models.Backup;
 import com.yugabyte.yw.models.CustomerTask;
 import com.yugabyte.yw.models.TaskInfo;
 import com.yugabyte.yw.models.Universe;
 import com.yugabyte.yw.models.helpers.TaskType;
+import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.runners.MockitoJUnitRunner;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.protobuf.ByteString;
 
 import org.yb.client.GetTableSchemaResponse;
@@ -37,10 +43,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.yugabyte.yw.models.Backup.BackupState.Completed;
 import static com.yugabyte.yw.models.Backup.BackupState.Failed;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
@@ -240,6 +249,26 @@ public class MultiTableBackupTest extends CommissionerBaseTest {
     assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
   }
 
+  @Test
+  public void testMultiTableBackupListStats() {
+    Map<String, String> config = new HashMap<>();
+    config.put(Universe.TAKE_BACKUPS, "true");
+    defaultUniverse.setConfig(config);
+    ShellResponse shellResponse =  new ShellResponse();
+    shellResponse.message = "{\"success\": true}";
+    shellResponse.code = 0;
+    when(mockTableManager.createBackup(any())).thenReturn(shellResponse);
+    List<UUID> tableUUIDs = new ArrayList<UUID>();
+    tableUUIDs.add(table2UUID);
+    TaskInfo taskInfo = submitTask("bar", tableUUIDs);
+    assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
+    JsonNode backupStats = TaskInfo.get(taskInfo.getTaskUUID()).getTaskDetails()
+      .get("backupStats");
+    assertNotNull(backupStats);
+    assertEquals(1, backupStats.get("tables").size());
+    assertEquals("Table2", backupStats.get("tables").get(0).get("table").asText());
+  }
+
   @Test
   public void testTransactionalMultiTableBackupList() {
     Map<String, String> config = new HashMap<>();
@@ -283,6 +312,123 @@ public class MultiTableBackupTest extends CommissionerBaseTest {
     assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
   }
 
+  // Lists the given YCQL tables of $$$Default1, on a universe of three tservers. Returns the table
+  // UUIDs.
+  private List<UUID> mockTables(String... tableNames) {
+    Map<String, String> config = new HashMap<>();
+    config.put(Universe.TAKE_BACKUPS, "true");
+    defaultUniverse.setConfig(config);
+    defaultUniverse = Universe.saveDetails(defaultUniverse.universeUUID,
+      ApiUtils.mockUniverseUpdater());
+    List<UUID> tableUUIDs = new ArrayList<>();
+    List<TableInfo> tableInfoList = new ArrayList<>();
+    for (String tableName : tableNames) {
+      UUID tableUUID = UUID.randomUUID();
+      tableUUIDs.add(tableUUID);
+      tableInfoList.add(TableInfo.newBuilder()
+        .setName(tableName)
+        .setNamespace(Master.NamespaceIdentifierPB.newBuilder().setName("$$$Default1"))
+        .setId(ByteString.copyFromUtf8(tableUUID.toString()))
+        .setTableType(TableType.YQL_TABLE_TYPE)
+        .build());
+      GetTableSchemaResponse schemaResponse = mock(GetTableSchemaResponse.class);
+      when(schemaResponse.getTableName()).thenReturn(tableName);
+      when(schemaResponse.getNamespace()).thenReturn("$$$Default1");
+      when(schemaResponse.getTableType()).thenReturn(TableType.YQL_TABLE_TYPE);
+      try {
+        when(mockClient.getTableSchemaByUUID(tableUUID.toString().replace("-", "")))
+          .thenReturn(schemaResponse);
+      } catch (Exception e) {
+        // Do nothing.
+      }
+    }
+    when(mockListTablesResponse.getTableInfoList()).thenReturn(tableInfoList);
+    return tableUUIDs;
+  }
+
+  // Lists two YCQL tables, backed up in parallel on the three tservers, and makes each table
+  // backup succeed only if the other one runs at the same time. Returns the table UUIDs.
+  private List<UUID> mockParallelTableBackups() {
+    List<UUID> tableUUIDs = mockTables("Table5", "Table6");
+    app.injector().instanceOf(SettableRuntimeConfigFactory.class).forUniverse(defaultUniverse)
+      .setValue(MultiTableBackup.YB_BACKUP_TSERVERS_PER_PARALLEL_TABLE, "1");
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    when(mockTableManager.createBackup(any())).thenAnswer(invocation -> {
+      bothStarted.countDown();
+      ShellResponse shellResponse =  new ShellResponse();
+      if (bothStarted.await(10, TimeUnit.SECONDS)) {
+        shellResponse.message = "{\"success\": true}";
+        shellResponse.code = 0;
+      } else {
+        shellResponse.message = "{\"error\": \"not backed up in parallel\"}";
+        shellResponse.code = 1;
+      }
+      return shellResponse;
+    });
+    return tableUUIDs;
+  }
+
+  @Test
+  public void testMultiTableBackupInParallel() {
+    mockParallelTableBackups();
+    // Entire universe backup, kept as a single backup.
+    TaskInfo taskInfo = submitTask(null, new ArrayList<UUID>());
+    verify(mockTableManager, times(2)).createBackup(any());
+    assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
+    assertEquals(1, Backup.fetchByUniverseUUID(defaultCustomer.uuid,
+      defaultUniverse.universeUUID).size());
+  }
+
+  @Test
+  public void testMultiTableBackupListInParallel() {
+    List<UUID> tableUUIDs = mockParallelTableBackups();
+    TaskInfo taskInfo = submitTask("$$$Default1", tableUUIDs);
+    verify(mockTableManager, times(2)).createBackup(any());
+    assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
+    assertEquals(2, Backup.fetchByUniverseUUID(defaultCustomer.uuid,
+      defaultUniverse.universeUUID).size());
+  }
+
+  @Test
+  public void testSmallTablesBackedUpInGroups() {
+    List<UUID> tableUUIDs = mockTables("Table5", "Table6", "Table7", "Table8");
+    app.injector().instanceOf(SettableRuntimeConfigFactory.class).forUniverse(defaultUniverse)
+      .setValue(MultiTableBackup.YB_BACKUP_SMALL_TABLE_SIZE, "100");
+    // Each table is small, and two of them together are not, so they make two groups.
+    ArrayList<MetricQueryResponse.Entry> tableSizes = new ArrayList<>();
+    for (UUID tableUUID : tableUUIDs) {
+      MetricQueryResponse.Entry entry = new MetricQueryResponse.Entry();
+      entry.labels = new HashMap<>();
+      entry.labels.put("table_id", tableUUID.toString().replace("-", ""));
+      entry.values = new ArrayList<>();
+      entry.values.add(new ImmutablePair<>(0.0, 60.0));
+      tableSizes.add(entry);
+    }
+    when(mockMetricQueryHelper.queryDirect(anyString())).thenReturn(tableSizes);
+    ShellResponse shellResponse =  new ShellResponse();
+    shellResponse.message = "{\"success\": true}";
+    shellResponse.code = 0;
+    when(mockTableManager.createBackup(any())).thenReturn(shellResponse);
+
+    TaskInfo taskInfo = submitTask(null, new ArrayList<UUID>());
+    verify(mockTableManager, times(2)).createBackup(any());
+    assertEquals(TaskInfo.State.Success, taskInfo.getTaskState());
+    List<Backup> backups = Backup.fetchByUniverseUUID(defaultCustomer.uuid,
+      defaultUniverse.universeUUID);
+    assertEquals(1, backups.size());
+    List<BackupTableParams> groups = backups.get(0).getBackupInfo().backupList;
+    assertEquals(2, groups.size());
+    Set<UUID> groupedTableUUIDs = new HashSet<>();
+    for (BackupTableParams group : groups) {
+      assertEquals("$$$Default1", group.keyspace);
+      assertEquals(2, group.tableUUIDList.size());
+      groupedTableUUIDs.addAll(group.tableUUIDList);
+    }
+    assertEquals(new HashSet<>(tableUUIDs), groupedTableUUIDs);
+    // The groups are of the same keyspace, and must not overwrite each other.
+    assertNotEquals(groups.get(0).storageLocation, groups.get(1).storageLocation);
+  }
+
   @Test
   public void testMultiTableBackupIgnore() {
     Map<String, String> config = new HashMap<>();
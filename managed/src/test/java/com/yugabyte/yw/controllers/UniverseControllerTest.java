@@ -271,6 +271,43 @@ public class UniverseControllerTest extends WithApplication {
     assertAuditEntry(0, customer.uuid);
   }
 
+  @Test
+  public void testUniverseListWithFieldsAndLimit() {
+    for (int i = 0; i < 3; i++) {
+      Universe u = createUniverse("Test Universe " + i, customer.getCustomerId());
+      customer.addUniverseUUID(u.universeUUID);
+    }
+    customer.save();
+
+    Result result = doRequestWithAuthToken("GET", "/api/customers/" + customer.uuid +
+        "/universes?fields=universeUUID,name&limit=2", authToken);
+    assertOk(result);
+    assertEquals("3", result.header("X-Total-Count").get());
+    JsonNode json = Json.parse(contentAsString(result));
+    assertTrue(json.isArray());
+    assertEquals(2, json.size());
+    for (JsonNode universeJson : json) {
+      assertEquals(2, universeJson.size());
+      assertNotNull(universeJson.get("universeUUID"));
+      assertNotNull(universeJson.get("name"));
+    }
+
+    result = doRequestWithAuthToken("GET", "/api/customers/" + customer.uuid +
+        "/universes?fields=name&offset=2&limit=2", authToken);
+    assertOk(result);
+    json = Json.parse(contentAsString(result));
+    assertEquals(1, json.size());
+    assertAuditEntry(0, customer.uuid);
+  }
+
+  @Test
+  public void testUniverseListWithInvalidFields() {
+    Result result = doRequestWithAuthToken("GET", "/api/customers/" + customer.uuid +
+        "/universes?fields=universeUUID,foo", authToken);
+    assertBadRequest(result, "Invalid fields [foo]");
+    assertAuditEntry(0, customer.uuid);
+  }
+
   @Test
   public void testUniverseListWithInvalidUUID() {
     UUID invalidUUID = UUID.randomUUID();
@@ -2,14 +2,19 @@
 
 package com.yugabyte.yw.metrics;
 
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.collect.ImmutableMap;
 import com.yugabyte.yw.common.ApiHelper;
 import com.yugabyte.yw.common.FakeDBApplication;
+import com.yugabyte.yw.metrics.YBMetricQueryComponent.CassandraConnection;
 import com.yugabyte.yw.models.MetricConfig;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,6 +27,7 @@ import org.mockito.InjectMocks;
 import org.mockito.stubbing.OngoingStubbing;
 import play.libs.Json;
 
+import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
@@ -29,13 +35,20 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -209,4 +222,121 @@ public class YBMetricQueryComponentTest extends FakeDBApplication {
                                                        2323253L, (400.0 / 3) * 3);
     assertEquals(expectedValues, ybMetricQueryComponent.calculateRate(allRS, Sum, 3));
   }
+
+  private static final List<InetSocketAddress> ADDRESSES =
+    Arrays.asList(new InetSocketAddress("10.0.0.1", 9042), new InetSocketAddress("10.0.0.2", 9042));
+
+  private CassandraConnection mockConnection() {
+    CassandraConnection cc = new CassandraConnection();
+    cc.cluster = Mockito.mock(Cluster.class);
+    cc.session = Mockito.mock(Session.class);
+    return cc;
+  }
+
+  @Test
+  public void testConnectionIsReused() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc = mockConnection();
+    doReturn(cc).when(component).createCassandraConnection(any(), any());
+    UUID universeUUID = UUID.randomUUID();
+
+    assertSame(cc, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    assertSame(cc, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    verify(component, times(1)).createCassandraConnection(ADDRESSES, null);
+    verify(cc.session, never()).close();
+  }
+
+  @Test
+  public void testConnectionIsPerUniverse() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc1 = mockConnection();
+    CassandraConnection cc2 = mockConnection();
+    doReturn(cc1, cc2).when(component).createCassandraConnection(any(), any());
+
+    assertSame(cc1, component.getCassandraConnection(UUID.randomUUID(), ADDRESSES, null));
+    assertSame(cc2, component.getCassandraConnection(UUID.randomUUID(), ADDRESSES, null));
+    verify(cc1.session, never()).close();
+
+    component.closeConnections();
+    verify(cc1.session).close();
+    verify(cc1.cluster).close();
+    verify(cc2.session).close();
+    verify(cc2.cluster).close();
+  }
+
+  @Test
+  public void testConnectionIsRecreatedWhenNodesChange() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc1 = mockConnection();
+    CassandraConnection cc2 = mockConnection();
+    doReturn(cc1, cc2).when(component).createCassandraConnection(any(), any());
+    UUID universeUUID = UUID.randomUUID();
+
+    assertSame(cc1, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    List<InetSocketAddress> newAddresses = ADDRESSES.subList(0, 1);
+    assertSame(cc2, component.getCassandraConnection(universeUUID, newAddresses, null));
+    verify(cc1.session).close();
+    verify(cc1.cluster).close();
+    assertSame(cc2, component.getCassandraConnection(universeUUID, newAddresses, null));
+  }
+
+  @Test
+  public void testConnectionIsRecreatedWhenCertificateChanges() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc1 = mockConnection();
+    CassandraConnection cc2 = mockConnection();
+    doReturn(cc1, cc2).when(component).createCassandraConnection(any(), any());
+    UUID universeUUID = UUID.randomUUID();
+
+    assertSame(cc1, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    assertSame(cc2, component.getCassandraConnection(universeUUID, ADDRESSES, "/tmp/ca.crt"));
+    verify(cc1.session).close();
+  }
+
+  @Test
+  public void testClosedConnectionIsRecreated() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc1 = mockConnection();
+    CassandraConnection cc2 = mockConnection();
+    doReturn(cc1, cc2).when(component).createCassandraConnection(any(), any());
+    UUID universeUUID = UUID.randomUUID();
+
+    assertSame(cc1, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    when(cc1.session.isClosed()).thenReturn(true);
+    assertSame(cc2, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+  }
+
+  @Test
+  public void testCloseConnection() {
+    YBMetricQueryComponent component = spy(ybMetricQueryComponent);
+    CassandraConnection cc1 = mockConnection();
+    CassandraConnection cc2 = mockConnection();
+    doReturn(cc1, cc2).when(component).createCassandraConnection(any(), any());
+    UUID universeUUID = UUID.randomUUID();
+
+    assertSame(cc1, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    component.closeConnection(universeUUID);
+    verify(cc1.session).close();
+    verify(cc1.cluster).close();
+    assertSame(cc2, component.getCassandraConnection(universeUUID, ADDRESSES, null));
+    // Closing a universe without a connection is a no-op.
+    component.closeConnection(UUID.randomUUID());
+  }
+
+  @Test
+  public void testSelectQueryBindsTimeRangeInMs() {
+    CassandraConnection cc = mockConnection();
+    cc.selectMetric = Mockito.mock(PreparedStatement.class);
+    BoundStatement statement = Mockito.mock(BoundStatement.class);
+    when(cc.selectMetric.bind(Mockito.<Object>anyVararg())).thenReturn(statement);
+
+    // The query params give the time range in seconds, the ts column is in milliseconds.
+    long startSecs = 1600000000L;
+    long endSecs = 1600003600L;
+    ybMetricQueryComponent.cassandraTserverSelectQuery("rpcs", "tserver-uuid", cc,
+                                                       startSecs, endSecs);
+    verify(cc.selectMetric).bind("rpcs", "tserver-uuid", new Date(startSecs * 1000),
+                                 new Date(endSecs * 1000));
+    verify(cc.session).executeAsync(statement);
+  }
 }
@@ -227,4 +227,39 @@ public class CustomerTaskTest extends FakeDBApplication {
     assertTrue(CustomerTask.find.all().isEmpty());
     assertTrue(TaskInfo.find.all().isEmpty());
   }
+
+  @Test
+  public void testPurgeCompletedBatch() {
+    UUID targetUUID = UUID.randomUUID();
+    Date cutoffDate = new Date();
+    Date completionDate = new Date(cutoffDate.getTime() - 1000);
+    // Deletable task trees.
+    for (int i = 0; i < 3; i++) {
+      createTaskTree(CustomerTask.TargetType.Universe, targetUUID, Create)
+        .markAsCompleted(completionDate);
+    }
+    // Successful root task with incomplete subtasks is skipped.
+    createTaskTree(CustomerTask.TargetType.Table, targetUUID, Create, 3,
+      Optional.of(TaskInfo.State.Success), false).markAsCompleted(completionDate);
+    assertEquals(4, CustomerTask.find.all().size());
+    assertEquals(12, TaskInfo.find.all().size());
+
+    CustomerTask.PurgeResult result =
+      CustomerTask.purgeCompletedBatch(defaultCustomer, cutoffDate, -1, 2);
+    assertEquals(2, result.numScanned);
+    assertEquals(2, result.numCustomerTasks);
+    assertEquals(6, result.numTaskInfos);
+    assertEquals(2, CustomerTask.find.all().size());
+
+    result = CustomerTask.purgeCompletedBatch(defaultCustomer, cutoffDate, result.lastId, 2);
+    assertEquals(2, result.numScanned);
+    assertEquals(1, result.numCustomerTasks);
+    assertEquals(3, result.numTaskInfos);
+    assertEquals(1, CustomerTask.find.all().size());
+    assertEquals(3, TaskInfo.find.all().size());
+
+    result = CustomerTask.purgeCompletedBatch(defaultCustomer, cutoffDate, result.lastId, 2);
+    assertEquals(0, result.numScanned);
+    assertEquals(1, CustomerTask.find.all().size());
+  }
 }
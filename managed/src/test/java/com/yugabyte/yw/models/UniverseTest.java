@@ -110,6 +110,25 @@ public class UniverseTest extends FakeDBApplication {
     assertEquals(universes.size(), 3);
   }
 
+  @Test
+  public void testGetPage() {
+    Universe u1 = createUniverse("Universe1", defaultCustomer.getCustomerId());
+    Universe u2 = createUniverse("Universe2", defaultCustomer.getCustomerId());
+    Universe u3 = createUniverse("Universe3", defaultCustomer.getCustomerId());
+    Set<UUID> uuids = Sets.newHashSet(u1.universeUUID, u2.universeUUID, u3.universeUUID);
+
+    List<Universe> page = Universe.getPage(uuids, 1, 2);
+    assertEquals(2, page.size());
+    assertEquals(u2.universeUUID, page.get(0).universeUUID);
+    assertEquals(u3.universeUUID, page.get(1).universeUUID);
+    // The details of the universes are loaded along with them.
+    for (Universe universe : page) {
+      assertNotNull(universe.getUniverseDetails());
+      assertNotNull(universe.getUniverseDetails().getPrimaryCluster());
+    }
+    assertTrue(Universe.getPage(uuids, 3, 2).isEmpty());
+  }
+
   @Test(expected = RuntimeException.class)
   public void testGetUnknownUniverse() {
     UUID unknownUUID = UUID.randomUUID();
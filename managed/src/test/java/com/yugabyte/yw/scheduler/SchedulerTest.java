@@ -0,0 +1,156 @@
+// Copyright (c) YugaByte, Inc.
+
+package com.yugabyte.yw.scheduler;
+
+import akka.actor.ActorSystem;
+import com.yugabyte.yw.commissioner.Commissioner;
+import com.yugabyte.yw.common.FakeDBApplication;
+import com.yugabyte.yw.common.ModelFactory;
+import com.yugabyte.yw.forms.BackupTableParams;
+import com.yugabyte.yw.models.Customer;
+import com.yugabyte.yw.models.CustomerConfig;
+import com.yugabyte.yw.models.Schedule;
+import com.yugabyte.yw.models.ScheduleTask;
+import com.yugabyte.yw.models.Universe;
+import com.yugabyte.yw.models.helpers.TaskType;
+import org.junit.Before;
+import org.junit.Test;
+import scala.concurrent.ExecutionContext;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchedulerTest extends FakeDBApplication {
+
+  private Commissioner mockCommissioner;
+  private Scheduler scheduler;
+  private Customer customer;
+  private Universe universe;
+  private CustomerConfig storageConfig;
+
+  @Before
+  public void setUp() {
+    ActorSystem mockActorSystem = mock(ActorSystem.class);
+    when(mockActorSystem.scheduler()).thenReturn(mock(akka.actor.Scheduler.class));
+    mockCommissioner = mock(Commissioner.class);
+    when(mockCommissioner.submit(any(), any())).thenAnswer(invocation -> UUID.randomUUID());
+    scheduler = new Scheduler(mockActorSystem, mock(ExecutionContext.class), mockCommissioner);
+
+    customer = ModelFactory.testCustomer();
+    universe = ModelFactory.createUniverse(customer.getCustomerId());
+    storageConfig = ModelFactory.createS3StorageConfig(customer);
+  }
+
+  private Schedule createSchedule(long frequencyMs) {
+    BackupTableParams params = new BackupTableParams();
+    params.storageConfigUUID = storageConfig.configUUID;
+    params.universeUUID = universe.universeUUID;
+    params.keyspace = "foo";
+    params.tableName = "bar";
+    params.tableUUID = UUID.randomUUID();
+    return Schedule.create(customer.uuid, params, TaskType.BackupUniverse, frequencyMs);
+  }
+
+  // Creates a schedule whose last task completed just now, so it is next due after frequencyMs.
+  private Schedule createScheduleWithCompletedTask(long frequencyMs) {
+    Schedule schedule = createSchedule(frequencyMs);
+    ScheduleTask.create(UUID.randomUUID(), schedule.getScheduleUUID()).setCompletedTime();
+    return schedule;
+  }
+
+  @Test
+  public void testSchedulesAreQueuedByDueTime() {
+    Schedule inTwoHours = createScheduleWithCompletedTask(TimeUnit.HOURS.toMillis(2));
+    Schedule due = createSchedule(TimeUnit.HOURS.toMillis(1));
+    Schedule inOneHour = createScheduleWithCompletedTask(TimeUnit.HOURS.toMillis(1));
+
+    scheduler.reconcileRunner();
+    assertEquals(Arrays.asList(due.getScheduleUUID(), inOneHour.getScheduleUUID(),
+        inTwoHours.getScheduleUUID()), scheduler.getQueuedSchedules());
+
+    // Only the schedule that is due fires.
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, times(1)).submit(eq(TaskType.BackupUniverse), any());
+    ScheduleTask lastTask = ScheduleTask.getLastTask(due.getScheduleUUID());
+    assertNotNull(lastTask);
+    assertEquals(due.getScheduleUUID(), lastTask.getScheduleUUID());
+  }
+
+  @Test
+  public void testScheduleIsRearmedAfterRun() {
+    Schedule schedule = createSchedule(TimeUnit.HOURS.toMillis(1));
+    scheduler.scheduleUpdated(schedule);
+    assertEquals(Collections.singletonList(schedule.getScheduleUUID()),
+        scheduler.getQueuedSchedules());
+
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, times(1)).submit(eq(TaskType.BackupUniverse), any());
+    // The schedule is queued again for its next run, which is not due yet.
+    assertEquals(Collections.singletonList(schedule.getScheduleUUID()),
+        scheduler.getQueuedSchedules());
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, times(1)).submit(eq(TaskType.BackupUniverse), any());
+
+    // Reconciling does not queue the schedule twice.
+    scheduler.reconcileRunner();
+    assertEquals(Collections.singletonList(schedule.getScheduleUUID()),
+        scheduler.getQueuedSchedules());
+  }
+
+  @Test
+  public void testPausedScheduleIsDropped() {
+    Schedule schedule = createSchedule(TimeUnit.HOURS.toMillis(1));
+    scheduler.reconcileRunner();
+    assertEquals(Collections.singletonList(schedule.getScheduleUUID()),
+        scheduler.getQueuedSchedules());
+
+    // Paused outside of the scheduler, it is dropped when it is due instead of firing.
+    schedule.setFailureCount(3);
+    assertEquals(Schedule.State.Paused, Schedule.get(schedule.getScheduleUUID()).getStatus());
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, never()).submit(any(), any());
+    assertEquals(Collections.emptyList(), scheduler.getQueuedSchedules());
+
+    // And it is not queued again until it is resumed.
+    scheduler.reconcileRunner();
+    assertEquals(Collections.emptyList(), scheduler.getQueuedSchedules());
+    schedule.resetSchedule();
+    scheduler.scheduleUpdated(schedule);
+    assertEquals(Collections.singletonList(schedule.getScheduleUUID()),
+        scheduler.getQueuedSchedules());
+  }
+
+  @Test
+  public void testStoppedScheduleIsDroppedWhenUpdated() {
+    Schedule schedule = createSchedule(TimeUnit.HOURS.toMillis(1));
+    scheduler.scheduleUpdated(schedule);
+    schedule.stopSchedule();
+    scheduler.scheduleUpdated(schedule);
+    assertEquals(Collections.emptyList(), scheduler.getQueuedSchedules());
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, never()).submit(any(), any());
+  }
+
+  @Test
+  public void testDeletedScheduleIsDropped() {
+    Schedule schedule = createSchedule(TimeUnit.HOURS.toMillis(1));
+    scheduler.reconcileRunner();
+    schedule.delete();
+
+    scheduler.scheduleRunner();
+    verify(mockCommissioner, never()).submit(any(), any());
+    assertEquals(Collections.emptyList(), scheduler.getQueuedSchedules());
+  }
+}